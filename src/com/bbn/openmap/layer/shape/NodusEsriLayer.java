@@ -155,6 +155,9 @@ public class NodusEsriLayer extends FastEsriLayer implements ShapeConstants {
    */
   private HashMap<Integer, Integer> numIndex = new HashMap<>();
 
+  /** Incremented each time the num index changes, so that the indexes built on it are updated. */
+  private int numIndexVersion = 0;
+
   /** Variable that is used to detect a dbf structure change. */
   private int originalColumCount = -1;
 
@@ -212,6 +215,7 @@ public class NodusEsriLayer extends FastEsriLayer implements ShapeConstants {
     int index = getModel().getRowCount() - 1;
     int num = JDBCUtils.getInt(getModel().getValueAt(index, NodusC.DBF_IDX_NUM));
     numIndex.put(Integer.valueOf(num), Integer.valueOf(index));
+    numIndexVersion++;
   }
 
   /**
@@ -502,11 +506,7 @@ public class NodusEsriLayer extends FastEsriLayer implements ShapeConstants {
       stmt.close();
 
     } catch (Exception ex) {
-      JOptionPane.showMessageDialog(
-          null,
-          ex.toString(),
-          i18n.get(NodusEsriLayer.class, "SQL_error", "SQL error"),
-          JOptionPane.ERROR_MESSAGE);
+      nodusProject.getProgressListener().showMessage(ex.toString(), JOptionPane.ERROR_MESSAGE);
     }
   }
 
@@ -536,7 +536,8 @@ public class NodusEsriLayer extends FastEsriLayer implements ShapeConstants {
 
     NodusOMGraphic model = getStyle(omGraphic, index);
 
-    if (model == null) {
+    // Nothing is rendered when the project is opened without user interface
+    if (model == null || getNodusMapPanel() == null) {
       return;
     }
 
@@ -767,11 +768,7 @@ public class NodusEsriLayer extends FastEsriLayer implements ShapeConstants {
       rs.close();
       stmt.close();
     } catch (Exception ex) {
-      JOptionPane.showMessageDialog(
-          null,
-          ex.getMessage(),
-          i18n.get(NodusEsriLayer.class, "SQL_error", "SQL error"),
-          JOptionPane.ERROR_MESSAGE);
+      nodusProject.getProgressListener().showMessage(ex.getMessage(), JOptionPane.ERROR_MESSAGE);
 
       return false;
     }
@@ -963,6 +960,15 @@ public class NodusEsriLayer extends FastEsriLayer implements ShapeConstants {
     return numIndex;
   }
 
+  /**
+   * Returns a counter that changes each time objects are added to or removed from this layer.
+   *
+   * @return The version of the num index.
+   */
+  public int getNumIndexVersion() {
+    return numIndexVersion;
+  }
+
   /**
    * Retrieves the index of an object in the ShapeFile from the "num" field in the .dbf file. Return
    * -1 if not found.
@@ -1334,7 +1340,9 @@ public class NodusEsriLayer extends FastEsriLayer implements ShapeConstants {
    */
   public void save() {
 
-    nodusProject.getNodusMapPanel().setBusy(true);
+    if (getNodusMapPanel() != null) {
+      getNodusMapPanel().setBusy(true);
+    }
 
     // ESRI shape file
     if (dirtyShp) {
@@ -1375,7 +1383,9 @@ public class NodusEsriLayer extends FastEsriLayer implements ShapeConstants {
     dirtyDbf = false;
     getOriginalTableStructure();
 
-    nodusProject.getNodusMapPanel().setBusy(false);
+    if (getNodusMapPanel() != null) {
+      getNodusMapPanel().setBusy(false);
+    }
   }
 
   /**
@@ -1597,7 +1607,7 @@ public class NodusEsriLayer extends FastEsriLayer implements ShapeConstants {
     // Verify if dbf table must be imported in database
     if (!jdbcUtils.tableExists(layerName)) {
       nodusProject
-          .getNodusMapPanel()
+          .getProgressListener()
           .setText(
               MessageFormat.format(
                   i18n.get(NodusEsriLayer.class, "Importing", "Importing \"{0}\" in database"),
@@ -1736,6 +1746,7 @@ public class NodusEsriLayer extends FastEsriLayer implements ShapeConstants {
   /** HashMap to retrieve the object index from the "num" field in .dbf. */
   private void updateNumIndex() {
     numIndex.clear();
+    numIndexVersion++;
 
     DbfTableModel model = getModel();
 
@@ -0,0 +1,418 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus;
+
+import com.bbn.openmap.Environment;
+
+import edu.uclouvain.core.nodus.compute.assign.Assignment;
+import edu.uclouvain.core.nodus.compute.assign.AssignmentExecutor;
+import edu.uclouvain.core.nodus.compute.assign.AssignmentParameters;
+import edu.uclouvain.core.nodus.compute.assign.ScenarioSweep;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Properties;
+
+import javax.swing.JOptionPane;
+
+/**
+ * Runs assignments without user interface, which makes it usable on a headless server. The project
+ * is opened without map panel, and each scenario given on the command line is assigned with the
+ * settings saved for it in the project by the assignment dialog box. A series of scenarios that
+ * only differ by some cost function variables can also be assigned as a sweep. The progress, the
+ * error messages and the time spent in each phase of the assignments are printed on the console.
+ * Finally, the convergence of the Frank-Wolfe and bush based equilibrium assignments can be
+ * compared on a scenario.
+ *
+ * <p>Usage: NodusBatch project.nodus scenario [scenario...]
+ *
+ * <p>or: NodusBatch project.nodus -sweep baseScenario sweepFile (see runSweep)
+ *
+ * <p>or: NodusBatch project.nodus -benchmark scenario (see runBenchmark)
+ *
+ * @author Bart Jourquin
+ */
+public class NodusBatch {
+
+  /**
+   * Prints the progress of the long tasks on the console, at most once every few seconds, and the
+   * messages on the error stream.
+   */
+  private static class ConsoleProgressListener implements ProgressListener {
+
+    private static final long PRINT_INTERVAL = 5000000000L;
+
+    private int currentTask;
+
+    private long lastPrint;
+
+    private String lastText = "";
+
+    private int nbTasks;
+
+    @Override
+    public synchronized void showMessage(String msg, int messageType) {
+      if (messageType == JOptionPane.ERROR_MESSAGE) {
+        System.err.println("Error: " + msg);
+      } else if (messageType == JOptionPane.WARNING_MESSAGE) {
+        System.err.println("Warning: " + msg);
+      } else {
+        System.err.println(msg);
+      }
+    }
+
+    @Override
+    public synchronized void setText(String msg) {
+      if (msg != null && msg.length() > 0 && !msg.equals(lastText)) {
+        System.out.println(msg);
+      }
+      lastText = msg;
+    }
+
+    @Override
+    public synchronized void startProgress(int finishedValue) {
+      nbTasks = finishedValue;
+      currentTask = 0;
+      lastPrint = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void stopProgress() {
+      nbTasks = 0;
+    }
+
+    @Override
+    public synchronized boolean updateProgress(String msg) {
+      currentTask++;
+      long now = System.nanoTime();
+      if (now - lastPrint >= PRINT_INTERVAL) {
+        lastPrint = now;
+        System.out.println("  " + msg + " (" + currentTask + "/" + nbTasks + ")");
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Returns the value of an integer property saved for a scenario, or its project wide value if
+   * the scenario has no specific value.
+   */
+  private static int getProperty(NodusProject project, String key, int scenario, int defValue) {
+    int value = project.getLocalProperty(key + scenario, -1);
+    if (value == -1) {
+      value = project.getLocalProperty(key, defValue);
+    }
+    return value;
+  }
+
+  /**
+   * Returns the value of a numeric property saved for a scenario, or its project wide value if the
+   * scenario has no specific value.
+   */
+  private static float getProperty(
+      NodusProject project, String key, int scenario, double defValue) {
+    double value = project.getLocalProperty(key + scenario, -1.0);
+    if (value == -1.0) {
+      value = project.getLocalProperty(key, defValue);
+    }
+    return (float) value;
+  }
+
+  /**
+   * Returns the value of a string property saved for a scenario, or its project wide value if the
+   * scenario has no specific value.
+   */
+  private static String getProperty(
+      NodusProject project, String key, int scenario, String defValue) {
+    String value = project.getLocalProperty(key + scenario, null);
+    if (value == null) {
+      value = project.getLocalProperty(key, defValue);
+    }
+    return value;
+  }
+
+  /**
+   * Builds the assignment parameters of a scenario from the settings saved by the assignment
+   * dialog box.
+   *
+   * @param project The project the scenario belongs to.
+   * @param scenario The scenario to assign.
+   * @return The assignment parameters.
+   */
+  public static AssignmentParameters getAssignmentParameters(NodusProject project, int scenario) {
+    AssignmentParameters ap = new AssignmentParameters(project);
+    ap.setScenario(scenario);
+    ap.setConfirmDelete(false);
+
+    ap.setODMatrix(getProperty(project, NodusC.PROP_OD_TABLE, scenario, (String) null));
+    String defaultCosts =
+        project.getLocalProperty(NodusC.PROP_PROJECT_DOTNAME) + NodusC.TYPE_COSTS;
+    ap.setCostFunctions(getProperty(project, NodusC.PROP_COST_FUNCTIONS, scenario, defaultCosts));
+    ap.setWhereStmt(getProperty(project, NodusC.PROP_ASSIGNMENT_QUERY, scenario, ""));
+    ap.setNbIterations(getProperty(project, NodusC.PROP_ASSIGNMENT_NB_ITERATIONS, scenario, 1));
+    ap.setPrecision(getProperty(project, NodusC.PROP_ASSIGNMENT_PRECISION, scenario, 0.05));
+    ap.setCostMarkup(getProperty(project, NodusC.PROP_COST_MARKUP, scenario, 0.10));
+    ap.setMaxDetourRatio(getProperty(project, NodusC.PROP_MAX_DETOUR, scenario, 0.00));
+    String msm =
+        getProperty(project, NodusC.PROP_ASSIGNMENT_MODAL_SPLIT_METHOD, scenario, (String) null);
+    if (msm != null) {
+      ap.setModalSplitMethodName(msm);
+    }
+
+    ap.setSavePaths(getProperty(project, NodusC.PROP_ASSIGNMENT_SAVE_PATHS, scenario, 0) == 1);
+    ap.setDetailedPaths(
+        getProperty(project, NodusC.PROP_ASSIGNMENT_SAVE_DETAILED_PATHS, scenario, 0) == 1);
+    ap.setKeepOnlyCheapestIntermodalPath(
+        getProperty(project, NodusC.PROP_KEEP_CHEAPEST_INTERMODAL_PATH_ONLY, scenario, 0) == 1);
+    ap.setLogLostPaths(
+        getProperty(project, NodusC.PROP_ASSIGNMENT_LOG_LOST_PATHS, scenario, 0) == 1);
+    ap.setRunPostAssignmentScript(
+        getProperty(project, NodusC.PROP_ASSIGNMENT_RUN_POST_ASSIGNMENT_SCRIPT, scenario, 0)
+            == 1);
+    ap.setPostAssignmentScript(
+        getProperty(project, NodusC.PROP_ASSIGNMENT_POST_ASSIGNMENT_SCRIPT, scenario, ""));
+
+    int processors = Runtime.getRuntime().availableProcessors();
+    ap.setThreads(getProperty(project, NodusC.PROP_THREADS, scenario, processors));
+    ap.setBidirectionalSearch(project.getLocalProperty(NodusC.PROP_BIDIRECTIONAL_SEARCH, false));
+    ap.setLogSettledNodes(project.getLocalProperty(NodusC.PROP_LOG_SETTLED_NODES, false));
+    ap.setWarmStart(project.getLocalProperty(NodusC.PROP_WARM_START, false));
+    ap.setWarmStartThreshold(project.getLocalProperty(NodusC.PROP_WARM_START_THRESHOLD, 0.2));
+    ap.setLimitedToHighlightedArea(false);
+
+    return ap;
+  }
+
+  /** Prints the time spent in each phase of an assignment and its outcome. */
+  private static void printStatistics(Assignment assignment) {
+    System.out.println(assignment.getAssignmentParameters().getTimings());
+    AssignmentExecutor executor = assignment.getExecutor();
+    if (executor != null) {
+      System.out.println(
+          executor.getNbTasks()
+              + " tasks on "
+              + executor.getParallelism()
+              + " threads, "
+              + executor.getTasksDuration()
+              + " ms of work");
+    }
+    System.out.println(assignment.isSuccessful() ? "Done" : "Failed");
+  }
+
+  /**
+   * Assigns a scenario with the method saved for it and prints the time spent in each phase.
+   *
+   * @param project The open project.
+   * @param scenario The scenario to assign.
+   * @return True on success.
+   */
+  public static boolean runAssignment(NodusProject project, int scenario) {
+    AssignmentParameters ap = getAssignmentParameters(project, scenario);
+    int method = getProperty(project, NodusC.PROP_ASSIGNMENT_METHOD, scenario, 0);
+
+    System.out.println("Scenario " + scenario + ", method " + method + ": " + ap.getODMatrix());
+    long start = System.currentTimeMillis();
+    Assignment assignment = Assignment.newAssignment(method, ap);
+    if (assignment == null) {
+      System.err.println("Unknown assignment method: " + method);
+      return false;
+    }
+    assignment.run();
+    printStatistics(assignment);
+    System.out.println("Assigned in " + (System.currentTimeMillis() - start) + " ms");
+    return assignment.isSuccessful();
+  }
+
+  /**
+   * Assigns a scenario with the Frank-Wolfe and the bush based equilibrium assignments, using the
+   * number of iterations and the precision saved for the scenario, and prints the relative gap
+   * reached by both methods after each iteration. The flows of the last method are kept.
+   *
+   * @param project The open project.
+   * @param scenario The scenario to assign.
+   * @return True on success.
+   */
+  public static boolean runBenchmark(NodusProject project, int scenario) {
+    int[] methods = {Assignment.FRANK_WOLFE, Assignment.BUSH_BASED};
+    String[] names = {"Frank-Wolfe", "Bush based"};
+    double[][] gaps = new double[methods.length][];
+    long[][] times = new long[methods.length][];
+    boolean success = true;
+
+    for (int m = 0; m < methods.length; m++) {
+      AssignmentParameters ap = getAssignmentParameters(project, scenario);
+      System.out.println("Scenario " + scenario + ", " + names[m] + ": " + ap.getODMatrix());
+      long start = System.currentTimeMillis();
+      Assignment assignment = Assignment.newAssignment(methods[m], ap);
+      if (assignment == null) {
+        System.err.println("Unknown assignment method: " + methods[m]);
+        return false;
+      }
+      assignment.run();
+      printStatistics(assignment);
+      System.out.println("Assigned in " + (System.currentTimeMillis() - start) + " ms");
+      gaps[m] = assignment.getRelativeGaps();
+      times[m] = assignment.getRelativeGapTimes();
+      success &= assignment.isSuccessful();
+    }
+
+    // One line per iteration, with the relative gap and the elapsed time of each method
+    int nbIterations = Math.max(gaps[0].length, gaps[1].length);
+    System.out.println("Iteration; " + names[0] + " gap; ms; " + names[1] + " gap; ms");
+    for (int i = 0; i < nbIterations; i++) {
+      StringBuilder line = new StringBuilder().append(i + 1);
+      for (int m = 0; m < methods.length; m++) {
+        if (i < gaps[m].length) {
+          line.append(String.format(Locale.ENGLISH, "; %.3e; %d", gaps[m][i], times[m][i]));
+        } else {
+          line.append(";;");
+        }
+      }
+      System.out.println(line);
+    }
+    return success;
+  }
+
+  /**
+   * Assigns a series of scenarios with the settings saved for a base scenario, each scenario
+   * overriding some variables of the cost functions. The sweep file contains one line per
+   * scenario, made of the scenario number followed by "variable=value" pairs separated by spaces.
+   * Empty lines and lines starting with '#' are ignored.
+   *
+   * @param project The open project.
+   * @param baseScenario The scenario the settings are taken from.
+   * @param sweepFileName The name of the sweep file.
+   * @return True on success.
+   */
+  public static boolean runSweep(NodusProject project, int baseScenario, String sweepFileName) {
+    AssignmentParameters ap = getAssignmentParameters(project, baseScenario);
+    int method = getProperty(project, NodusC.PROP_ASSIGNMENT_METHOD, baseScenario, 0);
+    ScenarioSweep sweep = new ScenarioSweep(ap, method);
+
+    try (BufferedReader reader = new BufferedReader(new FileReader(sweepFileName))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith("#")) {
+          continue;
+        }
+        String[] tokens = line.split("\\s+");
+        Properties variables = new Properties();
+        for (int i = 1; i < tokens.length; i++) {
+          int pos = tokens[i].indexOf('=');
+          if (pos <= 0) {
+            System.err.println("Invalid variable in " + sweepFileName + ": " + tokens[i]);
+            return false;
+          }
+          variables.setProperty(tokens[i].substring(0, pos), tokens[i].substring(pos + 1));
+        }
+        sweep.addScenario(Integer.parseInt(tokens[0]), variables);
+      }
+    } catch (IOException | NumberFormatException e) {
+      System.err.println(e.toString());
+      return false;
+    }
+
+    long start = System.currentTimeMillis();
+    boolean success = sweep.run();
+    for (Assignment assignment : sweep.getAssignments()) {
+      System.out.println("Scenario " + assignment.getAssignmentParameters().getScenario());
+      printStatistics(assignment);
+    }
+    System.out.println("Sweep done in " + (System.currentTimeMillis() - start) + " ms");
+    return success;
+  }
+
+  /**
+   * Opens a project and assigns the scenarios given on the command line.
+   *
+   * @param args The project file name followed by the scenarios to assign.
+   */
+  public static void main(String[] args) {
+    boolean isSweep = args.length > 1 && args[1].equals("-sweep");
+    boolean isBenchmark = args.length > 1 && args[1].equals("-benchmark");
+    if (args.length < 2 || isSweep && args.length != 4 || isBenchmark && args.length != 3) {
+      String project = "project" + NodusC.TYPE_NODUS;
+      System.err.println("Usage: NodusBatch " + project + " scenario [...]");
+      System.err.println("   or: NodusBatch " + project + " -sweep baseScenario sweepFile");
+      System.err.println("   or: NodusBatch " + project + " -benchmark scenario");
+      System.exit(1);
+    }
+
+    Environment.init();
+
+    Properties nodusProperties = new Properties();
+    try {
+      String home = System.getProperty("user.home") + "/";
+      nodusProperties.load(new FileInputStream(home + ".nodus7.properties"));
+    } catch (IOException ex) {
+      // Nothing to do. The default values will be used.
+    }
+
+    String locale = nodusProperties.getProperty(NodusC.PROP_LOCALE, null);
+    if (locale != null) {
+      Locale.setDefault(new Locale(locale.toLowerCase(), locale.toUpperCase()));
+    } else {
+      Locale.setDefault(Locale.ENGLISH);
+    }
+
+    NodusProject project = new NodusProject(nodusProperties, new ConsoleProgressListener());
+    project.openProject(args[0]);
+    if (!project.isOpen()) {
+      System.err.println("Could not open " + args[0]);
+      System.exit(1);
+    }
+
+    boolean success = true;
+    if (isSweep) {
+      try {
+        success = runSweep(project, Integer.parseInt(args[2]), args[3]);
+      } catch (NumberFormatException e) {
+        System.err.println("Invalid scenario: " + args[2]);
+        success = false;
+      }
+    } else if (isBenchmark) {
+      try {
+        success = runBenchmark(project, Integer.parseInt(args[2]));
+      } catch (NumberFormatException e) {
+        System.err.println("Invalid scenario: " + args[2]);
+        success = false;
+      }
+    } else {
+      for (int i = 1; i < args.length; i++) {
+        try {
+          success &= runAssignment(project, Integer.parseInt(args[i]));
+        } catch (NumberFormatException e) {
+          System.err.println("Invalid scenario: " + args[i]);
+          success = false;
+        }
+      }
+    }
+
+    project.close();
+    System.exit(success ? 0 : 1);
+  }
+}
@@ -439,6 +439,9 @@ public class NodusC {
   /** Extension used for csv files. */
   public static final String TYPE_CSV = ".csv";
 
+  /** Extension used for the snapshots of the generated virtual network. */
+  public static final String TYPE_VNS = ".vns";
+
   /** Extension used for xls files. */
   public static final String TYPE_XLS = ".xls";
 
@@ -702,6 +705,48 @@ public class NodusC {
    */
   public static final String PROP_SAVE_ALL_VN = "vn.saveall";
 
+  /**
+   * Properties strings used in project and/or project local properties.
+   *
+   * @exclude
+   */
+  public static final String PROP_VN_CACHE = "vn.cache";
+
+  /**
+   * Properties strings used in project and/or project local properties.
+   *
+   * @exclude
+   */
+  public static final String PROP_VN_SNAPSHOT = "vn.snapshot";
+
+  /**
+   * Properties strings used in project and/or project local properties.
+   *
+   * @exclude
+   */
+  public static final String PROP_BIDIRECTIONAL_SEARCH = "shortestpath.bidirectional";
+
+  /**
+   * Properties strings used in project and/or project local properties.
+   *
+   * @exclude
+   */
+  public static final String PROP_LOG_SETTLED_NODES = "shortestpath.logsettled";
+
+  /**
+   * Properties strings used in project and/or project local properties.
+   *
+   * @exclude
+   */
+  public static final String PROP_WARM_START = "shortestpath.warmstart";
+
+  /**
+   * Properties strings used in project and/or project local properties.
+   *
+   * @exclude
+   */
+  public static final String PROP_WARM_START_THRESHOLD = "shortestpath.warmstart.threshold";
+
   /**
    * Properties strings used in project and/or project local properties.
    *
@@ -1024,6 +1069,13 @@ public class NodusC {
    */
   public static String PROP_ASSIGNMENT_LOG_LOST_PATHS = "loglostpaths";
 
+  /**
+   * Properties strings used in project and/or project local properties.
+   *
+   * @exclude
+   */
+  public static String PROP_ASSIGNMENT_CONVERGENCE_CHART = "convergencechart";
+
   /**
    * Properties strings used in project and/or project local properties.
    *
@@ -95,6 +95,7 @@ import edu.uclouvain.core.nodus.tools.notepad.NotePad;
 import edu.uclouvain.core.nodus.utils.JavaVersionUtil;
 import edu.uclouvain.core.nodus.utils.NodusFileFilter;
 import edu.uclouvain.core.nodus.utils.PluginsLoader;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 import edu.uclouvain.core.nodus.utils.SoundPlayer;
 
 import foxtrot.Job;
@@ -161,7 +162,7 @@ import org.uclouvain.gtm.util.gui.JResourcesMonitor;
  *
  * @author Bart Jourquin
  */
-public class NodusMapPanel extends MapPanel implements ShapeConstants {
+public class NodusMapPanel extends MapPanel implements ProgressListener, ShapeConstants {
 
   /** This class is used to hold an image while on the clipboard. */
   private static class ImageSelection implements Transferable {
@@ -200,6 +201,9 @@ public class NodusMapPanel extends MapPanel implements ShapeConstants {
   /** Internationalization mechanism. */
   private static I18n i18n = Environment.getI18n();
 
+  /** Minimum delay, in nanoseconds, between two updates of the progress bar. */
+  private static final long PROGRESS_INTERVAL = 100000000L;
+
   /**
    * A static method that creates a MapBean with it's projection set to the values set in the
    * Environment.
@@ -235,6 +239,9 @@ public class NodusMapPanel extends MapPanel implements ShapeConstants {
   /** Control variables for the progress bar. */
   private int currentTask = 0;
 
+  /** Time of the last update of the progress bar. */
+  private long lastProgressUpdate = 0;
+
   /** Default background color. */
   private Color defaultBackgroundColor;
 
@@ -1265,14 +1272,7 @@ public class NodusMapPanel extends MapPanel implements ShapeConstants {
    * @return The GC interval expressed in seconds.
    */
   public int getGarbageCollectorInterval() {
-    int interval;
-    String str = nodusProperties.getProperty(NodusC.PROP_GC_INTERVAL, "0");
-    try {
-      interval = Integer.parseInt(str);
-    } catch (NumberFormatException e) {
-      return 0;
-    }
-    return interval;
+    return nodusProject.getGarbageCollectorInterval();
   }
 
   /**
@@ -2653,10 +2653,22 @@ public class NodusMapPanel extends MapPanel implements ShapeConstants {
    *
    * @param msg The message to display.
    */
+  @Override
   public void setText(String msg) {
     infoDelegator.setLabel("  " + msg);
   }
 
+  /**
+   * Displays a message in a dialog box.
+   *
+   * @param msg The message to display.
+   * @param messageType The type of message (same as in JOptionPane).
+   */
+  @Override
+  public void showMessage(String msg, int messageType) {
+    JOptionPane.showMessageDialog(this, msg, NodusC.APPNAME, messageType);
+  }
+
   /** Sets the title of the main frame, which contains the db name and the project name. */
   public void setTitle() {
     String title;
@@ -2681,10 +2693,13 @@ public class NodusMapPanel extends MapPanel implements ShapeConstants {
    *
    * @param finishedValue The max value to reach.
    */
+  @Override
   public void startProgress(int finishedValue) {
     taskLength = finishedValue;
     currentTask = 0;
     canceled = false;
+    lastProgressUpdate = System.nanoTime() - PROGRESS_INTERVAL;
+
     setBusy(true);
 
     ProgressEvent evt = new ProgressEvent(getMapBean(), ProgressEvent.START, "", finishedValue, 0);
@@ -2695,6 +2710,7 @@ public class NodusMapPanel extends MapPanel implements ShapeConstants {
    * Ends a ProgressBar. See OpenMap documentation for more details on the progress bar mechanism
    * implemented on the MapBean.
    */
+  @Override
   public void stopProgress() {
     ProgressEvent evt = new ProgressEvent(getMapBean(), ProgressEvent.DONE, "", 0, 0);
     infoDelegator.updateProgress(evt);
@@ -2708,9 +2724,13 @@ public class NodusMapPanel extends MapPanel implements ShapeConstants {
    * Updated a ProgressBar. See OpenMap documentation for more details on the progress bar mechanism
    * implemented on the MapBean.
    *
+   * <p>The progress bar is only refreshed every PROGRESS_INTERVAL, as this method is called for
+   * each origin of an assignment.
+   *
    * @param msg boolean
    * @return boolean
    */
+  @Override
   public boolean updateProgress(String msg) {
     // getMapBean().requestFocusInWindow(true);
     if (canceled) {
@@ -2730,9 +2750,18 @@ public class NodusMapPanel extends MapPanel implements ShapeConstants {
       }
     }
 
+    // Skip the update if the previous one is too recent, unless the task is done
+    synchronized (this) {
+      currentTask++;
+      long now = System.nanoTime();
+      if (now - lastProgressUpdate < PROGRESS_INTERVAL && currentTask < taskLength) {
+        return true;
+      }
+      lastProgressUpdate = now;
+    }
+
     ProgressEvent evt =
-        new ProgressEvent(
-            getMapBean(), ProgressEvent.UPDATE, "  " + msg, taskLength, ++currentTask);
+        new ProgressEvent(getMapBean(), ProgressEvent.UPDATE, "  " + msg, taskLength, currentTask);
     infoDelegator.updateProgress(evt);
 
     return true;
@@ -41,6 +41,7 @@ import com.bbn.openmap.proj.coords.LatLonPoint;
 import com.bbn.openmap.util.I18n;
 import com.bbn.openmap.util.PropUtils;
 
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNetworkCache;
 import edu.uclouvain.core.nodus.database.JDBCUtils;
 import edu.uclouvain.core.nodus.database.ProjectFilesTools;
 import edu.uclouvain.core.nodus.database.ShapeIntegrityTester;
@@ -52,6 +53,7 @@ import edu.uclouvain.core.nodus.utils.CheckForOM5;
 import edu.uclouvain.core.nodus.utils.CommentedProperties;
 import edu.uclouvain.core.nodus.utils.ModalSplitMethodsLoader;
 import edu.uclouvain.core.nodus.utils.NodusFileFilter;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 import edu.uclouvain.core.nodus.utils.ProjectLocker;
 
 import foxtrot.Job;
@@ -205,9 +207,12 @@ public class NodusProject implements ShapeConstants {
    */
   private NodusOMGraphic[] nodeStyle;
 
-  /** Map panel of the application. */
+  /** Map panel of the application, or null if the project is opened without user interface. */
   private NodusMapPanel nodusMapPanel;
 
+  /** Global Nodus properties. */
+  private Properties nodusProperties;
+
   /** Used to save the original classpath. */
   //private ClassLoader oldClassPath;
 
@@ -246,6 +251,9 @@ public class NodusProject implements ShapeConstants {
   /** Properties file that contains the styles for the nodes and links. */
   private Properties stylesProperties;
 
+  /** Receives the progress of the long tasks and the messages to display. */
+  private ProgressListener progressListener;
+
   /**
    * The constructor just needs to know the frame the project will be displayed on.
    *
@@ -253,6 +261,19 @@ public class NodusProject implements ShapeConstants {
    */
   public NodusProject(NodusMapPanel nodusMapPanel) {
     this.nodusMapPanel = nodusMapPanel;
+    progressListener = nodusMapPanel;
+  }
+
+  /**
+   * Creates a project that is opened without user interface, for instance to run assignments on a
+   * compute server. Its layers are loaded, but not displayed on a map.
+   *
+   * @param nodusProperties The global Nodus properties.
+   * @param progressListener Receives the progress of the long tasks and the messages to display.
+   */
+  public NodusProject(Properties nodusProperties, ProgressListener progressListener) {
+    this.nodusProperties = nodusProperties;
+    this.progressListener = progressListener;
   }
 
   /**
@@ -335,57 +356,63 @@ public class NodusProject implements ShapeConstants {
    */
   public void close() {
     if (isOpen) {
-      nodusMapPanel.setBusy(true);
-      nodusMapPanel.getMenuFile().setEnabled(false);
-
-      // Close all the open children frames
-      Frame[] frame = Frame.getFrames();
-
-      for (Frame element : frame) {
-        if (element != nodusMapPanel.getMainFrame()) {
-          // Try to detect an open Help window. Do not close it
-          boolean doClose = true;
-          WindowListener[] wl = element.getWindowListeners();
-
-          for (WindowListener element0 : wl) {
-            if (element0.toString().indexOf("javax.help.WindowPresentation") != -1) {
-              doClose = false;
-              break;
+      setBusy(true);
+      setMenuFileEnabled(false);
+
+      if (nodusMapPanel != null) {
+        // Close all the open children frames
+        Frame[] frame = Frame.getFrames();
+
+        for (Frame element : frame) {
+          if (element != nodusMapPanel.getMainFrame()) {
+            // Try to detect an open Help window. Do not close it
+            boolean doClose = true;
+            WindowListener[] wl = element.getWindowListeners();
+
+            for (WindowListener element0 : wl) {
+              if (element0.toString().indexOf("javax.help.WindowPresentation") != -1) {
+                doClose = false;
+                break;
+              }
             }
-          }
 
-          if (doClose) {
-            element.setVisible(false);
+            if (doClose) {
+              element.setVisible(false);
+            }
           }
         }
-      }
 
-      Layer[] layer = nodusMapPanel.getLayerHandler().getLayers();
+        Layer[] layer = nodusMapPanel.getLayerHandler().getLayers();
 
-      String layerOrder = "";
-      for (Layer element : layer) {
-        Container c = element.getPalette();
-        layerOrder += element.getName() + ",";
-        if (c != null) {
-          c.setVisible(false);
+        String layerOrder = "";
+        for (Layer element : layer) {
+          Container c = element.getPalette();
+          layerOrder += element.getName() + ",";
+          if (c != null) {
+            c.setVisible(false);
+          }
         }
-      }
 
-      // Save the current settings in the property file
-      float scale = nodusMapPanel.getMapBean().getScale();
-      LatLonPoint.Double llp = (LatLonPoint.Double) nodusMapPanel.getMapBean().getCenter();
-      this.setLocalProperty(NodusC.PROP_MAP_SCALE, scale);
-      this.setLocalProperty(NodusC.PROP_MAP_LATITUDE, llp.getLatitude());
-      this.setLocalProperty(NodusC.PROP_MAP_LONGITUDE, llp.getLongitude());
+        // Save the current settings in the property file
+        float scale = nodusMapPanel.getMapBean().getScale();
+        LatLonPoint.Double llp = (LatLonPoint.Double) nodusMapPanel.getMapBean().getCenter();
+        this.setLocalProperty(NodusC.PROP_MAP_SCALE, scale);
+        this.setLocalProperty(NodusC.PROP_MAP_LATITUDE, llp.getLatitude());
+        this.setLocalProperty(NodusC.PROP_MAP_LONGITUDE, llp.getLongitude());
 
-      Color color = (Color) nodusMapPanel.getMapBean().getBckgrnd();
-      this.setLocalProperty(NodusC.PROP_MAP_BACKGROUNDCOLOR, Integer.toString(color.getRGB()));
-      this.setLocalProperty(
-          NodusC.PROP_PROJECTION, nodusMapPanel.getMapBean().getProjection().getClass().getName());
+        Color color = (Color) nodusMapPanel.getMapBean().getBckgrnd();
+        this.setLocalProperty(NodusC.PROP_MAP_BACKGROUNDCOLOR, Integer.toString(color.getRGB()));
+        this.setLocalProperty(
+            NodusC.PROP_PROJECTION,
+            nodusMapPanel.getMapBean().getProjection().getClass().getName());
 
-      this.setLocalProperty(NodusC.PROP_ACTIVE_MOUSE_MODE, nodusMapPanel.getActiveMouseMode());
+        this.setLocalProperty(NodusC.PROP_ACTIVE_MOUSE_MODE, nodusMapPanel.getActiveMouseMode());
 
-      this.setLocalProperty(NodusC.PROP_MAP_ORDER, layerOrder);
+        this.setLocalProperty(NodusC.PROP_MAP_ORDER, layerOrder);
+      }
+
+      // The cached virtual network refers to the layers of this project
+      VirtualNetworkCache.clear();
 
       if (nodeLayers != null && linkLayers != null) {
 
@@ -394,15 +421,19 @@ public class NodusProject implements ShapeConstants {
 
         if (isDirty()) {
 
-          int answer =
-              JOptionPane.showConfirmDialog(
-                  null,
-                  i18n.get(
-                      NodusProject.class,
-                      "Commit_changes_to_database",
-                      "Commit changes to database?"),
-                  i18n.get(NodusProject.class, "Network_was_modified", "Network was modified"),
-                  JOptionPane.YES_NO_OPTION);
+          // Changes can only be committed on request of the user
+          int answer = JOptionPane.NO_OPTION;
+          if (nodusMapPanel != null) {
+            answer =
+                JOptionPane.showConfirmDialog(
+                    null,
+                    i18n.get(
+                        NodusProject.class,
+                        "Commit_changes_to_database",
+                        "Commit changes to database?"),
+                    i18n.get(NodusProject.class, "Network_was_modified", "Network was modified"),
+                    JOptionPane.YES_NO_OPTION);
+          }
 
           if (answer == JOptionPane.YES_OPTION) {
             saveEsriLayers();
@@ -422,8 +453,9 @@ public class NodusProject implements ShapeConstants {
           }
 
           // Ask if a "shutdown compact" must be performed as this can take a while
-          if (JDBCUtils.getDbEngine(jdbcConnection) == JDBCUtils.DB_HSQLDB
-              || JDBCUtils.getDbEngine(jdbcConnection) == JDBCUtils.DB_H2) {
+          if (nodusMapPanel != null
+              && (JDBCUtils.getDbEngine(jdbcConnection) == JDBCUtils.DB_HSQLDB
+                  || JDBCUtils.getDbEngine(jdbcConnection) == JDBCUtils.DB_H2)) {
 
             if (Boolean.parseBoolean(getLocalProperty(NodusC.PROP_SHUTDOWN_COMPACT, "true"))) {
 
@@ -491,26 +523,29 @@ public class NodusProject implements ShapeConstants {
                   Boolean.toString(element.isVisible()));
             }
 
-            if (getNodusMapPanel().isHighlightedAreaLayerAdded()) {
-              localProperties.setProperty(NodusC.PROP_ADD_HIGHLIGHTED_AREA, Boolean.toString(true));
+            if (nodusMapPanel != null) {
+              if (getNodusMapPanel().isHighlightedAreaLayerAdded()) {
+                localProperties.setProperty(
+                    NodusC.PROP_ADD_HIGHLIGHTED_AREA, Boolean.toString(true));
+                localProperties.setProperty(
+                    NodusC.PROP_DISPLAY_HIGHLIGHTED_AREA,
+                    Boolean.toString(getNodusMapPanel().isHighlightedAreaLayerVisible()));
+              } else {
+                localProperties.setProperty(
+                    NodusC.PROP_ADD_HIGHLIGHTED_AREA, Boolean.toString(false));
+              }
+
               localProperties.setProperty(
-                  NodusC.PROP_DISPLAY_HIGHLIGHTED_AREA,
-                  Boolean.toString(getNodusMapPanel().isHighlightedAreaLayerVisible()));
-            } else {
+                  labelsLayer.getName() + NodusC.PROP_VISIBLE,
+                  Boolean.toString(labelsLayer.isVisible()));
               localProperties.setProperty(
-                  NodusC.PROP_ADD_HIGHLIGHTED_AREA, Boolean.toString(false));
+                  NodusC.PROP_DISPLAY_POLITICAL_BOUNDARIES,
+                  Boolean.toString(nodusMapPanel.isPoliticalBoundariesVisible()));
+              localProperties.setProperty(
+                  NodusC.PROP_ADD_POLITICAL_BOUNDARIES,
+                  Boolean.toString(nodusMapPanel.isPoliticalBoundariesAdded()));
             }
 
-            localProperties.setProperty(
-                labelsLayer.getName() + NodusC.PROP_VISIBLE,
-                Boolean.toString(labelsLayer.isVisible()));
-            localProperties.setProperty(
-                NodusC.PROP_DISPLAY_POLITICAL_BOUNDARIES,
-                Boolean.toString(nodusMapPanel.isPoliticalBoundariesVisible()));
-            localProperties.setProperty(
-                NodusC.PROP_ADD_POLITICAL_BOUNDARIES,
-                Boolean.toString(nodusMapPanel.isPoliticalBoundariesAdded()));
-
             localProperties.store(
                 new FileOutputStream(projectResourceFileNameAndPath + NodusC.TYPE_LOCAL), null);
             localProperties = null;
@@ -521,44 +556,46 @@ public class NodusProject implements ShapeConstants {
         }
       }
 
-      // Now remove all the layers, but leave political boundaries visible
-      getNodusMapPanel().displayHighlightedAreaLayer(false, false);
-      getNodusMapPanel().displayPoliticalBoundaries(true, true);
+      if (nodusMapPanel != null) {
+        // Now remove all the layers, but leave political boundaries visible
+        getNodusMapPanel().displayHighlightedAreaLayer(false, false);
+        getNodusMapPanel().displayPoliticalBoundaries(true, true);
 
-      labelsLayer.setRemovable(true);
+        labelsLayer.setRemovable(true);
 
-      if (nodeLayers != null) {
-        for (NodusEsriLayer nodeLayer : nodeLayers) {
-          nodeLayer.setRemovable(true);
+        if (nodeLayers != null) {
+          for (NodusEsriLayer nodeLayer : nodeLayers) {
+            nodeLayer.setRemovable(true);
+          }
         }
-      }
 
-      if (linkLayers != null) {
-        for (NodusEsriLayer linkLayer : linkLayers) {
-          linkLayer.setRemovable(true);
+        if (linkLayers != null) {
+          for (NodusEsriLayer linkLayer : linkLayers) {
+            linkLayer.setRemovable(true);
+          }
         }
-      }
-
-      nodusMapPanel.getLayerHandler().removeAll();
-      nodusMapPanel.getLayerHandler().setLayers(new Layer[0]);
-
-      // Reset projection to default values
-      nodusMapPanel.resetMap();
-      Projection projection = nodusMapPanel.getMapBean().getProjection();
-      Point2D ctr = projection.getCenter();
-      Projection newProj =
-          new ProjectionFactory()
-              .makeProjection(
-                  Mercator.class.getName(),
-                  ctr,
-                  projection.getScale(),
-                  projection.getWidth(),
-                  projection.getHeight());
-      nodusMapPanel.getMapBean().setProjection(newProj);
 
-      // Enable some menu items and remove project plugins menus
-      nodusMapPanel.removeProjectPlugins();
-      nodusMapPanel.enableMenus(false);
+        nodusMapPanel.getLayerHandler().removeAll();
+        nodusMapPanel.getLayerHandler().setLayers(new Layer[0]);
+
+        // Reset projection to default values
+        nodusMapPanel.resetMap();
+        Projection projection = nodusMapPanel.getMapBean().getProjection();
+        Point2D ctr = projection.getCenter();
+        Projection newProj =
+            new ProjectionFactory()
+                .makeProjection(
+                    Mercator.class.getName(),
+                    ctr,
+                    projection.getScale(),
+                    projection.getWidth(),
+                    projection.getHeight());
+        nodusMapPanel.getMapBean().setProjection(newProj);
+
+        // Enable some menu items and remove project plugins menus
+        nodusMapPanel.removeProjectPlugins();
+        nodusMapPanel.enableMenus(false);
+      }
 
       otherNodeNumbers.clear();
       otherLinkNumbers.clear();
@@ -572,19 +609,59 @@ public class NodusProject implements ShapeConstants {
       isOpen = false;
 
       // Reset rendering scale threshold
-      nodusMapPanel.setRenderingScaleThreshold(-1);
+      if (nodusMapPanel != null) {
+        nodusMapPanel.setRenderingScaleThreshold(-1);
+      }
 
       // Close the log file for this project
       loggerHandler.flush();
       loggerHandler.close();
       Nodus7.nodusLogger.removeHandler(loggerHandler);
 
-      nodusMapPanel.setBusy(false);
-      nodusMapPanel.getMenuFile().setEnabled(true);
+      if (nodusMapPanel != null) {
+        nodusMapPanel.setBusy(false);
+        nodusMapPanel.getMenuFile().setEnabled(true);
+
+        nodusMapPanel.resetTitle();
+        nodusMapPanel.resetText();
+        nodusMapPanel.getNodusLayersPanel().enableButtons(false);
+      }
+    }
+  }
+
+  /**
+   * Runs a job in a Foxtrot worker when the project is displayed, in order to keep the user
+   * interface responsive, or directly in the current thread otherwise.
+   *
+   * @param job The job to run.
+   */
+  private void post(Job job) {
+    if (nodusMapPanel != null) {
+      Worker.post(job);
+    } else {
+      job.run();
+    }
+  }
 
-      nodusMapPanel.resetTitle();
-      nodusMapPanel.resetText();
-      nodusMapPanel.getNodusLayersPanel().enableButtons(false);
+  /**
+   * Sets the wait cursor in the map panel, if the project is displayed.
+   *
+   * @param busy If true, set the wait cursor, else sets the default cursor.
+   */
+  private void setBusy(boolean busy) {
+    if (nodusMapPanel != null) {
+      nodusMapPanel.setBusy(busy);
+    }
+  }
+
+  /**
+   * Enables or disables the "File" menu of the main frame, if the project is displayed.
+   *
+   * @param enabled True to enable the menu.
+   */
+  private void setMenuFileEnabled(boolean enabled) {
+    if (nodusMapPanel != null) {
+      nodusMapPanel.getMenuFile().setEnabled(enabled);
     }
   }
 
@@ -755,9 +832,12 @@ public class NodusProject implements ShapeConstants {
   /**
    * Returns the main frame of the application.
    *
-   * @return The application main frame.
+   * @return The application main frame, or null if the project is opened without user interface.
    */
   public Frame getMainFrame() {
+    if (nodusMapPanel == null) {
+      return null;
+    }
     return nodusMapPanel.getMainFrame();
   }
 
@@ -779,15 +859,13 @@ public class NodusProject implements ShapeConstants {
       }
     } catch (SQLException ex) {
       System.err.println(ex.getMessage());
-      JOptionPane.showMessageDialog(
-          null,
+      progressListener.showMessage(
           MessageFormat.format(
               i18n.get(
                   NodusProject.class,
                   "Could_not_get_connection_on",
                   "Could not get connection on {0}"),
               localProperties.getProperty(NodusC.PROP_JDBC_URL)),
-          NodusC.APPNAME,
           JOptionPane.ERROR_MESSAGE);
 
       return null;
@@ -832,9 +910,9 @@ public class NodusProject implements ShapeConstants {
     // Get the already given numbers in external layers
     HashMap<Integer, Integer> otherObjects;
     if (layer[0].getType() == ShapeConstants.SHAPE_TYPE_POINT) {
-      otherObjects = nodusMapPanel.getNodusProject().getOtherNodeNumbers();
+      otherObjects = getOtherNodeNumbers();
     } else {
-      otherObjects = nodusMapPanel.getNodusProject().getOtherLinkNumbers();
+      otherObjects = getOtherLinkNumbers();
     }
 
     while (!foundNewNumber) {
@@ -892,12 +970,48 @@ public class NodusProject implements ShapeConstants {
   /**
    * Returns the Nodus map panel.
    *
-   * @return The MapPanel of the main frame.
+   * @return The MapPanel of the main frame, or null if the project is opened without user
+   *     interface.
    */
   public NodusMapPanel getNodusMapPanel() {
     return nodusMapPanel;
   }
 
+  /**
+   * Returns the global Nodus properties.
+   *
+   * @return The properties.
+   */
+  public Properties getNodusProperties() {
+    if (nodusMapPanel != null) {
+      return nodusMapPanel.getNodusProperties();
+    }
+    return nodusProperties;
+  }
+
+  /**
+   * Returns the listener the long tasks report their progress and their messages to. This is the
+   * map panel, unless the project is opened without user interface.
+   *
+   * @return The progress listener.
+   */
+  public ProgressListener getProgressListener() {
+    return progressListener;
+  }
+
+  /**
+   * Returns the interval used for garbage collection during assignments.
+   *
+   * @return The GC interval expressed in seconds.
+   */
+  public int getGarbageCollectorInterval() {
+    try {
+      return Integer.parseInt(getNodusProperties().getProperty(NodusC.PROP_GC_INTERVAL, "0"));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
   /**
    * Returns an hashmap that contains the ID's of the links that are found in the Nodus compatible
    * layers, not loaded in the project.
@@ -1028,16 +1142,14 @@ public class NodusProject implements ShapeConstants {
       // Import only if not exists
       if (!jdbcUtils.tableExists(currentTable)) {
         // Use a FoxTrot worker to displau "importing" message
-        Worker.post(
+        post(
             new Job() {
               @Override
               public Object run() {
-                getNodusMapPanel()
-                    .setText(
-                        MessageFormat.format(
-                            i18n.get(
-                                NodusProject.class, "Importing", "Importing \"{0}\" in database"),
-                            currentTable));
+                progressListener.setText(
+                    MessageFormat.format(
+                        i18n.get(NodusProject.class, "Importing", "Importing \"{0}\" in database"),
+                        currentTable));
                 ImportDBF.importTable(_this, currentTable);
                 return null;
               }
@@ -1164,20 +1276,16 @@ public class NodusProject implements ShapeConstants {
 
       if (!jdbcUtils.hasField(tableName, NodusC.DBF_SERVICE1)) {
         // This is a version 2 virtual network
-        JOptionPane.showMessageDialog(
-            null,
+        progressListener.showMessage(
             "This project has virtual network version 2 tables.\nPlease upgrade to version 4.",
-            NodusC.APPNAME,
             JOptionPane.ERROR_MESSAGE);
         return false;
       }
 
       if (!jdbcUtils.hasField(tableName, NodusC.DBF_TIME)) {
         // This is a version 3 virtual network
-        JOptionPane.showMessageDialog(
-            null,
+        progressListener.showMessage(
             "This project has virtual network version 3 tables.\nPlease upgrade to version 4.",
-            NodusC.APPNAME,
             JOptionPane.ERROR_MESSAGE);
         return false;
       }
@@ -1307,7 +1415,7 @@ public class NodusProject implements ShapeConstants {
     // Find a project file (is a properties file with a .nodus extension)
     JFileChooser fileChooser =
         new JFileChooser(
-            nodusMapPanel.getNodusProperties().getProperty(NodusC.PROP_LAST_PATH, "."));
+            getNodusProperties().getProperty(NodusC.PROP_LAST_PATH, "."));
 
     fileChooser.setFileFilter(
         new NodusFileFilter(
@@ -1343,7 +1451,7 @@ public class NodusProject implements ShapeConstants {
 
     projectResourceFileNameAndPath = projectName;
 
-    nodusMapPanel.setBusy(true);
+    setBusy(true);
 
     try {
       projectProperties = new CommentedProperties();
@@ -1355,13 +1463,20 @@ public class NodusProject implements ShapeConstants {
     if (projectProperties == null) { // File doesn't exist
 
       // Create a minimalist empty project
-      int answer =
-          JOptionPane.showConfirmDialog(
-              nodusMapPanel,
-              i18n.get(
-                  NodusProject.class, "Create_new_empty_project?", "Create new empty project?"),
-              i18n.get(NodusProject.class, "Project_doesnt_exist", "Project doesn't exist"),
-              JOptionPane.YES_NO_OPTION);
+      int answer = JOptionPane.NO_OPTION;
+      if (nodusMapPanel != null) {
+        answer =
+            JOptionPane.showConfirmDialog(
+                nodusMapPanel,
+                i18n.get(
+                    NodusProject.class, "Create_new_empty_project?", "Create new empty project?"),
+                i18n.get(NodusProject.class, "Project_doesnt_exist", "Project doesn't exist"),
+                JOptionPane.YES_NO_OPTION);
+      } else {
+        progressListener.showMessage(
+            i18n.get(NodusProject.class, "Project_doesnt_exist", "Project doesn't exist"),
+            JOptionPane.ERROR_MESSAGE);
+      }
 
       if (answer == JOptionPane.YES_OPTION) {
         try {
@@ -1377,7 +1492,7 @@ public class NodusProject implements ShapeConstants {
           System.err.println("Caught IOException creating " + projectResourceFileNameAndPath);
         }
       } else {
-        nodusMapPanel.setBusy(false);
+        setBusy(false);
 
         return;
       }
@@ -1421,30 +1536,30 @@ public class NodusProject implements ShapeConstants {
     localProperties.setProperty(NodusC.PROP_PROJECT_DOTPATH, projectPath);
     localProperties.setProperty(
         NodusC.PROP_PROJECT_DOTNAME, name.substring(0, name.indexOf(NodusC.TYPE_NODUS)));
-    nodusMapPanel.getNodusProperties().setProperty(NodusC.PROP_LAST_PATH, projectPath);
-    nodusMapPanel.getNodusProperties().setProperty(NodusC.PROP_LAST_PROJECT, name);
+    getNodusProperties().setProperty(NodusC.PROP_LAST_PATH, projectPath);
+    getNodusProperties().setProperty(NodusC.PROP_LAST_PROJECT, name);
 
     // Try to lock this project
     if (!ProjectLocker.createLock(this)) {
-      JOptionPane.showMessageDialog(
-          null,
+      progressListener.showMessage(
           i18n.get(NodusProject.class, "Project_already_open", "This project is already open"),
-          NodusC.APPNAME,
           JOptionPane.ERROR_MESSAGE);
-      nodusMapPanel.setBusy(false);
+      setBusy(false);
       return;
     }
 
     // Test the validity of the dbf files in the project
-    if (!ProjectFilesTools.isValidProject(localProperties)) {
-      nodusMapPanel.setBusy(false);
-      nodusMapPanel.getMenuFile().setEnabled(true);
+    if (!ProjectFilesTools.isValidProject(localProperties, progressListener)) {
+      setBusy(false);
+      setMenuFileEnabled(true);
       return;
     }
 
-    nodusMapPanel.getMenuFile().setEnabled(false);
+    setMenuFileEnabled(false);
 
-    nodusMapPanel.loadPlugins(projectPath, true);
+    if (nodusMapPanel != null) {
+      nodusMapPanel.loadPlugins(projectPath, true);
+    }
 
     // Load styles from property file
     stylesProperties = getStyleProperties();
@@ -1458,9 +1573,7 @@ public class NodusProject implements ShapeConstants {
     if (defaultEmbeddedDbms == -1) {
       // Take system wide default embedded db
       String s =
-          nodusMapPanel
-              .getNodusProperties()
-              .getProperty(NodusC.PROP_EMBEDDED_DB, "" + JDBCUtils.DB_HSQLDB);
+          getNodusProperties().getProperty(NodusC.PROP_EMBEDDED_DB, "" + JDBCUtils.DB_HSQLDB);
       try {
         defaultEmbeddedDbms = Integer.parseInt(s);
       } catch (NumberFormatException e) {
@@ -1538,18 +1651,17 @@ public class NodusProject implements ShapeConstants {
       Class.forName(jdbcDriver).getDeclaredConstructor().newInstance();
       jdbcConnection = getMainJDBCConnection();
       if (jdbcConnection == null) {
-        nodusMapPanel.setBusy(false);
+        setBusy(false);
         ProjectLocker.releaseLock();
-        nodusMapPanel.getMenuFile().setEnabled(true);
+        setMenuFileEnabled(true);
         return;
       }
 
     } catch (Exception ex) {
-      nodusMapPanel.setBusy(false);
-      JOptionPane.showMessageDialog(
-          null, ex.toString(), NodusC.APPNAME, JOptionPane.WARNING_MESSAGE);
+      setBusy(false);
+      progressListener.showMessage(ex.toString(), JOptionPane.WARNING_MESSAGE);
       ProjectLocker.releaseLock();
-      nodusMapPanel.getMenuFile().setEnabled(true);
+      setMenuFileEnabled(true);
       return;
     }
 
@@ -1563,9 +1675,9 @@ public class NodusProject implements ShapeConstants {
         stmt.close();
       } catch (SQLException ex) {
         System.err.println(ex.toString());
-        nodusMapPanel.setBusy(false);
+        setBusy(false);
         ProjectLocker.releaseLock();
-        nodusMapPanel.getMenuFile().setEnabled(true);
+        setMenuFileEnabled(true);
         return;
       }
     }
@@ -1596,9 +1708,9 @@ public class NodusProject implements ShapeConstants {
 
     // Test if this project has valid virtual network tables
     if (!isValidVirtualNetworkVersion(jdbcUtils)) {
-      nodusMapPanel.setBusy(false);
+      setBusy(false);
       ProjectLocker.releaseLock();
-      nodusMapPanel.getMenuFile().setEnabled(true);
+      setMenuFileEnabled(true);
       try {
         jdbcConnection.close();
       } catch (SQLException e) {
@@ -1607,55 +1719,57 @@ public class NodusProject implements ShapeConstants {
       return;
     }
 
-    String projectionName =
-        this.getLocalProperty(NodusC.PROP_PROJECTION, "com.bbn.openmap.proj.Mercator");
-    Projection projection = nodusMapPanel.getMapBean().getProjection();
-    Point2D ctr = projection.getCenter();
-    Projection newProj =
-        nodusMapPanel
-            .getMapBean()
-            .getProjectionFactory()
-            .makeProjection(
-                projectionName,
-                ctr,
-                projection.getScale(),
-                projection.getWidth(),
-                projection.getHeight());
-    nodusMapPanel.getMapBean().setProjection(newProj);
-
-    // Restore the saved view
-    int rgb = this.getLocalProperty(NodusC.PROP_MAP_BACKGROUNDCOLOR, Integer.MAX_VALUE);
-
-    if (rgb != Integer.MAX_VALUE) {
-      nodusMapPanel.getMapBean().setBckgrnd(new Color(rgb));
-    }
-
-    float scale = this.getLocalProperty(NodusC.PROP_MAP_SCALE, Float.MAX_VALUE);
-    double latitude = this.getLocalProperty(NodusC.PROP_MAP_LATITUDE, Double.MAX_VALUE);
-    double longitude = this.getLocalProperty(NodusC.PROP_MAP_LONGITUDE, Double.MAX_VALUE);
-    LatLonPoint.Double llp = new LatLonPoint.Double(latitude, longitude);
-
-    // All the values must have been found in properties to restore view
-    if (scale + latitude + longitude < Double.MAX_VALUE) {
-      // Prepare map
-      nodusMapPanel.getMapBean().setScale(scale);
-      nodusMapPanel.getMapBean().setCenter(llp);
-      nodusMapPanel.getMapBean().validate();
-    }
-
-    // Reset the projection stack
-    nodusMapPanel.getProjectionStack().clearStacks(true, true);
-    nodusMapPanel.getToolPanel().setVisible(true);
-
-    // Display the build-in political boundaries
-    nodusMapPanel.displayPoliticalBoundaries(
-        getLocalProperty(NodusC.PROP_ADD_POLITICAL_BOUNDARIES, true),
-        getLocalProperty(NodusC.PROP_DISPLAY_POLITICAL_BOUNDARIES, true));
-
-    // Layer that represents the highlighted area to use during assignments
-    boolean displayHighlightedArea = getLocalProperty(NodusC.PROP_ADD_HIGHLIGHTED_AREA, false);
-    boolean enableHighlightedArea = getLocalProperty(NodusC.PROP_DISPLAY_HIGHLIGHTED_AREA, false);
-    getNodusMapPanel().displayHighlightedAreaLayer(displayHighlightedArea, enableHighlightedArea);
+    if (nodusMapPanel != null) {
+      String projectionName =
+          this.getLocalProperty(NodusC.PROP_PROJECTION, "com.bbn.openmap.proj.Mercator");
+      Projection projection = nodusMapPanel.getMapBean().getProjection();
+      Point2D ctr = projection.getCenter();
+      Projection newProj =
+          nodusMapPanel
+              .getMapBean()
+              .getProjectionFactory()
+              .makeProjection(
+                  projectionName,
+                  ctr,
+                  projection.getScale(),
+                  projection.getWidth(),
+                  projection.getHeight());
+      nodusMapPanel.getMapBean().setProjection(newProj);
+
+      // Restore the saved view
+      int rgb = this.getLocalProperty(NodusC.PROP_MAP_BACKGROUNDCOLOR, Integer.MAX_VALUE);
+
+      if (rgb != Integer.MAX_VALUE) {
+        nodusMapPanel.getMapBean().setBckgrnd(new Color(rgb));
+      }
+
+      float scale = this.getLocalProperty(NodusC.PROP_MAP_SCALE, Float.MAX_VALUE);
+      double latitude = this.getLocalProperty(NodusC.PROP_MAP_LATITUDE, Double.MAX_VALUE);
+      double longitude = this.getLocalProperty(NodusC.PROP_MAP_LONGITUDE, Double.MAX_VALUE);
+      LatLonPoint.Double llp = new LatLonPoint.Double(latitude, longitude);
+
+      // All the values must have been found in properties to restore view
+      if (scale + latitude + longitude < Double.MAX_VALUE) {
+        // Prepare map
+        nodusMapPanel.getMapBean().setScale(scale);
+        nodusMapPanel.getMapBean().setCenter(llp);
+        nodusMapPanel.getMapBean().validate();
+      }
+
+      // Reset the projection stack
+      nodusMapPanel.getProjectionStack().clearStacks(true, true);
+      nodusMapPanel.getToolPanel().setVisible(true);
+
+      // Display the build-in political boundaries
+      nodusMapPanel.displayPoliticalBoundaries(
+          getLocalProperty(NodusC.PROP_ADD_POLITICAL_BOUNDARIES, true),
+          getLocalProperty(NodusC.PROP_DISPLAY_POLITICAL_BOUNDARIES, true));
+
+      // Layer that represents the highlighted area to use during assignments
+      boolean displayHighlightedArea = getLocalProperty(NodusC.PROP_ADD_HIGHLIGHTED_AREA, false);
+      boolean enableHighlightedArea = getLocalProperty(NodusC.PROP_DISPLAY_HIGHLIGHTED_AREA, false);
+      getNodusMapPanel().displayHighlightedAreaLayer(displayHighlightedArea, enableHighlightedArea);
+    }
 
     // Create a location layer for the location handlers
     labelsLayer = new NodusLocationLayer();
@@ -1703,7 +1817,7 @@ public class NodusProject implements ShapeConstants {
 
       final NodusEsriLayer nep = nodeLayers[n];
       final NodusProject _this = this;
-      Worker.post(
+      post(
           new Job() {
             @Override
             public Object run() {
@@ -1712,14 +1826,17 @@ public class NodusProject implements ShapeConstants {
             }
           });
 
-      // Create a new location handler based on the ESRI layer
-      nodesLocationHandler[n] = new NodusLocationHandler(nodeLayers[n]);
-      nodesLocationHandler[n].setProperties(currentName, localProperties);
-      nodesLocationHandler[n].setLayer(labelsLayer);
-      nodeLayers[n].setLocationHandler(nodesLocationHandler[n]);
-      nodeLayers[n].doPrepare();
+      if (nodusMapPanel != null) {
+        // Create a new location handler based on the ESRI layer
+        nodesLocationHandler[n] = new NodusLocationHandler(nodeLayers[n]);
+        nodesLocationHandler[n].setProperties(currentName, localProperties);
+        nodesLocationHandler[n].setLayer(labelsLayer);
+        nodeLayers[n].setLocationHandler(nodesLocationHandler[n]);
 
-      nodusMapPanel.getLayerHandler().addLayer(nodeLayers[n], layerPosition++);
+        nodeLayers[n].doPrepare();
+
+        nodusMapPanel.getLayerHandler().addLayer(nodeLayers[n], layerPosition++);
+      }
 
       // Set the visibility
       boolean b = this.getLocalProperty(nodeLayers[n].getTableName() + NodusC.PROP_VISIBLE, true);
@@ -1767,7 +1884,7 @@ public class NodusProject implements ShapeConstants {
 
       final NodusEsriLayer nep = linkLayers[n];
       final NodusProject _this = this;
-      Worker.post(
+      post(
           new Job() {
             @Override
             public Object run() {
@@ -1780,14 +1897,17 @@ public class NodusProject implements ShapeConstants {
       boolean b = this.getLocalProperty(linkLayers[n].getTableName() + NodusC.PROP_VISIBLE, true);
       linkLayers[n].setVisible(b);
 
-      // Create a new location handler based on the ESRI layer
-      linksLocationHandler[n] = new NodusLocationHandler(linkLayers[n]);
-      linksLocationHandler[n].setProperties(currentLayerName, localProperties);
-      linksLocationHandler[n].setLayer(labelsLayer);
-      linkLayers[n].setLocationHandler(linksLocationHandler[n]);
-      linkLayers[n].doPrepare();
+      if (nodusMapPanel != null) {
+        // Create a new location handler based on the ESRI layer
+        linksLocationHandler[n] = new NodusLocationHandler(linkLayers[n]);
+        linksLocationHandler[n].setProperties(currentLayerName, localProperties);
+        linksLocationHandler[n].setLayer(labelsLayer);
+        linkLayers[n].setLocationHandler(linksLocationHandler[n]);
+
+        linkLayers[n].doPrepare();
 
-      nodusMapPanel.getLayerHandler().addLayer(linkLayers[n], layerPosition++);
+        nodusMapPanel.getLayerHandler().addLayer(linkLayers[n], layerPosition++);
+      }
       n++;
     }
 
@@ -1798,7 +1918,7 @@ public class NodusProject implements ShapeConstants {
 
     /* Load the numbers of the objects that are in shapefiles in this directory,
      * but not in current project */
-    Worker.post(
+    post(
         new Job() {
           @Override
           public Object run() {
@@ -1807,93 +1927,105 @@ public class NodusProject implements ShapeConstants {
           }
         });
 
-    // Tell the drawing tool to which layers it has to speak with
-    nodusMapPanel.getNodusDrawingTool().setNodusLayers(nodeLayers, linkLayers);
+    // The layers are only displayed when the project is opened in the map panel
+    if (nodusMapPanel != null) {
+      // Tell the drawing tool to which layers it has to speak with
+      nodusMapPanel.getNodusDrawingTool().setNodusLayers(nodeLayers, linkLayers);
+
+      // Add the location handlers
+      if (nodeLayers.length > 0) {
+        labelsLayer.addLocationHandler(nodesLocationHandler, linksLocationHandler);
+        labelsLayer.setDeclutterMatrix(new DeclutterMatrix());
+        boolean b = this.getLocalProperty(labelsLayer.getName() + NodusC.PROP_VISIBLE, true);
+        labelsLayer.setVisible(b);
+        nodusMapPanel.getLayerHandler().addLayer(labelsLayer, layerPosition++);
+        labelsLayer.reloadData();
+        labelsLayer.doPrepare();
+      }
 
-    // Add the location handlers
-    if (nodeLayers.length > 0) {
-      labelsLayer.addLocationHandler(nodesLocationHandler, linksLocationHandler);
-      labelsLayer.setDeclutterMatrix(new DeclutterMatrix());
-      boolean b = this.getLocalProperty(labelsLayer.getName() + NodusC.PROP_VISIBLE, true);
-      labelsLayer.setVisible(b);
-      nodusMapPanel.getLayerHandler().addLayer(labelsLayer, layerPosition++);
-      labelsLayer.reloadData();
-      labelsLayer.doPrepare();
-    }
+      // Create an invisible drawing layer
+      NodusDrawingToolLayer drawingToolLayer = new NodusDrawingToolLayer();
+      Properties p = new Properties();
+      p.setProperty("DrawingLayer.prettyName", "Drawing layer");
+      drawingToolLayer.setProperties("DrawingLayer", p);
+      drawingToolLayer.setDrawingTool(nodusMapPanel.getNodusDrawingTool());
+      nodusMapPanel.getLayerHandler().addLayer(drawingToolLayer);
 
-    // Create an invisible drawing layer
-    NodusDrawingToolLayer drawingToolLayer = new NodusDrawingToolLayer();
-    Properties p = new Properties();
-    p.setProperty("DrawingLayer.prettyName", "Drawing layer");
-    drawingToolLayer.setProperties("DrawingLayer", p);
-    drawingToolLayer.setDrawingTool(nodusMapPanel.getNodusDrawingTool());
-    nodusMapPanel.getLayerHandler().addLayer(drawingToolLayer);
+      nodusMapPanel.getNodusDrawingToolLauncher().findAndInit(drawingToolLayer);
+      nodusMapPanel.getNodusDrawingToolLauncher().setCurrentRequestor(drawingToolLayer.getName());
 
-    nodusMapPanel.getNodusDrawingToolLauncher().findAndInit(drawingToolLayer);
-    nodusMapPanel.getNodusDrawingToolLauncher().setCurrentRequestor(drawingToolLayer.getName());
+      // When all the layers are loaded, an integrity test will be performed
+      // on the database
+      new ShapeIntegrityTester(this);
 
-    // When all the layers are loaded, an integrity test will be performed
-    // on the database
-    new ShapeIntegrityTester(this);
+      // Load additional OpenMap layers if any
+      name = projectProperties.getProperty(NodusC.PROP_OPENMAP_LAYERS, null);
 
-    // Load additional OpenMap layers if any
-    name = projectProperties.getProperty(NodusC.PROP_OPENMAP_LAYERS, null);
+      Properties props = null;
 
-    Properties props = null;
+      if (name != null) {
+        props = new Properties();
 
-    if (name != null) {
-      props = new Properties();
+        try {
+          String fileName =
+              localProperties.getProperty(NodusC.PROP_PROJECT_DOTPATH)
+                  + name
+                  + NodusC.TYPE_OPENMAP;
+          props.load(new FileInputStream(fileName));
+        } catch (IOException ex) {
+          System.out.println(ex.toString());
+        }
 
-      try {
-        String fileName =
-            localProperties.getProperty(NodusC.PROP_PROJECT_DOTPATH) + name + NodusC.TYPE_OPENMAP;
-        props.load(new FileInputStream(fileName));
-      } catch (IOException ex) {
-        System.out.println(ex.toString());
+        addOpenMapLayers(props);
       }
 
-      addOpenMapLayers(props);
-    }
+      // Restore the order of the layers as saved in properties
+      Layer[] layer = nodusMapPanel.getLayerHandler().getLayers();
+      String layerOrder = localProperties.getProperty(NodusC.PROP_MAP_ORDER, "");
 
-    // Restore the order of the layers as saved in properties
-    Layer[] layer = nodusMapPanel.getLayerHandler().getLayers();
-    String layerOrder = localProperties.getProperty(NodusC.PROP_MAP_ORDER, "");
+      st = new StringTokenizer(layerOrder, ",");
+      int position = 0;
+      while (st.hasMoreTokens()) {
+        String currentLayer = st.nextToken();
 
-    st = new StringTokenizer(layerOrder, ",");
-    int position = 0;
-    while (st.hasMoreTokens()) {
-      String currentLayer = st.nextToken();
-
-      for (Layer element : layer) {
-        if (element.getName().equals(currentLayer)) {
-          try {
-            nodusMapPanel.getLayerHandler().moveLayer(element, position);
-            position++;
-          } catch (Exception e) {
-            // Layer list could be corrupted
+        for (Layer element : layer) {
+          if (element.getName().equals(currentLayer)) {
+            try {
+              nodusMapPanel.getLayerHandler().moveLayer(element, position);
+              position++;
+            } catch (Exception e) {
+              // Layer list could be corrupted
+            }
           }
         }
       }
+
+      // Restore the scale rendering threshold
+      nodusMapPanel.setRenderingScaleThreshold(
+          getLocalProperty(NodusC.PROP_RENDERING_SCALE_THRESHOLD, (float) -1));
     }
 
     // Set the default preferences
     setDefaultPreferences();
 
-    // Restore the scale rendering threshold
-    nodusMapPanel.setRenderingScaleThreshold(
-        getLocalProperty(NodusC.PROP_RENDERING_SCALE_THRESHOLD, (float) -1));
-
     // Load the service lines
     serviceEditor = new ServiceEditor(this);
 
-    nodusMapPanel.enableMenus(true);
-    nodusMapPanel.getMenuFile().setEnabled(true);
+    if (nodusMapPanel != null) {
+      nodusMapPanel.enableMenus(true);
+      nodusMapPanel.getMenuFile().setEnabled(true);
 
-    nodusMapPanel.getNodusLayersPanel().enableButtons(true);
-    nodusMapPanel.setBusy(false);
+      nodusMapPanel.getNodusLayersPanel().enableButtons(true);
+      nodusMapPanel.setBusy(false);
+    }
 
     isOpen = true;
 
+    // The initial script of the project works on the map panel
+    if (nodusMapPanel == null) {
+      return;
+    }
+
     // Handle the project's Groovy initial script if exists
     Thread thread =
         new Thread() {
@@ -1989,7 +2121,9 @@ public class NodusProject implements ShapeConstants {
     removeLocalProperty(NodusC.PROP_ASSIGNMENT_QUERY + scenario);
     removeLocalProperty(NodusC.PROP_ASSIGNMENT_DESCRIPTION + scenario);
 
-    nodusMapPanel.updateScenarioComboBox();
+    if (nodusMapPanel != null) {
+      nodusMapPanel.updateScenarioComboBox();
+    }
   }
 
   /**
@@ -2083,7 +2217,9 @@ public class NodusProject implements ShapeConstants {
     // Change current scenario to new one
     setLocalProperty(NodusC.PROP_SCENARIO, newNum);
 
-    getNodusMapPanel().updateScenarioComboBox();
+    if (nodusMapPanel != null) {
+      nodusMapPanel.updateScenarioComboBox();
+    }
   }
 
   /**
@@ -2094,7 +2230,7 @@ public class NodusProject implements ShapeConstants {
    */
   public void rollBack() {
     if (isOpen) {
-      nodusMapPanel.setBusy(true);
+      setBusy(true);
 
       if (nodeLayers != null) {
         for (NodusEsriLayer element : nodeLayers) {
@@ -2109,7 +2245,7 @@ public class NodusProject implements ShapeConstants {
       }
 
       Nodus7.nodusLogger.info("Rollback project");
-      nodusMapPanel.setBusy(false);
+      setBusy(false);
     }
   }
 
@@ -2119,7 +2255,7 @@ public class NodusProject implements ShapeConstants {
    */
   public void saveEsriLayers() {
     if (isOpen) {
-      nodusMapPanel.setBusy(true);
+      setBusy(true);
 
       if (nodeLayers != null) {
         for (NodusEsriLayer element : nodeLayers) {
@@ -2134,7 +2270,7 @@ public class NodusProject implements ShapeConstants {
       }
   
       Nodus7.nodusLogger.info("Save project");
-      nodusMapPanel.setBusy(false);
+      setBusy(false);
     }
   }
 
@@ -22,18 +22,15 @@
 package edu.uclouvain.core.nodus.compute.assign;
 
 import edu.uclouvain.core.nodus.NodusC;
-import edu.uclouvain.core.nodus.NodusMapPanel;
 import edu.uclouvain.core.nodus.compute.assign.workers.AllOrNothingAssignmentWorker;
-import edu.uclouvain.core.nodus.compute.assign.workers.AssignmentWorker;
-import edu.uclouvain.core.nodus.compute.assign.workers.AssignmentWorkerParameters;
-import edu.uclouvain.core.nodus.compute.exclusions.ExclusionReader;
 import edu.uclouvain.core.nodus.compute.od.ODReader;
 import edu.uclouvain.core.nodus.compute.virtual.PathWriter;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNetworkCache;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetworkWriter;
 import edu.uclouvain.core.nodus.tools.console.NodusConsole;
 import edu.uclouvain.core.nodus.utils.GarbageCollectionRunner;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 
 /**
  * The simple All Or Nothing assignment procedure.
@@ -69,20 +66,13 @@ public class AllOrNothingAssignment extends Assignment {
 
     // Generate a virtual network
     virtualNet = new VirtualNetwork(assignmentParameters);
+    virtualNet.setExecutor(executor);
 
-    if (!virtualNet.generate()) {
+    // Reuse the virtual nodes and links of the previous assignment if the network didn't change
+    if (!VirtualNetworkCache.generate(virtualNet)) {
       return false;
     }
 
-    // Read the exclusions
-    ExclusionReader er = new ExclusionReader(virtualNet);
-
-    if (er.hasExclusions()) {
-      if (!er.loadExclusions()) {
-        return false;
-      }
-    }
-
     // Read the O-D matrixes
     ODReader odr = new ODReader(assignmentParameters);
 
@@ -108,8 +98,8 @@ public class AllOrNothingAssignment extends Assignment {
     }
 
     // Force Garbage collector?
-    NodusMapPanel nodusMapPanel = nodusProject.getNodusMapPanel();
-    int gcInterval = nodusMapPanel.getGarbageCollectorInterval();
+    ProgressListener progressListener = nodusProject.getProgressListener();
+    int gcInterval = nodusProject.getGarbageCollectorInterval();
     GarbageCollectionRunner gcr = new GarbageCollectionRunner(gcInterval);
 
     // Assign per class
@@ -127,57 +117,17 @@ public class AllOrNothingAssignment extends Assignment {
         return false;
       }
 
-      // Create the work queue
-      WorkQueue queue = new WorkQueue();
-
-      // Create a set of worker threads
-      assignmentWorkers = new AssignmentWorker[threads];
-      for (int i = 0; i < assignmentWorkers.length; i++) {
-        assignmentWorkers[i] = new AllOrNothingAssignmentWorker(queue);
-        assignmentWorkers[i].start();
-      }
-
-      // Add the jobs to the queue
-      for (byte groupIndex = 0; groupIndex < (byte) virtualNet.getGroups().length; groupIndex++) {
-        AssignmentWorkerParameters awp = new AssignmentWorkerParameters(this, groupIndex, odClass);
-        queue.addWork(awp);
-      }
-
-      // Add special end-of-stream markers to terminate the workers
-      for (int i = 0; i < assignmentWorkers.length; i++) {
-        queue.addWork(WorkQueue.NO_MORE_WORK);
-      }
-
       // Initialize a progress monitor with the number of OD matrix rows to assign
-      int lengthOfTask = 0;
-      for (byte groupIndex = 0; groupIndex < (byte) virtualNet.getGroups().length; groupIndex++) {
-        for (int nodeIndex = 0; nodeIndex < virtualNet.getVirtualNodeLists().length; nodeIndex++) {
-          // Get the demand associated to this node, group and class
-          if (virtualNet.getVirtualNodeLists()[nodeIndex].hasDemandForGroup(
-              virtualNet.getGroups()[groupIndex], odClass)) {
-            lengthOfTask++;
-          }
-        }
-      }
+      progressListener.startProgress(getNbOriginsToAssign(odClass));
 
-      nodusMapPanel.startProgress(lengthOfTask);
+      // Assign all the groups, the origins of each group being split in chunks
+      boolean success =
+          runWorkers(odClass, 0, 0.0, true, AllOrNothingAssignmentWorker::new);
+      progressListener.stopProgress();
 
-      // Wait until all the works are completed
-      for (int i = 0; i < threads; i++) {
-        try {
-          assignmentWorkers[i].join();
-        } catch (InterruptedException ex) {
-          ex.printStackTrace();
-        }
-      }
-
-      nodusMapPanel.stopProgress();
-
-      // Test if everything was OK
-      for (int i = 0; i < threads; i++) {
-        if (assignmentWorkers[i].isCancelled()) {
-          return false;
-        }
+      if (!success) {
+        pathWriter.close();
+        return false;
       }
     } // Next odClass
 
@@ -189,11 +139,8 @@ public class AllOrNothingAssignment extends Assignment {
     // long end = System.currentTimeMillis();
     // System.out.println("Duration : " + ((end - start) / 1000));
 
-    // Transform the flows in vehicles
-    virtualNet.flowsToVehicles();
-
-    // Now save virtual network
+    // Transform the flows in vehicles while the virtual network is saved
     VirtualNetworkWriter vnw = new VirtualNetworkWriter(assignmentParameters, virtualNet);
-    return vnw.save();
+    return vnw.saveWithVehicles();
   }
 }
@@ -28,11 +28,18 @@ import edu.uclouvain.core.nodus.NodusC;
 import edu.uclouvain.core.nodus.NodusMapPanel;
 import edu.uclouvain.core.nodus.NodusProject;
 import edu.uclouvain.core.nodus.compute.assign.modalsplit.ModalSplitMethod;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.ShortestPathTrees;
 import edu.uclouvain.core.nodus.compute.assign.workers.AssignmentWorker;
+import edu.uclouvain.core.nodus.compute.assign.workers.AssignmentWorkerParameters;
+import edu.uclouvain.core.nodus.compute.costs.TransitTimesParser;
 import edu.uclouvain.core.nodus.compute.virtual.PathWriter;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNode;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNodeList;
 import edu.uclouvain.core.nodus.tools.console.NodusConsole;
 import edu.uclouvain.core.nodus.utils.ModalSplitMethodsLoader;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 import edu.uclouvain.core.nodus.utils.SoundPlayer;
 
 import groovy.lang.GroovyShell;
@@ -40,8 +47,14 @@ import groovy.lang.GroovyShell;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import javax.swing.JOptionPane;
 
@@ -60,6 +73,9 @@ public abstract class Assignment implements Runnable {
   /** The All-Or-Nothing time dependent assignment type. */
   public static final int AON_TIME_DEPENDENT = 7;
 
+  /** The bush based equilibrium assignment type. */
+  public static final int BUSH_BASED = 9;
+
   /** The Dynamic time dependent assignment type. */
   public static final int DYNAMIC_TIME_DEPENDENT = 8;
 
@@ -81,12 +97,21 @@ public abstract class Assignment implements Runnable {
   /** The Method of Successive Averages equilibrium assignment type. */
   public static final int MSA = 1;
 
+  /**
+   * Number of jobs per thread the origins are split in, so that the threads that are done with
+   * their jobs can take over some work from the others.
+   */
+  private static final int CHUNKS_PER_THREAD = 4;
+
   /** I18N mechanism. */
   static I18n i18n = Environment.getI18n();
 
   /** Contains the choices made into the assignment dialog box. */
   AssignmentParameters assignmentParameters;
 
+  /** Runs the parallel tasks of the assignment. Created for each run. */
+  AssignmentExecutor executor;
+
   /** Used to open a console to log lost paths. */
   boolean isFirstLostPath = true;
 
@@ -96,11 +121,45 @@ public abstract class Assignment implements Runnable {
   /** Used the save the detailed paths if asked. */
   PathWriter pathWriter;
 
+  /** Index of the path of the first OD cell at the current iteration. */
+  private int pathIndexOffset = 1;
+
+  /** Iteration the path index offset was computed for, or -1 before the first one. */
+  private int pathIndexIteration = -1;
+
+  /** Listeners notified at the end of each iteration. */
+  private List<IterationListener> iterationListeners = new CopyOnWriteArrayList<>();
+
+  /** Metrics measured at the end of each iteration. */
+  private List<IterationMetrics> iterationMetrics = new ArrayList<>();
+
+  /** Durations of the phases (see AssignmentTimings) at the end of the previous iteration. */
+  private long[] lastDurations = new long[AssignmentTimings.RESULTS + 1];
+
+  /** Nodes reached by the warm started shortest path trees during the current iteration. */
+  private long nbReachedNodes = 0;
+
+  /** Nodes settled again by the warm started shortest path trees during the current iteration. */
+  private long nbSettledNodes = 0;
+
+  /** Shortest path trees kept between the iterations, per OD class and group, if warm started. */
+  private ShortestPathTrees[][] shortestPathTrees = null;
+
+  /** Time at which the last run of this assignment started. */
+  private long startTime = System.currentTimeMillis();
+
+  /** True if the last run of this assignment succeeded. */
+  private boolean successful = false;
+
+  /** Memory that can still be used to keep shortest path trees, in bytes. */
+  private AtomicLong treesMemory = null;
+
+  /** Transit durations for each group, shared by the workers. */
+  private TransitTimesParser[] transitTimesParsers = null;
+
   /** Virtual network that will be generated before the assignment. */
   VirtualNetwork virtualNet;
 
-  AssignmentWorker[] assignmentWorkers = null;
-
   /**
    * Initializes the assignment procedure. The effective computation starts calling the run()
    * methode.
@@ -112,6 +171,51 @@ public abstract class Assignment implements Runnable {
     assignmentParameters = ap;
   }
 
+  /**
+   * Adds a listener notified at the end of each iteration.
+   *
+   * @param listener The listener.
+   */
+  public void addIterationListener(IterationListener listener) {
+    iterationListeners.add(listener);
+  }
+
+  /**
+   * Creates the assignment that corresponds to an assignment type.
+   *
+   * @param method The assignment type (ALL_OR_NOTHING, MSA, ...).
+   * @param ap The assignment parameters.
+   * @return The assignment, or null if the type is unknown.
+   */
+  public static Assignment newAssignment(int method, AssignmentParameters ap) {
+    switch (method) {
+      case ALL_OR_NOTHING:
+        return new AllOrNothingAssignment(ap);
+      case MSA:
+        return new MSAAssignment(ap);
+      case INCREMENTAL:
+        return new IncrementalAssignment(ap);
+      case FRANK_WOLFE:
+        return new FrankWolfeAssignment(ap);
+      case INCREMENTAL_FRANK_WOLFE:
+        return new IncFrankWolfeAssignment(ap);
+      case FAST_MULTI_FLOW:
+        return new FastMFAssignment(ap);
+      case EXACT_MULTI_FLOW:
+        return new ExactMFAssignment(ap);
+      case AON_TIME_DEPENDENT:
+        ap.setTimeDependent(true);
+        return new StaticAoNTimeDependentAssignment(ap);
+      case DYNAMIC_TIME_DEPENDENT:
+        ap.setTimeDependent(true);
+        return new DynamicTimeDependentAssignment(ap);
+      case BUSH_BASED:
+        return new BushAssignment(ap);
+      default:
+        return null;
+    }
+  }
+
   /**
    * Must be implemented for each particular assignment method.
    *
@@ -144,10 +248,42 @@ public abstract class Assignment implements Runnable {
     return nodusProject;
   }
 
+  /**
+   * Returns the index of the path of the first OD cell at the current iteration. The path of a
+   * cell is numbered by adding the index of the cell to this offset, so that the indexes do not
+   * depend on the thread that assigned the cell.
+   *
+   * @return The offset of the path indexes.
+   */
+  public int getPathIndexOffset() {
+    return pathIndexOffset;
+  }
+
   public PathWriter getPathWriter() {
     return pathWriter;
   }
 
+  /**
+   * Returns the loading, unloading and transhipment durations for a group. They are read once from
+   * the cost functions and shared by all the workers.
+   *
+   * @param groupIndex The index of the group.
+   * @return TransitTimesParser
+   */
+  public synchronized TransitTimesParser getTransitTimesParser(byte groupIndex) {
+    if (transitTimesParsers == null) {
+      transitTimesParsers = new TransitTimesParser[virtualNet.getNbGroups()];
+    }
+    if (transitTimesParsers[groupIndex] == null) {
+      transitTimesParsers[groupIndex] =
+          new TransitTimesParser(
+              assignmentParameters.getCostFunctions(),
+              assignmentParameters.getScenario(),
+              virtualNet.getGroups()[groupIndex]);
+    }
+    return transitTimesParsers[groupIndex];
+  }
+
   /**
    * Returns the Virtual Network.
    *
@@ -158,24 +294,405 @@ public abstract class Assignment implements Runnable {
   }
 
   /**
-   * Returns the assignment workers associated to this assignment.
+   * Returns the executor the parallel tasks of the last run of this assignment ran on, or null if
+   * the assignment was never run.
    *
-   * @return AssignmentWorker[]
+   * @return AssignmentExecutor
    */
-  public AssignmentWorker[] getAssignmentWorkers() {
-    return assignmentWorkers;
+  public AssignmentExecutor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Returns the shortest path trees kept between the iterations for an OD class and a group, or
+   * null if the assignment is not warm started. At most a quarter of the maximum heap size is used
+   * to keep trees.
+   *
+   * @param odClass The OD class.
+   * @param groupIndex The index of the group.
+   * @return The trees or null.
+   */
+  public synchronized ShortestPathTrees getShortestPathTrees(byte odClass, byte groupIndex) {
+    if (!assignmentParameters.isWarmStart()) {
+      return null;
+    }
+    if (shortestPathTrees == null) {
+      shortestPathTrees = new ShortestPathTrees[virtualNet.getNbODClasses()][];
+      treesMemory = new AtomicLong(Runtime.getRuntime().maxMemory() / 4);
+    }
+    if (shortestPathTrees[odClass] == null) {
+      shortestPathTrees[odClass] = new ShortestPathTrees[virtualNet.getNbGroups()];
+    }
+    if (shortestPathTrees[odClass][groupIndex] == null) {
+      shortestPathTrees[odClass][groupIndex] =
+          new ShortestPathTrees(assignmentParameters.getWarmStartThreshold(), treesMemory);
+    }
+    return shortestPathTrees[odClass][groupIndex];
+  }
+
+  /**
+   * Returns the metrics measured at the end of each iteration of the last run of this assignment.
+   *
+   * @return The metrics, in the order of the iterations.
+   */
+  public synchronized List<IterationMetrics> getIterationMetrics() {
+    return new ArrayList<>(iterationMetrics);
+  }
+
+  /**
+   * Returns the relative gaps measured at each iteration of the equilibrium assignment, if the
+   * method computes them. The relative gap is the difference between the total cost of the flows
+   * and the total cost of the demand assigned on the shortest paths, divided by the first one.
+   *
+   * @return The relative gaps, in the order of the iterations.
+   */
+  public synchronized double[] getRelativeGaps() {
+    return iterationMetrics.stream()
+        .mapToDouble(IterationMetrics::getRelativeGap)
+        .filter(gap -> !Double.isNaN(gap))
+        .toArray();
+  }
+
+  /**
+   * Returns the time at which each relative gap was measured.
+   *
+   * @return The elapsed times since the start of the assignment, in milliseconds.
+   */
+  public synchronized long[] getRelativeGapTimes() {
+    return iterationMetrics.stream()
+        .filter(metrics -> !Double.isNaN(metrics.getRelativeGap()))
+        .mapToLong(IterationMetrics::getElapsedTime)
+        .toArray();
+  }
+
+  /**
+   * Returns true if the assignment and its post-assignment script, if any, succeeded.
+   *
+   * @return True on success.
+   */
+  public boolean isSuccessful() {
+    return successful;
+  }
+
+  /**
+   * Returns the number of origins that have a demand to assign for an OD class, summed over the
+   * groups. Used to initialize the progress bar.
+   *
+   * @param odClass The OD class.
+   * @return The number of origins.
+   */
+  int getNbOriginsToAssign(byte odClass) {
+    VirtualNodeList[] vnl = virtualNet.getVirtualNodeLists();
+    byte[] groups = virtualNet.getGroups();
+    int nbOrigins = 0;
+    for (byte groupIndex = 0; groupIndex < (byte) groups.length; groupIndex++) {
+      for (int nodeIndex = 0; nodeIndex < vnl.length; nodeIndex++) {
+        if (vnl[nodeIndex].hasDemandForGroup(groups[groupIndex], odClass)) {
+          nbOrigins++;
+        }
+      }
+    }
+    return nbOrigins;
+  }
+
+  /**
+   * Assigns the demand of all the groups for an OD class, running the jobs on the executor of this
+   * assignment.
+   *
+   * @param odClass The OD class to assign.
+   * @param iteration The iteration of the equilibrium assignment algorithm.
+   * @param loadFactor The incremental load factor (Incremental and IncFrankWolfe algorithms only).
+   * @param splitOrigins If true, the origins of each group are split in small chunks, assigned by
+   *     several workers in parallel. Only possible for the workers that accumulate their flows per
+   *     job, and not for those in which an origin depends on the previous ones.
+   * @param factory Creates the workers.
+   * @return True on success.
+   */
+  boolean runWorkers(
+      byte odClass,
+      int iteration,
+      double loadFactor,
+      boolean splitOrigins,
+      Supplier<AssignmentWorker> factory) {
+    VirtualNodeList[] vnl = virtualNet.getVirtualNodeLists();
+
+    // Each iteration numbers the paths after the OD cells, which belong to a single OD class
+    if (pathIndexIteration != iteration) {
+      if (pathIndexIteration != -1 && virtualNet.getODDemand() != null) {
+        pathIndexOffset += virtualNet.getODDemand().getNbCells();
+      }
+      pathIndexIteration = iteration;
+    }
+
+    byte[] groups = virtualNet.getGroups();
+    List<AssignmentWorkerParameters> jobs = new ArrayList<>();
+
+    int chunkSize = Integer.MAX_VALUE;
+    int nbChunks = executor.getParallelism() * CHUNKS_PER_THREAD;
+    if (splitOrigins && executor.getParallelism() > 1) {
+      int nbOrigins = getNbOriginsToAssign(odClass);
+      chunkSize = Math.max(1, (nbOrigins + nbChunks - 1) / nbChunks);
+    }
+
+    for (byte groupIndex = 0; groupIndex < (byte) groups.length; groupIndex++) {
+      if (chunkSize == Integer.MAX_VALUE) {
+        jobs.add(
+            new AssignmentWorkerParameters(this, groupIndex, odClass, iteration, loadFactor));
+        continue;
+      }
+
+      int firstNodeIndex = 0;
+      int n = 0;
+      for (int nodeIndex = 0; nodeIndex < vnl.length; nodeIndex++) {
+        if (vnl[nodeIndex].hasDemandForGroup(groups[groupIndex], odClass)) {
+          n++;
+          if (n == chunkSize) {
+            jobs.add(
+                new AssignmentWorkerParameters(
+                    this,
+                    groupIndex,
+                    odClass,
+                    iteration,
+                    loadFactor,
+                    firstNodeIndex,
+                    nodeIndex + 1));
+            firstNodeIndex = nodeIndex + 1;
+            n = 0;
+          }
+        }
+      }
+      if (n > 0) {
+        jobs.add(
+            new AssignmentWorkerParameters(
+                this, groupIndex, odClass, iteration, loadFactor, firstNodeIndex, vnl.length));
+      }
+    }
+
+    long start = System.nanoTime();
+    boolean success = AssignmentWorker.runJobs(executor, jobs, factory);
+    long duration = System.nanoTime() - start;
+    int nbOrigins = getNbOriginsToAssign(odClass);
+    assignmentParameters.getTimings().add(AssignmentTimings.ASSIGNMENT, duration, nbOrigins);
+
+    if (success) {
+      countResettledNodes(odClass);
+    }
+    return success;
+  }
+
+  /**
+   * Removes a listener added by addIterationListener().
+   *
+   * @param listener The listener.
+   */
+  public void removeIterationListener(IterationListener listener) {
+    iterationListeners.remove(listener);
+  }
+
+  /**
+   * Keeps the metrics of an iteration, prints its convergence indicators and notifies the
+   * listeners. The time spent in each phase is measured since the previous call.
+   *
+   * @param iteration The iteration.
+   * @param relativeGap The relative gap of the flows obtained at the previous iteration, or NaN.
+   * @param objective The total cost of these flows, or NaN.
+   * @param lambda The descent step of the iteration, or NaN.
+   * @param flowChange The relative change of the flows during the iteration, or NaN.
+   */
+  void recordIteration(
+      int iteration, double relativeGap, double objective, double lambda, double flowChange) {
+    AssignmentTimings timings = assignmentParameters.getTimings();
+    long[] durations = new long[lastDurations.length];
+    for (int phase = 0; phase < durations.length; phase++) {
+      long duration = timings.getDuration(phase);
+      durations[phase] = duration - lastDurations[phase];
+      lastDurations[phase] = duration;
+    }
+    Runtime runtime = Runtime.getRuntime();
+
+    double resettledShare = Double.NaN;
+    synchronized (this) {
+      if (nbReachedNodes > 0) {
+        resettledShare = (double) nbSettledNodes / nbReachedNodes;
+      }
+      nbSettledNodes = 0;
+      nbReachedNodes = 0;
+    }
+
+    IterationMetrics metrics =
+        new IterationMetrics(
+            iteration,
+            relativeGap,
+            objective,
+            lambda,
+            flowChange,
+            resettledShare,
+            durations[AssignmentTimings.COSTS],
+            durations[AssignmentTimings.ASSIGNMENT],
+            durations[AssignmentTimings.PATHS],
+            runtime.totalMemory() - runtime.freeMemory(),
+            System.currentTimeMillis() - startTime);
+    synchronized (this) {
+      iterationMetrics.add(metrics);
+    }
+
+    System.out.println(
+        MessageFormat.format(
+            i18n.get(
+                Assignment.class,
+                "Iteration_metrics",
+                "Iteration {0}: relative gap {1}, lambda {2}, flow change {3}"),
+            iteration,
+            formatMetric(relativeGap),
+            formatMetric(lambda),
+            formatMetric(flowChange)));
+
+    for (IterationListener listener : iterationListeners) {
+      listener.iterationDone(this, metrics);
+    }
+  }
+
+  /** Formats a convergence indicator for the console, or returns "-" for NaN. */
+  private static String formatMetric(double value) {
+    if (Double.isNaN(value)) {
+      return "-";
+    }
+    return String.format("%.3e", value);
+  }
+
+  /**
+   * Returns the total cost of the current flows and the total cost of the auxiliary flows, using
+   * the costs of the virtual links. When the auxiliary flows are the demand assigned on the
+   * shortest paths for these costs, this gives the relative gap of the current flows. With several
+   * OD classes, the costs of the last class are used.
+   *
+   * @return The total costs of the current and of the auxiliary flows.
+   */
+  double[] getFlowsCosts() {
+    double currentCost = 0.0;
+    double auxiliaryCost = 0.0;
+    byte nbGroups = (byte) virtualNet.getGroups().length;
+
+    for (VirtualLink vl : virtualNet.getVirtualLinks()) {
+      if (vl == null) {
+        continue;
+      }
+      for (byte k = 0; k < nbGroups; k++) {
+        double weight = vl.getWeight(k);
+        if (weight > 0) {
+          currentCost += vl.getCurrentFlow(k) * weight;
+          auxiliaryCost += vl.getAuxiliaryFlow(k) * weight;
+        }
+      }
+    }
+    return new double[] {currentCost, auxiliaryCost};
+  }
+
+  /**
+   * Returns the relative change of the current flows since the previous iteration. The changes and
+   * the flows are cumulated over the virtual node lists, and the largest ratio met while doing so
+   * is returned.
+   *
+   * @return The relative change of the flows.
+   */
+  double getFlowChange() {
+    double numerator = 0.0;
+    double denominator = 0.0;
+    double maxGap = 0.0;
+    byte[] groups = virtualNet.getGroups();
+
+    for (VirtualNodeList element : virtualNet.getVirtualNodeLists()) {
+      // Iterate through all the virtual nodes generated for this real node
+      Iterator<VirtualNode> nodeLit = element.getVirtualNodeList().iterator();
+
+      while (nodeLit.hasNext()) {
+        VirtualNode vn = nodeLit.next();
+
+        // Iterate through all the virtual links that start from this virtual node
+        Iterator<VirtualLink> linkLit = vn.getVirtualLinkList().iterator();
+
+        while (linkLit.hasNext()) {
+          VirtualLink vl = linkLit.next();
+          for (byte k = 0; k < (byte) groups.length; k++) {
+            numerator += Math.abs(vl.getCurrentFlow(k) - vl.getPreviousFlow(k));
+            denominator += vl.getCurrentFlow(k);
+          }
+        }
+
+        double currentGap = numerator / denominator;
+        if (currentGap > maxGap) {
+          maxGap = currentGap;
+        }
+      }
+    }
+    return maxGap;
+  }
+
+  /**
+   * Returns the relative gap of the current flows, given their total cost and the total cost of
+   * the demand assigned on the shortest paths.
+   *
+   * @param costs The total costs returned by getFlowsCosts().
+   * @return The relative gap.
+   */
+  static double getRelativeGap(double[] costs) {
+    if (costs[0] == 0.0) {
+      return 0.0;
+    }
+    return (costs[0] - costs[1]) / costs[0];
+  }
+
+  /**
+   * Adds the nodes of the warm started shortest path trees that were settled again during an
+   * iteration to the counters reported by recordIteration(), and resets the statistics of the
+   * trees.
+   *
+   * @param odClass The OD class that was assigned.
+   */
+  private synchronized void countResettledNodes(byte odClass) {
+    if (shortestPathTrees == null || shortestPathTrees[odClass] == null) {
+      return;
+    }
+
+    for (ShortestPathTrees trees : shortestPathTrees[odClass]) {
+      if (trees != null) {
+        nbSettledNodes += trees.getNbSettledNodes();
+        nbReachedNodes += trees.getNbReachedNodes();
+        trees.resetStatistics();
+      }
+    }
   }
 
   /** Main routine that calls the actual assignment algorithm in the derived classes. */
   @Override
   public void run() {
     boolean success = false;
+    assignmentParameters.getTimings().reset();
+    synchronized (this) {
+      iterationMetrics.clear();
+      startTime = System.currentTimeMillis();
+      nbSettledNodes = 0;
+      nbReachedNodes = 0;
+    }
+    lastDurations = new long[lastDurations.length];
+    pathIndexOffset = 1;
+    pathIndexIteration = -1;
+    executor = new AssignmentExecutor(assignmentParameters.getThreads());
+
+    // The metrics of the iterations are saved in the project directory
+    IterationLog iterationLog =
+        new IterationLog(nodusProject, assignmentParameters.getScenario());
+    addIterationListener(iterationLog);
 
+    // The map panel is null when the assignment is run without user interface
     NodusMapPanel nodusMapPanel = nodusProject.getNodusMapPanel();
-    nodusMapPanel.getAssignmentMenuItem().setEnabled(false);
+    ProgressListener progressListener = nodusProject.getProgressListener();
+    if (nodusMapPanel != null) {
+      nodusMapPanel.getAssignmentMenuItem().setEnabled(false);
 
-    // Update the scenario combo of the main window
-    nodusMapPanel.updateScenarioComboBox();
+      // Update the scenario combo of the main window
+      nodusMapPanel.updateScenarioComboBox();
+    }
 
     try {
       success = assign();
@@ -184,33 +701,45 @@ public abstract class Assignment implements Runnable {
       virtualNet = null;
       System.gc();
 
-      JOptionPane.showMessageDialog(
-          nodusProject.getNodusMapPanel(),
+      progressListener.showMessage(
           i18n.get(
               Assignment.class,
               "Out_of_memory",
               "Out of memory. Increase JVM Heap size in launcher script"),
-          NodusC.APPNAME,
           JOptionPane.ERROR_MESSAGE);
 
-      nodusProject.getNodusMapPanel().closeAndSaveState();
+      if (nodusMapPanel != null) {
+        nodusMapPanel.closeAndSaveState();
+      }
       System.exit(0);
+    } catch (RuntimeException e) {
+      // Unexpected failure of the assignment or of one of its parallel tasks
+      progressListener.stopProgress();
+      e.printStackTrace();
+      progressListener.showMessage(e.toString(), JOptionPane.ERROR_MESSAGE);
+    } finally {
+      executor.shutdown();
+      removeIterationListener(iterationLog);
+      iterationLog.close();
     }
 
     // Run the post assignment script, if any
     if (success) {
       success = runPostAssignmentScript();
     }
+    successful = success;
+
+    if (nodusMapPanel != null) {
+      // Play a sound
+      if (success) {
+        nodusMapPanel.getSoundPlayer().play(SoundPlayer.SOUND_OK);
+      } else {
+        nodusMapPanel.getSoundPlayer().play(SoundPlayer.SOUND_FAILURE);
+      }
+      nodusMapPanel.getAssignmentMenuItem().setEnabled(true);
 
-    // Play a sound
-    if (success) {
-      nodusMapPanel.getSoundPlayer().play(SoundPlayer.SOUND_OK);
-    } else {
-      nodusMapPanel.getSoundPlayer().play(SoundPlayer.SOUND_FAILURE);
+      nodusMapPanel.updateScenarioComboBox();
     }
-    nodusMapPanel.getAssignmentMenuItem().setEnabled(true);
-
-    nodusMapPanel.updateScenarioComboBox();
   }
 
   /**
@@ -227,14 +756,16 @@ public abstract class Assignment implements Runnable {
       return false;
     }
 
+    // The map panel is null when the assignment is run without user interface
     NodusMapPanel nodusMapPanel = nodusProject.getNodusMapPanel();
     GroovyShell shell = new GroovyShell();
     shell.setVariable("nodusMapPanel", nodusMapPanel);
     shell.setVariable("nodusMainFrame", nodusMapPanel);
+    shell.setVariable("nodusProject", nodusProject);
 
     // Get absolute script file name
     String fileName =
-        nodusMapPanel.getNodusProject().getLocalProperty(NodusC.PROP_PROJECT_DOTPATH)
+        nodusProject.getLocalProperty(NodusC.PROP_PROJECT_DOTPATH)
             + assignmentParameters.getPostAssignmentScript();
 
     // Add extension if not given
@@ -248,12 +779,10 @@ public abstract class Assignment implements Runnable {
     try {
       shell.evaluate(new File(fileName));
     } catch (CompilationFailedException e) {
-      JOptionPane.showMessageDialog(
-          null, e.getMessage(), NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+      nodusProject.getProgressListener().showMessage(e.getMessage(), JOptionPane.ERROR_MESSAGE);
       return false;
     } catch (IOException e) {
-      JOptionPane.showMessageDialog(
-          null, e.getMessage(), NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+      nodusProject.getProgressListener().showMessage(e.getMessage(), JOptionPane.ERROR_MESSAGE);
       return false;
     }
 
@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the parallel tasks of an assignment (cost computations, assignment jobs, line searches...)
+ * on a work-stealing pool that is created once for the whole assignment, instead of starting new
+ * threads for each iteration, OD class or time slice. The tasks of a batch can be cancelled
+ * cooperatively, and the time spent in each task is recorded.
+ *
+ * @author Bart Jourquin
+ */
+public class AssignmentExecutor {
+
+  private volatile boolean canceled = false;
+
+  private AtomicLong longestTask = new AtomicLong();
+
+  private AtomicLong nbTasks = new AtomicLong();
+
+  private ForkJoinPool pool;
+
+  private AtomicLong tasksDuration = new AtomicLong();
+
+  /**
+   * Creates an executor.
+   *
+   * @param threads The number of threads that run the tasks.
+   */
+  public AssignmentExecutor(int threads) {
+    pool = new ForkJoinPool(Math.max(1, threads));
+  }
+
+  /** Asks the running tasks to stop. The tasks of the batch that did not start yet are skipped. */
+  public void cancel() {
+    canceled = true;
+  }
+
+  /**
+   * Returns the time spent in the longest task, in milliseconds.
+   *
+   * @return The duration of the longest task.
+   */
+  public long getLongestTask() {
+    return longestTask.get() / 1000000;
+  }
+
+  /**
+   * Returns the number of tasks run by this executor.
+   *
+   * @return The number of tasks.
+   */
+  public long getNbTasks() {
+    return nbTasks.get();
+  }
+
+  /**
+   * Returns the number of threads that run the tasks.
+   *
+   * @return The number of threads.
+   */
+  public int getParallelism() {
+    return pool.getParallelism();
+  }
+
+  /**
+   * Returns the total time spent in the tasks, in milliseconds. Compared to the elapsed time, this
+   * tells how busy the threads were.
+   *
+   * @return The cumulated duration of the tasks.
+   */
+  public long getTasksDuration() {
+    return tasksDuration.get() / 1000000;
+  }
+
+  /**
+   * Runs a batch of tasks and waits until they are all completed. An error or a runtime exception
+   * thrown by a task is thrown again in the calling thread, and a checked exception is thrown
+   * wrapped in a CompletionException. If the calling thread is interrupted, the batch is cancelled.
+   *
+   * @param <T> The type of the results.
+   * @param tasks The tasks to run.
+   * @return The results of the tasks, in the same order as the tasks, or null if cancelled.
+   */
+  public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+    List<Callable<T>> timedTasks = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks) {
+      timedTasks.add(
+          () -> {
+            long start = System.nanoTime();
+            try {
+              return task.call();
+            } finally {
+              long duration = System.nanoTime() - start;
+              nbTasks.incrementAndGet();
+              tasksDuration.addAndGet(duration);
+              longestTask.accumulateAndGet(duration, Math::max);
+            }
+          });
+    }
+
+    List<T> results = new ArrayList<>(tasks.size());
+    try {
+      for (Future<T> future : pool.invokeAll(timedTasks)) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      cancel();
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new CompletionException(cause);
+    }
+    return results;
+  }
+
+  /**
+   * Returns true if the current batch of tasks was cancelled.
+   *
+   * @return True if cancelled.
+   */
+  public boolean isCancelled() {
+    return canceled;
+  }
+
+  /**
+   * Runs a batch of tasks that return false on failure or cancellation. As soon as a task fails,
+   * the batch is cancelled. A task that throws an exception also cancels the batch, and the
+   * exception is thrown again by invokeAll().
+   *
+   * @param tasks The tasks to run.
+   * @return True if all the tasks succeeded.
+   */
+  public boolean run(List<? extends Callable<Boolean>> tasks) {
+    canceled = false;
+
+    List<Callable<Boolean>> cancellableTasks = new ArrayList<>(tasks.size());
+    for (Callable<Boolean> task : tasks) {
+      cancellableTasks.add(
+          () -> {
+            if (canceled) {
+              return false;
+            }
+            try {
+              if (!task.call()) {
+                cancel();
+                return false;
+              }
+            } catch (Exception | Error e) {
+              cancel();
+              throw e;
+            }
+            return true;
+          });
+    }
+
+    List<Boolean> results = invokeAll(cancellableTasks);
+    return results != null && !canceled;
+  }
+
+  /** Stops the threads once the assignment is over. */
+  public void shutdown() {
+    pool.shutdown();
+  }
+}
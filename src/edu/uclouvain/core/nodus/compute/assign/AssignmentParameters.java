@@ -38,6 +38,13 @@ public class AssignmentParameters {
   /** If true, ask before deleting old assignments. */
   private boolean confirmDelete = true;
 
+  /**
+   * If true, the point-to-point shortest paths are computed by a bidirectional search instead of
+   * AStar in the exact multi-flow assignment, and for each OD pair instead of a full tree in the
+   * time dependent assignments.
+   */
+  private boolean bidirectionalSearch = false;
+
   /** Cost functions file. */
   private Properties costFunctions;
 
@@ -62,6 +69,9 @@ public class AssignmentParameters {
   /** Set to true to send the list of "lost" paths to stdout. */
   private boolean logLostPaths;
 
+  /** Set to true to send the number of nodes settled by the shortest path searches to stdout. */
+  private boolean logSettledNodes;
+
   /**
    * If > 0, only the alternative paths that are shorter than this ration x the length of the
    * cheapest alternative are kept during a multi-flow assignment.
@@ -98,6 +108,18 @@ public class AssignmentParameters {
   /** The number of parallel threads during assignment. */
   private int threads = 1;
 
+  /** Durations of the phases of the assignment run with these parameters. */
+  private AssignmentTimings timings = new AssignmentTimings();
+
+  /**
+   * If true, the equilibrium assignments keep the shortest path trees of each origin and repair
+   * them in the next iteration instead of computing them again.
+   */
+  private boolean warmStart = false;
+
+  /** Share of changed arcs or affected nodes above which warm started trees are recomputed. */
+  private double warmStartThreshold = 0.2;
+
   /** SQL statement that can be given to filter the O-D matrix. */
   private String whereStmt;
 
@@ -110,6 +132,39 @@ public class AssignmentParameters {
     this.nodusProject = nodusProject;
   }
 
+  /**
+   * Returns a copy of these parameters, with its own timings. The cost functions are shared.
+   *
+   * @return AssignmentParameters
+   */
+  public AssignmentParameters copy() {
+    AssignmentParameters ap = new AssignmentParameters(nodusProject);
+    ap.bidirectionalSearch = bidirectionalSearch;
+    ap.confirmDelete = confirmDelete;
+    ap.costFunctions = costFunctions;
+    ap.costMarkup = costMarkup;
+    ap.detailedPaths = detailedPaths;
+    ap.isTimeDependent = isTimeDependent;
+    ap.keepOnlyCheapestIntermodalPath = keepOnlyCheapestIntermodalPath;
+    ap.limitedToHighlightedArea = limitedToHighlightedArea;
+    ap.logLostPaths = logLostPaths;
+    ap.logSettledNodes = logSettledNodes;
+    ap.maxDetour = maxDetour;
+    ap.modalSplitMethodName = modalSplitMethodName;
+    ap.nbIterations = nbIterations;
+    ap.odMatrix = odMatrix;
+    ap.postAssignmentScript = postAssignmentScript;
+    ap.precision = precision;
+    ap.runPostAssignmentScript = runPostAssignmentScript;
+    ap.savePaths = savePaths;
+    ap.scenario = scenario;
+    ap.threads = threads;
+    ap.warmStart = warmStart;
+    ap.warmStartThreshold = warmStartThreshold;
+    ap.whereStmt = whereStmt;
+    return ap;
+  }
+
   /**
    * Returns the cost functions.
    *
@@ -217,6 +272,25 @@ public class AssignmentParameters {
     return threads;
   }
 
+  /**
+   * Returns the durations of the phases of the assignment run with these parameters.
+   *
+   * @return AssignmentTimings
+   */
+  public AssignmentTimings getTimings() {
+    return timings;
+  }
+
+  /**
+   * Returns the share of changed arcs or affected nodes above which the warm started shortest path
+   * trees are computed again from scratch.
+   *
+   * @return double
+   */
+  public double getWarmStartThreshold() {
+    return warmStartThreshold;
+  }
+
   /**
    * Returns the SQL WHERE statement used to filter the OD matrix.
    *
@@ -226,6 +300,15 @@ public class AssignmentParameters {
     return whereStmt;
   }
 
+  /**
+   * Returns true if the shortest paths between OD pairs must be computed by a bidirectional search.
+   *
+   * @return boolean
+   */
+  public boolean isBidirectionalSearch() {
+    return bidirectionalSearch;
+  }
+
   /**
    * Returns true if the user must confirm before an existing scenario is overwritten.
    *
@@ -273,6 +356,15 @@ public class AssignmentParameters {
     return logLostPaths;
   }
 
+  /**
+   * Returns true if the number of nodes settled by the shortest path searches must be logged.
+   *
+   * @return boolean.
+   */
+  public boolean isLogSettledNodes() {
+    return logSettledNodes;
+  }
+
   /**
    * Returns true if a post assignment script must be run.
    *
@@ -300,6 +392,16 @@ public class AssignmentParameters {
     return isTimeDependent;
   }
 
+  /**
+   * Returns true if the equilibrium assignments repair the shortest path trees of the previous
+   * iteration instead of computing them again.
+   *
+   * @return boolean
+   */
+  public boolean isWarmStart() {
+    return warmStart;
+  }
+
   /**
    * If true, the user will be asked to confirm before overwritting an exiting assignment.
    *
@@ -345,6 +447,15 @@ public class AssignmentParameters {
     this.costMarkup = costMarkup;
   }
 
+  /**
+   * If true, the shortest paths between OD pairs are computed by a bidirectional search.
+   *
+   * @param bidirectionalSearch boolean.
+   */
+  public void setBidirectionalSearch(boolean bidirectionalSearch) {
+    this.bidirectionalSearch = bidirectionalSearch;
+  }
+
   /**
    * If true, the list of network links used by each path will be saved.
    *
@@ -383,6 +494,15 @@ public class AssignmentParameters {
     this.logLostPaths = logLostPaths;
   }
 
+  /**
+   * If true, the number of nodes settled by the shortest path searches will be logged.
+   *
+   * @param logSettledNodes boolean.
+   */
+  public void setLogSettledNodes(boolean logSettledNodes) {
+    this.logSettledNodes = logSettledNodes;
+  }
+
   /**
    * Specifies the max detour ratio. Any path between an origin and a destination that is longer
    * than the shortest path between these two locations, multiplied by this ratio, will not be
@@ -493,6 +613,26 @@ public class AssignmentParameters {
     this.isTimeDependent = isTimeDependent;
   }
 
+  /**
+   * If true, the equilibrium assignments repair the shortest path trees of the previous iteration
+   * instead of computing them again.
+   *
+   * @param warmStart boolean
+   */
+  public void setWarmStart(boolean warmStart) {
+    this.warmStart = warmStart;
+  }
+
+  /**
+   * Sets the share of changed arcs or affected nodes above which the warm started shortest path
+   * trees are computed again from scratch.
+   *
+   * @param warmStartThreshold double
+   */
+  public void setWarmStartThreshold(double warmStartThreshold) {
+    this.warmStartThreshold = warmStartThreshold;
+  }
+
   /**
    * Sets the SQL WHERE statement used to filter the OD matrix.
    *
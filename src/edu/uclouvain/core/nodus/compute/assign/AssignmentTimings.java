@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign;
+
+import java.text.DecimalFormat;
+
+/**
+ * Time spent in the successive phases of an assignment, with the number of objects handled in each
+ * phase, from which a throughput can be computed. The phases can be run several times (once per OD
+ * class or iteration for instance); their durations and counts are then cumulated.
+ *
+ * @author Bart Jourquin
+ */
+public class AssignmentTimings {
+
+  /** Generation (or reuse) of the virtual network. Counts the virtual links. */
+  public static final int GENERATION = 0;
+
+  /** Computation of the costs of the virtual links. Counts the virtual links, for all groups. */
+  public static final int COSTS = 1;
+
+  /** Computation of the paths and assignment of the demand. Counts the origins. */
+  public static final int ASSIGNMENT = 2;
+
+  /** Writing of the paths in the database. Counts the written rows. */
+  public static final int PATHS = 3;
+
+  /** Writing of the virtual network in the database. Counts the written rows. */
+  public static final int RESULTS = 4;
+
+  private static final String[] phaseNames = {
+    "Virtual network", "Costs", "Assignment", "Paths writing", "Results writing"
+  };
+
+  private static final String[] unitNames = {
+    "virtual links", "virtual links", "origins", "rows", "rows"
+  };
+
+  private long[] counts = new long[phaseNames.length];
+
+  private long[] durations = new long[phaseNames.length];
+
+  /**
+   * Adds the duration of a run of a phase.
+   *
+   * @param phase The phase.
+   * @param nanos The duration, in nanoseconds.
+   * @param count The number of objects handled during the run.
+   */
+  public synchronized void add(int phase, long nanos, long count) {
+    durations[phase] += nanos;
+    counts[phase] += count;
+  }
+
+  /**
+   * Returns the number of objects handled during a phase.
+   *
+   * @param phase The phase.
+   * @return The count.
+   */
+  public synchronized long getCount(int phase) {
+    return counts[phase];
+  }
+
+  /**
+   * Returns the time spent in a phase, in milliseconds.
+   *
+   * @param phase The phase.
+   * @return The duration.
+   */
+  public synchronized long getDuration(int phase) {
+    return durations[phase] / 1000000;
+  }
+
+  /**
+   * Returns the number of objects handled per second during a phase.
+   *
+   * @param phase The phase.
+   * @return The throughput, or 0 if the phase was not run.
+   */
+  public synchronized double getThroughput(int phase) {
+    if (durations[phase] == 0) {
+      return 0;
+    }
+    return counts[phase] * 1e9 / durations[phase];
+  }
+
+  /** Resets the durations and counts of all the phases. */
+  public synchronized void reset() {
+    for (int i = 0; i < phaseNames.length; i++) {
+      counts[i] = 0;
+      durations[i] = 0;
+    }
+  }
+
+  /** Returns a line per phase that was run, with its duration and throughput. */
+  @Override
+  public synchronized String toString() {
+    DecimalFormat df = new DecimalFormat("0.0");
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < phaseNames.length; i++) {
+      if (durations[i] == 0 && counts[i] == 0) {
+        continue;
+      }
+      sb.append(phaseNames[i])
+          .append(": ")
+          .append(df.format(durations[i] / 1e9))
+          .append(" s, ")
+          .append(counts[i])
+          .append(' ')
+          .append(unitNames[i])
+          .append(" (")
+          .append(df.format(getThroughput(i)))
+          .append(" ")
+          .append(unitNames[i])
+          .append("/s)\n");
+    }
+    return sb.toString();
+  }
+}
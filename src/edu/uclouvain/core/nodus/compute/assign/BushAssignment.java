@@ -0,0 +1,323 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign;
+
+import edu.uclouvain.core.nodus.NodusC;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyGraph;
+import edu.uclouvain.core.nodus.compute.assign.workers.BushAssignmentWorker;
+import edu.uclouvain.core.nodus.compute.assign.workers.OriginBushes;
+import edu.uclouvain.core.nodus.compute.od.ODReader;
+import edu.uclouvain.core.nodus.compute.virtual.FrankWolfeLineSearch;
+import edu.uclouvain.core.nodus.compute.virtual.LinkCostDerivatives;
+import edu.uclouvain.core.nodus.compute.virtual.PathWriter;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNetworkCache;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNetworkWriter;
+import edu.uclouvain.core.nodus.tools.console.NodusConsole;
+import edu.uclouvain.core.nodus.utils.GarbageCollectionRunner;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
+
+import javax.swing.JOptionPane;
+
+/**
+ * Bush based (origin based) equilibrium assignment algorithm. See <i>Dial R.B., A path-based
+ * user-equilibrium traffic assignment algorithm that obviates path storage and enumeration,
+ * Transportation Research Part B, Vol 40, n°10, pp. 917-936, 2006.</i>
+ *
+ * <p>The demand of each origin is kept on an acyclic subnetwork (its bush), in which the flows are
+ * moved from the longest to the shortest paths until they have the same cost. Contrary to
+ * Frank-Wolfe, the flows of an origin are only moved between the paths it really uses, which
+ * allows to reach small relative gaps in a few iterations. The bushes of the origins are handled
+ * in parallel, so the flows they give are combined with the current flows using the Frank-Wolfe
+ * line search. At each iteration, the relative gap of the flows computed during the previous one
+ * is measured, and the assignment stops if it is smaller than the expected precision.
+ *
+ * <p>The flows are not kept per path, so the detailed paths cannot be saved.
+ *
+ * @author Bart Jourquin
+ */
+public class BushAssignment extends Assignment {
+
+  /** Width of the interval under which the line search stops. */
+  private static final double LAMBDA_PRECISION = 0.01;
+
+  /** Bushes of the origins, per OD class and group. */
+  private OriginBushes[][] bushes;
+
+  /** Derivatives of the arc costs of the OD class being assigned, per group. */
+  private double[][] derivatives;
+
+  /** Flow moved on each arc by the origins already assigned during the iteration, per group. */
+  private double[][] movedFlows;
+
+  /* Total cost of the flows and of the demand assigned on the shortest paths */
+  private double shortestPathsCost;
+  private double totalCost;
+
+  /**
+   * Initializes the assignment procedure.
+   *
+   * @param ap AssignmentParameters
+   */
+  public BushAssignment(AssignmentParameters ap) {
+    super(ap);
+  }
+
+  /**
+   * Adds the costs of the flows of an origin and of its demand assigned on the shortest paths.
+   * Called by the workers to compute the relative gap.
+   *
+   * @param flowsCost The cost of the flows in the bush of the origin.
+   * @param shortestCost The cost of the demand of the origin on the shortest paths.
+   */
+  public synchronized void addCosts(double flowsCost, double shortestCost) {
+    totalCost += flowsCost;
+    shortestPathsCost += shortestCost;
+  }
+
+  /**
+   * Adds the flow moved by an origin on the arcs of its bush.
+   *
+   * @param groupIndex The index of the group.
+   * @param arcs The arcs of the bush.
+   * @param deltas The flows moved on these arcs.
+   * @param length The number of arcs in the arrays.
+   */
+  public void addMovedFlows(byte groupIndex, int[] arcs, double[] deltas, int length) {
+    double[] moved = movedFlows[groupIndex];
+    synchronized (moved) {
+      for (int i = 0; i < length; i++) {
+        moved[arcs[i]] += deltas[i];
+      }
+    }
+  }
+
+  /** Computation thread that does the real assignment work. */
+  @Override
+  public boolean assign() {
+    // The bushes only keep the flows per origin, not the paths
+    if (assignmentParameters.isSavePaths()) {
+      nodusProject
+          .getProgressListener()
+          .showMessage(
+              i18n.get(
+                  BushAssignment.class,
+                  "Paths_not_saved",
+                  "The bush based method cannot save the paths. "
+                      + "Uncheck the \"Save paths\" option."),
+              JOptionPane.ERROR_MESSAGE);
+      return false;
+    }
+
+    // Test if scenario already exists
+    if (!VirtualNetworkWriter.acceptScenario(
+        nodusProject, assignmentParameters.getScenario(), assignmentParameters.isConfirmDelete())) {
+      return false;
+    }
+
+    // Generate a virtual network
+    virtualNet = new VirtualNetwork(assignmentParameters);
+    virtualNet.setExecutor(executor);
+
+    // Reuse the virtual nodes and links of the previous assignment if the network didn't change
+    if (!VirtualNetworkCache.generate(virtualNet)) {
+      return false;
+    }
+
+    // Read the O-D matrixes
+    ODReader odr = new ODReader(assignmentParameters);
+
+    if (!odr.loadDemand(virtualNet)) {
+      return false;
+    }
+
+    // The paths are not saved, but the workers expect a path writer
+    pathWriter = new PathWriter(assignmentParameters);
+
+    // Display console if needed
+    if (assignmentParameters.isLogLostPaths()) {
+      new NodusConsole(nodusProject.getLocalProperty(NodusC.PROP_PROJECT_DOTPATH));
+      System.out.println(i18n.get(Assignment.class, "Lost_paths", "Lost paths:"));
+      System.out.println(
+          NodusC.DBF_GROUP
+              + ", "
+              + NodusC.DBF_ORIGIN
+              + ", "
+              + NodusC.DBF_DESTINATION
+              + ", "
+              + NodusC.DBF_QUANTITY);
+    }
+
+    // Force Garbage collector?
+    ProgressListener progressListener = nodusProject.getProgressListener();
+    int gcInterval = nodusProject.getGarbageCollectorInterval();
+    GarbageCollectionRunner gcr = new GarbageCollectionRunner(gcInterval);
+
+    int threads = assignmentParameters.getThreads();
+    int nbGroups = virtualNet.getNbGroups();
+    bushes = new OriginBushes[virtualNet.getNbODClasses()][nbGroups];
+    derivatives = new double[nbGroups][];
+    movedFlows = new double[nbGroups][];
+    LinkCostDerivatives linkCostDerivatives = new LinkCostDerivatives(virtualNet, executor);
+    FrankWolfeLineSearch lineSearch = new FrankWolfeLineSearch(virtualNet, executor);
+
+    for (int iteration = 1; iteration < assignmentParameters.getNbIterations() + 1; iteration++) {
+      synchronized (this) {
+        totalCost = 0;
+        shortestPathsCost = 0;
+      }
+
+      // -- Assign all od classes
+      for (byte odClass = 0; odClass < virtualNet.getNbODClasses(); odClass++) {
+
+        if (!virtualNet.odClassHasDemand(odClass)) {
+          continue;
+        }
+
+        if (!virtualNet.computeCosts(
+            iteration - 1, odClass, assignmentParameters.getCostFunctions(), threads)) {
+          gcr.stop();
+          return false;
+        }
+
+        // The derivatives are only needed once the flows are loaded
+        for (byte groupIndex = 0; groupIndex < nbGroups; groupIndex++) {
+          AdjacencyGraph graph = virtualNet.generateAdjacencyList(groupIndex);
+          movedFlows[groupIndex] = new double[graph.getNbArcs()];
+          if (iteration == 1) {
+            derivatives[groupIndex] = new double[graph.getNbArcs()];
+          } else {
+            derivatives[groupIndex] = linkCostDerivatives.compute(odClass, groupIndex, graph);
+            if (derivatives[groupIndex] == null) {
+              gcr.stop();
+              return false;
+            }
+          }
+        }
+
+        // Initialize a progress monitor with the number of OD matrix rows to assign
+        progressListener.startProgress(getNbOriginsToAssign(odClass));
+
+        // Assign all the groups
+        boolean success = runWorkers(odClass, iteration, 0.0, true, BushAssignmentWorker::new);
+        progressListener.stopProgress();
+
+        if (!success) {
+          gcr.stop();
+          return false;
+        }
+      } // Next od class
+
+      // The flows of the bushes are a descent direction for the current flows
+      double lambda = 1.0;
+      double relativeGap = Double.NaN;
+      double objective = Double.NaN;
+      if (iteration > 1) {
+        synchronized (this) {
+          relativeGap = getRelativeGap(new double[] {totalCost, shortestPathsCost});
+          objective = totalCost;
+        }
+        if (relativeGap < assignmentParameters.getPrecision()) {
+          recordIteration(iteration, relativeGap, objective, Double.NaN, Double.NaN);
+          break;
+        }
+
+        virtualNet.resetVehicles();
+        virtualNet.flowsToVehicles();
+        if (!lineSearch.prepare()) {
+          gcr.stop();
+          return false;
+        }
+        lambda = lineSearch.search(LAMBDA_PRECISION);
+
+        // If task was aborted
+        if (Double.isNaN(lambda)) {
+          gcr.stop();
+          return false;
+        }
+      }
+
+      for (VirtualLink vl : virtualNet.getVirtualLinks()) {
+        if (vl == null) {
+          continue;
+        }
+        for (byte groupIndex = 0; groupIndex < nbGroups; groupIndex++) {
+          vl.combineFlows(groupIndex, lambda);
+        }
+      }
+      for (OriginBushes[] classBushes : bushes) {
+        for (OriginBushes groupBushes : classBushes) {
+          if (groupBushes != null) {
+            groupBushes.combine(lambda);
+          }
+        }
+      }
+      virtualNet.resetVehicles();
+      virtualNet.flowsToVehicles();
+
+      double flowChange = iteration > 1 ? getFlowChange() : Double.NaN;
+      recordIteration(iteration, relativeGap, objective, lambda, flowChange);
+    }
+
+    gcr.stop();
+
+    // Save the flows
+    VirtualNetworkWriter vnw = new VirtualNetworkWriter(assignmentParameters, virtualNet);
+    return vnw.save();
+  }
+
+  /**
+   * Returns the bushes of the origins of a group, created the first time they are needed.
+   *
+   * @param odClass The OD class.
+   * @param groupIndex The index of the group.
+   * @return The bushes.
+   */
+  public synchronized OriginBushes getBushes(byte odClass, byte groupIndex) {
+    if (bushes[odClass][groupIndex] == null) {
+      bushes[odClass][groupIndex] = new OriginBushes(virtualNet.getVirtualNodeLists().length);
+    }
+    return bushes[odClass][groupIndex];
+  }
+
+  /**
+   * Returns the derivatives of the costs of the arcs of a group, for the OD class being assigned.
+   *
+   * @param groupIndex The index of the group.
+   * @return The derivatives, indexed by arc.
+   */
+  public double[] getDerivatives(byte groupIndex) {
+    return derivatives[groupIndex];
+  }
+
+  /**
+   * Returns the flows moved by the origins already assigned during the iteration, for the OD class
+   * being assigned.
+   *
+   * @param groupIndex The index of the group.
+   * @return The moved flows, indexed by arc.
+   */
+  public double[] getMovedFlows(byte groupIndex) {
+    return movedFlows[groupIndex];
+  }
+}
@@ -22,18 +22,16 @@
 package edu.uclouvain.core.nodus.compute.assign;
 
 import edu.uclouvain.core.nodus.NodusC;
-import edu.uclouvain.core.nodus.NodusMapPanel;
 import edu.uclouvain.core.nodus.compute.assign.workers.AssignmentWorker;
-import edu.uclouvain.core.nodus.compute.assign.workers.AssignmentWorkerParameters;
 import edu.uclouvain.core.nodus.compute.assign.workers.DynamicTimeDependentAssignmentWorker;
-import edu.uclouvain.core.nodus.compute.exclusions.ExclusionReader;
 import edu.uclouvain.core.nodus.compute.od.ODReader;
 import edu.uclouvain.core.nodus.compute.virtual.PathWriter;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNetworkCache;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetworkWriter;
 import edu.uclouvain.core.nodus.tools.console.NodusConsole;
 import edu.uclouvain.core.nodus.utils.GarbageCollectionRunner;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 
 import java.util.Properties;
 
@@ -72,6 +70,7 @@ public class DynamicTimeDependentAssignment extends Assignment {
     }
 
     // long start = System.currentTimeMillis();
+    AssignmentWorker.resetSettledNodes();
 
     // Get the information about the time windows in the cost function
     Properties costFunctions = assignmentParameters.getCostFunctions();
@@ -86,35 +85,28 @@ public class DynamicTimeDependentAssignment extends Assignment {
     final int nbTimeSlices = (assignmentEndTime - assignmentStartTime) / timeSliceDuration;
 
     if (assignmentEndTime == -1 || assignmentStartTime == -1 || timeSliceDuration == -1) {
-      JOptionPane.showMessageDialog(
-          null,
-          i18n.get(
-              Assignment.class,
-              "Time_related_variables_not_found",
-              "Time related variables not found in cost functions"),
-          NodusC.APPNAME,
-          JOptionPane.ERROR_MESSAGE);
+      nodusProject
+          .getProgressListener()
+          .showMessage(
+              i18n.get(
+                  Assignment.class,
+                  "Time_related_variables_not_found",
+                  "Time related variables not found in cost functions"),
+              JOptionPane.ERROR_MESSAGE);
       return false;
     }
 
     // Generate a virtual network
     virtualNet = new VirtualNetwork(assignmentParameters);
+    virtualNet.setExecutor(executor);
     virtualNet.setAssignmentTimeParameters(
         assignmentStartTime, assignmentEndTime, timeSliceDuration);
 
-    if (!virtualNet.generate()) {
+    // Reuse the virtual nodes and links of the previous assignment if the network didn't change
+    if (!VirtualNetworkCache.generate(virtualNet)) {
       return false;
     }
 
-    // Read the exclusions
-    ExclusionReader er = new ExclusionReader(virtualNet);
-
-    if (er.hasExclusions()) {
-      if (!er.loadExclusions()) {
-        return false;
-      }
-    }
-
     // Read the O-D matrixes
     ODReader odr = new ODReader(assignmentParameters);
 
@@ -140,8 +132,8 @@ public class DynamicTimeDependentAssignment extends Assignment {
     }
 
     // Force Garbage collector?
-    NodusMapPanel nodusMapPanel = nodusProject.getNodusMapPanel();
-    int gcInterval = nodusMapPanel.getGarbageCollectorInterval();
+    ProgressListener progressListener = nodusProject.getProgressListener();
+    int gcInterval = nodusProject.getGarbageCollectorInterval();
     GarbageCollectionRunner gcr = new GarbageCollectionRunner(gcInterval);
 
     // Assign each time slice
@@ -165,81 +157,52 @@ public class DynamicTimeDependentAssignment extends Assignment {
           return false;
         }
 
-        // Create the work queue
-        WorkQueue queue = new WorkQueue();
-
-        // Create a set of worker threads
-        assignmentWorkers = new AssignmentWorker[threads];
-        for (int i = 0; i < assignmentWorkers.length; i++) {
-          DynamicTimeDependentAssignmentWorker aw = new DynamicTimeDependentAssignmentWorker(queue);
-          aw.setTimeParameters(currentTimeSlice, sliceStartTime, timeSliceDuration);
-          assignmentWorkers[i] = aw;
-          assignmentWorkers[i].start();
-        }
-
-        // Add the jobs to the queue
-        for (byte groupIndex = 0; groupIndex < (byte) virtualNet.getGroups().length; groupIndex++) {
-          AssignmentWorkerParameters awp =
-              new AssignmentWorkerParameters(this, groupIndex, odClass);
-          queue.addWork(awp);
-        }
-
-        // Add special end-of-stream markers to terminate the workers
-        for (int i = 0; i < assignmentWorkers.length; i++) {
-          queue.addWork(WorkQueue.NO_MORE_WORK);
-        }
-
         // Initialize a progress monitor with the number of OD matrix rows to assign
-        int lengthOfTask = 0;
-        for (byte groupIndex = 0; groupIndex < (byte) virtualNet.getGroups().length; groupIndex++) {
-          for (int nodeIndex = 0;
-              nodeIndex < virtualNet.getVirtualNodeLists().length;
-              nodeIndex++) {
-            // Get the demand associated to this node, group and class
-            if (virtualNet.getVirtualNodeLists()[nodeIndex].hasDemandForGroup(
-                virtualNet.getGroups()[groupIndex], odClass)) {
-              lengthOfTask++;
-            }
-          }
-        }
-
-        nodusMapPanel.startProgress(lengthOfTask);
-
-        // Wait until all the works are completed
-        for (int i = 0; i < threads; i++) {
-          try {
-            assignmentWorkers[i].join();
-          } catch (InterruptedException ex) {
-            ex.printStackTrace();
-          }
-        }
-
-        nodusMapPanel.stopProgress();
-
-        // Test if everything was OK
-        for (int i = 0; i < threads; i++) {
-          if (assignmentWorkers[i].isCancelled()) {
-            return false;
-          }
+        progressListener.startProgress(getNbOriginsToAssign(odClass));
+
+        // Assign all the groups
+        byte timeSlice = currentTimeSlice;
+        boolean success =
+            runWorkers(
+                odClass,
+                0,
+                0.0,
+                false,
+                () -> {
+                  DynamicTimeDependentAssignmentWorker aw =
+                      new DynamicTimeDependentAssignmentWorker();
+                  aw.setTimeParameters(timeSlice, sliceStartTime, timeSliceDuration);
+                  return aw;
+                });
+        progressListener.stopProgress();
+
+        if (!success) {
+          pathWriter.close();
+          return false;
         }
       } // Next odClass
     } // Next time slice
 
     gcr.stop();
 
+    // Number of nodes settled by the shortest path searches, to compare the search algorithms
+    if (assignmentParameters.isLogSettledNodes()) {
+      System.out.println(
+          i18n.get(
+              Assignment.class,
+              "Settled_nodes",
+              "Settled nodes: {0}",
+              AssignmentWorker.getTotalSettledNodes()));
+    }
+
     // long end = System.currentTimeMillis();
     // System.out.println("Duration : " + ((end - start) / 1000));
 
     // Close the detailed path writer
     pathWriter.close();
 
-    // Transform the flows in vehicles
-    for (byte i = 0; i < virtualNet.getNbTimeSlices(); i++) {
-      virtualNet.flowsToVehicles(i);
-    }
-
-    // Now save virtual network
+    // Transform the flows in vehicles while the virtual network is saved
     VirtualNetworkWriter vnw = new VirtualNetworkWriter(assignmentParameters, virtualNet);
-    return vnw.save();
+    return vnw.saveWithVehicles();
   }
 }
@@ -22,18 +22,15 @@
 package edu.uclouvain.core.nodus.compute.assign;
 
 import edu.uclouvain.core.nodus.NodusC;
-import edu.uclouvain.core.nodus.NodusMapPanel;
-import edu.uclouvain.core.nodus.compute.assign.workers.AssignmentWorker;
-import edu.uclouvain.core.nodus.compute.assign.workers.AssignmentWorkerParameters;
 import edu.uclouvain.core.nodus.compute.assign.workers.IncrementalAssignmentWorker;
-import edu.uclouvain.core.nodus.compute.exclusions.ExclusionReader;
 import edu.uclouvain.core.nodus.compute.od.ODReader;
 import edu.uclouvain.core.nodus.compute.virtual.PathWriter;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNetworkCache;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetworkWriter;
 import edu.uclouvain.core.nodus.tools.console.NodusConsole;
 import edu.uclouvain.core.nodus.utils.GarbageCollectionRunner;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 
 /**
  * The incremental equilibrium assignment algorithm. See <i> Jourquin B. and Limbourg S.,
@@ -65,20 +62,13 @@ public class IncrementalAssignment extends Assignment {
 
     // Generate a virtual network
     virtualNet = new VirtualNetwork(assignmentParameters);
+    virtualNet.setExecutor(executor);
 
-    if (!virtualNet.generate()) {
+    // Reuse the virtual nodes and links of the previous assignment if the network didn't change
+    if (!VirtualNetworkCache.generate(virtualNet)) {
       return false;
     }
 
-    // Read the exclusions
-    ExclusionReader er = new ExclusionReader(virtualNet);
-
-    if (er.hasExclusions()) {
-      if (!er.loadExclusions()) {
-        return false;
-      }
-    }
-
     // Read the O-D matrixes
     ODReader odr = new ODReader(assignmentParameters);
 
@@ -104,11 +94,11 @@ public class IncrementalAssignment extends Assignment {
     }
 
     // Force Garbage collector?
-    NodusMapPanel nodusMapPanel = nodusProject.getNodusMapPanel();
-    int gcInterval = nodusMapPanel.getGarbageCollectorInterval();
+    ProgressListener progressListener = nodusProject.getProgressListener();
+    int gcInterval = nodusProject.getGarbageCollectorInterval();
     GarbageCollectionRunner gcr = new GarbageCollectionRunner(gcInterval);
 
-    for (byte iteration = 1; iteration <= assignmentParameters.getNbIterations(); iteration++) {
+    for (int iteration = 1; iteration <= assignmentParameters.getNbIterations(); iteration++) {
       // Compute the load factor for the current iteration
       double denominator =
           assignmentParameters.getNbIterations()
@@ -128,67 +118,22 @@ public class IncrementalAssignment extends Assignment {
         // (re)Compute costs
         if (!virtualNet.computeCosts(
             iteration, odClass, assignmentParameters.getCostFunctions(), threads)) {
-          nodusMapPanel.stopProgress();
+          progressListener.stopProgress();
           return false;
         }
 
-        // Create the work queue
-        WorkQueue queue = new WorkQueue();
-
-        // Create a set of worker threads
-        assignmentWorkers = new AssignmentWorker[threads];
-        for (int i = 0; i < assignmentWorkers.length; i++) {
-          assignmentWorkers[i] = new IncrementalAssignmentWorker(queue);
-          assignmentWorkers[i].start();
-        }
-
-        // Add the jobs to the queue
-        for (byte groupIndex = 0; groupIndex < (byte) virtualNet.getGroups().length; groupIndex++) {
-          AssignmentWorkerParameters awp =
-              new AssignmentWorkerParameters(this, groupIndex, odClass, iteration, loadFactor);
-          queue.addWork(awp);
-        }
-
-        // Add special end-of-stream markers to terminate the workers
-        for (int i = 0; i < assignmentWorkers.length; i++) {
-          queue.addWork(WorkQueue.NO_MORE_WORK);
-        }
-
         // Initialize a progress monitor with the number of OD matrix rows to assign
-        int lengthOfTask = 0;
-
-        for (byte groupIndex = 0; groupIndex < (byte) virtualNet.getGroups().length; groupIndex++) {
-          for (int nodeIndex = 0;
-              nodeIndex < virtualNet.getVirtualNodeLists().length;
-              nodeIndex++) {
-            // Get the demand associated to this node and group
-            if (virtualNet.getVirtualNodeLists()[nodeIndex].hasDemandForGroup(
-                virtualNet.getGroups()[groupIndex], odClass)) {
-              lengthOfTask++;
-            }
-          }
-        }
-
-        lengthOfTask *= assignmentParameters.getNbIterations();
+        progressListener.startProgress(
+            getNbOriginsToAssign(odClass) * assignmentParameters.getNbIterations());
 
-        nodusMapPanel.startProgress(lengthOfTask);
+        // Assign all the groups
+        boolean success =
+            runWorkers(odClass, iteration, loadFactor, true, IncrementalAssignmentWorker::new);
+        progressListener.stopProgress();
 
-        // Wait until all the works are completed
-        for (int i = 0; i < threads; i++) {
-          try {
-            assignmentWorkers[i].join();
-          } catch (InterruptedException ex) {
-            ex.printStackTrace();
-          }
-        }
-
-        nodusMapPanel.stopProgress();
-
-        // Test if everything was OK
-        for (int i = 0; i < threads; i++) {
-          if (assignmentWorkers[i].isCancelled()) {
-            return false;
-          }
+        if (!success) {
+          pathWriter.close();
+          return false;
         }
       } // Next odClass
 
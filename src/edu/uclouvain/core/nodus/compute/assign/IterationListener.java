@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package edu.uclouvain.core.nodus.compute.assign;
+
+/**
+ * Listener notified at the end of each iteration of an assignment. The listeners are called from
+ * the thread that runs the assignment, so those that update a user interface must do it on the
+ * event dispatch thread.
+ *
+ * @author Bart Jourquin
+ */
+public interface IterationListener {
+
+  /**
+   * Called when an iteration is done.
+   *
+   * @param assignment The assignment.
+   * @param metrics The metrics measured at the end of the iteration.
+   */
+  void iterationDone(Assignment assignment, IterationMetrics metrics);
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package edu.uclouvain.core.nodus.compute.assign;
+
+import edu.uclouvain.core.nodus.NodusC;
+import edu.uclouvain.core.nodus.NodusProject;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Writes the metrics of the iterations of an assignment in a CSV file saved in the project
+ * directory, named after the project and the scenario ("project_iterations3.csv" for instance).
+ * The file is only created once the first iteration is done, and each line is flushed so that the
+ * file can be followed while the assignment runs.
+ *
+ * @author Bart Jourquin
+ */
+class IterationLog implements IterationListener {
+
+  private static final String HEADER =
+      "iteration,relative_gap,objective,lambda,flow_change,resettled_share,costs_ms,assignment_ms,"
+          + "write_ms,used_memory,elapsed_ms";
+
+  private String fileName;
+
+  private boolean failed = false;
+
+  private PrintWriter writer = null;
+
+  /**
+   * Creates the log of an assignment.
+   *
+   * @param project The project.
+   * @param scenario The assigned scenario.
+   */
+  IterationLog(NodusProject project, int scenario) {
+    fileName =
+        project.getLocalProperty(NodusC.PROP_PROJECT_DOTPATH)
+            + project.getLocalProperty(NodusC.PROP_PROJECT_DOTNAME)
+            + "_iterations"
+            + scenario
+            + NodusC.TYPE_CSV;
+  }
+
+  /** Closes the file, if it was created. */
+  void close() {
+    if (writer != null) {
+      writer.close();
+      writer = null;
+    }
+  }
+
+  /** Formats a value, or returns an empty string for NaN. */
+  private static String format(double value) {
+    if (Double.isNaN(value)) {
+      return "";
+    }
+    return String.format(Locale.ENGLISH, "%.6e", value);
+  }
+
+  @Override
+  public void iterationDone(Assignment assignment, IterationMetrics metrics) {
+    if (failed) {
+      return;
+    }
+
+    if (writer == null) {
+      try {
+        writer = new PrintWriter(new FileWriter(fileName));
+      } catch (IOException e) {
+        System.err.println(e.toString());
+        failed = true;
+        return;
+      }
+      writer.println(HEADER);
+    }
+
+    writer.println(
+        metrics.getIteration()
+            + ","
+            + format(metrics.getRelativeGap())
+            + ","
+            + format(metrics.getObjective())
+            + ","
+            + format(metrics.getLambda())
+            + ","
+            + format(metrics.getFlowChange())
+            + ","
+            + format(metrics.getResettledShare())
+            + ","
+            + metrics.getCostsDuration()
+            + ","
+            + metrics.getAssignmentDuration()
+            + ","
+            + metrics.getWriteDuration()
+            + ","
+            + metrics.getUsedMemory()
+            + ","
+            + metrics.getElapsedTime());
+    writer.flush();
+  }
+}
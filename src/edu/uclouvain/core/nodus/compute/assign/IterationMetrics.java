@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package edu.uclouvain.core.nodus.compute.assign;
+
+/**
+ * Measures taken at the end of an iteration of an assignment: convergence indicators, time spent
+ * in each phase of the iteration and memory used. The indicators that a method does not compute
+ * are set to NaN.
+ *
+ * @author Bart Jourquin
+ */
+public class IterationMetrics {
+
+  private long assignmentDuration;
+
+  private long costsDuration;
+
+  private long elapsedTime;
+
+  private double flowChange;
+
+  private int iteration;
+
+  private double lambda;
+
+  private double objective;
+
+  private double relativeGap;
+
+  private double resettledShare;
+
+  private long usedMemory;
+
+  private long writeDuration;
+
+  /**
+   * Creates the metrics of an iteration.
+   *
+   * @param iteration The iteration.
+   * @param relativeGap The relative gap of the flows obtained at the previous iteration.
+   * @param objective The total cost of these flows.
+   * @param lambda The descent step, or the weight of the new flows, of the iteration.
+   * @param flowChange The relative change of the flows during the iteration.
+   * @param resettledShare The share of the nodes of the warm started shortest path trees that were
+   *     settled again during the iteration.
+   * @param costsDuration The time spent computing the costs, in milliseconds.
+   * @param assignmentDuration The time spent computing the paths and assigning the demand, in
+   *     milliseconds.
+   * @param writeDuration The time spent writing the paths, in milliseconds.
+   * @param usedMemory The heap used at the end of the iteration, in bytes.
+   * @param elapsedTime The time since the start of the assignment, in milliseconds.
+   */
+  public IterationMetrics(
+      int iteration,
+      double relativeGap,
+      double objective,
+      double lambda,
+      double flowChange,
+      double resettledShare,
+      long costsDuration,
+      long assignmentDuration,
+      long writeDuration,
+      long usedMemory,
+      long elapsedTime) {
+    this.iteration = iteration;
+    this.relativeGap = relativeGap;
+    this.objective = objective;
+    this.lambda = lambda;
+    this.flowChange = flowChange;
+    this.resettledShare = resettledShare;
+    this.costsDuration = costsDuration;
+    this.assignmentDuration = assignmentDuration;
+    this.writeDuration = writeDuration;
+    this.usedMemory = usedMemory;
+    this.elapsedTime = elapsedTime;
+  }
+
+  /**
+   * Returns the time spent computing the paths and assigning the demand during the iteration.
+   *
+   * @return The duration, in milliseconds.
+   */
+  public long getAssignmentDuration() {
+    return assignmentDuration;
+  }
+
+  /**
+   * Returns the time spent computing the costs of the virtual links during the iteration.
+   *
+   * @return The duration, in milliseconds.
+   */
+  public long getCostsDuration() {
+    return costsDuration;
+  }
+
+  /**
+   * Returns the time elapsed since the start of the assignment at the end of the iteration.
+   *
+   * @return The elapsed time, in milliseconds.
+   */
+  public long getElapsedTime() {
+    return elapsedTime;
+  }
+
+  /**
+   * Returns the relative change of the flows during the iteration, used by the stop rule of the MSA
+   * and Frank-Wolfe assignments.
+   *
+   * @return The relative change, or NaN if not computed.
+   */
+  public double getFlowChange() {
+    return flowChange;
+  }
+
+  /**
+   * Returns the iteration these metrics were measured at.
+   *
+   * @return The iteration.
+   */
+  public int getIteration() {
+    return iteration;
+  }
+
+  /**
+   * Returns the descent step of the iteration, or the weight of the flows assigned during the
+   * iteration in the new current flows.
+   *
+   * @return The step, or NaN if not relevant.
+   */
+  public double getLambda() {
+    return lambda;
+  }
+
+  /**
+   * Returns the total cost (sum of the flows multiplied by the costs) of the flows obtained at the
+   * previous iteration, with the costs computed for them during this iteration.
+   *
+   * @return The total cost, or NaN if not computed.
+   */
+  public double getObjective() {
+    return objective;
+  }
+
+  /**
+   * Returns the relative gap of the flows obtained at the previous iteration: the difference
+   * between their total cost and the total cost of the demand assigned on the shortest paths,
+   * divided by the first one.
+   *
+   * @return The relative gap, or NaN if not computed.
+   */
+  public double getRelativeGap() {
+    return relativeGap;
+  }
+
+  /**
+   * Returns the share of the nodes of the warm started shortest path trees that were settled again
+   * during the iteration, instead of being kept from the trees of the previous iteration.
+   *
+   * @return The share, or NaN if the trees are not warm started.
+   */
+  public double getResettledShare() {
+    return resettledShare;
+  }
+
+  /**
+   * Returns the heap used at the end of the iteration.
+   *
+   * @return The used memory, in bytes.
+   */
+  public long getUsedMemory() {
+    return usedMemory;
+  }
+
+  /**
+   * Returns the time spent writing the paths during the iteration.
+   *
+   * @return The duration, in milliseconds.
+   */
+  public long getWriteDuration() {
+    return writeDuration;
+  }
+}
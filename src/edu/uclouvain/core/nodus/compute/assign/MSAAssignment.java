@@ -22,21 +22,18 @@
 package edu.uclouvain.core.nodus.compute.assign;
 
 import edu.uclouvain.core.nodus.NodusC;
-import edu.uclouvain.core.nodus.NodusMapPanel;
-import edu.uclouvain.core.nodus.compute.assign.workers.AssignmentWorker;
-import edu.uclouvain.core.nodus.compute.assign.workers.AssignmentWorkerParameters;
 import edu.uclouvain.core.nodus.compute.assign.workers.MSAAssignmentWorker;
-import edu.uclouvain.core.nodus.compute.exclusions.ExclusionReader;
 import edu.uclouvain.core.nodus.compute.od.ODReader;
 import edu.uclouvain.core.nodus.compute.virtual.PathWriter;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNetworkCache;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetworkWriter;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNode;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNodeList;
 import edu.uclouvain.core.nodus.tools.console.NodusConsole;
 import edu.uclouvain.core.nodus.utils.GarbageCollectionRunner;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 
 import java.util.Iterator;
 
@@ -72,20 +69,13 @@ public class MSAAssignment extends Assignment {
 
     // Generate a virtual network
     virtualNet = new VirtualNetwork(assignmentParameters);
+    virtualNet.setExecutor(executor);
 
-    if (!virtualNet.generate()) {
+    // Reuse the virtual nodes and links of the previous assignment if the network didn't change
+    if (!VirtualNetworkCache.generate(virtualNet)) {
       return false;
     }
 
-    // Read the exclusions
-    ExclusionReader er = new ExclusionReader(virtualNet);
-
-    if (er.hasExclusions()) {
-      if (!er.loadExclusions()) {
-        return false;
-      }
-    }
-
     // Read the O-D matrixes
     ODReader odr = new ODReader(assignmentParameters);
 
@@ -111,11 +101,11 @@ public class MSAAssignment extends Assignment {
     }
 
     // Force Garbage collector?
-    NodusMapPanel nodusMapPanel = nodusProject.getNodusMapPanel();
-    int gcInterval = nodusMapPanel.getGarbageCollectorInterval();
+    ProgressListener progressListener = nodusProject.getProgressListener();
+    int gcInterval = nodusProject.getGarbageCollectorInterval();
     GarbageCollectionRunner gcr = new GarbageCollectionRunner(gcInterval);
 
-    for (byte iteration = 1; iteration < assignmentParameters.getNbIterations() + 1; iteration++) {
+    for (int iteration = 1; iteration < assignmentParameters.getNbIterations() + 1; iteration++) {
       double split = 1.0 / iteration;
 
       for (byte odClass = 0; odClass < virtualNet.getNbODClasses(); odClass++) {
@@ -130,68 +120,31 @@ public class MSAAssignment extends Assignment {
         // (re)Compute costs
         if (!virtualNet.computeCosts(
             iteration, odClass, assignmentParameters.getCostFunctions(), threads)) {
-          nodusMapPanel.stopProgress();
+          progressListener.stopProgress();
           return false;
         }
 
-        // Create the work queue
-        WorkQueue queue = new WorkQueue();
-
-        // Create a set of worker threads
-        assignmentWorkers = new AssignmentWorker[threads];
-        for (int i = 0; i < assignmentWorkers.length; i++) {
-          assignmentWorkers[i] = new MSAAssignmentWorker(queue);
-          assignmentWorkers[i].start();
-        }
-
-        // Add the jobs to the queue
-        for (byte groupIndex = 0; groupIndex < (byte) virtualNet.getGroups().length; groupIndex++) {
-          AssignmentWorkerParameters awp =
-              new AssignmentWorkerParameters(this, groupIndex, odClass, iteration);
-          queue.addWork(awp);
-        }
-
-        // Add special end-of-stream markers to terminate the workers
-        for (int i = 0; i < assignmentWorkers.length; i++) {
-          queue.addWork(WorkQueue.NO_MORE_WORK);
-        }
-
         // Initialize a progress monitor with the number of OD matrix rows to assign
-        int lengthOfTask = 0;
-
-        for (byte groupIndex = 0; groupIndex < (byte) virtualNet.getGroups().length; groupIndex++) {
-          for (int nodeIndex = 0;
-              nodeIndex < virtualNet.getVirtualNodeLists().length;
-              nodeIndex++) {
-            // Get the demand associated to this node and group
-            if (virtualNet.getVirtualNodeLists()[nodeIndex].hasDemandForGroup(
-                virtualNet.getGroups()[groupIndex], odClass)) {
-              lengthOfTask++;
-            }
-          }
-        }
+        progressListener.startProgress(getNbOriginsToAssign(odClass));
 
-        nodusMapPanel.startProgress(lengthOfTask);
+        // Assign all the groups
+        boolean success = runWorkers(odClass, iteration, 0.0, true, MSAAssignmentWorker::new);
+        progressListener.stopProgress();
 
-        // Wait until all the works are completed
-        for (int i = 0; i < threads; i++) {
-          try {
-            assignmentWorkers[i].join();
-          } catch (InterruptedException ex) {
-            ex.printStackTrace();
-          }
-        }
-
-        nodusMapPanel.stopProgress();
-
-        // Test if everything was OK
-        for (int i = 0; i < threads; i++) {
-          if (assignmentWorkers[i].isCancelled()) {
-            return false;
-          }
+        if (!success) {
+          pathWriter.close();
+          return false;
         }
       } // Next od class
 
+      double relativeGap = Double.NaN;
+      double objective = Double.NaN;
+      if (iteration > 1) {
+        double[] costs = getFlowsCosts();
+        relativeGap = getRelativeGap(costs);
+        objective = costs[0];
+      }
+
       // Now combine the auxiliary flows with the current flow
       splitFlows(split);
 
@@ -200,7 +153,9 @@ public class MSAAssignment extends Assignment {
       }
 
       // Test if the stop rule is satisfied
-      if (stopRule(iteration, assignmentParameters.getPrecision())) {
+      double flowChange = iteration > 1 ? getFlowChange() : Double.NaN;
+      recordIteration(iteration, relativeGap, objective, split, flowChange);
+      if (flowChange < assignmentParameters.getPrecision()) {
         break;
       }
     }
@@ -256,60 +211,4 @@ public class MSAAssignment extends Assignment {
     // Transform the flows in vehicles
     virtualNet.flowsToVehicles();
   }
-
-  /**
-   * Returns true if max of allowed iterations is reached, or if the maximum gap in the computed
-   * flows between two successive iterations doesn't vary more than the expected precision.
-   *
-   * @param iteration int
-   * @param precision double
-   * @return boolean
-   */
-  public boolean stopRule(int iteration, double precision) {
-    double currentGap = 0.0;
-    double numerator = 0.0;
-    double denominator = 0.0;
-    double maxGap = 0.0;
-
-    if (iteration > 1) {
-      // Update current flows on virtual links
-      VirtualNodeList[] vnl = virtualNet.getVirtualNodeLists();
-
-      for (VirtualNodeList element : vnl) {
-        // Iterate through all the virtual nodes generated for this real node
-        Iterator<VirtualNode> nodeLit = element.getVirtualNodeList().iterator();
-
-        while (nodeLit.hasNext()) {
-          VirtualNode vn = nodeLit.next();
-
-          // Iterate through all the virtual links that start from this virtual node
-          Iterator<VirtualLink> linkLit = vn.getVirtualLinkList().iterator();
-
-          while (linkLit.hasNext()) {
-            VirtualLink vl = linkLit.next();
-            byte[] groups = virtualNet.getGroups();
-
-            for (byte k = 0; k < (byte) groups.length; k++) {
-              numerator += Math.abs(vl.getCurrentFlow(k) - vl.getPreviousFlow(k));
-              denominator += vl.getCurrentFlow(k);
-            }
-          }
-
-          currentGap = numerator / denominator;
-
-          if (currentGap > maxGap) {
-            maxGap = currentGap;
-          }
-        }
-      }
-
-      if (maxGap < precision) {
-        return true;
-      } else {
-        return false;
-      }
-    } else {
-      return false;
-    }
-  }
 }
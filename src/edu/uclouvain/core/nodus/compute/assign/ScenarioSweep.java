@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign;
+
+import edu.uclouvain.core.nodus.compute.od.ODReader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Assigns a series of scenarios that only differ by the value of some variables of the cost
+ * functions (tolls, fuel prices...). Each scenario is assigned with a copy of a set of base
+ * parameters, in which the variables are overridden, and its results are saved in its own virtual
+ * network table.
+ *
+ * <p>The virtual network is generated and the OD matrix is read only once, for the first scenario.
+ * The next scenarios reuse them (see VirtualNetworkCache and ODReader.setShareDemand) and only
+ * compute their costs, route their demand and save their results.
+ *
+ * @author Bart Jourquin
+ */
+public class ScenarioSweep {
+
+  private List<Assignment> assignments = new ArrayList<>();
+
+  private AssignmentParameters baseParameters;
+
+  private int method;
+
+  private List<Integer> scenarios = new ArrayList<>();
+
+  private List<Properties> variables = new ArrayList<>();
+
+  /**
+   * Initializes a sweep.
+   *
+   * @param baseParameters The parameters shared by all the scenarios.
+   * @param method The assignment method, as in Assignment.newAssignment().
+   */
+  public ScenarioSweep(AssignmentParameters baseParameters, int method) {
+    this.baseParameters = baseParameters;
+    this.method = method;
+  }
+
+  /**
+   * Adds a scenario to the sweep.
+   *
+   * @param scenario The scenario the results are saved in.
+   * @param variables The cost function variables that take another value in this scenario.
+   */
+  public void addScenario(int scenario, Properties variables) {
+    scenarios.add(scenario);
+    this.variables.add(variables);
+  }
+
+  /**
+   * Returns the assignments run by the sweep, in the order of the scenarios. Their parameters give
+   * access to the time spent in each phase.
+   *
+   * @return The assignments.
+   */
+  public List<Assignment> getAssignments() {
+    return assignments;
+  }
+
+  /**
+   * Assigns the scenarios one after the other. Each assignment already runs its origins in
+   * parallel on all the threads. The sweep stops at the first assignment that fails.
+   *
+   * @return True if all the scenarios were assigned.
+   */
+  public boolean run() {
+    assignments.clear();
+    ODReader.setShareDemand(true);
+    try {
+      for (int i = 0; i < scenarios.size(); i++) {
+        Properties costFunctions = new Properties();
+        costFunctions.putAll(baseParameters.getCostFunctions());
+        costFunctions.putAll(variables.get(i));
+
+        AssignmentParameters ap = baseParameters.copy();
+        ap.setScenario(scenarios.get(i));
+        ap.setCostFunctions(costFunctions);
+
+        Assignment assignment = Assignment.newAssignment(method, ap);
+        assignments.add(assignment);
+        assignment.run();
+        if (!assignment.isSuccessful()) {
+          return false;
+        }
+      }
+    } finally {
+      ODReader.setShareDemand(false);
+    }
+    return true;
+  }
+}
@@ -26,17 +26,8 @@ import com.bbn.openmap.util.I18n;
 
 import edu.uclouvain.core.nodus.NodusC;
 import edu.uclouvain.core.nodus.NodusMapPanel;
-import edu.uclouvain.core.nodus.compute.assign.AllOrNothingAssignment;
 import edu.uclouvain.core.nodus.compute.assign.Assignment;
 import edu.uclouvain.core.nodus.compute.assign.AssignmentParameters;
-import edu.uclouvain.core.nodus.compute.assign.DynamicTimeDependentAssignment;
-import edu.uclouvain.core.nodus.compute.assign.ExactMFAssignment;
-import edu.uclouvain.core.nodus.compute.assign.FastMFAssignment;
-import edu.uclouvain.core.nodus.compute.assign.FrankWolfeAssignment;
-import edu.uclouvain.core.nodus.compute.assign.IncFrankWolfeAssignment;
-import edu.uclouvain.core.nodus.compute.assign.IncrementalAssignment;
-import edu.uclouvain.core.nodus.compute.assign.MSAAssignment;
-import edu.uclouvain.core.nodus.compute.assign.StaticAoNTimeDependentAssignment;
 import edu.uclouvain.core.nodus.compute.assign.modalsplit.ModalSplitMethod;
 import edu.uclouvain.core.nodus.compute.od.ODReader;
 import edu.uclouvain.core.nodus.database.JDBCUtils;
@@ -130,8 +121,12 @@ public class AssignmentDlg extends EscapeDialog {
 
   private JTabbedPane assignmentTabbedPane = new JTabbedPane();
 
+  private JRadioButton bushRadioButton = new JRadioButton();
+
   private JButton closeButton = new JButton();
 
+  private JCheckBox convergenceChartCheckBox = null;
+
   private JComboBox<String> costFunctionsComboBox = new JComboBox<>();
 
   private JLabel costFunctionsLabel = new JLabel();
@@ -306,8 +301,8 @@ public class AssignmentDlg extends EscapeDialog {
     ap.setNbIterations(Integer.parseInt(iterationSpinner.getValue().toString()));
     ap.setScenario(Integer.parseInt(scenarioSpinner.getValue().toString()));
     ap.setPrecision(Float.parseFloat(precisionSpinner.getValue().toString()));
-    ap.setSavePaths(pathsCheckBox.isSelected());
-    ap.setDetailedPaths(detailedPathCheckBox.isSelected());
+    ap.setSavePaths(pathsCheckBox.isEnabled() && pathsCheckBox.isSelected());
+    ap.setDetailedPaths(detailedPathCheckBox.isEnabled() && detailedPathCheckBox.isSelected());
     ap.setCostMarkup(Float.parseFloat(costMarkupSpinner.getValue().toString()));
     ap.setMaxDetourRatio(Float.parseFloat(maxDetourSpinner.getValue().toString()));
     ap.setRunPostAssignmentScript(postAssignScriptChekbox.isSelected());
@@ -316,6 +311,18 @@ public class AssignmentDlg extends EscapeDialog {
     ap.setLogLostPaths(lostPathsCheckBox.isSelected());
     ap.setThreads(Integer.parseInt(threadsSpinner.getValue().toString()));
 
+    // Shortest path options that are not exposed in the dialog box
+    ap.setBidirectionalSearch(
+        nodusMapPanel
+            .getNodusProject()
+            .getLocalProperty(NodusC.PROP_BIDIRECTIONAL_SEARCH, false));
+    ap.setLogSettledNodes(
+        nodusMapPanel.getNodusProject().getLocalProperty(NodusC.PROP_LOG_SETTLED_NODES, false));
+    ap.setWarmStart(
+        nodusMapPanel.getNodusProject().getLocalProperty(NodusC.PROP_WARM_START, false));
+    ap.setWarmStartThreshold(
+        nodusMapPanel.getNodusProject().getLocalProperty(NodusC.PROP_WARM_START_THRESHOLD, 0.2));
+
     ModalSplitMethodName msmn = (ModalSplitMethodName) modalSplitMethodComboBox.getSelectedItem();
     if (msmn != null) {
       ap.setModalSplitMethodName(msmn.getName());
@@ -330,40 +337,12 @@ public class AssignmentDlg extends EscapeDialog {
     saveState();
 
     // Launch the assignment
-    int assignmentMethod = getSelectedAssignmentMethod();
-    Assignment as = null;
-    switch (assignmentMethod) {
-      case Assignment.ALL_OR_NOTHING:
-        as = new AllOrNothingAssignment(ap);
-        break;
-      case Assignment.MSA:
-        as = new MSAAssignment(ap);
-        break;
-      case Assignment.INCREMENTAL:
-        as = new IncrementalAssignment(ap);
-        break;
-      case Assignment.FRANK_WOLFE:
-        as = new FrankWolfeAssignment(ap);
-        break;
-      case Assignment.INCREMENTAL_FRANK_WOLFE:
-        as = new IncFrankWolfeAssignment(ap);
-        break;
-      case Assignment.FAST_MULTI_FLOW:
-        as = new FastMFAssignment(ap);
-        break;
-      case Assignment.EXACT_MULTI_FLOW:
-        as = new ExactMFAssignment(ap);
-        break;
-      case Assignment.AON_TIME_DEPENDENT:
-        ap.setTimeDependent(true);
-        as = new StaticAoNTimeDependentAssignment(ap);
-        break;
-      case Assignment.DYNAMIC_TIME_DEPENDENT:
-        ap.setTimeDependent(true);
-        as = new DynamicTimeDependentAssignment(ap);
-        break;
-      default:
-        break;
+    Assignment as = Assignment.newAssignment(getSelectedAssignmentMethod(), ap);
+    if (convergenceChartCheckBox.isEnabled() && convergenceChartCheckBox.isSelected()) {
+      ConvergenceChartDlg chartDlg =
+          new ConvergenceChartDlg(nodusMapPanel.getMainFrame(), ap.getScenario());
+      as.addIterationListener(chartDlg);
+      chartDlg.setVisible(true);
     }
     Thread t = new Thread(as);
     t.start();
@@ -490,6 +469,21 @@ public class AssignmentDlg extends EscapeDialog {
     return dynamicTimeDependentRadioButton;
   }
 
+  /**
+   * This method initializes the convergence chart check box.
+   *
+   * @return javax.swing.JCheckBox
+   */
+  private JCheckBox getConvergenceChartCheckBox() {
+    if (convergenceChartCheckBox == null) {
+      convergenceChartCheckBox = new JCheckBox();
+      convergenceChartCheckBox.setText(
+          i18n.get(AssignmentDlg.class, "Convergence_chart", "Convergence chart"));
+      convergenceChartCheckBox.setOpaque(false);
+    }
+    return convergenceChartCheckBox;
+  }
+
   /**
    * This method initializes jCheckBox.
    *
@@ -660,6 +654,11 @@ public class AssignmentDlg extends EscapeDialog {
     if (dynamicTimeDependentRadioButton.isSelected()) {
       assignmentMethod = 8;
     }
+
+    // Bush based
+    if (bushRadioButton.isSelected()) {
+      assignmentMethod = 9;
+    }
     return assignmentMethod;
   }
 
@@ -1038,6 +1037,15 @@ public class AssignmentDlg extends EscapeDialog {
           }
         });
 
+    bushRadioButton.setText(i18n.get(AssignmentDlg.class, "Bush_based", "Bush based method"));
+    bushRadioButton.addActionListener(
+        new java.awt.event.ActionListener() {
+          @Override
+          public void actionPerformed(ActionEvent e) {
+            bushRadioButton_stateChanged(e);
+          }
+        });
+
     exactMFRadioButton.setText(
         i18n.get(AssignmentDlg.class, "Multi_flow_Exact_method", "Multi-flow (Exact method)"));
     exactMFRadioButton.addActionListener(
@@ -1341,6 +1349,34 @@ public class AssignmentDlg extends EscapeDialog {
             new Insets(5, 5, 5, 5),
             0,
             0));
+    equilibriumTab.add(
+        bushRadioButton,
+        new GridBagConstraints(
+            0,
+            4,
+            1,
+            1,
+            0.1,
+            0.0,
+            GridBagConstraints.NORTHWEST,
+            GridBagConstraints.NONE,
+            new Insets(5, 5, 5, 5),
+            0,
+            0));
+    equilibriumTab.add(
+        getConvergenceChartCheckBox(),
+        new GridBagConstraints(
+            1,
+            4,
+            1,
+            1,
+            0.0,
+            0.0,
+            GridBagConstraints.WEST,
+            GridBagConstraints.NONE,
+            new Insets(5, 0, 5, 5),
+            0,
+            0));
     assignmentTabbedPane.add(
         multiflowTab, i18n.get(AssignmentDlg.class, "Multi_flow", "Multi-flow"));
 
@@ -1450,7 +1486,10 @@ public class AssignmentDlg extends EscapeDialog {
             });
     final SpinnerListModel precisionSpinnerModel =
         new SpinnerListModel(
-            new String[] {"0.05", "0.06", "0.07", "0.08", "0.09", "0.1", "0.15", "0.2"});
+            new String[] {
+              "0.00001", "0.0001", "0.001", "0.01", "0.05", "0.06", "0.07", "0.08", "0.09", "0.1",
+              "0.15", "0.2"
+            });
 
     final SpinnerListModel costMarkUpSpinnerModel =
         new SpinnerListModel(
@@ -1557,6 +1596,7 @@ public class AssignmentDlg extends EscapeDialog {
     assignmentButtonGroup.add(msaRadioButton);
     assignmentButtonGroup.add(frankWolfeRadioButton);
     assignmentButtonGroup.add(incFrankWolfeRadioButton);
+    assignmentButtonGroup.add(bushRadioButton);
     assignmentButtonGroup.add(exactMFRadioButton);
     assignmentButtonGroup.add(fastMFRadioButton);
     assignmentButtonGroup.add(incrementalRadioButton);
@@ -1567,6 +1607,7 @@ public class AssignmentDlg extends EscapeDialog {
     if (nodusMapPanel.isDemoVersion()) {
       frankWolfeRadioButton.setEnabled(false);
       incFrankWolfeRadioButton.setEnabled(false);
+      bushRadioButton.setEnabled(false);
       msaRadioButton.setEnabled(false);
       incrementalRadioButton.setEnabled(false);
       exactMFRadioButton.setEnabled(false);
@@ -1584,6 +1625,15 @@ public class AssignmentDlg extends EscapeDialog {
     pack();
   }
 
+  /**
+   * Enables the GUI components relevant for the bush based assignment method.
+   *
+   * @param e ChangeEvent
+   */
+  private void bushRadioButton_stateChanged(ActionEvent e) {
+    updateOptions();
+  }
+
   /**
    * Enables the GUI components relevant for the MSA assignment method.
    *
@@ -1813,6 +1863,17 @@ public class AssignmentDlg extends EscapeDialog {
       lostPathsCheckBox.setSelected(false);
     }
 
+    // Chart the convergence of the equilibrium methods
+    intValue =
+        nodusMapPanel
+            .getNodusProject()
+            .getLocalProperty(NodusC.PROP_ASSIGNMENT_CONVERGENCE_CHART, 0);
+    if (intValue == 1) {
+      convergenceChartCheckBox.setSelected(true);
+    } else {
+      convergenceChartCheckBox.setSelected(false);
+    }
+
     // Limit assignment to highlighted area
     if (nodusMapPanel.isHighlightedAreaLayerVisible()) {
       highlightedAreaCheckBox.setEnabled(true);
@@ -2031,6 +2092,12 @@ public class AssignmentDlg extends EscapeDialog {
         .getNodusProject()
         .setLocalProperty(NodusC.PROP_ASSIGNMENT_LOG_LOST_PATHS + scenarioSuffix, i);
 
+    i = 0;
+    if (convergenceChartCheckBox.isSelected()) {
+      i = 1;
+    }
+    nodusMapPanel.getNodusProject().setLocalProperty(NodusC.PROP_ASSIGNMENT_CONVERGENCE_CHART, i);
+
     i = 0;
     if (postAssignScriptChekbox.isSelected()) {
       i = 1;
@@ -2128,6 +2195,10 @@ public class AssignmentDlg extends EscapeDialog {
       case Assignment.DYNAMIC_TIME_DEPENDENT:
         dynamicTimeDependentRadioButton.setSelected(true);
         break;
+
+      case Assignment.BUSH_BASED:
+        bushRadioButton.setSelected(true);
+        break;
       default:
         break;
     }
@@ -2182,6 +2253,8 @@ public class AssignmentDlg extends EscapeDialog {
     maxDetourLabel.setEnabled(enabled);
     maxDetourSpinner.setEnabled(enabled);
     keepCheapestOnlyCheckBox.setEnabled(enabled);
+    convergenceChartCheckBox.setEnabled(enabled);
+    pathsCheckBox.setEnabled(true);
 
     if (pathsCheckBox.isSelected()) {
       detailedPathCheckBox.setEnabled(true);
@@ -2207,6 +2280,7 @@ public class AssignmentDlg extends EscapeDialog {
     if (msaRadioButton.isSelected()) {
       precisionLabel.setEnabled(true);
       precisionSpinner.setEnabled(true);
+      convergenceChartCheckBox.setEnabled(true);
       iterationLabel.setEnabled(true);
       iterationSpinner.setEnabled(true);
 
@@ -2223,6 +2297,7 @@ public class AssignmentDlg extends EscapeDialog {
     if (frankWolfeRadioButton.isSelected()) {
       precisionLabel.setEnabled(true);
       precisionSpinner.setEnabled(true);
+      convergenceChartCheckBox.setEnabled(true);
       iterationLabel.setEnabled(true);
       iterationSpinner.setEnabled(true);
 
@@ -2232,12 +2307,26 @@ public class AssignmentDlg extends EscapeDialog {
     if (incFrankWolfeRadioButton.isSelected()) {
       precisionLabel.setEnabled(true);
       precisionSpinner.setEnabled(true);
+      convergenceChartCheckBox.setEnabled(true);
       iterationLabel.setEnabled(true);
       iterationSpinner.setEnabled(true);
 
       return;
     }
 
+    // The bushes do not keep the paths
+    if (bushRadioButton.isSelected()) {
+      precisionLabel.setEnabled(true);
+      precisionSpinner.setEnabled(true);
+      convergenceChartCheckBox.setEnabled(true);
+      iterationLabel.setEnabled(true);
+      iterationSpinner.setEnabled(true);
+      pathsCheckBox.setEnabled(false);
+      detailedPathCheckBox.setEnabled(false);
+
+      return;
+    }
+
     if (fastMFRadioButton.isSelected()) {
       iterationLabel.setEnabled(true);
       iterationSpinner.setEnabled(true);
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package edu.uclouvain.core.nodus.compute.assign.gui;
+
+import com.bbn.openmap.Environment;
+import com.bbn.openmap.util.I18n;
+
+import edu.uclouvain.core.nodus.compute.assign.Assignment;
+import edu.uclouvain.core.nodus.compute.assign.IterationListener;
+import edu.uclouvain.core.nodus.compute.assign.IterationMetrics;
+import edu.uclouvain.core.nodus.swing.EscapeDialog;
+
+import java.awt.BorderLayout;
+import java.awt.Frame;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import org.knowm.xchart.XChartPanel;
+import org.knowm.xchart.XYChart;
+import org.knowm.xchart.XYChartBuilder;
+import org.knowm.xchart.XYSeries.XYSeriesRenderStyle;
+import org.knowm.xchart.style.Styler.ChartTheme;
+
+/**
+ * Non modal dialog that charts the relative gap and the flow change of an iterative assignment
+ * while it runs. Both indicators are drawn on a logarithmic scale, so the values that are not
+ * computed or not positive are skipped.
+ *
+ * @author Bart Jourquin
+ */
+public class ConvergenceChartDlg extends EscapeDialog implements IterationListener {
+
+  /** Serial UID. */
+  private static final long serialVersionUID = -3216847012559386207L;
+
+  /** I18N mechanism. */
+  private static I18n i18n = Environment.getI18n();
+
+  private XYChart chart;
+
+  private XChartPanel<XYChart> chartPanel;
+
+  private List<Integer> flowChangeIterations = new ArrayList<>();
+
+  private String flowChangeName =
+      i18n.get(ConvergenceChartDlg.class, "Flow_change", "Flow change");
+
+  private List<Double> flowChanges = new ArrayList<>();
+
+  private List<Integer> gapIterations = new ArrayList<>();
+
+  private String gapName = i18n.get(ConvergenceChartDlg.class, "Relative_gap", "Relative gap");
+
+  private List<Double> gaps = new ArrayList<>();
+
+  private List<Integer> resettledIterations = new ArrayList<>();
+
+  private String resettledName =
+      i18n.get(ConvergenceChartDlg.class, "Resettled_share", "Nodes settled again");
+
+  private List<Double> resettledShares = new ArrayList<>();
+
+  /**
+   * Creates the dialog.
+   *
+   * @param owner The frame of the application.
+   * @param scenario The scenario being assigned.
+   */
+  public ConvergenceChartDlg(Frame owner, int scenario) {
+    super(
+        owner,
+        MessageFormat.format(
+            i18n.get(ConvergenceChartDlg.class, "Convergence", "Convergence of scenario {0}"),
+            scenario),
+        false);
+
+    chart =
+        new XYChartBuilder()
+            .width(600)
+            .height(400)
+            .xAxisTitle(i18n.get(ConvergenceChartDlg.class, "Iteration", "Iteration"))
+            .yAxisTitle(i18n.get(ConvergenceChartDlg.class, "Value", "Value"))
+            .theme(ChartTheme.Matlab)
+            .build();
+    chart.getStyler().setDefaultSeriesRenderStyle(XYSeriesRenderStyle.Line);
+    chart.getStyler().setYAxisLogarithmic(true);
+
+    chartPanel = new XChartPanel<>(chart);
+    getContentPane().add(chartPanel, BorderLayout.CENTER);
+    pack();
+    setLocationRelativeTo(owner);
+  }
+
+  /**
+   * Adds a point to a series, creating the series with its first point.
+   *
+   * @param name The name of the series.
+   * @param iterations The iterations of the series.
+   * @param values The values of the series.
+   * @param iteration The iteration of the point.
+   * @param value The value of the point.
+   */
+  private void addPoint(
+      String name, List<Integer> iterations, List<Double> values, int iteration, double value) {
+    if (Double.isNaN(value) || value <= 0) {
+      return;
+    }
+    iterations.add(iteration);
+    values.add(value);
+    if (iterations.size() == 1) {
+      chart.addSeries(name, iterations, values);
+    } else {
+      chart.updateXYSeries(name, iterations, values, null);
+    }
+  }
+
+  @Override
+  public void iterationDone(Assignment assignment, IterationMetrics metrics) {
+    SwingUtilities.invokeLater(
+        () -> {
+          addPoint(
+              gapName, gapIterations, gaps, metrics.getIteration(), metrics.getRelativeGap());
+          addPoint(
+              flowChangeName,
+              flowChangeIterations,
+              flowChanges,
+              metrics.getIteration(),
+              metrics.getFlowChange());
+          addPoint(
+              resettledName,
+              resettledIterations,
+              resettledShares,
+              metrics.getIteration(),
+              metrics.getResettledShare());
+          chartPanel.revalidate();
+          chartPanel.repaint();
+        });
+  }
+}
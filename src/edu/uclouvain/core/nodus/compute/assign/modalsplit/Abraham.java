@@ -77,7 +77,7 @@ public class Abraham extends ModalSplitMethod {
                 Assignment.class,
                 "Abraham_exponent_error",
                 "The exponent for the Abraham method must be a strict negative value");
-        JOptionPane.showMessageDialog(null, s, NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+        getNodusProject().getProgressListener().showMessage(s, JOptionPane.ERROR_MESSAGE);
       }
     }
 
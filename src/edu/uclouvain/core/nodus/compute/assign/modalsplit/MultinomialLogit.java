@@ -105,6 +105,10 @@ public class MultinomialLogit extends ModalSplitMethod {
             String msg =
                 i18n.get(
                     ModalSplitMethod.class, "calibrate", "Weights are too high. Please calibrate");
+            if (getNodusProject().getNodusMapPanel() == null) {
+              getNodusProject().getProgressListener().showMessage(msg, JOptionPane.WARNING_MESSAGE);
+              return false;
+            }
             String title = i18n.get(ModalSplitMethod.class, "MNL", "Multinomial logit");
             JOptionPane pane = new JOptionPane(msg, JOptionPane.WARNING_MESSAGE);
             JDialog dialog = pane.createDialog(getNodusProject().getMainFrame(), title);
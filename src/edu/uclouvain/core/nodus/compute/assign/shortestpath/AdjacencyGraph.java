@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign.shortestpath;
+
+import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
+
+/**
+ * Compressed sparse row representation of the virtual network generated for a group. The arcs that
+ * leave a virtual node n are stored, in the order of its list of virtual links, at the indexes
+ * firstArc[n] (included) to firstArc[n + 1] (excluded) of the arc arrays. Virtual nodes are
+ * numbered from 1, so the slot 0 is never used. All variables are public for performance reasons.
+ *
+ * @author Bart Jourquin
+ */
+public class AdjacencyGraph {
+
+  /** Index of the first arc that leaves each node. */
+  public int[] firstArc;
+
+  /** Node at the end of each arc. */
+  public int[] head;
+
+  /** Latitude of each node. */
+  public double[] latitude;
+
+  /** Longitude of each node. */
+  public double[] longitude;
+
+  /**
+   * The weights computed by the cost functions. This is used in the multi-flow algorithms were
+   * alternative paths are not computed on the base of the actual cost of the link.
+   */
+  public double[] originalWeight;
+
+  /** Node at the beginning of each arc. */
+  public int[] tail;
+
+  /** Points to the virtual link each arc refers to. */
+  public VirtualLink[] virtualLink;
+
+  /** Weight of each arc, used during path computation. */
+  public double[] weight;
+
+  /**
+   * Allocates a graph.
+   *
+   * @param nbNodes The number of nodes, including the unused slot 0.
+   * @param nbArcs The number of arcs.
+   */
+  public AdjacencyGraph(int nbNodes, int nbArcs) {
+    firstArc = new int[nbNodes + 1];
+    latitude = new double[nbNodes];
+    longitude = new double[nbNodes];
+
+    head = new int[nbArcs];
+    tail = new int[nbArcs];
+    weight = new double[nbArcs];
+    originalWeight = weight;
+    virtualLink = new VirtualLink[nbArcs];
+  }
+
+  /**
+   * Returns a copy of this graph that shares its structure but has its own weights. Used by the
+   * algorithms that modify the weights of the arcs during the computation of a tree.
+   *
+   * @return A copy of the graph.
+   */
+  public AdjacencyGraph copy() {
+    AdjacencyGraph g = new AdjacencyGraph(0, 0);
+    g.firstArc = firstArc;
+    g.head = head;
+    g.latitude = latitude;
+    g.longitude = longitude;
+    g.originalWeight = originalWeight;
+    g.tail = tail;
+    g.virtualLink = virtualLink;
+    g.weight = weight.clone();
+    return g;
+  }
+
+  /**
+   * Returns the number of arcs in the graph.
+   *
+   * @return The number of arcs.
+   */
+  public int getNbArcs() {
+    return head.length;
+  }
+
+  /**
+   * Returns the number of nodes in the graph, including the unused slot 0.
+   *
+   * @return The number of nodes.
+   */
+  public int getNbNodes() {
+    return firstArc.length - 1;
+  }
+
+  /**
+   * Returns the straight-line distance between a node and the goal (used by AStar).
+   *
+   * @param node The node.
+   * @param goal The goal.
+   * @return The straight-line distance to the goal.
+   */
+  public double goalEst(int node, int goal) {
+    return Math.sqrt(
+        Math.pow(Math.abs(longitude[goal] - longitude[node]), 2)
+            + Math.pow(Math.abs(latitude[goal] - latitude[node]), 2));
+  }
+}
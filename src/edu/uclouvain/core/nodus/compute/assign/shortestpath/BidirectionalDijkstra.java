@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign.shortestpath;
+
+/**
+ * A bidirectional implementation of the algorithm of Dijkstra, used to compute the shortest path
+ * between a single origin and a single destination. A forward search is grown from the source and
+ * a backward search from the goal, following the arcs in the reverse direction. The search stops
+ * as soon as the sum of the smallest keys of both heaps exceeds the cost of the best path found
+ * so far, which is then optimal.
+ *
+ * <p>Contrary to an heuristic goal estimate, this needs no lower bound on the cost to the goal and
+ * remains exact when the weights of the graph are modified between two searches (cost mark-ups in
+ * the multi-flow assignments for instance).
+ *
+ * <p>Once the search is done, the path is available through the predecessors of the nodes, as for
+ * the other algorithms.
+ *
+ * @author Bart Jourquin
+ */
+public class BidirectionalDijkstra extends BinaryHeapDijkstra {
+
+  /** Priority queue of the backward search. Its keys are the estimates of the costs to the goal. */
+  private IndexedDaryHeap backwardHeap;
+
+  /** Nodes on the forward part of the last path, flagged with the current stamp. */
+  private int[] forwardPathStamp;
+
+  private int forwardStamp;
+
+  /** Nodes outside the forward tree which predecessor was set to rebuild the last path. */
+  private int[] patchedNodes;
+
+  private int nbPatchedNodes;
+
+  /** Forward arcs, sorted by head node. */
+  private int[] reverseArc;
+
+  /** Index in reverseArc of the first arc that enters each node. */
+  private int[] reverseFirstArc;
+
+  /** For each node reached by the backward search, the arc used to go towards the goal. */
+  private int[] succArcs;
+
+  /**
+   * Initializes the data structures, using a heap of default arity.
+   *
+   * @param graph AdjacencyGraph
+   */
+  public BidirectionalDijkstra(AdjacencyGraph graph) {
+    this(graph, IndexedDaryHeap.DEFAULT_ARITY);
+  }
+
+  /**
+   * Initializes the data structures, including the reverse adjacency of the graph.
+   *
+   * @param graph AdjacencyGraph
+   * @param arity The arity of the heaps (2, 4 or 8)
+   */
+  public BidirectionalDijkstra(AdjacencyGraph graph, int arity) {
+    super(graph, arity);
+    int nbNodes = graph.getNbNodes();
+    int nbArcs = graph.getNbArcs();
+
+    reverseFirstArc = new int[nbNodes + 1];
+    for (int arc = 0; arc < nbArcs; arc++) {
+      reverseFirstArc[graph.head[arc] + 1]++;
+    }
+    for (int node = 0; node < nbNodes; node++) {
+      reverseFirstArc[node + 1] += reverseFirstArc[node];
+    }
+    reverseArc = new int[nbArcs];
+    int[] position = new int[nbNodes];
+    System.arraycopy(reverseFirstArc, 0, position, 0, nbNodes);
+    for (int arc = 0; arc < nbArcs; arc++) {
+      reverseArc[position[graph.head[arc]]++] = arc;
+    }
+
+    backwardHeap = new IndexedDaryHeap(nbNodes, arity);
+    succArcs = new int[nbNodes];
+    patchedNodes = new int[nbNodes];
+    forwardPathStamp = new int[nbNodes];
+  }
+
+  /**
+   * Computes the shortest path between two nodes.
+   *
+   * @param source Loading virtual node num
+   * @param goal Unloading virtual node num
+   */
+  @Override
+  public void compute(int source, int goal) {
+    for (int i = 0; i < nbPatchedNodes; i++) {
+      pi[patchedNodes[i]] = 0;
+      predArcs[patchedNodes[i]] = -1;
+    }
+    nbPatchedNodes = 0;
+
+    initializeSingleSource(source);
+    backwardHeap.clear();
+    backwardHeap.decreaseKey(goal, 0);
+
+    if (source == goal) {
+      return;
+    }
+
+    double bestWeight = Double.MAX_VALUE;
+    int meetingArc = -1;
+
+    while (!heap.isEmpty() && !backwardHeap.isEmpty()) {
+      double forwardKey = heap.getMinKey();
+      double backwardKey = backwardHeap.getMinKey();
+      if (forwardKey + backwardKey >= bestWeight) {
+        break;
+      }
+
+      if (forwardKey <= backwardKey) {
+        // Grow the forward tree
+        int min = heap.extractMin();
+        double minWeight = heap.getKey(min);
+        int lastArc = graph.firstArc[min + 1];
+        for (int arc = graph.firstArc[min]; arc < lastArc; arc++) {
+          int v = graph.head[arc];
+          double newWeight = minWeight + graph.weight[arc];
+
+          // Arcs with an infinite weight are forbidden
+          if (!(newWeight < Double.MAX_VALUE)) {
+            continue;
+          }
+          if (heap.decreaseKey(v, newWeight)) {
+            pi[v] = min;
+            predArcs[v] = arc;
+          }
+          if (backwardHeap.isVisited(v)) {
+            double pathWeight = newWeight + backwardHeap.getKey(v);
+            if (pathWeight < bestWeight) {
+              bestWeight = pathWeight;
+              meetingArc = arc;
+            }
+          }
+        }
+      } else {
+        // Grow the backward tree
+        int min = backwardHeap.extractMin();
+        double minWeight = backwardHeap.getKey(min);
+        int lastArc = reverseFirstArc[min + 1];
+        for (int i = reverseFirstArc[min]; i < lastArc; i++) {
+          int arc = reverseArc[i];
+          int v = graph.tail[arc];
+          double newWeight = minWeight + graph.weight[arc];
+
+          if (!(newWeight < Double.MAX_VALUE)) {
+            continue;
+          }
+          if (backwardHeap.decreaseKey(v, newWeight)) {
+            succArcs[v] = arc;
+          }
+          if (heap.isVisited(v)) {
+            double pathWeight = heap.getKey(v) + newWeight;
+            if (pathWeight < bestWeight) {
+              bestWeight = pathWeight;
+              meetingArc = arc;
+            }
+          }
+        }
+      }
+    }
+
+    if (meetingArc != -1) {
+      rebuildPath(source, goal, meetingArc);
+    }
+  }
+
+  /**
+   * Returns the number of nodes settled by both searches for the last computed path.
+   *
+   * @return int
+   */
+  @Override
+  public int getNbSettledNodes() {
+    return heap.getNbSettled() + backwardHeap.getNbSettled();
+  }
+
+  /**
+   * Appends the backward part of the path to the forward tree, so that the path can be read from
+   * the goal to the source using the predecessors.
+   */
+  private void rebuildPath(int source, int goal, int meetingArc) {
+    // Flag the nodes of the forward part of the path
+    forwardStamp++;
+    int node = graph.tail[meetingArc];
+    forwardPathStamp[node] = forwardStamp;
+    while (node != source) {
+      node = pi[node];
+      forwardPathStamp[node] = forwardStamp;
+    }
+
+    /*
+     * Link the nodes of the backward part. A node that also belongs to the forward part (which can
+     * only happen with zero cost cycles) keeps its forward predecessor, to avoid loops.
+     */
+    int predecessor = graph.tail[meetingArc];
+    int arc = meetingArc;
+    while (true) {
+      node = graph.head[arc];
+      if (forwardPathStamp[node] != forwardStamp) {
+        if (!heap.isVisited(node)) {
+          patchedNodes[nbPatchedNodes++] = node;
+        }
+        pi[node] = predecessor;
+        predArcs[node] = arc;
+      }
+      if (node == goal) {
+        break;
+      }
+      predecessor = node;
+      arc = succArcs[node];
+    }
+  }
+}
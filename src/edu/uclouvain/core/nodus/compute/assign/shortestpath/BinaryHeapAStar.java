@@ -22,19 +22,38 @@
 package edu.uclouvain.core.nodus.compute.assign.shortestpath;
 
 /**
- * An implementation of the AStar shortest path algorithm using a binary heap.
+ * An implementation of the AStar shortest path algorithm using an indexed d-ary heap. The keys of
+ * the heap are the shortest path estimates plus the estimates of the distances to the goal.
  *
  * @author Bart Jourquin
  */
 public class BinaryHeapAStar extends BinaryHeapDijkstra {
 
+  /** Shortest path estimates of the nodes visited by the current search. */
+  private double[] distance;
+
+  /** Estimates of the distance to the goal of the nodes visited by the current search. */
+  private double[] goalEstWeight;
+
+  /**
+   * Initializes the data structures, using a heap of default arity.
+   *
+   * @param graph AdjacencyGraph
+   */
+  public BinaryHeapAStar(AdjacencyGraph graph) {
+    this(graph, IndexedDaryHeap.DEFAULT_ARITY);
+  }
+
   /**
    * Initializes the data structures.
    *
-   * @param graph AdjacencyNode[]
+   * @param graph AdjacencyGraph
+   * @param arity The arity of the heap (2, 4 or 8)
    */
-  public BinaryHeapAStar(AdjacencyNode[] graph) {
-    super(graph);
+  public BinaryHeapAStar(AdjacencyGraph graph, int arity) {
+    super(graph, arity);
+    distance = new double[graph.getNbNodes()];
+    goalEstWeight = new double[graph.getNbNodes()];
   }
 
   /**
@@ -43,10 +62,13 @@ public class BinaryHeapAStar extends BinaryHeapDijkstra {
    * @param source Loading virtual node num
    * @param goal Unloading virtual node num
    */
+  @Override
   public void compute(int source, int goal) {
-    this.initializeSingleSource(graph, source);
+    initializeSingleSource(source);
+    distance[source] = 0;
+    goalEstWeight[source] = 0;
 
-    int min = extractMin();
+    int min = heap.extractMin();
 
     while (min != goal) {
       if (min == -1) {
@@ -54,110 +76,34 @@ public class BinaryHeapAStar extends BinaryHeapDijkstra {
         break;
       }
 
-      weights[min] = minWeight;
-
-      for (AdjacencyNode curNode = graph[min];
-          curNode.nextNode != null;
-          curNode = curNode.nextNode) {
-        relax(graph[min].virtualNodeNum, curNode.nextNode.virtualNodeNum, curNode.edgeWeight);
-
-        if (nodePos[curNode.nextNode.virtualNodeNum] != -1
-            && upperBoundCosts[nodePos[curNode.nextNode.virtualNodeNum]].goalEstWeight == 0) {
-          upperBoundCosts[nodePos[curNode.nextNode.virtualNodeNum]].updateGoalEstWeight(
-              curNode.nextNode.goalEst(graph[goal]));
+      double minWeight = distance[min];
+      int lastArc = graph.firstArc[min + 1];
+      for (int arc = graph.firstArc[min]; arc < lastArc; arc++) {
+        int v = graph.head[arc];
+        double newWeight = minWeight + graph.weight[arc];
+
+        // The estimate to the goal is only computed the first time a node is reached
+        double estimate;
+        if (!heap.isVisited(v)) {
+          if (!(newWeight < Double.MAX_VALUE)) {
+            continue;
+          }
+          estimate = graph.goalEst(v, goal);
+        } else {
+          if (heap.isSettled(v) || newWeight >= distance[v]) {
+            continue;
+          }
+          estimate = goalEstWeight[v];
         }
-      }
-
-      min = extractMin();
-    }
-
-    weights[min] = minWeight;
-  }
-
-  /**
-   * This method lowers the value of a node in the binary heap and restores the heap property. The
-   * node is found in the heap using the nodePos array.
-   *
-   * @param nodeNum the number of the node to have its key decreased
-   * @param newVal the new key value
-   */
-  @Override
-  public void decreaseKey(int nodeNum, double newVal) {
-    int y = nodePos[nodeNum];
-    upperBoundCosts[y].updateWeight(newVal);
-
-    int parent = y >> 1;
-
-    while (parent != 0 && upperBoundCosts[y].keyWeight < upperBoundCosts[parent].keyWeight) {
-      swap(y, parent);
-      y = parent;
-      parent = y >> 1;
-    }
-  }
 
-  /**
-   * Heapify is a process that causes an input node to be swapped with the smaller of its children
-   * continually until either it reaches the bottom of the tree or is less than or equal to its
-   * children. Once the node "runs down" the tree, the heap property is restored for that node with
-   * respect to the node original position and its new children, if any.
-   *
-   * @param i the index in the binary heap array of the node to perform heapify on
-   */
-  @Override
-  public void heapify(int i) {
-    int l = i << 1;
-
-    int r = l + 1;
-    int smallest;
-
-    if (l <= heapSize && upperBoundCosts[l].keyWeight < upperBoundCosts[i].keyWeight) {
-      smallest = l;
-    } else {
-      smallest = i;
-    }
-
-    if (r <= heapSize && upperBoundCosts[r].keyWeight < upperBoundCosts[smallest].keyWeight) {
-      smallest = r;
-    }
-
-    if (smallest != i) {
-      swap(i, smallest);
-      heapify(smallest);
-    }
-  }
-
-  /**
-   * Initialize the shortest-path estimates and predecessor function. The predecessor function is
-   * left at the default of all zeros. Because there is no zero node in the graph, zero denotes a
-   * null value for a predecessor. The source node upperBoundCosts value is initially set to
-   * cost zero and all other nodes are set to have cost equal to the maximum double floating point
-   * precision value to represent infinity.
-   *
-   * @param graph the input graph in adjacency-list form
-   * @param source the number identifier of the source node
-   */
-  public void initializeSingleSource(AdjacencyNode[] graph, int source) {
-    for (int i = 0; i < upperBoundCosts.length; i++) {
-      upperBoundCosts[i] = stock[i];
-    }
-
-    upperBoundCosts[1].init(source, 0);
-    nodePos[source] = 1;
-
-    // BHNodes greater than source
-    int i = 2;
-
-    for (int nextNodeNum = source + 1; nextNodeNum < graph.length; i++, nextNodeNum++) {
-      upperBoundCosts[i].init(nextNodeNum, Double.MAX_VALUE);
-      nodePos[nextNodeNum] = i;
-    }
+        heap.decreaseKey(v, newWeight + estimate);
+        distance[v] = newWeight;
+        goalEstWeight[v] = estimate;
+        pi[v] = min;
+        predArcs[v] = arc;
+      }
 
-    // BHNodes less than source
-    for (int nextNodeNum = 1; nextNodeNum < source; i++, nextNodeNum++) {
-      upperBoundCosts[i].init(nextNodeNum, Double.MAX_VALUE);
-      nodePos[nextNodeNum] = i;
+      min = heap.extractMin();
     }
-
-    heapSize = upperBoundCosts.length - 1;
   }
 }
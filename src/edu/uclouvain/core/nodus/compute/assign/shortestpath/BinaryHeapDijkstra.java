@@ -22,52 +22,54 @@
 package edu.uclouvain.core.nodus.compute.assign.shortestpath;
 
 import edu.uclouvain.core.nodus.compute.od.ODCell;
+import edu.uclouvain.core.nodus.compute.od.ODDemand;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNodeList;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
 /**
- * A Binary Heap implementation of the algorithm of Dijkstra. The Binary Heap implementation has
- * been proven to be the most effective for the class of problems to be resolved by means of virtual
- * networks.
+ * A heap based implementation of the algorithm of Dijkstra. The heap implementation has been proven
+ * to be the most effective for the class of problems to be resolved by means of virtual networks.
+ *
+ * <p>The priority queue is an indexed d-ary heap backed by primitive arrays. Nodes are only
+ * inserted when they are reached for the first time and only the entries touched by the previous
+ * tree are reset, so that a tree that stops early, once all its destinations are reached, doesn't
+ * pay for the whole network.
  *
  * @author Bart Jourquin
  */
 public class BinaryHeapDijkstra {
 
+  /** Graph in which shortest paths must be computed. */
+  AdjacencyGraph graph;
+
+  /** Priority queue. Its keys are the shortest path estimates. */
+  IndexedDaryHeap heap;
+
   /**
-   * Array of BHNodes containing information on the upper bounds of the cost of a shortest path from
-   * source weights to a node in upperBoundCosts
+   * Set to true for the nodes that are a final destination in the set of routes that is computed.
+   * Used to improve the performances of the algorithm of Dijkstra, that now can stop once all the
+   * destinations are reached.
    */
-  BinaryHeapNode[] upperBoundCosts;
-
-  /** Graph in which shortest paths must be computed. */
-  AdjacencyNode[] graph;
+  boolean[] isNodeToReach;
 
-  /** Heap size. */
-  int heapSize;
+  /** Destinations marked in isNodeToReach, kept to unmark them before the next tree. */
+  private int[] markedNodes;
 
-  /** Weight of the shortest path to the vertex last extracted from the priority queue. */
-  double minWeight;
+  /** Number of marked destinations. */
+  private int nbMarkedNodes;
 
   /** Used to stop the search when all the nodes that have to be reached are reached. */
   int nbNodesToReach;
 
-  /** Positions of nodes in the heap -- needed for decreaseKey */
-  int[] nodePos;
-
   /** Set of predecessors. */
   int[] pi;
 
-  /** Set of weights of the shortest paths. */
-  double[] weights;
-
-  /**
-   * Array of BHNodes that will be allocated at the initialization of the class. Used to feed
-   * "upperBoundCosts" at each new shortest path tree computation.
-   */
-  BinaryHeapNode[] stock;
+  /** Set of arcs used to reach each node from its predecessor. */
+  int[] predArcs;
 
   /** Virtual network used for the assignment. */
   private VirtualNetwork virtualNet;
@@ -75,37 +77,41 @@ public class BinaryHeapDijkstra {
   /**
    * Initializes the needed data structures.
    *
-   * @param graph An array of adjacency nodes
+   * @param graph The graph
+   * @param arity The arity of the heap (2, 4 or 8)
    */
-  BinaryHeapDijkstra(AdjacencyNode[] graph) {
+  BinaryHeapDijkstra(AdjacencyGraph graph, int arity) {
     this.graph = graph;
-    weights = new double[graph.length];
+    int nbNodes = graph.getNbNodes();
 
-    for (int i = 0; i < graph.length; i++) {
-      weights[i] = Double.MAX_VALUE;
-    }
-
-    pi = new int[graph.length];
-
-    stock = new BinaryHeapNode[graph.length];
-    upperBoundCosts = new BinaryHeapNode[graph.length];
+    pi = new int[nbNodes];
+    predArcs = new int[nbNodes];
+    Arrays.fill(predArcs, -1);
+    isNodeToReach = new boolean[nbNodes];
+    markedNodes = new int[16];
 
-    // Initialization of binary heap specific implementation
-    for (int i = 0; i < graph.length; i++) {
-      stock[i] = new BinaryHeapNode();
-    }
+    heap = new IndexedDaryHeap(nbNodes, arity);
+  }
 
-    nodePos = new int[graph.length];
+  /**
+   * Initializes the data structures, using a heap of default arity.
+   *
+   * @param graph AdjacencyGraph
+   * @param virtualNet VirtualNetwork
+   */
+  public BinaryHeapDijkstra(AdjacencyGraph graph, VirtualNetwork virtualNet) {
+    this(graph, virtualNet, IndexedDaryHeap.DEFAULT_ARITY);
   }
 
   /**
    * Initializes the data structures.
    *
-   * @param graph AdjacencyNode[]
+   * @param graph AdjacencyGraph
    * @param virtualNet VirtualNetwork
+   * @param arity The arity of the heap (2, 4 or 8)
    */
-  public BinaryHeapDijkstra(AdjacencyNode[] graph, VirtualNetwork virtualNet) {
-    this(graph);
+  public BinaryHeapDijkstra(AdjacencyGraph graph, VirtualNetwork virtualNet, int arity) {
+    this(graph, arity);
     this.virtualNet = virtualNet;
   }
 
@@ -120,15 +126,47 @@ public class BinaryHeapDijkstra {
    */
   public void compute(int source, LinkedList<ODCell> demandList) {
     setNodesToReach(demandList);
+    run(source);
+  }
+
+  /**
+   * Runs the Dijkstra algorithm until the goal is reached.
+   *
+   * @param source Loading virtual node num
+   * @param goal Unloading virtual node num
+   */
+  public void compute(int source, int goal) {
+    setNodeToReach(goal);
+    run(source);
+  }
+
+  /**
+   * Runs the Dijkstra algorithm until all the destinations of a slice of the OD demand are
+   * reached.
+   *
+   * @param source Loading virtual node num used as source vertex
+   * @param odDemand The OD demand
+   * @param firstCell The index of the first cell to reach
+   * @param lastCell The index following the last cell to reach
+   */
+  public void compute(int source, ODDemand odDemand, int firstCell, int lastCell) {
+    setNodesToReach(odDemand, firstCell, lastCell);
+    run(source);
+  }
+
+  /**
+   * Grows the tree from the source until all the marked nodes are settled.
+   *
+   * @param source Loading virtual node num used as source vertex
+   */
+  private void run(int source) {
     initializeSingleSource(source);
 
-    int min = extractMin();
+    int min = heap.extractMin();
 
     while (min != -1) {
-      weights[min] = minWeight;
-
       // Speed-Up test
-      if (graph[min].isNodeToReach) {
+      if (isNodeToReach[min]) {
         nbNodesToReach--;
 
         if (nbNodesToReach == 0) {
@@ -136,59 +174,30 @@ public class BinaryHeapDijkstra {
         }
       }
 
-      for (AdjacencyNode cursor = graph[min]; cursor.nextNode != null; cursor = cursor.nextNode) {
-        relax(graph[min].virtualNodeNum, cursor.nextNode.virtualNodeNum, cursor.edgeWeight);
-      }
+      double minWeight = heap.getKey(min);
+      int lastArc = graph.firstArc[min + 1];
+      for (int arc = graph.firstArc[min]; arc < lastArc; arc++) {
+        int v = graph.head[arc];
+        double newWeight = minWeight + graph.weight[arc];
 
-      min = extractMin();
-    }
-  }
-
-  /**
-   * This method lowers the value of a node in the binary heap and restores the heap property. The
-   * node is found in the heap using the nodePos array.
-   *
-   * @param nodeNum int The number of the node to have its key decreased
-   * @param newVal double The new key value
-   */
-  public void decreaseKey(int nodeNum, double newVal) {
-
-    int y = nodePos[nodeNum];
-    upperBoundCosts[y].weight = newVal;
-
-    int parent = y >> 1;
+        // Arcs with an infinite weight are forbidden
+        if (newWeight < Double.MAX_VALUE && heap.decreaseKey(v, newWeight)) {
+          pi[v] = min;
+          predArcs[v] = arc;
+        }
+      }
 
-    while (parent != 0 && upperBoundCosts[y].weight < upperBoundCosts[parent].weight) {
-      swap(y, parent);
-      y = parent;
-      parent = y >> 1;
+      min = heap.extractMin();
     }
   }
 
   /**
-   * This method removes the minimum valued node form the binary heap, shifts the node at the bottom
-   * of the heap to the top and calls heapify on that node. If the heap is empty, -1 is returned.
+   * Returns the number of nodes settled by the last computed tree.
    *
-   * @return int The node number with the minimum shortest path estimate
+   * @return int
    */
-  public int extractMin() {
-    BinaryHeapNode min;
-
-    if (heapSize < 1) {
-      return -1;
-    }
-
-    min = upperBoundCosts[1];
-    nodePos[upperBoundCosts[1].id] = -1; // node removed from node positions
-    upperBoundCosts[1] = upperBoundCosts[heapSize];
-    nodePos[upperBoundCosts[1].id] = 1; // largest value node now in position
-    // one
-    upperBoundCosts[heapSize] = null; // remove node
-    heapSize--;
-    heapify(1);
-    minWeight = min.weight;
-
-    return min.id;
+  public int getNbSettledNodes() {
+    return heap.getNbSettled();
   }
 
   /**
@@ -201,90 +210,78 @@ public class BinaryHeapDijkstra {
   }
 
   /**
-   * Heapify is a process that causes an input node to be swapped with the smaller of its children
-   * continually until either it reaches the bottom of the tree or is less than or equal to its
-   * children. Once the node "runs down" the tree, the heap property is restored for that node with
-   * respect to the node original position and its new children, if any.
+   * Returns, for each node, the index of the arc used to reach it from its predecessor, or -1 if
+   * the node was not reached. This allows to read a path back without scanning the arcs of the
+   * predecessors.
    *
-   * @param i int the index in the binary heap array of the node to perform heapify on
+   * @return int[]
    */
-  public void heapify(int i) {
-    int l = i << 1;
-
-    int r = l + 1;
-    int smallest;
-
-    if (l <= heapSize && upperBoundCosts[l].weight < upperBoundCosts[i].weight) {
-      smallest = l;
-    } else {
-      smallest = i;
-    }
-
-    if (r <= heapSize && upperBoundCosts[r].weight < upperBoundCosts[smallest].weight) {
-      smallest = r;
-    }
-
-    if (smallest != i) {
-      swap(i, smallest);
-      heapify(smallest);
-    }
+  public int[] getPredecessorArcs() {
+    return predArcs;
   }
 
   /**
-   * Initialize the shortest-path estimates and predecessor function. The predecessor function is
-   * left at the default of all zeros. Because there is no zero node in the graph, zero denotes a
-   * null value for a predecessor. The source node upperBoundCosts value is initially set to
-   * cost zero and all other nodes are set to have cost equal to the maximum double floating point
-   * precision value to represent infinity.
+   * Initialize the shortest-path estimates and predecessor function. The predecessors of the nodes
+   * reached by the previous tree are reset to zero. Because there is no zero node in the graph,
+   * zero denotes a null value for a predecessor. The heap is then emptied and the source is
+   * inserted with a cost of zero. All other nodes implicitly have an infinite cost until they are
+   * reached.
    *
    * @param source The number identifier of the source node
    */
-  public void initializeSingleSource(int source) {
-    for (int i = 0; i < upperBoundCosts.length; i++) {
-      upperBoundCosts[i] = stock[i];
-    }
-
-    upperBoundCosts[1].init(source, 0);
-    nodePos[source] = 1;
-
-    // BHNodes greater than source
-    int i = 2;
-
-    for (int nextNodeNum = source + 1; nextNodeNum < graph.length; i++, nextNodeNum++) {
-      upperBoundCosts[i].init(nextNodeNum, Double.MAX_VALUE);
-      nodePos[nextNodeNum] = i;
+  void initializeSingleSource(int source) {
+    for (int i = heap.getNbVisited() - 1; i >= 0; i--) {
+      int node = heap.getVisited(i);
+      pi[node] = 0;
+      predArcs[node] = -1;
     }
+    heap.clear();
+    heap.decreaseKey(source, 0);
+  }
 
-    // BHNodes less than source
-    for (int nextNodeNum = 1; nextNodeNum < source; i++, nextNodeNum++) {
-      upperBoundCosts[i].init(nextNodeNum, Double.MAX_VALUE);
-      nodePos[nextNodeNum] = i;
+  /**
+   * Mark a single destination.
+   *
+   * @param goal The node to reach
+   */
+  private void setNodeToReach(int goal) {
+    for (int i = 0; i < nbMarkedNodes; i++) {
+      isNodeToReach[markedNodes[i]] = false;
     }
-
-    heapSize = upperBoundCosts.length - 1;
+    isNodeToReach[goal] = true;
+    markedNodes[0] = goal;
+    nbMarkedNodes = 1;
+    nbNodesToReach = 1;
   }
 
   /**
-   * Test if shortest path to v can be improved by going through u, and if so, updating
-   * upperBoundCosts[v] and pi[v]. w is the cost from u to v. if nodePos[v] is -1, then the shortest
-   * path to v has already been found and there is no need to do the relaxation.
+   * Mark the destinations of a slice of the OD demand.
    *
-   * @param u Vertex relaxing from
-   * @param v Vertex relaxing to
-   * @param w double The cost from u to v
+   * @param odDemand The OD demand
+   * @param firstCell The index of the first cell to reach
+   * @param lastCell The index following the last cell to reach
    */
-  public void relax(int u, int v, double w) {
+  private void setNodesToReach(ODDemand odDemand, int firstCell, int lastCell) {
+    for (int i = 0; i < nbMarkedNodes; i++) {
+      isNodeToReach[markedNodes[i]] = false;
+    }
+    nbMarkedNodes = 0;
 
-    if (nodePos[v] == -1) {
-      return;
+    if (markedNodes.length < lastCell - firstCell) {
+      markedNodes = new int[lastCell - firstCell];
     }
 
-    if (upperBoundCosts[nodePos[v]].weight > weights[u] + w) {
-      decreaseKey(v, weights[u] + w);
-      pi[v] = u;
+    VirtualNodeList[] vnl = virtualNet.getVirtualNodeLists();
+    for (int cell = firstCell; cell < lastCell; cell++) {
+      int index = vnl[odDemand.getDestinationIndex(cell)].getUnloadingVirtualNodeId();
 
-      heapify(nodePos[v]);
+      // A destination can appear several times in a time dependent matrix
+      if (!isNodeToReach[index]) {
+        isNodeToReach[index] = true;
+        markedNodes[nbMarkedNodes++] = index;
+      }
     }
+    nbNodesToReach = nbMarkedNodes;
   }
 
   /**
@@ -293,8 +290,13 @@ public class BinaryHeapDijkstra {
    * @param demandList OD matrix row from current source
    */
   private void setNodesToReach(LinkedList<ODCell> demandList) {
-    for (int i = 1; i < graph.length; i++) {
-      graph[i].isNodeToReach = false;
+    for (int i = 0; i < nbMarkedNodes; i++) {
+      isNodeToReach[markedNodes[i]] = false;
+    }
+    nbMarkedNodes = 0;
+
+    if (markedNodes.length < demandList.size()) {
+      markedNodes = new int[demandList.size()];
     }
 
     Iterator<ODCell> it = demandList.iterator();
@@ -308,24 +310,8 @@ public class BinaryHeapDijkstra {
               .getVirtualNodeLists()[
               virtualNet.getNodeIndexInVirtualNodeList(demand.getDestinationNodeId(), true)]
               .getUnloadingVirtualNodeId();
-      graph[index].isNodeToReach = true;
+      isNodeToReach[index] = true;
+      markedNodes[nbMarkedNodes++] = index;
     }
   }
-
-  /**
-   * The method is used by heapify and decreaseKey to switch the positions of two nodes in the
-   * binary heap.
-   *
-   * @param a int Index of node to be swapped in the binary heap array
-   * @param b int Index of other node to be swapped in the binary heap array
-   */
-  public void swap(int a, int b) {
-    BinaryHeapNode temp = upperBoundCosts[a];
-    upperBoundCosts[a] = upperBoundCosts[b];
-    upperBoundCosts[b] = temp;
-
-    int tempInt = nodePos[upperBoundCosts[a].id];
-    nodePos[upperBoundCosts[a].id] = nodePos[upperBoundCosts[b].id];
-    nodePos[upperBoundCosts[b].id] = tempInt;
-  }
 }
@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign.shortestpath;
+
+import java.util.Arrays;
+
+/**
+ * Indexed d-ary min-heap of node numbers, backed by primitive arrays. Nodes are only inserted the
+ * first time they are reached, and the heap is emptied in constant time by incrementing a
+ * generation counter: the key and position of a node are only valid if the node was stamped with
+ * the current generation. The nodes visited since the last clear are also recorded, so that the
+ * callers can reset their own per-node data without scanning the whole graph.
+ *
+ * <p>Supported arities are 2, 4 and 8. Wider heaps are shallower, which makes decreaseKey cheaper
+ * at the price of more comparisons in extractMin.
+ *
+ * @author Bart Jourquin
+ */
+public class IndexedDaryHeap {
+
+  /** Default arity. */
+  public static final int DEFAULT_ARITY = 4;
+
+  /** Generation in which each node was last visited. */
+  private int[] stamp;
+
+  /** Current generation. */
+  private int generation = 1;
+
+  /** Node stored at each position of the heap. */
+  private int[] heap;
+
+  /** Key of each node visited in the current generation. */
+  private double[] key;
+
+  /** Position of each node in the heap, or -1 if it was already extracted. */
+  private int[] pos;
+
+  /** Number of nodes in the heap. */
+  private int size;
+
+  /** log2 of the arity. */
+  private int shift;
+
+  /** Nodes visited since the last clear, in visiting order. */
+  private int[] visited;
+
+  /** Number of visited nodes. */
+  private int nbVisited;
+
+  /** Number of nodes extracted since the last clear. */
+  private int nbSettled;
+
+  /**
+   * Allocates a heap able to hold node numbers in [0, capacity[.
+   *
+   * @param capacity The number of nodes.
+   * @param arity 2, 4 or 8.
+   */
+  public IndexedDaryHeap(int capacity, int arity) {
+    switch (arity) {
+      case 2:
+        shift = 1;
+        break;
+      case 4:
+        shift = 2;
+        break;
+      case 8:
+        shift = 3;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported heap arity: " + arity);
+    }
+
+    stamp = new int[capacity];
+    heap = new int[capacity];
+    key = new double[capacity];
+    pos = new int[capacity];
+    visited = new int[capacity];
+  }
+
+  /** Empties the heap and forgets all the visited nodes. */
+  public void clear() {
+    size = 0;
+    nbVisited = 0;
+    nbSettled = 0;
+    generation++;
+    if (generation == Integer.MAX_VALUE) {
+      Arrays.fill(stamp, 0);
+      generation = 1;
+    }
+  }
+
+  /**
+   * Inserts a node with the given key if it was not visited yet, or lowers its key if it is still
+   * in the heap and the new key is smaller.
+   *
+   * @param node The node number.
+   * @param newKey The new key.
+   * @return True if the node was inserted or its key decreased.
+   */
+  public boolean decreaseKey(int node, double newKey) {
+    if (stamp[node] != generation) {
+      stamp[node] = generation;
+      visited[nbVisited++] = node;
+      key[node] = newKey;
+      siftUp(size++, node);
+      return true;
+    }
+
+    int p = pos[node];
+    if (p < 0 || newKey >= key[node]) {
+      return false;
+    }
+    key[node] = newKey;
+    siftUp(p, node);
+    return true;
+  }
+
+  /**
+   * Removes the node with the smallest key from the heap.
+   *
+   * @return The node number, or -1 if the heap is empty.
+   */
+  public int extractMin() {
+    if (size == 0) {
+      return -1;
+    }
+
+    int min = heap[0];
+    pos[min] = -1;
+    nbSettled++;
+    size--;
+    if (size > 0) {
+      siftDown(0, heap[size]);
+    }
+    return min;
+  }
+
+  /**
+   * Returns the key of a node, or Double.MAX_VALUE if it was not visited yet. The key of an
+   * extracted node remains available until the next clear.
+   *
+   * @param node The node number.
+   * @return The key.
+   */
+  public double getKey(int node) {
+    return stamp[node] == generation ? key[node] : Double.MAX_VALUE;
+  }
+
+  /**
+   * Returns the smallest key in the heap, without removing its node.
+   *
+   * @return The smallest key, or Double.MAX_VALUE if the heap is empty.
+   */
+  public double getMinKey() {
+    return size == 0 ? Double.MAX_VALUE : key[heap[0]];
+  }
+
+  /**
+   * Returns the number of nodes extracted since the last clear.
+   *
+   * @return int
+   */
+  public int getNbSettled() {
+    return nbSettled;
+  }
+
+  /**
+   * Returns the number of nodes visited since the last clear.
+   *
+   * @return int
+   */
+  public int getNbVisited() {
+    return nbVisited;
+  }
+
+  /**
+   * Returns the i-th node visited since the last clear.
+   *
+   * @param i Index in [0, getNbVisited()[.
+   * @return The node number.
+   */
+  public int getVisited(int i) {
+    return visited[i];
+  }
+
+  /**
+   * Tests whether a node was already extracted from the heap since the last clear.
+   *
+   * @param node The node number.
+   * @return boolean
+   */
+  public boolean isSettled(int node) {
+    return stamp[node] == generation && pos[node] < 0;
+  }
+
+  /**
+   * Tests whether a node was visited since the last clear.
+   *
+   * @param node The node number.
+   * @return boolean
+   */
+  public boolean isVisited(int node) {
+    return stamp[node] == generation;
+  }
+
+  /**
+   * Tests whether the heap is empty.
+   *
+   * @return boolean
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Moves a node from position p towards the root until its parent has a smaller key. */
+  private void siftUp(int p, int node) {
+    double k = key[node];
+    while (p > 0) {
+      int parent = (p - 1) >> shift;
+      int parentNode = heap[parent];
+      if (key[parentNode] <= k) {
+        break;
+      }
+      heap[p] = parentNode;
+      pos[parentNode] = p;
+      p = parent;
+    }
+    heap[p] = node;
+    pos[node] = p;
+  }
+
+  /** Moves a node from position p towards the leaves until its children have larger keys. */
+  private void siftDown(int p, int node) {
+    double k = key[node];
+    while (true) {
+      int firstChild = (p << shift) + 1;
+      if (firstChild >= size) {
+        break;
+      }
+      int lastChild = Math.min(firstChild + (1 << shift), size);
+
+      int best = firstChild;
+      double bestKey = key[heap[firstChild]];
+      for (int c = firstChild + 1; c < lastChild; c++) {
+        double ck = key[heap[c]];
+        if (ck < bestKey) {
+          best = c;
+          bestKey = ck;
+        }
+      }
+
+      if (bestKey >= k) {
+        break;
+      }
+      int bestNode = heap[best];
+      heap[p] = bestNode;
+      pos[bestNode] = p;
+      p = best;
+    }
+    heap[p] = node;
+    pos[node] = p;
+  }
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign.shortestpath;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shortest path trees kept between the iterations of an equilibrium assignment, for a group and an
+ * OD class. Only the arc used to reach each node is stored for each origin, the labels being
+ * recomputed from the weights the tree was built with. When the graph of a new iteration is used
+ * for the first time, its weights are compared to those of the previous iteration, so that the
+ * trees can be repaired instead of being computed again (see WarmStartDijkstra).
+ *
+ * @author Bart Jourquin
+ */
+public class ShortestPathTrees {
+
+  /** Stored in the unused slot 0 of a tree that was not computed yet. */
+  static final int NOT_COMPUTED = -2;
+
+  /** Memory that can still be used to keep trees, in bytes, shared by all the groups. */
+  private AtomicLong availableMemory;
+
+  /** Arcs which weight decreased since the previous iteration. */
+  private int[] decreasedArcs = new int[0];
+
+  /** Index of the first arc that enters each node in inArcs. */
+  int[] firstInArc;
+
+  /** True if the weights changed too much for the trees to be repaired. */
+  private boolean fullRecomputation = true;
+
+  /** Graph of the current iteration. */
+  private AdjacencyGraph graph = null;
+
+  /** Arcs that enter each node, grouped by head. */
+  int[] inArcs;
+
+  /** Number of arcs in decreasedArcs. */
+  private int nbDecreasedArcs = 0;
+
+  /** Number of nodes reached by the trees computed or repaired since the last reset. */
+  private long nbReachedNodes = 0;
+
+  /** Number of nodes settled to compute or repair the trees since the last reset. */
+  private long nbSettledNodes = 0;
+
+  /** Weights the trees were computed with in the previous iteration. */
+  private double[] previousWeight = null;
+
+  /**
+   * Above this share of changed arcs (or of affected nodes in a tree), the trees are computed
+   * again from scratch.
+   */
+  private double threshold;
+
+  /** For each source node, the arc used to reach each node, or null if not kept. */
+  private int[][] trees = null;
+
+  /**
+   * Initializes an empty set of trees.
+   *
+   * @param threshold The share of changed arcs above which the trees are computed again.
+   * @param availableMemory The memory that can still be used to keep trees, in bytes.
+   */
+  public ShortestPathTrees(double threshold, AtomicLong availableMemory) {
+    this.threshold = threshold;
+    this.availableMemory = availableMemory;
+  }
+
+  /**
+   * Records the work done to compute or repair a tree.
+   *
+   * @param settledNodes The number of nodes settled.
+   * @param reachedNodes The number of nodes in the tree.
+   */
+  synchronized void addStatistics(long settledNodes, long reachedNodes) {
+    nbSettledNodes += settledNodes;
+    nbReachedNodes += reachedNodes;
+  }
+
+  /**
+   * Returns the arcs which weight decreased since the previous iteration.
+   *
+   * @return An array of arcs, of which only the first getNbDecreasedArcs() are relevant.
+   */
+  int[] getDecreasedArcs() {
+    return decreasedArcs;
+  }
+
+  /**
+   * Returns the number of arcs which weight decreased since the previous iteration.
+   *
+   * @return The number of decreased arcs.
+   */
+  int getNbDecreasedArcs() {
+    return nbDecreasedArcs;
+  }
+
+  /**
+   * Returns the weights the trees were computed with in the previous iteration.
+   *
+   * @return The previous weights.
+   */
+  double[] getPreviousWeight() {
+    return previousWeight;
+  }
+
+  /**
+   * Returns the number of nodes reached by the trees computed or repaired since the last reset.
+   *
+   * @return The number of reached nodes.
+   */
+  public synchronized long getNbReachedNodes() {
+    return nbReachedNodes;
+  }
+
+  /**
+   * Returns the number of nodes settled to compute or repair the trees since the last reset. It is
+   * equal to the number of reached nodes if all the trees were computed from scratch.
+   *
+   * @return The number of settled nodes.
+   */
+  public synchronized long getNbSettledNodes() {
+    return nbSettledNodes;
+  }
+
+  /**
+   * Returns the share of affected nodes above which a tree is computed again from scratch.
+   *
+   * @return The threshold.
+   */
+  double getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * Returns the tree kept for a source node. A new tree, marked as NOT_COMPUTED in its slot 0, is
+   * allocated if there was none yet and the memory allows it.
+   *
+   * @param source The source node.
+   * @return The arc used to reach each node, or null if the tree cannot be kept.
+   */
+  int[] getTree(int source) {
+    int[] tree = trees[source];
+    if (tree == null) {
+      long size = 4L * graph.getNbNodes();
+      if (availableMemory.addAndGet(-size) < 0) {
+        availableMemory.addAndGet(size);
+        return null;
+      }
+      tree = new int[graph.getNbNodes()];
+      tree[0] = NOT_COMPUTED;
+      trees[source] = tree;
+    }
+    return tree;
+  }
+
+  /**
+   * Tests if the kept trees must be computed again instead of being repaired.
+   *
+   * @return True if the trees must be computed from scratch.
+   */
+  boolean isFullRecomputation() {
+    return fullRecomputation;
+  }
+
+  /**
+   * Makes a graph the graph of the current iteration. The first time a new graph is used, its
+   * weights are compared to those of the previous one. The trees are discarded if the structure of
+   * the graph changed.
+   *
+   * @param g The graph of the current iteration.
+   */
+  synchronized void prepare(AdjacencyGraph g) {
+    if (g == graph) {
+      return;
+    }
+
+    if (graph == null
+        || !Arrays.equals(g.firstArc, graph.firstArc)
+        || !Arrays.equals(g.head, graph.head)) {
+      // New structure: the trees are built from scratch
+      if (trees != null) {
+        for (int[] tree : trees) {
+          if (tree != null) {
+            availableMemory.addAndGet(4L * tree.length);
+          }
+        }
+      }
+      trees = new int[g.getNbNodes()][];
+      buildInArcs(g);
+      fullRecomputation = true;
+      nbDecreasedArcs = 0;
+    } else {
+      // Same structure: compare the weights
+      double[] weight = g.weight;
+      double[] oldWeight = graph.weight;
+      int nbChangedArcs = 0;
+      nbDecreasedArcs = 0;
+      for (int arc = 0; arc < weight.length; arc++) {
+        if (weight[arc] != oldWeight[arc]) {
+          nbChangedArcs++;
+          if (weight[arc] < oldWeight[arc]) {
+            if (nbDecreasedArcs == decreasedArcs.length) {
+              decreasedArcs = Arrays.copyOf(decreasedArcs, Math.max(16, 2 * nbDecreasedArcs));
+            }
+            decreasedArcs[nbDecreasedArcs++] = arc;
+          }
+        }
+      }
+      fullRecomputation = nbChangedArcs > threshold * weight.length;
+    }
+
+    previousWeight = graph == null ? null : graph.weight;
+    graph = g;
+  }
+
+  /** Resets the number of settled and reached nodes. */
+  public synchronized void resetStatistics() {
+    nbSettledNodes = 0;
+    nbReachedNodes = 0;
+  }
+
+  /** Groups the arcs of a graph by head, so that the arcs entering a node can be scanned. */
+  private void buildInArcs(AdjacencyGraph g) {
+    int nbNodes = g.getNbNodes();
+    firstInArc = new int[nbNodes + 1];
+    for (int arc = 0; arc < g.head.length; arc++) {
+      firstInArc[g.head[arc] + 1]++;
+    }
+    for (int i = 1; i <= nbNodes; i++) {
+      firstInArc[i] += firstInArc[i - 1];
+    }
+
+    inArcs = new int[g.head.length];
+    int[] next = Arrays.copyOf(firstInArc, nbNodes);
+    for (int arc = 0; arc < g.head.length; arc++) {
+      inArcs[next[g.head[arc]]++] = arc;
+    }
+  }
+}
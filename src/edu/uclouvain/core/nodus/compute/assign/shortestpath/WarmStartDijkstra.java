@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign.shortestpath;
+
+import edu.uclouvain.core.nodus.compute.od.ODDemand;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic version of the algorithm of Dijkstra, used by the equilibrium assignments in which only
+ * the weights of the arcs change from an iteration to the next. The complete tree of each origin
+ * is kept (see ShortestPathTrees) and repaired in the next iteration:
+ *
+ * <ul>
+ *   <li>The nodes reached through an arc which weight increased are detached from the tree and
+ *       labelled again from the rest of the tree, the weights that decreased being ignored.
+ *   <li>The heads of the arcs which weight decreased are then used as new sources, from which the
+ *       improved labels are propagated.
+ * </ul>
+ *
+ * <p>Only the nodes which label changes are settled again. A tree is computed from scratch if too
+ * many of its nodes are affected, if too many arcs changed or if there is not enough memory to
+ * keep it, in which case the search stops once all the destinations are reached, as in
+ * BinaryHeapDijkstra.
+ *
+ * @author Bart Jourquin
+ */
+public class WarmStartDijkstra extends BinaryHeapDijkstra {
+
+  private static final byte UNKNOWN = 0;
+
+  private static final byte VALID = 1;
+
+  private static final byte AFFECTED = 2;
+
+  private static final byte UNREACHED = 3;
+
+  /** Label of each node in the current tree. */
+  private double[] dist;
+
+  /** Number of nodes settled to compute or repair the last tree. */
+  private int nbSettledNodes;
+
+  /** Used to walk the tree and to collect the affected nodes. */
+  private int[] nodes;
+
+  /** True if the predecessors of all the nodes were set from a kept tree. */
+  private boolean piFromTree = false;
+
+  /** Kept tree returned by getPredecessorArcs(), or null if the last tree was not kept. */
+  private int[] predArcTree = null;
+
+  /** State of each node while a tree is repaired. */
+  private byte[] state;
+
+  /** Trees kept between the iterations. */
+  private ShortestPathTrees trees;
+
+  /**
+   * Initializes the data structures.
+   *
+   * @param graph The graph of the current iteration.
+   * @param virtualNet VirtualNetwork
+   * @param trees The trees kept for the group and OD class of the graph.
+   */
+  public WarmStartDijkstra(
+      AdjacencyGraph graph, VirtualNetwork virtualNet, ShortestPathTrees trees) {
+    super(graph, virtualNet);
+    this.trees = trees;
+    trees.prepare(graph);
+
+    int nbNodes = graph.getNbNodes();
+    dist = new double[nbNodes];
+    nodes = new int[nbNodes];
+    state = new byte[nbNodes];
+  }
+
+  /**
+   * Computes or repairs the tree of a source. The destinations are only used if the tree cannot
+   * be kept.
+   *
+   * @param source Loading virtual node num used as source vertex
+   * @param odDemand The OD demand
+   * @param firstCell The index of the first cell to reach
+   * @param lastCell The index following the last cell to reach
+   */
+  @Override
+  public void compute(int source, ODDemand odDemand, int firstCell, int lastCell) {
+    int[] tree = trees.getTree(source);
+    if (tree == null) {
+      // Not enough memory to keep the tree
+      if (piFromTree) {
+        Arrays.fill(pi, 0);
+        piFromTree = false;
+      }
+      predArcTree = null;
+      super.compute(source, odDemand, firstCell, lastCell);
+      nbSettledNodes = super.getNbSettledNodes();
+      trees.addStatistics(nbSettledNodes, nbSettledNodes);
+      return;
+    }
+
+    if (trees.isFullRecomputation() || tree[0] == ShortestPathTrees.NOT_COMPUTED) {
+      computeTree(source, tree);
+    } else {
+      repairTree(source, tree);
+    }
+
+    // Predecessors of all the nodes, used to read the paths back
+    int nbReachedNodes = 0;
+    for (int node = 1; node < tree.length; node++) {
+      int arc = tree[node];
+      if (arc >= 0) {
+        pi[node] = graph.tail[arc];
+        nbReachedNodes++;
+      } else {
+        pi[node] = 0;
+      }
+    }
+    piFromTree = true;
+    predArcTree = tree;
+    trees.addStatistics(nbSettledNodes, nbReachedNodes + 1);
+  }
+
+  /**
+   * Computes the complete tree of a source from scratch.
+   *
+   * @param source The source node.
+   * @param tree The arc used to reach each node, filled by this method.
+   */
+  private void computeTree(int source, int[] tree) {
+    Arrays.fill(tree, -1);
+    Arrays.fill(dist, Double.MAX_VALUE);
+    dist[source] = 0;
+
+    heap.clear();
+    heap.decreaseKey(source, 0);
+    propagate(tree, graph.weight, null);
+    nbSettledNodes = heap.getNbSettled();
+  }
+
+  /**
+   * Returns the number of nodes settled to compute or repair the last tree.
+   *
+   * @return int
+   */
+  @Override
+  public int getNbSettledNodes() {
+    return nbSettledNodes;
+  }
+
+  /**
+   * Returns, for each node, the index of the arc used to reach it from its predecessor, or -1 if
+   * the node was not reached.
+   *
+   * @return int[]
+   */
+  @Override
+  public int[] getPredecessorArcs() {
+    return predArcTree != null ? predArcTree : super.getPredecessorArcs();
+  }
+
+  /**
+   * Grows the tree from the nodes in the heap, until the heap is empty.
+   *
+   * @param tree The arc used to reach each node.
+   * @param weight The weights of the arcs.
+   * @param otherWeight If not null, the largest of both weights is used for each arc.
+   */
+  private void propagate(int[] tree, double[] weight, double[] otherWeight) {
+    int min = heap.extractMin();
+    while (min != -1) {
+      double minWeight = dist[min];
+      int lastArc = graph.firstArc[min + 1];
+      for (int arc = graph.firstArc[min]; arc < lastArc; arc++) {
+        int v = graph.head[arc];
+        double w = weight[arc];
+        if (otherWeight != null && otherWeight[arc] > w) {
+          w = otherWeight[arc];
+        }
+        double newWeight = minWeight + w;
+
+        // Arcs with an infinite weight are forbidden
+        if (newWeight < Double.MAX_VALUE && newWeight < dist[v] && heap.decreaseKey(v, newWeight)) {
+          dist[v] = newWeight;
+          tree[v] = arc;
+        }
+      }
+      min = heap.extractMin();
+    }
+  }
+
+  /**
+   * Repairs the tree of a source computed with the weights of the previous iteration.
+   *
+   * @param source The source node.
+   * @param tree The arc used to reach each node, updated by this method.
+   */
+  private void repairTree(int source, int[] tree) {
+    double[] weight = graph.weight;
+    double[] oldWeight = trees.getPreviousWeight();
+
+    // Labels of the previous tree, and nodes reached through an arc which weight increased
+    Arrays.fill(state, UNKNOWN);
+    int nbReachedNodes = 0;
+    for (int node = 1; node < tree.length; node++) {
+      int top = 0;
+      int u = node;
+      while (state[u] == UNKNOWN) {
+        if (u == source) {
+          dist[u] = 0;
+          state[u] = VALID;
+        } else if (tree[u] < 0) {
+          dist[u] = Double.MAX_VALUE;
+          state[u] = UNREACHED;
+        } else {
+          nodes[top++] = u;
+          u = graph.tail[tree[u]];
+        }
+      }
+      while (top > 0) {
+        int v = nodes[--top];
+        int arc = tree[v];
+        int p = graph.tail[arc];
+        if (state[p] == UNREACHED) {
+          dist[v] = Double.MAX_VALUE;
+          state[v] = UNREACHED;
+        } else {
+          dist[v] = dist[p] + oldWeight[arc];
+          state[v] = state[p] == AFFECTED || weight[arc] > oldWeight[arc] ? AFFECTED : VALID;
+        }
+      }
+      if (state[node] != UNREACHED) {
+        nbReachedNodes++;
+      }
+    }
+
+    int nbAffected = 0;
+    for (int node = 1; node < tree.length; node++) {
+      if (state[node] == AFFECTED) {
+        nodes[nbAffected++] = node;
+      }
+    }
+
+    // Too much to repair
+    if (nbAffected > trees.getThreshold() * nbReachedNodes) {
+      computeTree(source, tree);
+      return;
+    }
+
+    // Label the affected nodes again from the rest of the tree, ignoring the weight decreases
+    for (int i = 0; i < nbAffected; i++) {
+      dist[nodes[i]] = Double.MAX_VALUE;
+      tree[nodes[i]] = -1;
+    }
+    heap.clear();
+    for (int i = 0; i < nbAffected; i++) {
+      int v = nodes[i];
+      for (int k = trees.firstInArc[v]; k < trees.firstInArc[v + 1]; k++) {
+        int arc = trees.inArcs[k];
+        int u = graph.tail[arc];
+        if (state[u] == AFFECTED || dist[u] == Double.MAX_VALUE) {
+          continue;
+        }
+        double newWeight = dist[u] + Math.max(weight[arc], oldWeight[arc]);
+        if (newWeight < Double.MAX_VALUE && newWeight < dist[v] && heap.decreaseKey(v, newWeight)) {
+          dist[v] = newWeight;
+          tree[v] = arc;
+        }
+      }
+    }
+    propagate(tree, weight, oldWeight);
+    nbSettledNodes = heap.getNbSettled();
+
+    // Propagate the improvements brought by the arcs which weight decreased
+    heap.clear();
+    int[] decreasedArcs = trees.getDecreasedArcs();
+    for (int i = trees.getNbDecreasedArcs() - 1; i >= 0; i--) {
+      int arc = decreasedArcs[i];
+      int u = graph.tail[arc];
+      if (dist[u] == Double.MAX_VALUE) {
+        continue;
+      }
+      int v = graph.head[arc];
+      double newWeight = dist[u] + weight[arc];
+      if (newWeight < Double.MAX_VALUE && newWeight < dist[v] && heap.decreaseKey(v, newWeight)) {
+        dist[v] = newWeight;
+        tree[v] = arc;
+      }
+    }
+    propagate(tree, weight, null);
+    nbSettledNodes += heap.getNbSettled();
+  }
+}
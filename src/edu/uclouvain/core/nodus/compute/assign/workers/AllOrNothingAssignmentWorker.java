@@ -22,14 +22,10 @@
 package edu.uclouvain.core.nodus.compute.assign.workers;
 
 import edu.uclouvain.core.nodus.compute.assign.Assignment;
-import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyNode;
 import edu.uclouvain.core.nodus.compute.assign.shortestpath.BinaryHeapDijkstra;
-import edu.uclouvain.core.nodus.compute.od.ODCell;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
 
 import java.text.MessageFormat;
-import java.util.Iterator;
 
 /**
  * Performs an All-Or-Nothing assignment.
@@ -41,32 +37,28 @@ public class AllOrNothingAssignmentWorker extends AssignmentWorker {
   private BinaryHeapDijkstra shortestPath;
 
   /**
-   * Initializes an Assignment Worker.
-   *
-   * @param queue The WorkQueue the assignment will run in.
-   */
-  public AllOrNothingAssignmentWorker(WorkQueue queue) {
-    super(queue);
-  }
-
-  /**
-   * Runs an All-Or-Nothing assignment.
+   * Runs an All-Or-Nothing assignment for the range of origins given in the worker parameters. The
+   * flows are first accumulated in a private array and merged in the virtual links once all the
+   * jobs are done, as several workers can assign the origins of a same group at the same time.
    *
    * @return True on success.
    */
   @Override
   boolean doAssignment() {
 
-    // Initialize the adjacency list for current group
-    graph = virtualNet.generateAdjacencyList(groupIndex);
-    shortestPath = new BinaryHeapDijkstra(graph, virtualNet);
+    // Initialize the adjacency list for current group. It is kept for the next chunk of origins.
+    if (useGroupGraph()) {
+      shortestPath = new BinaryHeapDijkstra(graph, virtualNet);
+    }
+
+    // Scan the nodes of the chunk
+    for (int nodeIndex = firstNodeIndex; nodeIndex < lastNodeIndex; nodeIndex++) {
 
-    // Scan all the nodes
-    for (int nodeIndex = 0; nodeIndex < virtualNet.getVirtualNodeLists().length; nodeIndex++) {
+      int firstCell = odDemand.getFirstCell(nodeIndex, groupIndex, odClass);
+      int lastCell = odDemand.getLastCell(nodeIndex, groupIndex, odClass);
 
       // Update progress bar
-      if (virtualNet.getVirtualNodeLists()[nodeIndex].hasDemandForGroup(
-          virtualNet.getGroups()[groupIndex], odClass)) {
+      if (firstCell < lastCell) {
         String s = null;
         if (virtualNet.getNbODClasses() > 1) {
           s =
@@ -87,18 +79,14 @@ public class AllOrNothingAssignmentWorker extends AssignmentWorker {
         return false;
       }
 
-      // Get the demand associated to this node for the current group
-      demandList =
-          virtualNet.getVirtualNodeLists()[nodeIndex].getDemandForGroup(
-              virtualNet.getGroups()[groupIndex], odClass);
-
-      if (demandList != null) {
+      // Assign the demand associated to this node for the current group
+      if (firstCell < lastCell) {
         // Compute all the shortest paths in the virtual network starting from here
         int beginNode = virtualNet.getVirtualNodeLists()[nodeIndex].getLoadingVirtualNodeId();
-        shortestPath.compute(beginNode, demandList);
+        shortestPath.compute(beginNode, odDemand, firstCell, lastCell);
 
         // Build all the relevant detailed paths
-        if (!readPaths(nodeIndex)) {
+        if (!readPaths(nodeIndex, firstCell, lastCell)) {
           return false;
         }
       }
@@ -111,26 +99,30 @@ public class AllOrNothingAssignmentWorker extends AssignmentWorker {
    * Build all the paths starting from the given node index.
    *
    * @param nodeIndex int
+   * @param firstCell The index of the first OD cell to assign.
+   * @param lastCell The index following the last OD cell to assign.
    * @return True on success.
    */
-  private boolean readPaths(int nodeIndex) {
+  private boolean readPaths(int nodeIndex, int firstCell, int lastCell) {
 
     int[] pi = shortestPath.getPredecessors();
+    int[] predArcs = shortestPath.getPredecessorArcs();
     int beginNode = virtualNet.getVirtualNodeLists()[nodeIndex].getLoadingVirtualNodeId();
 
-    // Scan the demand list
-    Iterator<ODCell> it = demandList.iterator();
-
-    while (it.hasNext()) {
-      ODCell demand = it.next();
+    // Scan the demand of this origin
+    for (int cell = firstCell; cell < lastCell; cell++) {
+      double quantity = odDemand.getQuantity(cell);
 
       // Build path from end to begin node
-      int destinationNodeIndex =
-          virtualNet.getNodeIndexInVirtualNodeList(demand.getDestinationNodeId(), true);
+      int destinationNodeIndex = odDemand.getDestinationIndex(cell);
       int endNode =
           virtualNet.getVirtualNodeLists()[destinationNodeIndex].getUnloadingVirtualNodeId();
 
       int currentNode = endNode;
+      int pathIndex = 0;
+      if (pathWriter.isSavePaths()) {
+        pathIndex = getPathIndex(cell);
+      }
       boolean isPathFound = true;
       float pathLength = 0;
       float pathDuration = 0;
@@ -154,23 +146,19 @@ public class AllOrNothingAssignmentWorker extends AssignmentWorker {
                     + ", "
                     + virtualNet.getVirtualNodeLists()[destinationNodeIndex].getRealNodeId()
                     + ", "
-                    + demand.getQuantity());
+                    + quantity);
           }
           isPathFound = false;
 
           break;
         } else {
-          AdjacencyNode an = graph[predecessor];
-
-          while (an.endVirtualNode != currentNode) {
-            an = an.nextNode;
-          }
+          int arc = predArcs[currentNode];
 
-          an.virtualLink.addFlow(groupIndex, demand.getQuantity());
+          flows[arc] += quantity;
 
           // Save this link in the detailed path table if needed
           if (pathWriter.isSavePaths()) {
-            VirtualLink vl = an.virtualLink;
+            VirtualLink vl = graph.virtualLink[arc];
 
             switch (vl.getType()) {
               case VirtualLink.TYPE_LOAD:
@@ -203,7 +191,7 @@ public class AllOrNothingAssignmentWorker extends AssignmentWorker {
                 pathCosts.mvCosts += vl.getWeight(groupIndex);
                 pathLength += vl.getLength();
                 pathDuration += vl.getDuration();
-                pathWriter.savePathLink(vl);
+                pathWriter.savePathLink(vl, pathIndex);
                 break;
               default:
                 break;
@@ -219,8 +207,11 @@ public class AllOrNothingAssignmentWorker extends AssignmentWorker {
       if (isPathFound && pathWriter.isSavePaths()) {
         if (!pathWriter.savePathHeader(
             1,
-            demand,
-            demand.getQuantity(),
+            currentGroup,
+            virtualNet.getVirtualNodeLists()[nodeIndex].getRealNodeId(),
+            virtualNet.getVirtualNodeLists()[destinationNodeIndex].getRealNodeId(),
+            odDemand.getStartingTime(cell),
+            quantity,
             pathLength,
             pathDuration,
             pathCosts,
@@ -228,7 +219,8 @@ public class AllOrNothingAssignmentWorker extends AssignmentWorker {
             loadingMeans,
             unloadingMode,
             unloadingMeans,
-            nbTranshipments)) {
+            nbTranshipments,
+            pathIndex)) {
           return false;
         }
       }
@@ -24,32 +24,46 @@ package edu.uclouvain.core.nodus.compute.assign.workers;
 import com.bbn.openmap.Environment;
 import com.bbn.openmap.util.I18n;
 
-import edu.uclouvain.core.nodus.NodusMapPanel;
 import edu.uclouvain.core.nodus.NodusProject;
 import edu.uclouvain.core.nodus.compute.assign.Assignment;
+import edu.uclouvain.core.nodus.compute.assign.AssignmentExecutor;
 import edu.uclouvain.core.nodus.compute.assign.AssignmentParameters;
 import edu.uclouvain.core.nodus.compute.assign.modalsplit.ModalSplitMethod;
-import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyNode;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyGraph;
 import edu.uclouvain.core.nodus.compute.costs.TransitTimesParser;
 import edu.uclouvain.core.nodus.compute.od.ODCell;
+import edu.uclouvain.core.nodus.compute.od.ODDemand;
 import edu.uclouvain.core.nodus.compute.virtual.PathWriter;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
 
 /**
- * An AssignmentWorker is an assignment that runs it its own thread. For each assignment class
- * (AllOrNothingAssignment for instance), an Assignment worker is defined
- * (AllOrNothingAssignmentWorker for instance). Depending on the number of threads defined by the
- * user, the Assignment will create and launch one or several Workers.
+ * An AssignmentWorker assigns the demand of a group, or of a range of origins of a group. For each
+ * assignment class (AllOrNothingAssignment for instance), an Assignment worker is defined
+ * (AllOrNothingAssignmentWorker for instance). The jobs are run on the executor of the assignment,
+ * each job borrowing an idle worker, so that the data structures of a worker (shortest path
+ * trees, flows...) are reused by the next jobs of the same group.
  *
  * @author Bart Jourquin
  */
-public abstract class AssignmentWorker extends Thread {
+public abstract class AssignmentWorker {
 
   private static int currentPathIndex = 0;
 
+  /** Lock used to merge the flows computed by the workers that share a same group. */
+  private static final Object flowsLock = new Object();
+
+  /** Total number of nodes settled by the shortest path searches of all the workers. */
+  private static long totalSettledNodes = 0;
+
   /** I18N mechanism. */
   static I18n i18n = Environment.getI18n();
 
@@ -58,10 +72,87 @@ public abstract class AssignmentWorker extends Thread {
     currentPathIndex = 0;
   }
 
-  AssignmentParameters assignmentParameters;
+  /** Resets the total number of settled nodes to 0. */
+  public static synchronized void resetSettledNodes() {
+    totalSettledNodes = 0;
+  }
+
+  /**
+   * Returns the total number of nodes settled by the shortest path searches of all the workers
+   * since the last reset. This allows to compare the performances of the search algorithms.
+   *
+   * @return The number of settled nodes.
+   */
+  public static synchronized long getTotalSettledNodes() {
+    return totalSettledNodes;
+  }
+
+  private static synchronized void addSettledNodes(long nbSettledNodes) {
+    totalSettledNodes += nbSettledNodes;
+  }
+
+  /**
+   * Runs a set of jobs on the executor of their assignment. Each job borrows an idle worker,
+   * preferably one that already worked on the same group, or a new worker created by the given
+   * factory. Once all the jobs are done, the flows accumulated by the workers are merged in the
+   * virtual links.
+   *
+   * @param executor The executor of the assignment.
+   * @param jobs The jobs to run.
+   * @param factory Creates the workers.
+   * @return True if all the jobs succeeded.
+   */
+  public static boolean runJobs(
+      AssignmentExecutor executor,
+      List<AssignmentWorkerParameters> jobs,
+      Supplier<AssignmentWorker> factory) {
+    List<AssignmentWorker> workers = new ArrayList<>();
+    LinkedList<AssignmentWorker> idleWorkers = new LinkedList<>();
+
+    List<Callable<Boolean>> tasks = new ArrayList<>(jobs.size());
+    for (AssignmentWorkerParameters awp : jobs) {
+      tasks.add(
+          () -> {
+            AssignmentWorker worker = null;
+            synchronized (idleWorkers) {
+              Iterator<AssignmentWorker> it = idleWorkers.iterator();
+              while (it.hasNext()) {
+                AssignmentWorker w = it.next();
+                if (w.graphGroupIndex == awp.getGroupIndex()) {
+                  it.remove();
+                  worker = w;
+                  break;
+                }
+              }
+              if (worker == null && !idleWorkers.isEmpty()) {
+                worker = idleWorkers.removeFirst();
+              }
+              if (worker == null) {
+                worker = factory.get();
+                workers.add(worker);
+              }
+            }
+
+            try {
+              return worker.execute(awp, executor);
+            } finally {
+              synchronized (idleWorkers) {
+                idleWorkers.addFirst(worker);
+              }
+            }
+          });
+    }
 
-  /** Set to true if thread is canceled on error or by the user. */
-  boolean canceled = false;
+    boolean success = executor.run(tasks);
+
+    for (AssignmentWorker worker : workers) {
+      worker.flushFlows();
+    }
+
+    return success;
+  }
+
+  AssignmentParameters assignmentParameters;
 
   /** The num of the current group. */
   int currentGroup;
@@ -69,8 +160,20 @@ public abstract class AssignmentWorker extends Thread {
   /** List of the demands to be assigned. */
   LinkedList<ODCell> demandList;
 
+  /** The executor the jobs are run on. */
+  private AssignmentExecutor executor;
+
+  /** The index of the first virtual node list (origin) to assign. */
+  int firstNodeIndex;
+
+  /** Flows assigned by this worker for the group of the current graph, indexed by arc. */
+  double[] flows = null;
+
   /** The graph on which the shortest paths are computed. */
-  AdjacencyNode[] graph;
+  AdjacencyGraph graph;
+
+  /** Index of the group the current graph was generated for by useGroupGraph(). */
+  private byte graphGroupIndex = -1;
 
   /** The index of the group to assign. */
   byte groupIndex;
@@ -78,11 +181,17 @@ public abstract class AssignmentWorker extends Thread {
   /** The iteration in equilibrium assignments. */
   int iteration;
 
+  /** The index following the last virtual node list (origin) to assign. */
+  int lastNodeIndex;
+
   /** The percentage of the OD cell to assign. */
   double loadFactor;
 
+  /** The demand loaded from the OD matrix. */
+  ODDemand odDemand;
+
   /** Used to update the progress bar. */
-  private NodusMapPanel nodusMapPanel;
+  private ProgressListener progressListener;
 
   /** Made available to the assignment algorithms. */
   NodusProject nodusProject;
@@ -90,11 +199,15 @@ public abstract class AssignmentWorker extends Thread {
   /** The odClass to assign. */
   byte odClass;
 
+  /** Number of nodes settled by the shortest path searches of the current job. */
+  long settledNodes;
+
+  /** Index of the path of the first OD cell at the current iteration. */
+  private int pathIndexOffset;
+
   /** Used the save the detailed paths if asked. */
   PathWriter pathWriter;
 
-  WorkQueue workQueue;
-
   /** Virtual network that will be generated before the assignment. */
   VirtualNetwork virtualNet;
   
@@ -103,18 +216,9 @@ public abstract class AssignmentWorker extends Thread {
 
   Assignment assignment;
 
-  /**
-   * Initializes an Assignment Worker.
-   *
-   * @param queue The WorkQueue the assignment will run in.
-   */
-  public AssignmentWorker(WorkQueue queue) {
-    this.workQueue = queue;
-  }
-
-  /** Give the signal to this work to stop. */
+  /** Give the signal to all the jobs of the batch to stop. */
   private void cancel() {
-    canceled = true;
+    executor.cancel();
   }
 
   /**
@@ -125,76 +229,129 @@ public abstract class AssignmentWorker extends Thread {
   abstract boolean doAssignment();
 
   /**
-   * Returns a new path index. Used by multi-flow assignments. Is thread save.
+   * Returns a new path index. Used by the assignments that can save several paths for a same OD
+   * cell. Is thread safe.
    *
    * @return New path index.
    */
-  public synchronized int getNewPathIndex() {
+  public static synchronized int getNewPathIndex() {
     return currentPathIndex++;
   }
 
   /**
-   * Returns true if this thread was canceled.
+   * Returns the index of the path of an OD cell at the current iteration. It only depends on the
+   * cell, so the paths are numbered the same way whatever the way the origins are split over the
+   * threads.
+   *
+   * @param cell The index of the OD cell.
+   * @return The path index.
+   */
+  int getPathIndex(int cell) {
+    return pathIndexOffset + cell;
+  }
+
+  /**
+   * Returns true if the jobs were canceled, by this worker or another one.
    *
    * @return True if canceled
    */
   public boolean isCancelled() {
-    return canceled;
+    return executor.isCancelled();
   }
 
   /**
-   * Main entry point of the worker. Fetches the assignment parameters and runs it. It also cancels
-   * all the assignment workers of the assignment if the Esc key was pressed on the MapBean.
+   * Runs a job. It also cancels all the jobs of the assignment if the Esc key was pressed on the
+   * MapBean or if the job failed.
+   *
+   * @param awp The parameters of the job.
+   * @param executor The executor the job runs on.
+   * @return True on success.
    */
-  @Override
-  public void run() {
-    try {
-      while (true) {
-        // Retrieve some work; block if the queue is empty
-        Object x = workQueue.getWork();
-
-        // Terminate if the end-of-stream marker was retrieved
-        if (x == WorkQueue.NO_MORE_WORK) {
-          break;
-        }
-        AssignmentWorkerParameters awp = (AssignmentWorkerParameters) x;
-
-        assignment = awp.getAssignment();
-
-        virtualNet = assignment.getVNet();
-
-        nodusProject = assignment.getNodusProjectl();
-        nodusMapPanel = nodusProject.getNodusMapPanel();
-        pathWriter = assignment.getPathWriter();
-        assignmentParameters = assignment.getAssignmentParameters();
-
-        iteration = awp.getIteration();
-        loadFactor = awp.getLoadFactor();
-        groupIndex = awp.getGroupIndex();
-        odClass = awp.getODClass();
-
-        currentGroup = virtualNet.getGroups()[groupIndex];
-        
-        // Transit durations parser
-        transitTimesParser =
-            new TransitTimesParser(
-                assignmentParameters.getCostFunctions(),
-                assignmentParameters.getScenario(),
-                currentGroup);
-
-        // Start the real work
-        if (!doAssignment()) {
-          // Cancel all workers
-          for (AssignmentWorker element : assignment.getAssignmentWorkers()) {
-            element.cancel();
-          }
+  private boolean execute(AssignmentWorkerParameters awp, AssignmentExecutor executor) {
+    this.executor = executor;
+    assignment = awp.getAssignment();
+
+    virtualNet = assignment.getVNet();
+    odDemand = virtualNet.getODDemand();
+
+    nodusProject = assignment.getNodusProjectl();
+    progressListener = nodusProject.getProgressListener();
+    pathWriter = assignment.getPathWriter();
+    pathIndexOffset = assignment.getPathIndexOffset();
+    assignmentParameters = assignment.getAssignmentParameters();
+
+    iteration = awp.getIteration();
+    loadFactor = awp.getLoadFactor();
+    groupIndex = awp.getGroupIndex();
+    odClass = awp.getODClass();
+
+    currentGroup = virtualNet.getGroups()[groupIndex];
+
+    // Range of origins to assign
+    firstNodeIndex = awp.getFirstNodeIndex();
+    lastNodeIndex = awp.getLastNodeIndex();
+    if (lastNodeIndex < 0) {
+      lastNodeIndex = virtualNet.getVirtualNodeLists().length;
+    }
+
+    // Transit durations, shared by all the workers of the group
+    transitTimesParser = assignment.getTransitTimesParser(groupIndex);
+
+    // Start the real work
+    settledNodes = 0;
+    boolean success = doAssignment();
+    addSettledNodes(settledNodes);
+    if (!success) {
+      cancel();
+    }
+    return success;
+  }
+
+  /** Adds the flows accumulated in the flows array to the virtual links and resets them. */
+  private void flushFlows() {
+    if (flows == null) {
+      return;
+    }
+    synchronized (flowsLock) {
+      for (int arc = 0; arc < flows.length; arc++) {
+        if (flows[arc] != 0) {
+          mergeFlow(graph.virtualLink[arc], graphGroupIndex, flows[arc]);
+          flows[arc] = 0;
         }
       }
-    } catch (InterruptedException e) {
-      e.printStackTrace();
     }
   }
 
+  /**
+   * Adds a flow accumulated by this worker to a virtual link. By default, the flow is added to the
+   * current flow of the link.
+   *
+   * @param vl The virtual link.
+   * @param groupIndex The index of the group the flow belongs to.
+   * @param flow The flow to add.
+   */
+  void mergeFlow(VirtualLink vl, byte groupIndex, double flow) {
+    vl.addFlow(groupIndex, flow);
+  }
+
+  /**
+   * Makes the graph of the group to assign the current graph, with a flows array in which the
+   * paths can be loaded without lock. The graph and the flows are kept for the next jobs of the
+   * same group. The flows of the previous group are merged in the virtual links first.
+   *
+   * @return True if the graph changed, in which case the shortest path structures must be rebuilt.
+   */
+  boolean useGroupGraph() {
+    if (graphGroupIndex == groupIndex) {
+      return false;
+    }
+    flushFlows();
+    graph = virtualNet.generateAdjacencyList(groupIndex);
+    flows = new double[graph.getNbArcs()];
+    graphGroupIndex = groupIndex;
+    return true;
+  }
+
   public ModalSplitMethod getModalSplitMethod(String methodName) {
     return assignment.getModalSplitMethod(methodName);
   }
@@ -206,7 +363,7 @@ public abstract class AssignmentWorker extends Thread {
    * @return False if the assignment was canceled.
    */
   boolean updateProgress(String message) {
-    if (!nodusMapPanel.updateProgress(message)) {
+    if (!progressListener.updateProgress(message)) {
       cancel();
       return false;
     }
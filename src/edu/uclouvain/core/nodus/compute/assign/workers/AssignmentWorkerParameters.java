@@ -31,8 +31,10 @@ import edu.uclouvain.core.nodus.compute.assign.Assignment;
 public class AssignmentWorkerParameters {
 
   private Assignment assignment;
+  private int firstNodeIndex = 0;
   private byte groupIndex;
-  private byte iteration = 0;
+  private int iteration = 0;
+  private int lastNodeIndex = -1;
   private double loadFactor;
   private byte odClass;
 
@@ -47,6 +49,49 @@ public class AssignmentWorkerParameters {
     this(assignment, groupIndex, odClass, (byte) 0, 0.0);
   }
 
+  /**
+   * Initializes the AssignmentWorker specific parameters for a chunk of origins of a group. Only
+   * the origins stored in the virtual node lists in the [firstNodeIndex, lastNodeIndex[ range will
+   * be assigned by the worker. Used to spread the origins of a same group over several threads.
+   *
+   * @param assignment The Assignment object these parameters belong to.
+   * @param groupIndex The index of the group that will be assigned by this worker.
+   * @param odClass The OD class that will be assigned by this worker.
+   * @param firstNodeIndex The index of the first virtual node list to assign.
+   * @param lastNodeIndex The index following the last virtual node list to assign.
+   */
+  public AssignmentWorkerParameters(
+      Assignment assignment, byte groupIndex, byte odClass, int firstNodeIndex, int lastNodeIndex) {
+    this(assignment, groupIndex, odClass, (byte) 0, 0.0, firstNodeIndex, lastNodeIndex);
+  }
+
+  /**
+   * Initializes the AssignmentWorker specific parameters for a chunk of origins of a group, for a
+   * given iteration of an equilibrium assignment.
+   *
+   * @param assignment The Assignment object these parameters belong to.
+   * @param groupIndex The index of the group that will be assigned by this worker.
+   * @param odClass The OD class that will be assigned by this worker.
+   * @param iteration The iteration of the equilibrium assignment algorithm the worker will run.
+   * @param loadFactor The incremental load factor that is will be applied (Incremental and
+   *     IncFrankWolfe algorithms only).
+   * @param firstNodeIndex The index of the first virtual node list to assign.
+   * @param lastNodeIndex The index following the last virtual node list to assign, or -1 for all
+   *     the remaining ones.
+   */
+  public AssignmentWorkerParameters(
+      Assignment assignment,
+      byte groupIndex,
+      byte odClass,
+      int iteration,
+      double loadFactor,
+      int firstNodeIndex,
+      int lastNodeIndex) {
+    this(assignment, groupIndex, odClass, iteration, loadFactor);
+    this.firstNodeIndex = firstNodeIndex;
+    this.lastNodeIndex = lastNodeIndex;
+  }
+
   /**
    * Initializes the AssignmentWorker specific parameters.
    *
@@ -56,7 +101,7 @@ public class AssignmentWorkerParameters {
    * @param iteration The iteration of the equilibrium assignment algorithm the worker will run.
    */
   public AssignmentWorkerParameters(
-      Assignment assignment, byte groupIndex, byte odClass, byte iteration) {
+      Assignment assignment, byte groupIndex, byte odClass, int iteration) {
     this(assignment, groupIndex, odClass, iteration, 0.0);
   }
 
@@ -71,7 +116,7 @@ public class AssignmentWorkerParameters {
    *     IncFrankWolfe algorithms only).
    */
   public AssignmentWorkerParameters(
-      Assignment assignment, byte groupIndex, byte odClass, byte iteration, double loadFactor) {
+      Assignment assignment, byte groupIndex, byte odClass, int iteration, double loadFactor) {
     this.assignment = assignment;
     this.groupIndex = groupIndex;
     this.odClass = odClass;
@@ -83,14 +128,26 @@ public class AssignmentWorkerParameters {
     return assignment;
   }
 
+  int getFirstNodeIndex() {
+    return firstNodeIndex;
+  }
+
   byte getGroupIndex() {
     return groupIndex;
   }
 
-  byte getIteration() {
+  int getIteration() {
     return iteration;
   }
 
+  /**
+   * Returns the index following the last virtual node list to assign, or -1 if all the origins
+   * must be assigned.
+   */
+  int getLastNodeIndex() {
+    return lastNodeIndex;
+  }
+
   double getLoadFactor() {
     return loadFactor;
   }
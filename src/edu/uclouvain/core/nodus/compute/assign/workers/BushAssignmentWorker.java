@@ -0,0 +1,715 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign.workers;
+
+import edu.uclouvain.core.nodus.compute.assign.Assignment;
+import edu.uclouvain.core.nodus.compute.assign.BushAssignment;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.BinaryHeapDijkstra;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.ShortestPathTrees;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.WarmStartDijkstra;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
+import edu.uclouvain.core.nodus.swing.SingleInstanceMessagePane;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import javax.swing.JOptionPane;
+
+/**
+ * Bush based equilibrium assignment algorithm, close to the Algorithm B of <i>Dial R.B., A
+ * path-based user-equilibrium traffic assignment algorithm that obviates path storage and
+ * enumeration, Transportation Research Part B, Vol 40, n°10, pp. 917-936, 2006.</i>
+ *
+ * <p>For each origin of its range, the worker updates the bush of the origin: the arcs of the
+ * current shortest paths, and the other arcs that are shortcuts for the longest paths of the bush,
+ * are added if they keep the bush acyclic. The flows of the origin are then moved, inside its bush,
+ * from the longest used path segments to the shortest ones. The quantity shifted between two
+ * segments is a Newton step, computed with the derivatives of the arc costs, which are also used to
+ * take into account the flows already moved by the origins handled before, by this worker or by the
+ * others. As the workers run in parallel, the moved flows are only a descent direction: they are
+ * accumulated in the flow array of the worker, and the assignment combines them with the current
+ * flows using the step given by the Frank-Wolfe line search.
+ *
+ * @author Bart Jourquin
+ */
+public class BushAssignmentWorker extends AssignmentWorker {
+
+  /** Maximum number of times the flows of a bush are moved during an iteration. */
+  private static final int MAX_PASSES = 5;
+
+  /** Relative cost difference under which two path segments are considered as equivalent. */
+  private static final double TOLERANCE = 1e-9;
+
+  /* Number of arcs in the current bush, and position of each arc in the bush */
+  private int nbBushArcs;
+  private int[] arcPosition;
+  private int[] arcStamp;
+
+  /* Arcs of the current bush, flows of the origin and change of these flows */
+  private int[] bushArcs = new int[1024];
+  private double[] bushFlows = new double[1024];
+  private double[] bushDeltas = new double[1024];
+
+  /* Local index of the tail and head nodes of each arc of the bush */
+  private int[] bushTails = new int[1024];
+  private int[] bushHeads = new int[1024];
+
+  private BushAssignment bushAssignment;
+
+  private OriginBushes bushes;
+
+  /* Derivative of the cost of each arc */
+  private double[] derivatives;
+
+  /* Flow moved on each arc by the origins already handled during this iteration */
+  private double[] movedFlows;
+
+  /* Arcs entering each local node, and arcs leaving it */
+  private int[] firstIn = new int[1025];
+  private int[] firstOut = new int[1025];
+  private int[] inArcs = new int[1024];
+  private int[] outArcs = new int[1024];
+
+  /* Number of nodes in the current bush, local index of these nodes and virtual node of each one */
+  private int nbLocalNodes;
+  private int[] localNode;
+  private int[] nodeStamp;
+  private int[] globalNode = new int[1024];
+
+  /* Labels of the local nodes, and arcs of the bush that lead to them */
+  private double[] maxLabel = new double[1024];
+  private int[] maxPred = new int[1024];
+  private double[] minLabel = new double[1024];
+  private int[] minPred = new int[1024];
+
+  /* Local nodes in topological order, and position of each node in this order */
+  private int[] order = new int[1024];
+  private int[] rank = new int[1024];
+
+  /* Number of arcs entering each local node that are not visited yet by the sort */
+  private int[] pending = new int[1024];
+
+  /* Arcs of the path to a destination, from the destination to the origin */
+  private int[] pathArcs = new int[256];
+
+  private BinaryHeapDijkstra shortestPath;
+
+  /* Changes for each origin, so that the stamped arrays do not need to be cleared */
+  private int stamp = 0;
+
+  /**
+   * Runs the bush based assignment for the range of origins given in the worker parameters. The
+   * flows are first accumulated in a private array and merged in the virtual links once all the
+   * jobs are done.
+   *
+   * @return True on success.
+   */
+  @Override
+  boolean doAssignment() {
+    // Initialize the adjacency list for current group. It is kept for the next chunk of origins.
+    if (useGroupGraph()) {
+      ShortestPathTrees trees = assignment.getShortestPathTrees(odClass, groupIndex);
+      if (trees != null) {
+        shortestPath = new WarmStartDijkstra(graph, virtualNet, trees);
+      } else {
+        shortestPath = new BinaryHeapDijkstra(graph, virtualNet);
+      }
+      arcPosition = new int[graph.getNbArcs()];
+      arcStamp = new int[graph.getNbArcs()];
+      localNode = new int[graph.getNbNodes()];
+      nodeStamp = new int[graph.getNbNodes()];
+      stamp = 0;
+    }
+
+    bushAssignment = (BushAssignment) assignment;
+    bushes = bushAssignment.getBushes(odClass, groupIndex);
+    bushes.useGraph(graph);
+    derivatives = bushAssignment.getDerivatives(groupIndex);
+    movedFlows = bushAssignment.getMovedFlows(groupIndex);
+
+    // Scan the nodes of the chunk
+    for (int nodeIndex = firstNodeIndex; nodeIndex < lastNodeIndex; nodeIndex++) {
+      int firstCell = odDemand.getFirstCell(nodeIndex, groupIndex, odClass);
+      int lastCell = odDemand.getLastCell(nodeIndex, groupIndex, odClass);
+
+      if (firstCell < lastCell) {
+        String s = null;
+        if (virtualNet.getNbODClasses() > 1) {
+          s =
+              MessageFormat.format(
+                  i18n.get(Assignment.class, "Assignment_for_class", "Assignment for class {0}"),
+                  odClass);
+        } else {
+          s = i18n.get(Assignment.class, "Assignment", "Assignment");
+        }
+        if (!updateProgress(s)) {
+          return false;
+        }
+      }
+
+      // This worker could also have been stopped by another thread
+      if (isCancelled()) {
+        return false;
+      }
+
+      if (firstCell < lastCell && !assignOrigin(nodeIndex, firstCell, lastCell)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Adds an arc to the current bush, and its end nodes if needed.
+   *
+   * @param arc The arc in the adjacency graph.
+   * @param flow The flow of the origin on this arc.
+   */
+  private void addBushArc(int arc, double flow) {
+    if (nbBushArcs == bushArcs.length) {
+      int length = 2 * nbBushArcs;
+      bushArcs = Arrays.copyOf(bushArcs, length);
+      bushFlows = Arrays.copyOf(bushFlows, length);
+      bushDeltas = Arrays.copyOf(bushDeltas, length);
+      bushTails = Arrays.copyOf(bushTails, length);
+      bushHeads = Arrays.copyOf(bushHeads, length);
+      inArcs = Arrays.copyOf(inArcs, length);
+      outArcs = Arrays.copyOf(outArcs, length);
+    }
+
+    arcStamp[arc] = stamp;
+    arcPosition[arc] = nbBushArcs;
+    bushArcs[nbBushArcs] = arc;
+    bushFlows[nbBushArcs] = flow;
+    bushDeltas[nbBushArcs] = 0;
+    bushTails[nbBushArcs] = addLocalNode(graph.tail[arc]);
+    bushHeads[nbBushArcs] = addLocalNode(graph.head[arc]);
+    nbBushArcs++;
+  }
+
+  /**
+   * Adds a node to the current bush if it is not already in it.
+   *
+   * @param node The virtual node.
+   * @return The local index of the node.
+   */
+  private int addLocalNode(int node) {
+    if (nodeStamp[node] == stamp) {
+      return localNode[node];
+    }
+
+    if (nbLocalNodes == globalNode.length) {
+      int length = 2 * nbLocalNodes;
+      globalNode = Arrays.copyOf(globalNode, length);
+      maxLabel = Arrays.copyOf(maxLabel, length);
+      maxPred = Arrays.copyOf(maxPred, length);
+      minLabel = Arrays.copyOf(minLabel, length);
+      minPred = Arrays.copyOf(minPred, length);
+      order = Arrays.copyOf(order, length);
+      rank = Arrays.copyOf(rank, length);
+      pending = Arrays.copyOf(pending, length);
+      firstIn = Arrays.copyOf(firstIn, length + 1);
+      firstOut = Arrays.copyOf(firstOut, length + 1);
+    }
+
+    nodeStamp[node] = stamp;
+    localNode[node] = nbLocalNodes;
+    globalNode[nbLocalNodes] = node;
+    maxLabel[nbLocalNodes] = Double.NEGATIVE_INFINITY;
+    return nbLocalNodes++;
+  }
+
+  /**
+   * Adds to the current bush the arcs between two of its nodes that are a shortcut for the longest
+   * path to their head node. This keeps the bush acyclic. The longest paths must be computed.
+   */
+  private void addShortcuts() {
+    int nbNodes = nbLocalNodes;
+    for (int node = 0; node < nbNodes; node++) {
+      int u = globalNode[node];
+      for (int arc = graph.firstArc[u]; arc < graph.firstArc[u + 1]; arc++) {
+        int v = graph.head[arc];
+        if (arcStamp[arc] != stamp
+            && nodeStamp[v] == stamp
+            && maxLabel[node] + graph.weight[arc] < maxLabel[localNode[v]]) {
+          addBushArc(arc, 0);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the arcs of the shortest paths from the origin to its destinations to the current bush.
+   * For a new bush, all the arcs are added and loaded with the demand. Otherwise, an arc is only
+   * added if it leads to a new node, or if it is a shortcut for the longest path to its head node,
+   * which keeps the bush acyclic.
+   *
+   * @param nodeIndex The index of the virtual node list of the origin.
+   * @param firstCell The index of the first OD cell to assign.
+   * @param lastCell The index following the last OD cell to assign.
+   * @param isNewBush True if the bush is built from scratch.
+   */
+  private void addShortestPaths(int nodeIndex, int firstCell, int lastCell, boolean isNewBush) {
+    for (int cell = firstCell; cell < lastCell; cell++) {
+      int nbArcs = getPath(nodeIndex, cell, true);
+      if (nbArcs < 0) {
+        continue;
+      }
+
+      double quantity = odDemand.getQuantity(cell);
+      for (int i = nbArcs - 1; i >= 0; i--) {
+        int arc = pathArcs[i];
+        if (arcStamp[arc] != stamp) {
+          int tail = localNode[graph.tail[arc]];
+          int head = graph.head[arc];
+          if (isNewBush || nodeStamp[head] != stamp) {
+            addBushArc(arc, 0);
+            maxLabel[bushHeads[nbBushArcs - 1]] = maxLabel[tail] + graph.weight[arc];
+          } else if (maxLabel[tail] + graph.weight[arc] < maxLabel[localNode[head]]) {
+            addBushArc(arc, 0);
+          }
+        }
+        if (isNewBush) {
+          bushFlows[arcPosition[arc]] += quantity;
+        }
+      }
+    }
+  }
+
+  /**
+   * Updates the bush of an origin and moves its flows, then adds them to the flows of the worker.
+   *
+   * @param nodeIndex The index of the virtual node list of the origin.
+   * @param firstCell The index of the first OD cell to assign.
+   * @param lastCell The index following the last OD cell to assign.
+   * @return False if the bush contains a cycle, in which case its flows cannot be moved.
+   */
+  private boolean assignOrigin(int nodeIndex, int firstCell, int lastCell) {
+    int beginNode = virtualNet.getVirtualNodeLists()[nodeIndex].getLoadingVirtualNodeId();
+    shortestPath.compute(beginNode, odDemand, firstCell, lastCell);
+
+    startBush(beginNode);
+
+    int[] previousArcs = bushes.getArcs(nodeIndex);
+    if (previousArcs == null) {
+      addShortestPaths(nodeIndex, firstCell, lastCell, true);
+    } else {
+      // Keep the arcs that carry flow and compute the gap of this origin
+      double[] previousFlows = bushes.getFlows(nodeIndex);
+      double totalCost = 0;
+      for (int i = 0; i < previousArcs.length; i++) {
+        addBushArc(previousArcs[i], previousFlows[i]);
+        totalCost += previousFlows[i] * graph.weight[previousArcs[i]];
+      }
+      bushAssignment.addCosts(totalCost, getShortestPathsCost(nodeIndex, firstCell, lastCell));
+
+      // Add the shortcuts given by the shortest paths
+      boolean isSorted = sortBush();
+      while (!isSorted && removeUnreachableArcs(beginNode)) {
+        isSorted = sortBush();
+      }
+      if (isSorted) {
+        computeMaxLabels();
+        addShortcuts();
+        addShortestPaths(nodeIndex, firstCell, lastCell, false);
+      }
+    }
+
+    // Should not happen, as the added arcs keep the bush acyclic
+    if (!sortBush()) {
+      SingleInstanceMessagePane.display(
+          nodusProject.getProgressListener(),
+          MessageFormat.format(
+              i18n.get(
+                  Assignment.class,
+                  "Cycle_in_bush",
+                  "The bush of origin {0} contains a cycle. The assignment is stopped."),
+              Integer.toString(virtualNet.getVirtualNodeLists()[nodeIndex].getRealNodeId())),
+          JOptionPane.ERROR_MESSAGE);
+      return false;
+    }
+    for (int pass = 0; pass < MAX_PASSES; pass++) {
+      if (!moveFlows()) {
+        break;
+      }
+    }
+
+    for (int i = 0; i < nbBushArcs; i++) {
+      flows[bushArcs[i]] += bushFlows[i];
+    }
+    bushAssignment.addMovedFlows(groupIndex, bushArcs, bushDeltas, nbBushArcs);
+
+    // Only keep the arcs that carry the flow of the origin
+    removeUnusedArcs(beginNode);
+    bushes.setBush(nodeIndex, bushArcs, bushFlows, nbBushArcs);
+    return true;
+  }
+
+  /**
+   * Removes the arcs without flow from the bush, and then the arcs that are no longer reachable
+   * from the origin. The bushes that are kept for the next iteration are thus made of arcs that
+   * all carry flow from the origin, so that combining two of them cannot create a cycle.
+   *
+   * @param beginNode The origin.
+   */
+  private void removeUnusedArcs(int beginNode) {
+    int[] a = Arrays.copyOf(bushArcs, nbBushArcs);
+    double[] f = Arrays.copyOf(bushFlows, nbBushArcs);
+    int n = nbBushArcs;
+    startBush(beginNode);
+    for (int p = 0; p < n; p++) {
+      if (f[p] > 0) {
+        addBushArc(a[p], f[p]);
+      }
+    }
+
+    boolean isSorted = sortBush();
+    while (!isSorted && removeUnreachableArcs(beginNode)) {
+      isSorted = sortBush();
+    }
+  }
+
+  /**
+   * Removes the arcs that leave the nodes, other than the origin, that no arc enters. Because of
+   * rounding errors, the flow of an origin can still leave a node while its entering flow was set
+   * to zero. The flows on these arcs are negligible. Must be called after sortBush().
+   *
+   * @param beginNode The origin.
+   * @return False if no arc was removed, in which case the bush really contains a cycle.
+   */
+  private boolean removeUnreachableArcs(int beginNode) {
+    int[] a = Arrays.copyOf(bushArcs, nbBushArcs);
+    double[] f = Arrays.copyOf(bushFlows, nbBushArcs);
+    int n = 0;
+    for (int p = 0; p < nbBushArcs; p++) {
+      int tail = bushTails[p];
+      if (tail == 0 || firstIn[tail + 1] > firstIn[tail]) {
+        a[n] = bushArcs[p];
+        f[n++] = bushFlows[p];
+      }
+    }
+    if (n == nbBushArcs) {
+      return false;
+    }
+
+    startBush(beginNode);
+    for (int p = 0; p < n; p++) {
+      addBushArc(a[p], f[p]);
+    }
+    return true;
+  }
+
+  /**
+   * Empties the current bush, which then only contains the origin.
+   *
+   * @param beginNode The origin.
+   */
+  private void startBush(int beginNode) {
+    if (++stamp == 0) {
+      Arrays.fill(arcStamp, -1);
+      Arrays.fill(nodeStamp, -1);
+      stamp = 1;
+    }
+    nbBushArcs = 0;
+    nbLocalNodes = 0;
+    addLocalNode(beginNode);
+    maxLabel[0] = 0;
+  }
+
+  /**
+   * Computes the longest path from the origin to each node of the bush, with the current costs.
+   * The bush must be sorted.
+   */
+  private void computeMaxLabels() {
+    for (int k = 1; k < nbLocalNodes; k++) {
+      int node = order[k];
+      double label = Double.NEGATIVE_INFINITY;
+      for (int i = firstIn[node]; i < firstIn[node + 1]; i++) {
+        int p = inArcs[i];
+        label = Math.max(label, maxLabel[bushTails[p]] + graph.weight[bushArcs[p]]);
+      }
+      maxLabel[node] = label;
+    }
+  }
+
+  /**
+   * Computes, for each node of the bush, the shortest path from the origin and the longest path
+   * that only uses arcs with flow. The cost of an arc takes the flow already moved during the
+   * iteration into account.
+   */
+  private void computeLabels() {
+    int origin = order[0];
+    minLabel[origin] = maxLabel[origin] = 0;
+    minPred[origin] = maxPred[origin] = -1;
+
+    for (int k = 1; k < nbLocalNodes; k++) {
+      int node = order[k];
+      double min = Double.POSITIVE_INFINITY;
+      double max = Double.NEGATIVE_INFINITY;
+      int minArc = -1;
+      int maxArc = -1;
+      for (int i = firstIn[node]; i < firstIn[node + 1]; i++) {
+        int p = inArcs[i];
+        int tail = bushTails[p];
+        double cost = getCost(p);
+        if (minArc == -1 || minLabel[tail] + cost < min) {
+          min = minLabel[tail] + cost;
+          minArc = p;
+        }
+        if (bushFlows[p] > 0 && maxPred[tail] != -2 && maxLabel[tail] + cost > max) {
+          max = maxLabel[tail] + cost;
+          maxArc = p;
+        }
+      }
+      minLabel[node] = min;
+      minPred[node] = minArc;
+      maxLabel[node] = max;
+      maxPred[node] = maxArc == -1 ? -2 : maxArc;
+    }
+  }
+
+  /**
+   * Returns the cost of an arc of the bush, linearized around the cost computed for the current
+   * iteration. The flows moved by the other workers are read without synchronization: a value that
+   * is not up to date only makes the cost less accurate.
+   *
+   * @param p The position of the arc in the bush.
+   * @return The cost.
+   */
+  private double getCost(int p) {
+    int arc = bushArcs[p];
+    return graph.weight[arc] + derivatives[arc] * (movedFlows[arc] + bushDeltas[p]);
+  }
+
+  /**
+   * Fills pathArcs with the arcs of the shortest path from the origin to the destination of an OD
+   * cell, starting from the destination.
+   *
+   * @param nodeIndex The index of the virtual node list of the origin.
+   * @param cell The OD cell.
+   * @param logLostPath If true, the OD cell is logged if the destination cannot be reached.
+   * @return The number of arcs in the path, or -1 if the destination cannot be reached.
+   */
+  private int getPath(int nodeIndex, int cell, boolean logLostPath) {
+    int[] pi = shortestPath.getPredecessors();
+    int[] predArcs = shortestPath.getPredecessorArcs();
+    int beginNode = virtualNet.getVirtualNodeLists()[nodeIndex].getLoadingVirtualNodeId();
+    int destinationNodeIndex = odDemand.getDestinationIndex(cell);
+    int endNode =
+        virtualNet.getVirtualNodeLists()[destinationNodeIndex].getUnloadingVirtualNodeId();
+
+    int nbArcs = 0;
+    int currentNode = endNode;
+    while (currentNode != beginNode) {
+      if (pi[currentNode] == 0) {
+        if (logLostPath && assignmentParameters.isLogLostPaths()) {
+          System.out.println(
+              currentGroup
+                  + ", "
+                  + virtualNet.getVirtualNodeLists()[nodeIndex].getRealNodeId()
+                  + ", "
+                  + virtualNet.getVirtualNodeLists()[destinationNodeIndex].getRealNodeId()
+                  + ", "
+                  + odDemand.getQuantity(cell));
+        }
+        return -1;
+      }
+      if (nbArcs == pathArcs.length) {
+        pathArcs = Arrays.copyOf(pathArcs, 2 * nbArcs);
+      }
+      pathArcs[nbArcs++] = predArcs[currentNode];
+      currentNode = pi[currentNode];
+    }
+    return nbArcs;
+  }
+
+  /**
+   * Returns the cost of the demand of an origin if it was assigned on the shortest paths. Used to
+   * compute the relative gap.
+   *
+   * @param nodeIndex The index of the virtual node list of the origin.
+   * @param firstCell The index of the first OD cell to assign.
+   * @param lastCell The index following the last OD cell to assign.
+   * @return The cost.
+   */
+  private double getShortestPathsCost(int nodeIndex, int firstCell, int lastCell) {
+    double cost = 0;
+    for (int cell = firstCell; cell < lastCell; cell++) {
+      int nbArcs = getPath(nodeIndex, cell, false);
+      double length = 0;
+      for (int i = 0; i < nbArcs; i++) {
+        length += graph.weight[pathArcs[i]];
+      }
+      cost += odDemand.getQuantity(cell) * length;
+    }
+    return cost;
+  }
+
+  /**
+   * Moves the flow from the longest used path to the shortest path of each node of the bush, in
+   * reverse topological order.
+   *
+   * @return True if some flow was moved.
+   */
+  private boolean moveFlows() {
+    computeLabels();
+
+    boolean moved = false;
+    for (int k = nbLocalNodes - 1; k > 0; k--) {
+      int node = order[k];
+      if (maxPred[node] < 0) {
+        continue;
+      }
+      // Also false for NaN
+      if (!(maxLabel[node] - minLabel[node] > TOLERANCE * maxLabel[node])) {
+        continue;
+      }
+      if (moveFlow(node)) {
+        moved = true;
+      }
+    }
+    return moved;
+  }
+
+  /**
+   * Moves flow from the longest used path segment to the shortest path segment that lead to a
+   * node, starting at the last node these paths have in common.
+   *
+   * @param node The local index of the node.
+   * @return True if some flow was moved.
+   */
+  private boolean moveFlow(int node) {
+    // Find the node where the two paths diverge
+    int a = bushTails[minPred[node]];
+    int b = bushTails[maxPred[node]];
+    while (a != b) {
+      if (rank[a] > rank[b]) {
+        a = bushTails[minPred[a]];
+      } else {
+        if (maxPred[b] < 0) {
+          return false;
+        }
+        b = bushTails[maxPred[b]];
+      }
+    }
+
+    // Costs of the two segments, and the flow that can be moved
+    double minCost = 0;
+    double maxCost = 0;
+    double derivative = 0;
+    double maxFlow = Double.POSITIVE_INFINITY;
+    for (int n = node; n != a; n = bushTails[minPred[n]]) {
+      int p = minPred[n];
+      minCost += getCost(p);
+      derivative += derivatives[bushArcs[p]];
+    }
+    for (int n = node; n != a; n = bushTails[maxPred[n]]) {
+      int p = maxPred[n];
+      maxCost += getCost(p);
+      derivative += derivatives[bushArcs[p]];
+      maxFlow = Math.min(maxFlow, bushFlows[p]);
+    }
+
+    if (!(maxCost > minCost) || !(maxFlow > 0)) {
+      return false;
+    }
+
+    double quantity = maxFlow;
+    if (derivative > 0) {
+      quantity = Math.min(maxFlow, (maxCost - minCost) / derivative);
+    }
+
+    // The flows that should become null because of the move are set to zero
+    for (int n = node; n != a; n = bushTails[maxPred[n]]) {
+      int p = maxPred[n];
+      bushFlows[p] -= quantity;
+      if (bushFlows[p] <= quantity * TOLERANCE) {
+        bushFlows[p] = 0;
+      }
+      bushDeltas[p] -= quantity;
+    }
+    for (int n = node; n != a; n = bushTails[minPred[n]]) {
+      int p = minPred[n];
+      bushFlows[p] += quantity;
+      bushDeltas[p] += quantity;
+    }
+    return true;
+  }
+
+  /** The flows of the bushes are loaded in the auxiliary flows. */
+  @Override
+  void mergeFlow(VirtualLink vl, byte groupIndex, double flow) {
+    vl.addAuxiliaryFlow(groupIndex, flow);
+  }
+
+  /**
+   * Sorts the nodes of the current bush in topological order, and builds the lists of the arcs
+   * that enter and leave each node.
+   *
+   * @return False if the bush contains a cycle.
+   */
+  private boolean sortBush() {
+    Arrays.fill(firstIn, 0, nbLocalNodes + 1, 0);
+    Arrays.fill(firstOut, 0, nbLocalNodes + 1, 0);
+    for (int p = 0; p < nbBushArcs; p++) {
+      firstIn[bushHeads[p] + 1]++;
+      firstOut[bushTails[p] + 1]++;
+    }
+    for (int i = 0; i < nbLocalNodes; i++) {
+      firstIn[i + 1] += firstIn[i];
+      firstOut[i + 1] += firstOut[i];
+    }
+    for (int p = 0; p < nbBushArcs; p++) {
+      inArcs[firstIn[bushHeads[p]]++] = p;
+      outArcs[firstOut[bushTails[p]]++] = p;
+    }
+    for (int i = nbLocalNodes; i > 0; i--) {
+      firstIn[i] = firstIn[i - 1];
+      firstOut[i] = firstOut[i - 1];
+    }
+    firstIn[0] = firstOut[0] = 0;
+
+    // Kahn's algorithm, starting from the origin
+    for (int i = 0; i < nbLocalNodes; i++) {
+      pending[i] = firstIn[i + 1] - firstIn[i];
+    }
+    if (pending[0] != 0) {
+      return false;
+    }
+    int nbSorted = 0;
+    int next = 0;
+    order[nbSorted++] = 0;
+    while (next < nbSorted) {
+      int node = order[next];
+      pending[node] = -1;
+      rank[node] = next++;
+      for (int i = firstOut[node]; i < firstOut[node + 1]; i++) {
+        int head = bushHeads[outArcs[i]];
+        if (--pending[head] == 0) {
+          order[nbSorted++] = head;
+        }
+      }
+    }
+    return nbSorted == nbLocalNodes;
+  }
+}
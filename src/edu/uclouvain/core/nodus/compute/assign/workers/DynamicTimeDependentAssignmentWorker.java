@@ -22,11 +22,10 @@
 package edu.uclouvain.core.nodus.compute.assign.workers;
 
 import edu.uclouvain.core.nodus.compute.assign.Assignment;
-import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyNode;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.BidirectionalDijkstra;
 import edu.uclouvain.core.nodus.compute.assign.shortestpath.BinaryHeapDijkstra;
 import edu.uclouvain.core.nodus.compute.od.ODCell;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
 
 import java.text.MessageFormat;
 import java.util.Iterator;
@@ -52,15 +51,6 @@ public class DynamicTimeDependentAssignmentWorker extends AssignmentWorker {
 
   LinkedList<DemandToRelocate> demandsToRelocate;
 
-  /**
-   * Initializes an Assignment Worker.
-   *
-   * @param queue The WorkQueue the assignment will run in.
-   */
-  public DynamicTimeDependentAssignmentWorker(WorkQueue queue) {
-    super(queue);
-  }
-
   /**
    * Runs an Dynamic time dependent assignment.
    *
@@ -71,7 +61,11 @@ public class DynamicTimeDependentAssignmentWorker extends AssignmentWorker {
 
     // Initialize the adjacency list for current group
     graph = virtualNet.generateAdjacencyList(groupIndex);
-    shortestPath = new BinaryHeapDijkstra(graph, virtualNet);
+    if (assignmentParameters.isBidirectionalSearch()) {
+      shortestPath = new BidirectionalDijkstra(graph);
+    } else {
+      shortestPath = new BinaryHeapDijkstra(graph, virtualNet);
+    }
 
     // List of OD pairs that will be relocated after the assignment of this time slice
     demandsToRelocate = new LinkedList<>();
@@ -129,7 +123,10 @@ public class DynamicTimeDependentAssignmentWorker extends AssignmentWorker {
           // Compute all the shortest paths in the virtual network starting from here
           // (not a loading node)
           int beginNode = virtualNet.getVirtualNodeLists()[nodeIndex].getLoadingVirtualNodeId();
-          shortestPath.compute(beginNode, demandList);
+          if (!assignmentParameters.isBidirectionalSearch()) {
+            shortestPath.compute(beginNode, demandList);
+            settledNodes += shortestPath.getNbSettledNodes();
+          }
 
           // Build all the relevant detailed paths
           if (!readPaths(demandListIndex, nodeIndex)) {
@@ -155,8 +152,11 @@ public class DynamicTimeDependentAssignmentWorker extends AssignmentWorker {
   private boolean readPaths(int demandListIndex, int nodeIndex) {
 
     int[] pi = shortestPath.getPredecessors();
+    int[] predArcs = shortestPath.getPredecessorArcs();
     int beginNode = virtualNet.getVirtualNodeLists()[nodeIndex].getLoadingVirtualNodeId();
 
+    int lastGoal = -1;
+
     // Scan the demand list
     Iterator<ODCell> it = demandList.iterator();
 
@@ -192,6 +192,13 @@ public class DynamicTimeDependentAssignmentWorker extends AssignmentWorker {
       int endNode =
           virtualNet.getVirtualNodeLists()[destinationNodeIndex].getUnloadingVirtualNodeId();
 
+      // Point-to-point search, not needed again for several starting times to a same destination
+      if (assignmentParameters.isBidirectionalSearch() && endNode != lastGoal) {
+        shortestPath.compute(beginNode, endNode);
+        settledNodes += shortestPath.getNbSettledNodes();
+        lastGoal = endNode;
+      }
+
       int currentNode = endNode;
       boolean isPathFound = true;
       float pathLength = 0;
@@ -225,17 +232,13 @@ public class DynamicTimeDependentAssignmentWorker extends AssignmentWorker {
 
           break;
         } else {
-          AdjacencyNode an = graph[predecessor];
-
-          while (an.endVirtualNode != currentNode) {
-            an = an.nextNode;
-          }
+          int arc = predArcs[currentNode];
 
           /**
            * As the path is build in the reverse order (starting from destination), the used links
            * must be saved in order to compute the time of arrival in each link later
            */
-          orderedLinkList.addFirst(an.virtualLink);
+          orderedLinkList.addFirst(graph.virtualLink[arc]);
 
           // Go to next chunk in the path
           currentNode = predecessor;
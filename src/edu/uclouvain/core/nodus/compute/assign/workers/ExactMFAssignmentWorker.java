@@ -26,14 +26,13 @@ import edu.uclouvain.core.nodus.compute.assign.Assignment;
 import edu.uclouvain.core.nodus.compute.assign.modalsplit.AltPathsList;
 import edu.uclouvain.core.nodus.compute.assign.modalsplit.ModalSplitMethod;
 import edu.uclouvain.core.nodus.compute.assign.modalsplit.Path;
-import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyNode;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.BidirectionalDijkstra;
 import edu.uclouvain.core.nodus.compute.assign.shortestpath.BinaryHeapAStar;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.BinaryHeapDijkstra;
 import edu.uclouvain.core.nodus.compute.od.ODCell;
-import edu.uclouvain.core.nodus.compute.virtual.PathODCell;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNode;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNodeList;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
 
 import java.text.MessageFormat;
 import java.util.HashMap;
@@ -62,7 +61,7 @@ public class ExactMFAssignmentWorker extends AssignmentWorker {
 
   int[] availableModeMeans;
 
-  private BinaryHeapAStar shortestPath;
+  private BinaryHeapDijkstra shortestPath;
 
   /**
    * Two hash tables. The first will contain the OD pairs between which at least one path was found,
@@ -73,20 +72,25 @@ public class ExactMFAssignmentWorker extends AssignmentWorker {
 
   HashMap<String, ODCell> potentialLostPaths = new HashMap<>();
 
+  /** Flags the arcs that are used by the path computed during the current iteration. */
+  private boolean[] inCurrentTree;
+
+  /** Undo log of the arcs flagged in inCurrentTree, which weights are increased. */
+  private int[] treeArcs;
+
+  private int nbTreeArcs;
+
+  /** Arcs used by the paths computed for the current OD cell. */
+  private PathArcLists pathArcLists;
+
+  /** Flows assigned to each arc of the graph, added to the virtual links at the end. */
+  private double[] flow;
+
   ModalSplitMethod modalSplitMethod;
 
   /** Array that will contain the weights of the paths for the successive iterations. */
   private Path[] paths;
 
-  /**
-   * Initializes an Assignment Worker.
-   *
-   * @param queue The WorkQueue the assignment will run in.
-   */
-  public ExactMFAssignmentWorker(WorkQueue queue) {
-    super(queue);
-  }
-
   /**
    * Runs an exact multi-flow assignment.
    *
@@ -99,10 +103,18 @@ public class ExactMFAssignmentWorker extends AssignmentWorker {
 
     LinkedList<PathHeader> pathHeaders = new LinkedList<>();
 
-    // Initialize the adjacency list for current group
-    graph = virtualNet.generateAdjacencyList(groupIndex);
-
-    shortestPath = new BinaryHeapAStar(graph);
+    // Initialize the adjacency list for current group. The weights will be modified.
+    graph = virtualNet.generateAdjacencyList(groupIndex).copy();
+    inCurrentTree = new boolean[graph.getNbArcs()];
+    treeArcs = new int[graph.getNbArcs()];
+    pathArcLists = new PathArcLists();
+    flow = new double[graph.getNbArcs()];
+
+    if (assignmentParameters.isBidirectionalSearch()) {
+      shortestPath = new BidirectionalDijkstra(graph);
+    } else {
+      shortestPath = new BinaryHeapAStar(graph);
+    }
     availableModeMeans = virtualNet.getAvailableModeMeans(groupIndex);
     paths = new Path[assignmentParameters.getNbIterations() * availableModeMeans.length];
     
@@ -166,19 +178,18 @@ public class ExactMFAssignmentWorker extends AssignmentWorker {
             }
 
             /*
-             * Only open graph to current mode/means combination
+             * Only open graph to current mode/means combination. As loading virtual nodes have no
+             * incoming arcs, only the loading arcs that leave the source must be closed.
              */
+            int firstSourceArc = graph.firstArc[beginNode];
+            int lastSourceArc = graph.firstArc[beginNode + 1];
             if (canLoadToCurrentModeMeansFromThisNode) {
-              for (int i = 1; i < graph.length; i++) {
-                AdjacencyNode current = graph[i];
-                while (current != null && current.virtualLink != null) {
-                  if (current.virtualLink.getType() == VirtualLink.TYPE_LOAD) {
-                    if (current.virtualLink.getEndVirtualNode().getModeMeansKey()
-                        != availableModeMean) {
-                      current.edgeWeight = Double.POSITIVE_INFINITY;
-                    }
+              for (int arc = firstSourceArc; arc < lastSourceArc; arc++) {
+                VirtualLink vl = graph.virtualLink[arc];
+                if (vl.getType() == VirtualLink.TYPE_LOAD) {
+                  if (vl.getEndVirtualNode().getModeMeansKey() != availableModeMean) {
+                    graph.weight[arc] = Double.POSITIVE_INFINITY;
                   }
-                  current = current.nextNode;
                 }
               }
             }
@@ -188,6 +199,7 @@ public class ExactMFAssignmentWorker extends AssignmentWorker {
                 alternativePath++) {
               // Compute shortest path tree
               shortestPath.compute(beginNode, endNode);
+              settledNodes += shortestPath.getNbSettledNodes();
 
               // Mark the paths for all the destinations to reach and compute their costs
               paths[currentPathPropertiesIndex] =
@@ -204,31 +216,26 @@ public class ExactMFAssignmentWorker extends AssignmentWorker {
                *  expensive (not for last iteration).
                */
               if (alternativePath < assignmentParameters.getNbIterations() - 1) {
-                for (int i = 1; i < graph.length; i++) {
-                  AdjacencyNode current = graph[i];
-                  while (current != null) {
-
-                    if (current.inCurrentTree) {
-                      // Increase cost on used link if not yet done
-                      current.edgeWeight *= costMarkup;
-                    }
-                    current = current.nextNode;
-                  }
+                for (int i = 0; i < nbTreeArcs; i++) {
+                  graph.weight[treeArcs[i]] *= costMarkup;
                 }
               }
               currentPathPropertiesIndex++;
             } // Next alternative path
 
-            // Reset the original weights of the links to prepare next OD matrix cell
-            for (int i = 1; i < graph.length; i++) {
-              AdjacencyNode current = graph[i];
-
-              while (current != null) {
-                current.edgeWeight = current.originalEdgeWeight;
-                current.inCurrentTree = false;
-                current = current.nextNode;
-              }
+            // Reset the original weights of the modified arcs to prepare next OD matrix cell
+            for (int i = 0; i < nbTreeArcs; i++) {
+              int arc = treeArcs[i];
+              graph.weight[arc] = graph.originalWeight[arc];
+              inCurrentTree[arc] = false;
             }
+            nbTreeArcs = 0;
+            System.arraycopy(
+                graph.originalWeight,
+                firstSourceArc,
+                graph.weight,
+                firstSourceArc,
+                lastSourceArc - firstSourceArc);
           } // Next mode/means
 
           // Log lost paths if needed
@@ -275,23 +282,19 @@ public class ExactMFAssignmentWorker extends AssignmentWorker {
             pathHeaders.clear();
           }
 
-          // Update flow on virtual links
-          for (int i = 1; i < graph.length; i++) {
-            AdjacencyNode current = graph[i];
-
-            while (current != null) {
-              VirtualLink vl = current.virtualLink;
-              if (vl != null) {
-                vl.spreadFlowOverPaths(groupIndex, paths);
-              }
-
-              current = current.nextNode;
-            }
-          }
+          // Update flow on the arcs used by the paths of this cell
+          pathArcLists.spreadFlowOverPaths(paths, flow);
         } // end of the demand cell
       } // end of demand list
     } // Next node
 
+    // Add the flows to the virtual links
+    for (int arc = 0; arc < graph.getNbArcs(); arc++) {
+      if (flow[arc] != 0) {
+        graph.virtualLink[arc].addFlow(groupIndex, flow[arc]);
+      }
+    }
+
     graph = null;
 
     return true;
@@ -426,12 +429,13 @@ public class ExactMFAssignmentWorker extends AssignmentWorker {
   private Path markPaths(
       byte groupIndex,
       int nodeIndex,
-      BinaryHeapAStar shortestPath,
+      BinaryHeapDijkstra shortestPath,
       int iteration,
       ODCell demand,
       LinkedList<PathHeader> pathHeaders) {
     VirtualNodeList[] virtualNodeList = virtualNet.getVirtualNodeLists();
     int[] pi = shortestPath.getPredecessors();
+    int[] predArcs = shortestPath.getPredecessorArcs();
 
     String key = null;
 
@@ -439,7 +443,7 @@ public class ExactMFAssignmentWorker extends AssignmentWorker {
 
     int mode = -1;
 
-    PathODCell pathODCell = new PathODCell(iteration, demand.getQuantity());
+    pathArcLists.addPath(iteration, 0, demand.getQuantity());
     double weight = 0.0;
 
     int currentPathIndex = 0;
@@ -488,21 +492,17 @@ public class ExactMFAssignmentWorker extends AssignmentWorker {
 
         break;
       } else {
-        AdjacencyNode an = graph[predecessor];
-
-        while (an.endVirtualNode != currentNode) {
-          an = an.nextNode;
-        }
+        int arc = predArcs[currentNode];
 
         // Mark this link as being included in the path for this iteration
-        an.inCurrentTree = true;
-        VirtualLink vl = an.virtualLink;
+        if (!inCurrentTree[arc]) {
+          inCurrentTree[arc] = true;
+          treeArcs[nbTreeArcs++] = arc;
+        }
+        VirtualLink vl = graph.virtualLink[arc];
 
-        /**
-         * Performance issue: all the used virtual links are put in a list in order not to need a
-         * browse through the complete virtual network to find them when needed
-         */
-        vl.addCell(groupIndex, pathODCell);
+        // Keep the arcs of the path in order to spread the flow once the modal split is known
+        pathArcLists.addArc(arc);
 
         // Add the real cost to the total cost
         weight += vl.getWeight(groupIndex);
@@ -26,16 +26,14 @@ import edu.uclouvain.core.nodus.compute.assign.Assignment;
 import edu.uclouvain.core.nodus.compute.assign.modalsplit.AltPathsList;
 import edu.uclouvain.core.nodus.compute.assign.modalsplit.ModalSplitMethod;
 import edu.uclouvain.core.nodus.compute.assign.modalsplit.Path;
-import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyNode;
 import edu.uclouvain.core.nodus.compute.assign.shortestpath.BinaryHeapDijkstra;
 import edu.uclouvain.core.nodus.compute.od.ODCell;
-import edu.uclouvain.core.nodus.compute.virtual.PathODCell;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNode;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNodeList;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
 
 import java.text.MessageFormat;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -59,6 +57,8 @@ public class FastMFAssignmentWorker extends AssignmentWorker {
 
   private ODCell demand;
 
+  /** Flows assigned to each arc of the graph, added to the virtual links at the end. */
+  private double[] flow;
 
   /**
    * Two hash tables. The first will contain the OD pairs between which at least one path was found,
@@ -69,20 +69,22 @@ public class FastMFAssignmentWorker extends AssignmentWorker {
 
   HashMap<String, ODCell> potentialLostPaths = new HashMap<>();
 
+  /** Flags the arcs that are used by the paths computed during the current iteration. */
+  private boolean[] inCurrentTree;
+
+  /**
+   * Flags used to ensure that the cost of an arc is only increased one time in a Dijkstra tree.
+   */
+  private boolean[] isIncreased;
+
   ModalSplitMethod modalSplitMethod;
 
+  /** Arcs used by the paths computed from the current node. */
+  private PathArcLists pathArcLists;
+
   /** Array that wall contain the weights of the paths at the successive iterations. */
   private Path[][] paths;
 
-  /**
-   * Initializes an Assignment Worker.
-   *
-   * @param queue The WorkQueue the assignment will run in.
-   */
-  public FastMFAssignmentWorker(WorkQueue queue) {
-    super(queue);
-  }
-
   /**
    * Runs a fast multi-flow assignment.
    *
@@ -96,7 +98,11 @@ public class FastMFAssignmentWorker extends AssignmentWorker {
     double costMarkup = 1 + assignmentParameters.getCostMarkup();
 
     // Initialize
-    graph = virtualNet.generateAdjacencyList(groupIndex);
+    graph = virtualNet.generateAdjacencyList(groupIndex).copy();
+    inCurrentTree = new boolean[graph.getNbArcs()];
+    isIncreased = new boolean[graph.getNbArcs()];
+    flow = new double[graph.getNbArcs()];
+    pathArcLists = new PathArcLists();
     shortestPath = new BinaryHeapDijkstra(graph, virtualNet);
     availableModeMeans = virtualNet.getAvailableModeMeans(groupIndex);
 
@@ -163,16 +169,12 @@ public class FastMFAssignmentWorker extends AssignmentWorker {
            * Only open graph to current mode/means combination
            */
           if (canLoadToCurrentModeMeansFromThisNode) {
-            for (int i = 1; i < graph.length; i++) {
-              AdjacencyNode current = graph[i];
-              while (current != null && current.virtualLink != null) {
-                if (current.virtualLink.getType() == VirtualLink.TYPE_LOAD) {
-                  if (current.virtualLink.getEndVirtualNode().getModeMeansKey()
-                      != availableModeMean) {
-                    current.edgeWeight = Double.POSITIVE_INFINITY;
-                  }
+            for (int arc = 0; arc < graph.getNbArcs(); arc++) {
+              VirtualLink vl = graph.virtualLink[arc];
+              if (vl.getType() == VirtualLink.TYPE_LOAD) {
+                if (vl.getEndVirtualNode().getModeMeansKey() != availableModeMean) {
+                  graph.weight[arc] = Double.POSITIVE_INFINITY;
                 }
-                current = current.nextNode;
               }
             }
           }
@@ -206,48 +208,31 @@ public class FastMFAssignmentWorker extends AssignmentWorker {
                * expensive (not for last iteration).
                */
               if (alternativePath < assignmentParameters.getNbIterations() - 1) {
-                for (int i = 1; i < graph.length; i++) {
-                  AdjacencyNode current = graph[i];
-                  while (current != null) {
-
-                    if (current.inCurrentTree) {
-
-                      /*
-                       * Increase cost on used link if not yet done
-                       */
-                      if (!current.isIncreased) {
-                        current.edgeWeight *= costMarkup;
-                        current.isIncreased = true;
-                      }
+                for (int arc = 0; arc < graph.getNbArcs(); arc++) {
+                  if (inCurrentTree[arc]) {
+
+                    /*
+                     * Increase cost on used link if not yet done
+                     */
+                    if (!isIncreased[arc]) {
+                      graph.weight[arc] *= costMarkup;
+                      isIncreased[arc] = true;
                     }
-                    current = current.nextNode;
-                  } // Next adjacency node for graph[i]
-                } // next i
+                  }
+                } // next arc
 
                 /*
                  * Reset the "increased" flag for next iteration
                  */
-                for (int i = 1; i < graph.length; i++) {
-                  AdjacencyNode current = graph[i];
-                  while (current != null) {
-                    current.isIncreased = false;
-                    current.inCurrentTree = false;
-                    current = current.nextNode;
-                  }
-                }
+                Arrays.fill(isIncreased, false);
+                Arrays.fill(inCurrentTree, false);
               } // End if not last iteration (cost increase)
             }
             currentPathPropertiesIndex++;
           } // end of iteration
 
           // Reset the original weights on the links to prepare next mode/means combination
-          for (int i = 1; i < graph.length; i++) {
-            AdjacencyNode current = graph[i];
-            while (current != null) {
-              current.edgeWeight = current.originalEdgeWeight;
-              current = current.nextNode;
-            }
-          }
+          System.arraycopy(graph.originalWeight, 0, graph.weight, 0, graph.getNbArcs());
         } // end of iteration for current mode/means combination
 
         // Log lost paths if needed
@@ -303,20 +288,18 @@ public class FastMFAssignmentWorker extends AssignmentWorker {
         }
         pathHeaders.clear();
 
-        // Now update the flow on the virtual links, using the just computed weights
-        for (int i = 1; i < graph.length; i++) {
-          AdjacencyNode current = graph[i];
-          while (current != null) {
-            VirtualLink vl = current.virtualLink;
-            if (vl != null) {
-              vl.spreadFlowOverPaths(groupIndex, paths);
-            }
-            current = current.nextNode;
-          }
-        }
+        // Now update the flow on the arcs used by the paths, using the just computed weights
+        pathArcLists.spreadFlowOverPaths(paths, flow);
       } // end of demand list
     } // Next node
 
+    // Add the flows to the virtual links
+    for (int arc = 0; arc < graph.getNbArcs(); arc++) {
+      if (flow[arc] != 0) {
+        graph.virtualLink[arc].addFlow(groupIndex, flow[arc]);
+      }
+    }
+
     return true;
   }
 
@@ -453,6 +436,7 @@ public class FastMFAssignmentWorker extends AssignmentWorker {
       int nodeIndex, int nbOD, int iteration, LinkedList<PathHeader> pathHeaders) {
     VirtualNodeList[] virtualNodeList = virtualNet.getVirtualNodeLists();
     int[] pi = shortestPath.getPredecessors();
+    int[] predArcs = shortestPath.getPredecessorArcs();
     int beginNode = virtualNodeList[nodeIndex].getLoadingVirtualNodeId();
     byte[] groups = virtualNet.getGroups();
     int indexInODRow = 0;
@@ -471,7 +455,7 @@ public class FastMFAssignmentWorker extends AssignmentWorker {
 
     while (it.hasNext()) {
       ODCell demand = it.next();
-      PathODCell pathODCell = new PathODCell(iteration, indexInODRow, demand.getQuantity());
+      pathArcLists.addPath(iteration, indexInODRow, demand.getQuantity());
       double weight = 0.0;
       int intermodalModeKey = 1;
 
@@ -519,18 +503,14 @@ public class FastMFAssignmentWorker extends AssignmentWorker {
 
           break;
         } else {
-          AdjacencyNode an = graph[predecessor];
-
-          while (an.endVirtualNode != currentNode) {
-            an = an.nextNode;
-          }
+          int arc = predArcs[currentNode];
 
           // Mark this link as being included in the path for this iteration
-          an.inCurrentTree = true;
+          inCurrentTree[arc] = true;
 
-          VirtualLink vl = an.virtualLink;
+          VirtualLink vl = graph.virtualLink[arc];
 
-          vl.addCell(groupIndex, pathODCell);
+          pathArcLists.addArc(arc);
 
           // Add the real cost to the total cost
           weight += vl.getWeight(groupIndex);
@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign.workers;
+
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyGraph;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Bushes of the origins of a group, kept from one iteration of the bush based assignment to the
+ * next. The bush of an origin is an acyclic subset of the arcs of the adjacency graph that carries
+ * all the demand of this origin. It is stored as two primitive arrays: the indexes of its arcs and
+ * the flow of the origin on each of them.
+ *
+ * <p>The bushes computed during an iteration are kept aside until the descent step is known. They
+ * are then combined with the bushes of the previous iteration, in the same way as the flows of
+ * the virtual links.
+ *
+ * <p>The arcs refer to the adjacency graph the bushes were last used with. As the graph is built
+ * again each time the costs are computed, the arcs are mapped to the new graph if its structure
+ * changed. The bush of an origin that uses an arc that is no longer in the graph (excluded for
+ * instance) is dropped, and will be rebuilt from scratch.
+ *
+ * @author Bart Jourquin
+ */
+public class OriginBushes {
+
+  /** Arcs of the bush of each origin (index of the virtual node list), or null if none. */
+  private int[][] arcs;
+
+  /** Flow of each origin on the arcs of its bush. */
+  private double[][] flows;
+
+  /** The graph the arcs refer to. */
+  private AdjacencyGraph graph = null;
+
+  /* Bushes computed during the current iteration */
+  private int[][] nextArcs;
+  private double[][] nextFlows;
+
+  /* Flow of an origin on each arc of the graph, and origin that last used each arc */
+  private double[] arcFlows;
+  private int[] arcOrigin;
+
+  /**
+   * Creates empty bushes.
+   *
+   * @param nbOrigins The number of virtual node lists of the virtual network.
+   */
+  public OriginBushes(int nbOrigins) {
+    arcs = new int[nbOrigins][];
+    flows = new double[nbOrigins][];
+    nextArcs = new int[nbOrigins][];
+    nextFlows = new double[nbOrigins][];
+  }
+
+  /**
+   * Combines the bushes computed during the current iteration with the previous ones. As the two
+   * bushes of an origin are subsets of the same acyclic bush, the result is still acyclic.
+   *
+   * <p>New flow = (1-lambda) x previous flow + lambda x flow of the current iteration
+   *
+   * @param lambda The descent step.
+   */
+  public synchronized void combine(double lambda) {
+    if (graph == null) {
+      return;
+    }
+    if (arcFlows == null || arcFlows.length != graph.getNbArcs()) {
+      arcFlows = new double[graph.getNbArcs()];
+      arcOrigin = new int[graph.getNbArcs()];
+      Arrays.fill(arcOrigin, -1);
+    }
+
+    for (int origin = 0; origin < arcs.length; origin++) {
+      int[] a = nextArcs[origin];
+      if (a == null) {
+        continue;
+      }
+      double[] f = nextFlows[origin];
+      nextArcs[origin] = null;
+      nextFlows[origin] = null;
+
+      if (arcs[origin] == null || lambda == 1.0) {
+        arcs[origin] = a;
+        flows[origin] = f;
+        continue;
+      }
+
+      // Union of the arcs of the two bushes
+      int[] union = new int[arcs[origin].length + a.length];
+      int n = 0;
+      for (int i = 0; i < arcs[origin].length; i++) {
+        int arc = arcs[origin][i];
+        arcFlows[arc] = (1 - lambda) * flows[origin][i];
+        arcOrigin[arc] = origin;
+        union[n++] = arc;
+      }
+      for (int i = 0; i < a.length; i++) {
+        int arc = a[i];
+        if (arcOrigin[arc] != origin) {
+          arcFlows[arc] = 0;
+          arcOrigin[arc] = origin;
+          union[n++] = arc;
+        }
+        arcFlows[arc] += lambda * f[i];
+      }
+
+      double[] unionFlows = new double[n];
+      for (int i = 0; i < n; i++) {
+        unionFlows[i] = arcFlows[union[i]];
+        arcOrigin[union[i]] = -1;
+      }
+      store(arcs, flows, origin, union, unionFlows, n);
+    }
+  }
+
+  /**
+   * Returns the arcs of the bush of an origin.
+   *
+   * @param origin The index of the virtual node list of the origin.
+   * @return The arcs, or null if the origin has no bush yet.
+   */
+  int[] getArcs(int origin) {
+    return arcs[origin];
+  }
+
+  /**
+   * Returns the flows of an origin on the arcs of its bush.
+   *
+   * @param origin The index of the virtual node list of the origin.
+   * @return The flows, or null if the origin has no bush yet.
+   */
+  double[] getFlows(int origin) {
+    return flows[origin];
+  }
+
+  /**
+   * Returns the total number of arcs in the bushes, which gives an idea of their memory footprint.
+   *
+   * @return The number of arcs.
+   */
+  public synchronized long getNbArcs() {
+    long nbArcs = 0;
+    for (int[] a : arcs) {
+      if (a != null) {
+        nbArcs += a.length;
+      }
+    }
+    return nbArcs;
+  }
+
+  /**
+   * Sets the bush of an origin computed during the current iteration. Only the arcs that carry a
+   * flow are kept.
+   *
+   * @param origin The index of the virtual node list of the origin.
+   * @param bushArcs The arcs of the bush.
+   * @param bushFlows The flows on these arcs.
+   * @param length The number of arcs in the arrays.
+   */
+  void setBush(int origin, int[] bushArcs, double[] bushFlows, int length) {
+    store(nextArcs, nextFlows, origin, bushArcs, bushFlows, length);
+  }
+
+  /**
+   * Copies the arcs of a bush that carry a flow.
+   *
+   * @param arcsTo The array in which the arcs are stored.
+   * @param flowsTo The array in which the flows are stored.
+   * @param origin The index of the virtual node list of the origin.
+   * @param bushArcs The arcs of the bush.
+   * @param bushFlows The flows on these arcs.
+   * @param length The number of arcs in the arrays.
+   */
+  private static void store(
+      int[][] arcsTo,
+      double[][] flowsTo,
+      int origin,
+      int[] bushArcs,
+      double[] bushFlows,
+      int length) {
+    int n = 0;
+    for (int i = 0; i < length; i++) {
+      if (bushFlows[i] > 0) {
+        n++;
+      }
+    }
+
+    int[] a = new int[n];
+    double[] f = new double[n];
+    n = 0;
+    for (int i = 0; i < length; i++) {
+      if (bushFlows[i] > 0) {
+        a[n] = bushArcs[i];
+        f[n++] = bushFlows[i];
+      }
+    }
+    arcsTo[origin] = a;
+    flowsTo[origin] = f;
+  }
+
+  /**
+   * Makes the bushes refer to a new adjacency graph. Must be called by each worker before it uses
+   * the bushes of an iteration. The arcs are only mapped once, by the first worker.
+   *
+   * @param g The adjacency graph of the group.
+   */
+  synchronized void useGraph(AdjacencyGraph g) {
+    if (g == graph) {
+      return;
+    }
+
+    AdjacencyGraph previousGraph = graph;
+    graph = g;
+    if (previousGraph == null
+        || Arrays.equals(previousGraph.firstArc, g.firstArc)
+            && Arrays.equals(previousGraph.head, g.head)) {
+      return;
+    }
+
+    // Map the virtual links of the previous graph to the arcs of the new one
+    IdentityHashMap<VirtualLink, Integer> newArcs = new IdentityHashMap<>(g.getNbArcs());
+    for (int arc = 0; arc < g.getNbArcs(); arc++) {
+      newArcs.put(g.virtualLink[arc], arc);
+    }
+
+    for (int origin = 0; origin < arcs.length; origin++) {
+      int[] a = arcs[origin];
+      if (a == null) {
+        continue;
+      }
+      for (int i = 0; i < a.length; i++) {
+        Integer arc = newArcs.get(previousGraph.virtualLink[a[i]]);
+        if (arc == null) {
+          a = null;
+          break;
+        }
+        a[i] = arc;
+      }
+      if (a == null) {
+        arcs[origin] = null;
+        flows[origin] = null;
+      }
+    }
+  }
+}
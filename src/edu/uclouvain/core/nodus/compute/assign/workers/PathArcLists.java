@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.assign.workers;
+
+import edu.uclouvain.core.nodus.compute.assign.modalsplit.Path;
+
+import java.util.Arrays;
+
+/**
+ * Lists of the arcs used by the alternative paths computed by the multi-flow assignment algorithms,
+ * stored in primitive arrays that are reused from one origin node to the next. Once the modal split
+ * is known, the flows are only added to the arcs used by the paths, in a flow array that belongs to
+ * the worker.
+ *
+ * @author Bart Jourquin
+ */
+class PathArcLists {
+
+  /** Alternative path (iteration) of each path. */
+  private int[] alternativePath = new int[64];
+
+  /** Arcs of all the paths, path after path. */
+  private int[] arcs = new int[1024];
+
+  /** Index in arcs of the first arc of each path. */
+  private int[] firstArc = new int[64];
+
+  /** Index of the OD cell of each path in the current OD matrix line. */
+  private int[] indexInODLine = new int[64];
+
+  private int nbArcs = 0;
+
+  private int nbPaths = 0;
+
+  /** Total quantity of the OD cell of each path. */
+  private double[] quantity = new double[64];
+
+  /**
+   * Adds an arc to the last added path.
+   *
+   * @param arc The index of the arc in the adjacency list.
+   */
+  void addArc(int arc) {
+    if (nbArcs == arcs.length) {
+      arcs = Arrays.copyOf(arcs, 2 * nbArcs);
+    }
+    arcs[nbArcs++] = arc;
+  }
+
+  /**
+   * Starts a new path.
+   *
+   * @param alternativePath The # of the path alternative.
+   * @param indexInODLine The index of the OD cell in the current OD matrix line (0 for the Exact
+   *     MF, because computed cell by cell).
+   * @param quantity Quantity to spread over all the alternative paths (total quantity of the OD
+   *     cell).
+   */
+  void addPath(int alternativePath, int indexInODLine, double quantity) {
+    if (nbPaths == firstArc.length) {
+      int length = 2 * nbPaths;
+      this.alternativePath = Arrays.copyOf(this.alternativePath, length);
+      this.indexInODLine = Arrays.copyOf(this.indexInODLine, length);
+      this.quantity = Arrays.copyOf(this.quantity, length);
+      firstArc = Arrays.copyOf(firstArc, length);
+    }
+    this.alternativePath[nbPaths] = alternativePath;
+    this.indexInODLine[nbPaths] = indexInODLine;
+    this.quantity[nbPaths] = quantity;
+    firstArc[nbPaths] = nbArcs;
+    nbPaths++;
+  }
+
+  /** Removes all the paths. */
+  void clear() {
+    nbArcs = 0;
+    nbPaths = 0;
+  }
+
+  /**
+   * Adds the share of the demand assigned to each path to the flow of its arcs, and removes all the
+   * paths. This is used by the exact multi-flow assignment algorithm once the modal split function
+   * has been called.
+   *
+   * @param path The set of paths computed for the current OD cell.
+   * @param flow The flows, indexed by arc.
+   */
+  void spreadFlowOverPaths(Path[] path, double[] flow) {
+    for (int p = 0; p < nbPaths; p++) {
+      spreadFlowOverPath(p, path[alternativePath[p]], flow);
+    }
+    clear();
+  }
+
+  /**
+   * Adds the share of the demand assigned to each path to the flow of its arcs, and removes all the
+   * paths. This is used by the fast multi-flow assignment algorithm once the modal split function
+   * has been called.
+   *
+   * @param path The set of paths computed for the current OD matrix line.
+   * @param flow The flows, indexed by arc.
+   */
+  void spreadFlowOverPaths(Path[][] path, double[] flow) {
+    for (int p = 0; p < nbPaths; p++) {
+      spreadFlowOverPath(p, path[alternativePath[p]][indexInODLine[p]], flow);
+    }
+    clear();
+  }
+
+  private void spreadFlowOverPath(int p, Path path, double[] flow) {
+    if (path.weight == Double.MAX_VALUE) {
+      return;
+    }
+
+    // The flow can be a NaN instead of 0 in the Multinomial logit modal split function
+    double q = quantity[p] * path.weight;
+    if (Double.isNaN(q)) {
+      return;
+    }
+
+    int lastArc = p + 1 < nbPaths ? firstArc[p + 1] : nbArcs;
+    for (int i = firstArc[p]; i < lastArc; i++) {
+      flow[arcs[i]] += q;
+    }
+  }
+}
@@ -22,11 +22,9 @@
 package edu.uclouvain.core.nodus.compute.assign.workers;
 
 import edu.uclouvain.core.nodus.compute.assign.Assignment;
-import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyNode;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.BidirectionalDijkstra;
 import edu.uclouvain.core.nodus.compute.assign.shortestpath.BinaryHeapDijkstra;
-import edu.uclouvain.core.nodus.compute.od.ODCell;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
 
 import java.text.MessageFormat;
 import java.util.Iterator;
@@ -49,15 +47,6 @@ public class StaticAoNTimeDependentAssignmentWorker extends AssignmentWorker {
   int nbTimeSlices;
   float timeSliceDuration;
 
-  /**
-   * Initializes an Assignment Worker.
-   *
-   * @param queue The WorkQueue the assignment will run in.
-   */
-  public StaticAoNTimeDependentAssignmentWorker(WorkQueue queue) {
-    super(queue);
-  }
-
   /**
    * Runs a static All-Or-Nothing time dependent assignment algorithm.
    *
@@ -68,14 +57,19 @@ public class StaticAoNTimeDependentAssignmentWorker extends AssignmentWorker {
 
     // Initialize the adjacency list for current group
     graph = virtualNet.generateAdjacencyList(groupIndex);
-    shortestPath = new BinaryHeapDijkstra(graph, virtualNet);
+    if (assignmentParameters.isBidirectionalSearch()) {
+      shortestPath = new BidirectionalDijkstra(graph);
+    } else {
+      shortestPath = new BinaryHeapDijkstra(graph, virtualNet);
+    }
 
     // Scan all the nodes
     for (int nodeIndex = 0; nodeIndex < virtualNet.getVirtualNodeLists().length; nodeIndex++) {
+      int firstCell = odDemand.getFirstCell(nodeIndex, groupIndex, odClass);
+      int lastCell = odDemand.getLastCell(nodeIndex, groupIndex, odClass);
 
       // Update progress bar
-      if (virtualNet.getVirtualNodeLists()[nodeIndex].hasDemandForGroup(
-          virtualNet.getGroups()[groupIndex], odClass)) {
+      if (firstCell < lastCell) {
         String s = null;
         if (virtualNet.getNbODClasses() > 1) {
           s =
@@ -96,18 +90,18 @@ public class StaticAoNTimeDependentAssignmentWorker extends AssignmentWorker {
         return false;
       }
 
-      // Get the demand associated to this node for the current group
-      demandList =
-          virtualNet.getVirtualNodeLists()[nodeIndex].getDemandForGroup(
-              virtualNet.getGroups()[groupIndex], odClass);
-
-      if (demandList != null) {
-        // Compute all the shortest paths in the virtual network starting from here
+      // Assign the demand associated to this node for the current group
+      if (firstCell < lastCell) {
+        // Compute all the shortest paths in the virtual network starting from here, unless they
+        // are computed for each OD pair
         int beginNode = virtualNet.getVirtualNodeLists()[nodeIndex].getLoadingVirtualNodeId();
-        shortestPath.compute(beginNode, demandList);
+        if (!assignmentParameters.isBidirectionalSearch()) {
+          shortestPath.compute(beginNode, odDemand, firstCell, lastCell);
+          settledNodes += shortestPath.getNbSettledNodes();
+        }
 
         // Build all the relevant detailed paths
-        if (!readPaths(nodeIndex)) {
+        if (!readPaths(nodeIndex, firstCell, lastCell)) {
           return false;
         }
       }
@@ -117,25 +111,36 @@ public class StaticAoNTimeDependentAssignmentWorker extends AssignmentWorker {
   }
 
   /** Build all the paths starting from the origin node. */
-  private boolean readPaths(int nodeIndex) {
+  private boolean readPaths(int nodeIndex, int firstCell, int lastCell) {
     int[] pi = shortestPath.getPredecessors();
+    int[] predArcs = shortestPath.getPredecessorArcs();
     int beginNode = virtualNet.getVirtualNodeLists()[nodeIndex].getLoadingVirtualNodeId();
 
-    // Scan the demand list
-    Iterator<ODCell> it = demandList.iterator();
+    int lastGoal = -1;
 
-    while (it.hasNext()) {
-      ODCell demand = it.next();
+    // Scan the demand of this origin
+    for (int cell = firstCell; cell < lastCell; cell++) {
+      double quantity = odDemand.getQuantity(cell);
 
       LinkedList<VirtualLink> orderedLinkList = new LinkedList<>();
 
       // Build path from end to begin node
-      int destinationNodeIndex =
-          virtualNet.getNodeIndexInVirtualNodeList(demand.getDestinationNodeId(), true);
+      int destinationNodeIndex = odDemand.getDestinationIndex(cell);
       int endNode =
           virtualNet.getVirtualNodeLists()[destinationNodeIndex].getUnloadingVirtualNodeId();
 
+      // Point-to-point search, not needed again for several starting times to a same destination
+      if (assignmentParameters.isBidirectionalSearch() && endNode != lastGoal) {
+        shortestPath.compute(beginNode, endNode);
+        settledNodes += shortestPath.getNbSettledNodes();
+        lastGoal = endNode;
+      }
+
       int currentNode = endNode;
+      int pathIndex = 0;
+      if (pathWriter.isSavePaths()) {
+        pathIndex = getPathIndex(cell);
+      }
       boolean isPathFound = true;
       float pathLength = 0;
       float pathDuration = 0;
@@ -147,7 +152,7 @@ public class StaticAoNTimeDependentAssignmentWorker extends AssignmentWorker {
       byte unloadingMeans = 0;
 
       // Get starting time of route in seconds
-      int odStartingTime = demand.getStartingTime();
+      int odStartingTime = odDemand.getStartingTime(cell);
       int currentTime = odStartingTime;
 
       while (currentNode != beginNode) {
@@ -163,23 +168,19 @@ public class StaticAoNTimeDependentAssignmentWorker extends AssignmentWorker {
                     + ", "
                     + virtualNet.getVirtualNodeLists()[destinationNodeIndex].getRealNodeId()
                     + ", "
-                    + demand.getQuantity());
+                    + quantity);
           }
           isPathFound = false;
 
           break;
         } else {
-          AdjacencyNode an = graph[predecessor];
-
-          while (an.endVirtualNode != currentNode) {
-            an = an.nextNode;
-          }
+          int arc = predArcs[currentNode];
 
           /**
            * As the path is build in the reverse order (starting from destination), the used links
            * must be saved in order to compute the time of arrival in each link later
            */
-          orderedLinkList.addFirst(an.virtualLink);
+          orderedLinkList.addFirst(graph.virtualLink[arc]);
 
           // Go to next chunk in the path
           currentNode = predecessor;
@@ -206,11 +207,11 @@ public class StaticAoNTimeDependentAssignmentWorker extends AssignmentWorker {
             }
           } else {
             System.out.println(
-                demand.getOriginNodeId()
+                virtualNet.getVirtualNodeLists()[nodeIndex].getRealNodeId()
                     + "-"
-                    + demand.getDestinationNodeId()
+                    + virtualNet.getVirtualNodeLists()[destinationNodeIndex].getRealNodeId()
                     + " starting at "
-                    + demand.getStartingTime() / 60
+                    + odDemand.getStartingTime(cell) / 60
                     + " minutes after midnight is out of time frame");
           }
 
@@ -248,22 +249,25 @@ public class StaticAoNTimeDependentAssignmentWorker extends AssignmentWorker {
                 pathCosts.mvCosts += vl.getWeight(groupIndex);
                 pathLength += vl.getLength();
                 pathDuration += vl.getDuration();
-                pathWriter.savePathLink(vl);
+                pathWriter.savePathLink(vl, pathIndex);
                 break;
               default:
                 break;
             }
           }
         }
-        vl.addFlow(groupIndex, timeSlice, demand.getQuantity());
+        vl.addFlow(groupIndex, timeSlice, quantity);
       }
 
       // Save the header of this detailed path if needed
       if (isPathFound && pathWriter.isSavePaths()) {
         if (!pathWriter.savePathHeader(
             1,
-            demand,
-            demand.getQuantity(),
+            currentGroup,
+            virtualNet.getVirtualNodeLists()[nodeIndex].getRealNodeId(),
+            virtualNet.getVirtualNodeLists()[destinationNodeIndex].getRealNodeId(),
+            odDemand.getStartingTime(cell),
+            quantity,
             pathLength,
             pathDuration,
             pathCosts,
@@ -271,7 +275,8 @@ public class StaticAoNTimeDependentAssignmentWorker extends AssignmentWorker {
             loadingMeans,
             unloadingMode,
             unloadingMeans,
-            nbTranshipments)) {
+            nbTranshipments,
+            pathIndex)) {
           return false;
         }
       }
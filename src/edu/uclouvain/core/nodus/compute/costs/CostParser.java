@@ -36,6 +36,7 @@ import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
 import edu.uclouvain.core.nodus.database.JDBCUtils;
 import edu.uclouvain.core.nodus.utils.StringUtils;
 
+import java.io.StringReader;
 import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.Enumeration;
@@ -49,12 +50,14 @@ import parsii.eval.Parser;
 import parsii.eval.Scope;
 import parsii.eval.Variable;
 import parsii.tokenizer.ParseException;
+import parsii.tokenizer.Token;
+import parsii.tokenizer.Tokenizer;
 
 /**
  * This cost parser is able to compute the cost of a virtual link given the cost functions written
  * in a "properties like" file. A cost parser is initialized for each group of commodities, OD class
- * and time slice and put in a queue. A series of CostParserWorkers, which number is equal to the
- * number of threads defined by the user at the assignment time, will run the cost parsers. <br>
+ * and time slice, and run by a CostParserWorker on the threads of the assignment, which number is
+ * defined by the user at the assignment time. <br>
  * The evaluation itself is performed using the "Parsii" mathematical expressions parser
  * (https://github.com/scireum/parsii). Example of a valid cost functions file: <br>
  * <br>
@@ -206,8 +209,32 @@ public class CostParser {
     return value;
   }
 
+  /** A cost function formula, compiled once for a given link type and mode/means combination. */
+  private class CompiledFunction {
+    /** The Parsii expression, or null if the formula could not be parsed. */
+    Expression expression = null;
+
+    /** True if the formula refers to the flow and must be evaluated again at each iteration. */
+    boolean flowDependent = false;
+
+    /** The formula, used in the error messages. */
+    String formula = null;
+
+    /** Error message returned by Parsii if the formula could not be parsed. */
+    String parseError = null;
+
+    /** True if no cost function is defined. */
+    boolean undefined = false;
+  }
+
   private byte classNum;
 
+  /**
+   * Compiled cost functions, indexed by link type, (first) mode-means key and second mode-means key
+   * (transhipment and switching links only).
+   */
+  private CompiledFunction[][][] compiledFunctions = new CompiledFunction[7][][];
+
   /** Cost functions files. Normally a property file which extension is ".cost" */
   private Properties costFunctions;
 
@@ -217,22 +244,31 @@ public class CostParser {
 
   private int currentType = VirtualLink.TYPE_MOVE;
 
+  private Variable durationVariable;
+
   private String errorMessage = null;
 
-  /** For Parsii. */
-  private Expression expression;
+  private Variable flowVariable;
 
-  private byte groupNum;
+  private Variable frequencyVariable;
 
-  private boolean hasMoveVariables = false;
+  private byte groupNum;
 
   private boolean initialized = false;
 
+  private Variable lengthVariable;
+
   /**
    * Vector containing all the link field names (columns names in the corresponding dbfTableModel).
    */
   private Vector<String>[] linkFieldName;
 
+  /** Parsii variables bound to the numeric fields of the link layers. */
+  private Variable[][] linkFieldVariables;
+
+  /** Parsii variables that represent the link layers. */
+  private Variable[] linkLayerVariables;
+
   /** Links graphic lists used to store/retrieve/update flows. */
   private EsriGraphicList[] links;
 
@@ -245,11 +281,23 @@ public class CostParser {
   /** Nodus Link layers. */
   private NodusEsriLayer[] linksEsriLayer;
 
+  /** Parsii scope used to parse the formulas of the moving links. */
+  private Scope moveScope;
+
   /**
    * Vector containing all the node field names (columns names in the corresponding dbfTableModel).
    */
   private Vector<String>[] nodeFieldName;
 
+  /** Parsii variables bound to the numeric fields of the node layers. */
+  private Variable[][] nodeFieldVariables;
+
+  /** Parsii variables that represent the node layers. */
+  private Variable[] nodeLayerVariables;
+
+  /** Parsii scope used to parse the formulas of the links in the nodes. */
+  private Scope nodeScope;
+
   /**
    * DbfTableModel (see OpenMap documentation for more details) containing the .dbf data of all the
    * node layers.
@@ -259,7 +307,7 @@ public class CostParser {
   /** Nodus Node layers. */
   private NodusEsriLayer[] nodesEsriLayer;
 
-  private String previousLayerVariableName;
+  private Variable previousLayerVariable;
 
   private NodusProject project = null;
 
@@ -271,6 +319,10 @@ public class CostParser {
 
   private byte timeSlice;
 
+  private Variable transhipVariable;
+
+  private Variable upStreamVariable;
+
   /**
    * Initializes a new cost parser for a given group, class and time slice.
    *
@@ -302,7 +354,6 @@ public class CostParser {
     // Get the nodes and link layers
     nodesEsriLayer = project.getNodeLayers();
     linksEsriLayer = project.getLinkLayers();
-    previousLayerVariableName = nodesEsriLayer[0].getLayerVariableName();
 
     // Get the table models for nodes and links
     nodesDbf = new DbfTableModel[nodesEsriLayer.length];
@@ -369,6 +420,60 @@ public class CostParser {
     if (initialiseVariableForGroup(groupNum, classNum)) {
       initialized = true;
     }
+
+    bindVariables();
+  }
+
+  /**
+   * Creates the Parsii variables that are updated for each virtual link. The formulas are compiled
+   * only once, so these variables are never removed from the scopes, but the flow and length are
+   * only visible to the formulas of the moving links and the tranship variable only to the formulas
+   * of the links in the nodes.
+   */
+  private void bindVariables() {
+    nodeLayerVariables = new Variable[nodesEsriLayer.length];
+    for (int i = 0; i < nodesEsriLayer.length; i++) {
+      nodeLayerVariables[i] = scope.create(nodesEsriLayer[i].getLayerVariableName());
+    }
+
+    linkLayerVariables = new Variable[linksEsriLayer.length];
+    for (int i = 0; i < linksEsriLayer.length; i++) {
+      linkLayerVariables[i] = scope.create(linksEsriLayer[i].getLayerVariableName());
+    }
+    previousLayerVariable = nodeLayerVariables[0];
+
+    nodeFieldVariables = new Variable[nodeFieldName.length][];
+    for (int i = 0; i < nodeFieldName.length; i++) {
+      nodeFieldVariables[i] = new Variable[nodeFieldName[i].size()];
+      for (int j = 0; j < nodeFieldName[i].size(); j++) {
+        String name = nodeFieldName[i].get(j);
+        if (name != null) {
+          nodeFieldVariables[i][j] = scope.create(name);
+        }
+      }
+    }
+
+    linkFieldVariables = new Variable[linkFieldName.length][];
+    for (int i = 0; i < linkFieldName.length; i++) {
+      linkFieldVariables[i] = new Variable[linkFieldName[i].size()];
+      for (int j = 0; j < linkFieldName[i].size(); j++) {
+        String name = linkFieldName[i].get(j);
+        if (name != null) {
+          linkFieldVariables[i][j] = scope.create(name);
+        }
+      }
+    }
+
+    upStreamVariable = scope.create(NodusC.VARNAME_UPSTREAM);
+    frequencyVariable = scope.create(NodusC.VARNAME_FREQUENCY);
+    durationVariable = scope.create(NodusC.VARNAME_DURATION);
+
+    moveScope = new Scope().withParent(scope).withStrictLookup(true);
+    lengthVariable = moveScope.create(NodusC.VARNAME_LENGTH);
+    flowVariable = moveScope.create(NodusC.VARNAME_FLOW);
+
+    nodeScope = new Scope().withParent(scope).withStrictLookup(true);
+    transhipVariable = nodeScope.create(NodusC.VARNAME_TRANSHIP);
   }
 
   /**
@@ -379,28 +484,206 @@ public class CostParser {
    *     during parsing or UNDEFINED_FUNCTION if no cost function was defined for this virtual link.
    */
   public double compute(VirtualLink vl) {
+    return compute(vl, -1);
+  }
+
+  /**
+   * Returns the cost computed for a given virtual link, using a given number of standard vehicles
+   * as flow on the real link instead of the current one. This is used by line searches, which
+   * evaluate the costs on flows that are not (yet) assigned.
+   *
+   * @param vl A virtual link.
+   * @param standardVehicles The flow to use for moving virtual links, expressed in standard
+   *     vehicles. If negative, the current flow on the real link is used.
+   * @return The computed cost, PARSER_ERROR or UNDEFINED_FUNCTION.
+   */
+  public double compute(VirtualLink vl, double standardVehicles) {
 
     int type = vl.getType();
 
-    // Load the layer variable name (set to 1 for current layer)
-    String layerVariableName;
+    // Load the layer variable (set to 1 for current layer)
+    Variable layerVariable;
 
     if (type == VirtualLink.TYPE_MOVE) {
-      layerVariableName = linksEsriLayer[vl.getLayerIndex()].getLayerVariableName();
+      layerVariable = linkLayerVariables[vl.getLayerIndex()];
+    } else {
+      layerVariable = nodeLayerVariables[vl.getLayerIndex()];
+    }
+
+    if (layerVariable != previousLayerVariable) {
+      previousLayerVariable.setValue(0.0);
+      layerVariable.setValue(1.0);
+      previousLayerVariable = layerVariable;
+    }
+
+    // Fetch the compiled cost function
+    CompiledFunction function = getCompiledFunction(vl);
+
+    if (function.undefined) {
+      return UNDEFINED_FUNCTION;
+    }
+
+    if (function.expression == null) {
+      errorMessage = vl.toString() + ": " + function.formula + '\n' + function.parseError;
+      return PARSER_ERROR;
+    }
+
+    int layerIndex = vl.getLayerIndex();
+    int indexInLayer = vl.getIndexInLayer();
+
+    // Set shp/dbf related variables in parser
+    Variable[] fieldVariables = null;
+    List<Object> values = null;
+
+    // Try to minimize the number of variables to update in the parser
+    boolean reloadVariables = false;
+
+    // Up or Downstream ?
+    upStreamVariable.setValue(vl.getUpStream() ? 1 : 0);
+
+    if (currentType != type) {
+      reloadVariables = true;
+      currentLink = vl.getBeginVirtualNode().getRealLinkId();
+      currentNode = vl.getBeginVirtualNode().getRealNodeId(false);
+      currentType = type;
+    } else {
+      if (type == VirtualLink.TYPE_MOVE) {
+        if (vl.getBeginVirtualNode().getRealLinkId() != currentLink) {
+          reloadVariables = true;
+          currentLink = vl.getBeginVirtualNode().getRealLinkId();
+        } else {
+          if (vl.getBeginVirtualNode().getRealNodeId(false) != currentNode) {
+            reloadVariables = true;
+            currentNode = vl.getBeginVirtualNode().getRealNodeId(false);
+          }
+        }
+      }
+    }
+    if (vl.getBeginVirtualNode().getService() != vl.getEndVirtualNode().getService()) {
+      frequencyVariable.setValue(
+          project.getServiceEditor().frequencyByService(vl.getEndVirtualNode().getService()));
+    } else {
+      frequencyVariable.setValue(0);
+    }
+
+    if (reloadVariables) {
+      if (type == VirtualLink.TYPE_MOVE) {
+        fieldVariables = linkFieldVariables[layerIndex];
+        values = linksDbf[layerIndex].getRecord(indexInLayer);
+
+        // Get RealLink object
+        OMGraphic omg = links[layerIndex].getOMGraphicAt(indexInLayer);
+        RealLink rl = (RealLink) omg.getAttribute(0);
+
+        // Get length and duration
+        lengthVariable.setValue(rl.getLength());
+        durationVariable.setValue(rl.getDuration());
+
+        /*
+         * Get (oriented) flow for the real link associated to this virtual link.
+         * The flow must here be computed as a number of vehicles
+         */
+        flowVariable.setValue(rl.getCurrentStandardVehicles(vl));
+
+      } else {
+        fieldVariables = nodeFieldVariables[layerIndex];
+        values = nodesDbf[layerIndex].getRecord(indexInLayer);
+
+        // Get Tranship field
+        transhipVariable.setValue((double) values.get(NodusC.DBF_IDX_TRANSHIP));
+      }
+
+      // dbf fields
+      for (int i = 0; i < fieldVariables.length; i++) {
+        if (fieldVariables[i] != null) {
+          fieldVariables[i].setValue(JDBCUtils.getDouble(values.get(i)));
+        }
+      }
+    } // if reloadVariables
+
+    if (standardVehicles >= 0 && type == VirtualLink.TYPE_MOVE) {
+      flowVariable.setValue(standardVehicles);
+    }
+
+    double cost = function.expression.evaluate();
+
+    if (Double.isNaN(cost)) {
+      errorMessage = vl.toString() + ": " + function.formula + " =  NaN\n";
+      return PARSER_ERROR;
+    }
+
+    if (Double.isInfinite(cost)) {
+      errorMessage = vl.toString() + ": " + function.formula + " =  Infinity\n";
+      return PARSER_ERROR;
+    }
+
+    // The cost must be positive
+    if (cost < 0) {
+      errorMessage =
+          function.formula
+              + '\n'
+              + i18n.get(CostParser.class, "Result_is_negative", "Result is negative");
+      return PARSER_ERROR;
+    }
+
+    // A correct cost was computed
+    return cost;
+  }
+
+  /**
+   * Returns the compiled cost function for a given virtual link. The function is resolved and
+   * parsed the first time a link of the same type and mode/means combination is met.
+   *
+   * @param vl A virtual link.
+   * @return The compiled function.
+   */
+  private CompiledFunction getCompiledFunction(VirtualLink vl) {
+    int type = vl.getType();
+
+    int fromKey;
+    int toKey = 0;
+    int toSize = 1;
+    if (type == VirtualLink.TYPE_LOAD) {
+      fromKey = vl.getEndVirtualNode().getModeMeansKey();
     } else {
-      layerVariableName = nodesEsriLayer[vl.getLayerIndex()].getLayerVariableName();
+      fromKey = vl.getBeginVirtualNode().getModeMeansKey();
+    }
+    if (type == VirtualLink.TYPE_TRANSHIP || type == VirtualLink.TYPE_SWITCH) {
+      toKey = vl.getEndVirtualNode().getModeMeansKey();
+      toSize = NodusC.MAXMM * NodusC.MAXMM;
     }
 
-    if (!layerVariableName.equals(previousLayerVariableName)) {
-      setVariable(previousLayerVariableName, 0.0);
-      setVariable(layerVariableName, 1.0);
-      previousLayerVariableName = layerVariableName;
+    if (compiledFunctions[type] == null) {
+      compiledFunctions[type] = new CompiledFunction[NodusC.MAXMM * NodusC.MAXMM][];
+    }
+    CompiledFunction[] functions = compiledFunctions[type][fromKey];
+    if (functions == null) {
+      functions = new CompiledFunction[toSize];
+      compiledFunctions[type][fromKey] = functions;
     }
 
+    CompiledFunction function = functions[toKey];
+    if (function == null) {
+      function = compileFunction(vl);
+      functions[toKey] = function;
+    }
+    return function;
+  }
+
+  /**
+   * Finds the cost function formula to use for a given virtual link, and parses it.
+   *
+   * @param vl A virtual link.
+   * @return The compiled function.
+   */
+  private CompiledFunction compileFunction(VirtualLink vl) {
+
+    CompiledFunction function = new CompiledFunction();
+
     // Build cost function
     String costFunctionName = "";
 
-    switch (type) {
+    switch (vl.getType()) {
       case VirtualLink.TYPE_LOAD:
         costFunctionName =
             "ld." + vl.getEndVirtualNode().getMode() + "," + vl.getEndVirtualNode().getMeans();
@@ -464,7 +747,7 @@ public class CostParser {
     // At least the generic function must exists
     // Test the existence of time specific cost function
     if (timeSlice != -1) {
-      String s = "t" + timeSlice + "." + new String(costFunctionName);
+      String s = "t" + timeSlice + "." + costFunctionName;
       defaultFormula = (String) costFunctions.get(s);
       if (defaultFormula == null) {
         defaultFormula = (String) costFunctions.get(costFunctionName);
@@ -474,100 +757,9 @@ public class CostParser {
     }
 
     if (defaultFormula == null) {
-      return UNDEFINED_FUNCTION;
-    }
-
-    int layerIndex = vl.getLayerIndex();
-    int indexInLayer = vl.getIndexInLayer();
-
-    // Set shp/dbf related variables in parser
-    Vector<?> fieldName = null;
-    List<Object> values = null;
-
-    // Try to minimize the number of variables to update in the parser
-    boolean reloadVariables = false;
-
-    // Up or Downstream ?
-    setVariable(NodusC.VARNAME_UPSTREAM, vl.getUpStream());
-
-    if (currentType != type) {
-      reloadVariables = true;
-      currentLink = vl.getBeginVirtualNode().getRealLinkId();
-      currentNode = vl.getBeginVirtualNode().getRealNodeId(false);
-      currentType = type;
-    } else {
-      if (type == VirtualLink.TYPE_MOVE) {
-        if (vl.getBeginVirtualNode().getRealLinkId() != currentLink) {
-          reloadVariables = true;
-          currentLink = vl.getBeginVirtualNode().getRealLinkId();
-        } else {
-          if (vl.getBeginVirtualNode().getRealNodeId(false) != currentNode) {
-            reloadVariables = true;
-            currentNode = vl.getBeginVirtualNode().getRealNodeId(false);
-          }
-        }
-      }
+      function.undefined = true;
+      return function;
     }
-    if (vl.getBeginVirtualNode().getService() != vl.getEndVirtualNode().getService()) {
-      setVariable(
-          NodusC.VARNAME_FREQUENCY,
-          project.getServiceEditor().frequencyByService(vl.getEndVirtualNode().getService()));
-    } else {
-      setVariable(NodusC.VARNAME_FREQUENCY, 0);
-    }
-
-    if (reloadVariables) {
-      if (type == VirtualLink.TYPE_MOVE) {
-        fieldName = linkFieldName[layerIndex];
-        values = linksDbf[layerIndex].getRecord(indexInLayer);
-
-        // Get RealLink object
-        OMGraphic omg = links[layerIndex].getOMGraphicAt(indexInLayer);
-        RealLink rl = (RealLink) omg.getAttribute(0);
-
-        // Get length and duration
-        setVariable(NodusC.VARNAME_LENGTH, rl.getLength());
-        setVariable(NodusC.VARNAME_DURATION, rl.getDuration());
-
-        // Remove the tranship variable if exists
-        if (!hasMoveVariables) {
-          scope.remove(NodusC.VARNAME_TRANSHIP);
-        }
-
-        hasMoveVariables = true;
-
-        /*
-         * Get (oriented) flow for the real link associated to this virtual link.
-         * The flow must here be computed as a number of vehicles
-         */
-
-        setVariable(NodusC.VARNAME_FLOW, rl.getCurrentStandardVehicles(vl));
-
-      } else {
-        fieldName = nodeFieldName[layerIndex];
-        values = nodesDbf[layerIndex].getRecord(indexInLayer);
-
-        // Get Tranship field
-        setVariable(NodusC.VARNAME_TRANSHIP, (double) values.get(NodusC.DBF_IDX_TRANSHIP));
-
-        // No flow or Length variable for nodes
-        if (hasMoveVariables) {
-          scope.remove(NodusC.VARNAME_FLOW);
-          scope.remove(NodusC.VARNAME_LENGTH);
-          hasMoveVariables = false;
-        }
-      }
-
-      // dbf fields
-      for (int i = 0; i < fieldName.size(); i++) {
-        String name = (String) fieldName.get(i);
-
-        if (name != null) {
-          double d = JDBCUtils.getDouble(values.get(i));
-          setVariable(name, d);
-        }
-      }
-    } // if reloadVariables
 
     /* Cost functions can exist for a given scenario, group and class.
      * Test the different possibilities
@@ -621,40 +813,24 @@ public class CostParser {
     }
 
     if (costFunctionFormula.compareTo("null") == 0) {
-      return UNDEFINED_FUNCTION;
+      function.undefined = true;
+      return function;
     }
 
     // Now we have a cost function to parse
+    function.formula = costFunctionFormula;
     try {
-      expression = Parser.parse(costFunctionFormula, scope);
+      if (vl.getType() == VirtualLink.TYPE_MOVE) {
+        function.flowDependent = refersTo(costFunctionFormula, NodusC.VARNAME_FLOW);
+        function.expression = Parser.parse(costFunctionFormula, moveScope);
+      } else {
+        function.expression = Parser.parse(costFunctionFormula, nodeScope);
+      }
     } catch (ParseException e) {
-      errorMessage = vl.toString() + ": " + costFunctionFormula + '\n' + e.toString();
-      return PARSER_ERROR;
+      function.parseError = e.toString();
     }
-    double cost = -1.0;
-    cost = expression.evaluate();
 
-    if (Double.isNaN(cost)) {
-      errorMessage = vl.toString() + ": " + costFunctionFormula + " =  NaN\n";
-      return PARSER_ERROR;
-    }
-
-    if (Double.isInfinite(cost)) {
-      errorMessage = vl.toString() + ": " + costFunctionFormula + " =  Infinity\n";
-      return PARSER_ERROR;
-    }
-
-    // The cost must be positive
-    if (cost < 0) {
-      errorMessage =
-          costFunctionFormula
-              + '\n'
-              + i18n.get(CostParser.class, "Result_is_negative", "Result is negative");
-      return PARSER_ERROR;
-    }
-
-    // A correct cost was computed
-    return cost;
+    return function;
   }
 
   /**
@@ -810,6 +986,29 @@ public class CostParser {
     return true;
   }
 
+  /**
+   * Forces the variables of the next virtual link to be reloaded. Must be called before a new pass
+   * over the virtual network, as the flows may have changed since the previous one.
+   */
+  public void reset() {
+    currentLink = -1;
+    currentNode = -1;
+    currentType = VirtualLink.TYPE_MOVE;
+    errorMessage = null;
+  }
+
+  /**
+   * Returns true if the cost of a given virtual link depends on the flow, i.e. if its cost function
+   * refers to the flow variable. The cost of the other links does not change from one iteration of
+   * an equilibrium assignment to the next.
+   *
+   * @param vl A virtual link.
+   * @return True if the cost function of the link refers to the flow.
+   */
+  public boolean isFlowDependent(VirtualLink vl) {
+    return getCompiledFunction(vl).flowDependent;
+  }
+
   /**
    * Tests if the parser is initialized.
    *
@@ -819,13 +1018,23 @@ public class CostParser {
     return initialized;
   }
 
-  /** Create or update a variable in the parser. */
-  private void setVariable(String name, boolean upStream) {
-    double value = 0;
-    if (upStream) {
-      value = 1;
+  /**
+   * Returns true if a formula refers to a given variable. The comparison is not case sensitive, so
+   * that a formula is rather considered as referring to a variable than the opposite.
+   *
+   * @param formula The formula.
+   * @param varName The name of the variable.
+   * @return True if the variable appears in the formula.
+   */
+  private static boolean refersTo(String formula, String varName) {
+    Tokenizer tokenizer = new Tokenizer(new StringReader(formula));
+    while (tokenizer.more()) {
+      Token token = tokenizer.consume();
+      if (token.is(Token.TokenType.ID) && token.hasContent(varName)) {
+        return true;
+      }
     }
-    scope.create(name).setValue(value);
+    return false;
   }
 
   /** Create or update a variable in the parser. */
@@ -24,73 +24,73 @@ package edu.uclouvain.core.nodus.compute.costs;
 import com.bbn.openmap.Environment;
 import com.bbn.openmap.util.I18n;
 
-import edu.uclouvain.core.nodus.compute.exclusions.Exclusion;
+import edu.uclouvain.core.nodus.compute.assign.AssignmentExecutor;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualLink;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNode;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNodeList;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
 
 import java.text.MessageFormat;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.concurrent.Callable;
 
 /**
- * This class is intended to run a a thread, and runs CostParser fetched from a WorkQueue.
+ * Computes the costs of the virtual links for a group and an OD class. This task is intended to run
+ * on the executor of the assignment, together with the tasks of the other groups.
  *
  * @author Bart Jourquin
  */
-public class CostParserWorker extends Thread {
+public class CostParserWorker implements Callable<Boolean> {
 
   // I18N mechanism
   private static I18n i18n = Environment.getI18n();
 
-  // Will obtain true if job is canceled
-  private boolean canceled = false;
-
   // Cost parser (already initialized)
   private CostParser costParser;
 
-  // Set of workers (needed in order to be able to cancel a job)
-  private CostParserWorker[] costWorker;
+  // Parameters of the job
+  private CostParserWorkerParameters cwp;
 
   // Error message returned by the parser
   private String errorMessage = null;
 
-  // Queue of groups to compute
-  private WorkQueue workQueue;
+  // Executor the tasks run on (needed in order to be able to cancel a job)
+  private AssignmentExecutor executor;
 
   // Virtual networ structure
   private VirtualNodeList[] vnl;
 
-  // True if first derivative must be computed
-  private boolean withFirstDerivative = false;
-
-  // Value of first derivative of the objective function for this group
-  private double firstDerivative = 0.0;
-
   /**
    * Constructor.
    *
-   * @param queue The queue of works (compute costs for a group) to achieve
+   * @param cwp The parameters of the work (compute costs for a group) to achieve.
+   * @param executor The executor the task runs on.
    */
-  public CostParserWorker(WorkQueue queue) {
-    this.workQueue = queue;
+  public CostParserWorker(CostParserWorkerParameters cwp, AssignmentExecutor executor) {
+    this.cwp = cwp;
+    this.executor = executor;
   }
 
   /**
-   * Cancels the worker.
+   * Computes the costs. Returns false if something went wrong during parsing or if the task was
+   * canceled.
    *
-   * @param errorMessage error message to display.
+   * @return True on success.
    */
-  public void cancel(String errorMessage) {
-    this.errorMessage = errorMessage;
-    canceled = true;
+  @Override
+  public Boolean call() {
+    if (!computeCosts(cwp)) {
+      if (!isCancelled()) {
+        errorMessage = costParser.getErrorMessage();
+      }
+      return false;
+    }
+    return true;
   }
 
   /**
-   * Real work starts here. Creates a costParser and computes the cost for a given group and class.
-   * Returns false if something went wrong during parsing.
+   * Real work starts here. Computes the cost for a given group and class, using the cost parser
+   * given in the parameters. Returns false if something went wrong during parsing.
    *
    * @param cwp The parameters needed to achieve the work.
    * @return True on success.
@@ -103,24 +103,33 @@ public class CostParserWorker extends Thread {
     byte groupIndex = cwp.getGroupIndex();
 
     costParser = cwp.getCostParser();
+    LinkCosts linkCosts = cwp.getLinkCosts();
+
+    String msg;
+    if (virtualNetwork.getNbODClasses() > 1) {
+      msg =
+          MessageFormat.format(
+              i18n.get(
+                  CostParserWorker.class,
+                  "Computing_costs_for_class",
+                  "Computing costs for class {0}"),
+              cwp.getODClass());
+    } else {
+      msg = i18n.get(CostParserWorker.class, "Computing_costs", "Computing costs");
+    }
+
+    // Only the flow dependent costs must be computed again
+    if (linkCosts.isInitialized()) {
+      if (!cwp.getNodusProject().getProgressListener().updateProgress(msg)) {
+        return false;
+      }
+      return updateCosts(virtualNetwork.getVirtualLinks(), groupIndex, linkCosts);
+    }
 
     // Scan the VNL structure
     for (int i = 0; i < vnl.length; i++) {
 
-      String msg;
-      if (virtualNetwork.getNbODClasses() > 1) {
-        msg =
-            MessageFormat.format(
-                i18n.get(
-                    CostParserWorker.class,
-                    "Computing_costs_for_class",
-                    "Computing costs for class {0}"),
-                cwp.getODClass());
-      } else {
-        msg = i18n.get(CostParserWorker.class, "Computing_costs", "Computing costs");
-      }
-
-      if (!cwp.getNodusProject().getNodusMapPanel().updateProgress(msg)) {
+      if (!cwp.getNodusProject().getProgressListener().updateProgress(msg)) {
         return false;
       }
 
@@ -133,7 +142,7 @@ public class CostParserWorker extends Thread {
         Iterator<VirtualLink> linkLit = vn.getVirtualLinkList().iterator();
 
         while (linkLit.hasNext()) {
-          if (canceled) {
+          if (isCancelled()) {
             return false;
           }
 
@@ -152,45 +161,62 @@ public class CostParserWorker extends Thread {
             }
 
             vl.setWeight(groupIndex, cost);
-
-            if (withFirstDerivative) {
-              firstDerivative +=
-                  (vl.getAuxiliaryFlow(groupIndex) - vl.getCurrentFlow(groupIndex))
-                      * vl.getWeight(groupIndex);
-            }
+            linkCosts.setCost(vl.getId(), cost, costParser.isFlowDependent(vl));
+          } else {
+            linkCosts.setCost(vl.getId(), CostParser.UNDEFINED_FUNCTION, false);
           }
         }
       }
     }
+
+    linkCosts.initialize();
     return true;
   }
 
   /**
-   * Returns the error message of the parser.
+   * Restores the static costs computed during the first pass and computes the flow dependent ones
+   * again.
    *
-   * @return The error message, or null if no error.
+   * @param virtualLinks The virtual links, indexed by id.
+   * @param groupIndex The index of the group.
+   * @param linkCosts The costs kept from the first pass.
+   * @return True on success.
    */
-  public String getErrorMessage() {
-    return errorMessage;
+  private boolean updateCosts(VirtualLink[] virtualLinks, byte groupIndex, LinkCosts linkCosts) {
+    for (int id : linkCosts.getStaticLinks()) {
+      virtualLinks[id].setWeight(groupIndex, linkCosts.getCost(id));
+    }
+
+    for (int id : linkCosts.getFlowDependentLinks()) {
+      if (isCancelled()) {
+        return false;
+      }
+
+      double cost = costParser.compute(virtualLinks[id]);
+      if (cost == CostParser.PARSER_ERROR) {
+        return false;
+      }
+      virtualLinks[id].setWeight(groupIndex, cost);
+    }
+    return true;
   }
 
   /**
-   * Returns the first derivative of the objective function value computed for this group (for
-   * Frank-Wolfe assignments only).
+   * Returns the error message of the parser.
    *
-   * @return The value of the first derivative of the objective function.
+   * @return The error message, or null if no error.
    */
-  public double getFirstDerivative() {
-    return firstDerivative;
+  public String getErrorMessage() {
+    return errorMessage;
   }
 
   /**
-   * Returns true if the worker was canceled.
+   * Returns true if the worker was canceled, by itself or another worker.
    *
    * @return True if the worker is canceled.
    */
   public boolean isCancelled() {
-    return canceled;
+    return executor.isCancelled();
   }
 
   /**
@@ -202,60 +228,12 @@ public class CostParserWorker extends Thread {
    * @return True if virtual link is excluded.
    */
   boolean isVirtualLinkExcluded(int index, VirtualLink vl, byte group) {
-    // Exclusion lists only exist for transhipment nodes
-    if (!vnl[index].isTranshipmentNode() && !vnl[index].isLoadingUnloadingNode()) {
-      return false;
-    }
-
-    LinkedList<Exclusion> exclusionList = vnl[index].getExclusionList();
-
-    // Scan the exclusions list
-    Iterator<Exclusion> lit = exclusionList.iterator();
-
-    while (lit.hasNext()) {
-      Exclusion exc = lit.next();
-
-      if (exc.isExcluded(
-          group,
-          vnl[index].getRealNodeId(),
-          vl.getBeginVirtualNode().getMode(),
-          vl.getBeginVirtualNode().getMeans(),
-          vl.getEndVirtualNode().getMode(),
-          vl.getEndVirtualNode().getMeans())) {
-        return true;
-      }
-    }
-
-    return false;
-  }
-
-  /** Main entry point of the worker thread. Listens until no more tasks are in queue. */
-  @Override
-  public void run() {
-    try {
-      while (true) {
-        // Retrieve some work; block if the queue is empty
-        Object x = workQueue.getWork();
-
-        // Terminate if the end-of-stream marker was retrieved
-        if (x == WorkQueue.NO_MORE_WORK) {
-          break;
-        }
-        CostParserWorkerParameters cwp = (CostParserWorkerParameters) x;
-        costWorker = cwp.getCostWorkers();
-        withFirstDerivative = cwp.isWithFirstDerivative();
-
-        // Start the real work
-        if (!computeCosts(cwp) && !isCancelled()) {
-          errorMessage = costParser.getErrorMessage();
-          // Cancel all workers
-          for (CostParserWorker element : costWorker) {
-            element.cancel(errorMessage);
-          }
-        }
-      }
-    } catch (InterruptedException e) {
-      // Nothing to do
-    }
+    // The exclusions of the node are compiled in a lookup table
+    return vnl[index].isExcluded(
+        group,
+        vl.getBeginVirtualNode().getMode(),
+        vl.getBeginVirtualNode().getMeans(),
+        vl.getEndVirtualNode().getMode(),
+        vl.getEndVirtualNode().getMeans());
   }
 }
@@ -32,67 +32,40 @@ import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
 public class CostParserWorkerParameters {
 
   private CostParser costParser;
-  private CostParserWorker[] costWorkers;
   private byte groupIndex;
   private byte groupNum;
+  private LinkCosts linkCosts;
   private NodusProject nodusProject;
   private byte odClass;
   private VirtualNetwork virtualnetwork;
-  private boolean withFirstDerivative;
 
   /**
    * Sets the needed parameters.
    *
-   * @param costWorkers The array of cost workers that is used.
    * @param project The Nodus project.
    * @param odClass The OD class the costs must be computed for.
    * @param groupIndex The index of the group.
    * @param groupNum The OG group the costs must be computed for.
    * @param vn The virtual network structure.
    * @param costParser The cost parser
+   * @param linkCosts The costs kept from the previous computation for this group and OD class.
    */
   // TO DO : group index could be retrieved from within this class
   public CostParserWorkerParameters(
-      CostParserWorker[] costWorkers,
-      NodusProject project,
-      byte odClass,
-      byte groupIndex,
-      byte groupNum,
-      VirtualNetwork vn,
-      CostParser costParser) {
-    this(costWorkers, project, odClass, groupIndex, groupNum, vn, costParser, false);
-  }
-
-  /**
-   * Sets the needed parameters.
-   *
-   * @param costWorkers The array of cost workers that is used.
-   * @param project The Nodus project.
-   * @param odClass The OD class the costs must be computed for.
-   * @param groupIndex The index of the group.
-   * @param groupNum The OG group the costs must be computed for.
-   * @param vn The virtual network structure.
-   * @param costParser The cost parser
-   * @param withFirstDerivative True if the first derivative of the objective function must be
-   *     computed (for Frank-Wolfe assignments only).
-   */
-  public CostParserWorkerParameters(
-      CostParserWorker[] costWorkers,
       NodusProject project,
       byte odClass,
       byte groupIndex,
       byte groupNum,
       VirtualNetwork vn,
       CostParser costParser,
-      boolean withFirstDerivative) {
+      LinkCosts linkCosts) {
     this.nodusProject = project;
     this.odClass = odClass;
     this.groupIndex = groupIndex;
     this.groupNum = groupNum;
     this.virtualnetwork = vn;
-    this.costWorkers = costWorkers;
     this.costParser = costParser;
-    this.withFirstDerivative = withFirstDerivative;
+    this.linkCosts = linkCosts;
   }
 
   /**
@@ -104,15 +77,6 @@ public class CostParserWorkerParameters {
     return costParser;
   }
 
-  /**
-   * Returns the array of cost parser workers.
-   *
-   * @return The array of cost parser workers.
-   */
-  public CostParserWorker[] getCostWorkers() {
-    return costWorkers;
-  }
-
   /**
    * Returns the group index.
    *
@@ -131,6 +95,15 @@ public class CostParserWorkerParameters {
     return groupNum;
   }
 
+  /**
+   * Returns the costs kept from the previous computation.
+   *
+   * @return The link costs.
+   */
+  public LinkCosts getLinkCosts() {
+    return linkCosts;
+  }
+
   /**
    * Returns the Nodud project.
    *
@@ -157,14 +130,4 @@ public class CostParserWorkerParameters {
   public VirtualNetwork getVirtualNetwork() {
     return virtualnetwork;
   }
-
-  /**
-   * Returns true if the first derivative of the objective function must be computed. Only for
-   * Frank-Wolfe assignments.
-   *
-   * @return True if the first derivative must be computed.
-   */
-  public boolean isWithFirstDerivative() {
-    return withFirstDerivative;
-  }
 }
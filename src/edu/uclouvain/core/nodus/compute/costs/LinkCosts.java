@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.costs;
+
+/**
+ * Costs of the virtual links for a group, an OD class and a time slice, kept from one cost
+ * computation to the next. The first computation evaluates all the cost functions and stores the
+ * results in a dense array indexed by virtual link id. The next ones only evaluate the links which
+ * cost function refers to the flow, and restore the cost of the other (static) links from the
+ * array, as the weights of the virtual links may have been overwritten in between by the costs of
+ * another OD class or time slice.
+ *
+ * @author Bart Jourquin
+ */
+public class LinkCosts {
+
+  /** Costs of the virtual links, indexed by id. Only kept up to date for the static links. */
+  private double[] costs;
+
+  /** True for the links which cost depends on the flow, during the first computation. */
+  private boolean[] flowDependent;
+
+  /** Ids of the links which cost must be computed again at each iteration. */
+  private int[] flowDependentLinks = null;
+
+  /** Ids of the links which cost never changes. */
+  private int[] staticLinks = null;
+
+  /**
+   * Creates an empty set of link costs.
+   *
+   * @param nbVirtualLinks The number of virtual links (highest id + 1).
+   */
+  public LinkCosts(int nbVirtualLinks) {
+    costs = new double[nbVirtualLinks];
+    flowDependent = new boolean[nbVirtualLinks];
+  }
+
+  /**
+   * Returns the cost of a static link.
+   *
+   * @param id The id of the virtual link.
+   * @return The cost, or CostParser.UNDEFINED_FUNCTION if the link is excluded or has no cost.
+   */
+  public double getCost(int id) {
+    return costs[id];
+  }
+
+  /**
+   * Returns the ids of the links which cost depends on the flow.
+   *
+   * @return An array of virtual link ids.
+   */
+  public int[] getFlowDependentLinks() {
+    return flowDependentLinks;
+  }
+
+  /**
+   * Returns the ids of the links which cost does not depend on the flow.
+   *
+   * @return An array of virtual link ids.
+   */
+  public int[] getStaticLinks() {
+    return staticLinks;
+  }
+
+  /**
+   * Returns true once a first computation of all the costs was completed.
+   *
+   * @return True if the static costs are known.
+   */
+  public boolean isInitialized() {
+    return staticLinks != null;
+  }
+
+  /**
+   * Records the cost of a link during the first computation.
+   *
+   * @param id The id of the virtual link.
+   * @param cost The computed cost.
+   * @param isFlowDependent True if the cost depends on the flow.
+   */
+  public void setCost(int id, double cost, boolean isFlowDependent) {
+    costs[id] = cost;
+    flowDependent[id] = isFlowDependent;
+  }
+
+  /**
+   * Splits the links in static and flow dependent ones, once the first computation is completed.
+   */
+  public void initialize() {
+    int nbFlowDependentLinks = 0;
+    for (boolean b : flowDependent) {
+      if (b) {
+        nbFlowDependentLinks++;
+      }
+    }
+
+    // Id 0 is not used
+    flowDependentLinks = new int[nbFlowDependentLinks];
+    staticLinks = new int[costs.length - 1 - nbFlowDependentLinks];
+    int f = 0;
+    int s = 0;
+    for (int id = 1; id < costs.length; id++) {
+      if (flowDependent[id]) {
+        flowDependentLinks[f++] = id;
+      } else {
+        staticLinks[s++] = id;
+      }
+    }
+    flowDependent = null;
+  }
+}
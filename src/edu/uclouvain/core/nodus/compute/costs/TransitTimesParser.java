@@ -26,7 +26,6 @@ import com.bbn.openmap.util.PropUtils;
 import edu.uclouvain.core.nodus.NodusC;
 
 import java.util.Properties;
-import java.util.Set;
 
 /**
  * Reads the optional loading and unloading durations for the different types of vehicles from the
@@ -34,18 +33,25 @@ import java.util.Set;
  * set, the loading and unloading durations are added to the travel duration (movement) in the
  * detailed path header table.
  *
+ * <p>The durations of a scenario and group are read once and kept in tables indexed by mode-means
+ * key (NodusC.MAXMM * mode + means). Only the tables (or, for the transhipments, the rows) for
+ * which a duration is defined are allocated. A parser is immutable and can thus be shared by all
+ * the threads of an assignment.
+ *
  * @author Bart Jourquin
  */
 public class TransitTimesParser {
 
-  private Properties costFunctions;
+  private static final int NB_KEYS = NodusC.MAXMM * NodusC.MAXMM;
+
+  /** Loading durations, or null if none is defined. */
+  private final double[] loadingDurations;
 
-  private int group;
-  private int scenario;
+  /** Unloading durations, or null if none is defined. */
+  private final double[] unloadingDurations;
 
-  private boolean withLoadingDuration = false;
-  private boolean withUnloadingDuration = false;
-  private boolean withTranshipmentDuration = false;
+  /** Transhipment durations, indexed by the keys of both vehicles, or null if none is defined. */
+  private final double[][] transhipmentDurations;
 
   /**
    * Loads the different transit times (loading, unloading, transhipment) for all the vehicles for a
@@ -57,26 +63,76 @@ public class TransitTimesParser {
    *     functions file.
    */
   public TransitTimesParser(Properties costFunctions, int scenario, int group) {
-    this.costFunctions = costFunctions;
-    this.scenario = scenario;
-    this.group = group;
-
-    // Scan the cots function to detect the presence of durations
-    Set<Object> keys = costFunctions.keySet();
-    for (Object key : keys) {
-      if (((String) key).contains(NodusC.VARNAME_LOADING_DURATION)) {
-        withLoadingDuration = true;
+    double[] loading = null;
+    double[] unloading = null;
+    double[][] transhipment = null;
+
+    // Scan the cost functions to detect the durations that are defined
+    for (Object o : costFunctions.keySet()) {
+      String key = (String) o;
+
+      String vehicle = getVehicles(key, NodusC.VARNAME_LOADING_DURATION);
+      if (vehicle != null) {
+        int k = getModeMeansKey(vehicle);
+        if (k >= 0) {
+          if (loading == null) {
+            loading = new double[NB_KEYS];
+          }
+          loading[k] =
+              parseDuration(
+                  costFunctions,
+                  NodusC.VARNAME_LOADING_DURATION + "." + vehicle,
+                  scenario,
+                  group);
+        }
         continue;
       }
-      if (((String) key).contains(NodusC.VARNAME_UNLOADING_DURATION)) {
-        withUnloadingDuration = true;
+
+      vehicle = getVehicles(key, NodusC.VARNAME_UNLOADING_DURATION);
+      if (vehicle != null) {
+        int k = getModeMeansKey(vehicle);
+        if (k >= 0) {
+          if (unloading == null) {
+            unloading = new double[NB_KEYS];
+          }
+          unloading[k] =
+              parseDuration(
+                  costFunctions,
+                  NodusC.VARNAME_UNLOADING_DURATION + "." + vehicle,
+                  scenario,
+                  group);
+        }
         continue;
       }
-      if (((String) key).contains(NodusC.VARNAME_TRANSHIP_DURATION)) {
-        withTranshipmentDuration = true;
-        continue;
+
+      String vehicles = getVehicles(key, NodusC.VARNAME_TRANSHIP_DURATION);
+      if (vehicles != null) {
+        int separator = vehicles.indexOf('-');
+        if (separator < 0) {
+          continue;
+        }
+        int k1 = getModeMeansKey(vehicles.substring(0, separator));
+        int k2 = getModeMeansKey(vehicles.substring(separator + 1));
+        if (k1 >= 0 && k2 >= 0) {
+          if (transhipment == null) {
+            transhipment = new double[NB_KEYS][];
+          }
+          if (transhipment[k1] == null) {
+            transhipment[k1] = new double[NB_KEYS];
+          }
+          transhipment[k1][k2] =
+              parseDuration(
+                  costFunctions,
+                  NodusC.VARNAME_TRANSHIP_DURATION + "." + vehicles,
+                  scenario,
+                  group);
+        }
       }
     }
+
+    loadingDurations = loading;
+    unloadingDurations = unloading;
+    transhipmentDurations = transhipment;
   }
 
   /**
@@ -87,12 +143,10 @@ public class TransitTimesParser {
    * @return The loading duration in seconds.
    */
   public double getLoadingDuration(int mode, int means) {
-    if (!withLoadingDuration) {
+    if (loadingDurations == null) {
       return 0;
     }
-
-    String coreKey = NodusC.VARNAME_LOADING_DURATION + "." + mode + "," + means;
-    return parseDuration(coreKey) * 3600;
+    return loadingDurations[NodusC.MAXMM * mode + means];
   }
 
   /**
@@ -103,12 +157,10 @@ public class TransitTimesParser {
    * @return The unloading duration in seconds.
    */
   public double getUnloadingDuration(int mode, int means) {
-    if (!withUnloadingDuration) {
+    if (unloadingDurations == null) {
       return 0;
     }
-
-    String coreKey = NodusC.VARNAME_UNLOADING_DURATION + "." + mode + "," + means;
-    return parseDuration(coreKey) * 3600;
+    return unloadingDurations[NodusC.MAXMM * mode + means];
   }
 
   /**
@@ -121,48 +173,104 @@ public class TransitTimesParser {
    * @return The transhipment duration in seconds.
    */
   public double getTranshipmentDuration(int mode1, int means1, int mode2, int means2) {
-    if (!withTranshipmentDuration) {
+    if (transhipmentDurations == null) {
+      return 0;
+    }
+    double[] durations = transhipmentDurations[NodusC.MAXMM * mode1 + means1];
+    if (durations == null) {
       return 0;
     }
+    return durations[NodusC.MAXMM * mode2 + means2];
+  }
+
+  /**
+   * Returns the mode-means key of a "mode,means" string.
+   *
+   * @param vehicle The mode and means, separated by a comma.
+   * @return The key, or -1 if the string is not a valid mode-means combination.
+   */
+  private static int getModeMeansKey(String vehicle) {
+    int separator = vehicle.indexOf(',');
+    if (separator < 0) {
+      return -1;
+    }
+    try {
+      int mode = Integer.parseInt(vehicle.substring(0, separator).trim());
+      int means = Integer.parseInt(vehicle.substring(separator + 1).trim());
+      if (mode < 0 || mode >= NodusC.MAXMM || means < 0 || means >= NodusC.MAXMM) {
+        return -1;
+      }
+      return NodusC.MAXMM * mode + means;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
 
-    String coreKey =
-        NodusC.VARNAME_TRANSHIP_DURATION + "." + mode1 + "," + means1 + "-" + mode2 + "," + means2;
-    return parseDuration(coreKey) * 3600;
+  /**
+   * Returns the vehicle(s) a cost functions key defines a duration for. The key can be prefixed by
+   * a scenario and followed by a group, as in "scenario.varName.vehicles.group".
+   *
+   * @param key The key of a cost function.
+   * @param varName The name of the duration variable.
+   * @return The "mode,means" or "mode1,means1-mode2,means2" part of the key, or null if the key
+   *     doesn't define this duration.
+   */
+  private static String getVehicles(String key, String varName) {
+    int start;
+    if (key.startsWith(varName + ".")) {
+      start = varName.length() + 1;
+    } else {
+      start = key.indexOf("." + varName + ".");
+      if (start < 0) {
+        return null;
+      }
+      start += varName.length() + 2;
+    }
+
+    int end = key.indexOf('.', start);
+    if (end < 0) {
+      return key.substring(start);
+    }
+    return key.substring(start, end);
   }
 
   /**
    * Fetch the relevant duration value from the cost functions.
    *
+   * @param costFunctions The properties that contain the cost functions.
    * @param key The core key to look for (varname + mode/means combination)
-   * @return The duration value or 0 if not found
+   * @param scenario The scenario currently being computed.
+   * @param group The group of commodities.
+   * @return The duration value in seconds, or 0 if not found
    */
-  private double parseDuration(String key) {
+  private static double parseDuration(
+      Properties costFunctions, String key, int scenario, int group) {
 
     // Is there a specific value for this scenario and group?
     double value =
         PropUtils.doubleFromProperties(
             costFunctions, scenario + "." + key + "." + group, Double.NaN);
     if (!Double.isNaN(value)) {
-      return value;
+      return value * 3600;
     }
 
     // Is there a specific value for this scenario?
     value = PropUtils.doubleFromProperties(costFunctions, scenario + "." + key, Double.NaN);
     if (!Double.isNaN(value)) {
-      return value;
+      return value * 3600;
     }
 
     // Is there a specific value for this group?
     value = PropUtils.doubleFromProperties(costFunctions, key + "." + group, Double.NaN);
 
     if (!Double.isNaN(value)) {
-      return value;
+      return value * 3600;
     }
 
     // Is there a generic value ?
     value = PropUtils.doubleFromProperties(costFunctions, key, Double.NaN);
     if (!Double.isNaN(value)) {
-      return value;
+      return value * 3600;
     }
 
     return 0;
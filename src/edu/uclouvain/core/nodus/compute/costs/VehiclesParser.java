@@ -25,39 +25,50 @@ import com.bbn.openmap.util.PropUtils;
 
 import edu.uclouvain.core.nodus.NodusC;
 
-import java.util.HashMap;
 import java.util.Properties;
 
 /**
- * Parser used to converts quantities into a number of vehicles.
+ * Parser used to converts quantities into a number of vehicles. The average loads and equivalent
+ * standard vehicle ratios of a scenario and group are read once from the cost functions and kept in
+ * tables indexed by mode and means. A parser is immutable and can thus be shared by all the threads
+ * of an assignment.
  *
  * @author Bart Jourquin
  */
 public class VehiclesParser {
 
   /** Average load per mode/means vehicle combination. */
-  private static HashMap<String, Double> averageLoad = new HashMap<>();
+  private final double[][] averageLoad;
 
   /** Equivalent standard vehicle ration for each mode/means combinations. */
-  private static HashMap<String, Double> equivalentStandardVehicleRatio = new HashMap<>();
+  private final double[][] equivalentStandardVehicleRatio;
+
+  /**
+   * Loads the capacities and equivalent standard vehicles for all the vehicles for a given group of
+   * commodities. If a capacity for a mode-means combination is not defined, it is supposed to be
+   * equal to 1. The same is true for the equivalent standard vehicles.
+   *
+   * @param costFunctions The properties that contain the cost functions.
+   * @param scenario The scenario currently being computed.
+   * @param group The group of commodities for which this information must be loaded from the cost
+   *     functions file.
+   */
+  public VehiclesParser(Properties costFunctions, int scenario, byte group) {
+    averageLoad = loadValues(costFunctions, NodusC.VARNAME_AVERAGELOAD, scenario, group);
+    equivalentStandardVehicleRatio =
+        loadValues(costFunctions, NodusC.VARNAME_ESV, scenario, group);
+  }
 
   /**
    * Returns the number of standard vehicles for a transportation means of a given mode-means
-   * combination. This information must previously be loaded by loadVehicleCharacteristics(int
-   * scenario, int group).
+   * combination.
    *
    * @param mode The transportation mode.
    * @param means The transportation means.
    * @return The equivalent standard vehicle ratio.
    */
-  public static double getEquivalentStandardVehicleRatio(int mode, int means) {
-    String key = mode + "-" + means;
-    Double value = equivalentStandardVehicleRatio.get(key);
-    if (value == null) {
-      return 1.0;
-    } else {
-      return value.doubleValue();
-    }
+  public double getEquivalentStandardVehicleRatio(int mode, int means) {
+    return equivalentStandardVehicleRatio[mode][means];
   }
 
   /**
@@ -67,114 +78,50 @@ public class VehiclesParser {
    * @param means The transportation means.
    * @return double The average load for the vehicle.
    */
-  public static double getVehicleAverageLoad(int mode, int means) {
-    String key = mode + "-" + means;
-    Double value = averageLoad.get(key);
-    if (value == null) {
-      return 1.0;
-    } else {
-      return value.doubleValue();
-    }
+  public double getVehicleAverageLoad(int mode, int means) {
+    return averageLoad[mode][means];
   }
 
   /**
-   * Loads the capacities and equivalent standard vehicles for all the vehicles for a given group of
-   * commodities. If a capacity for a mode-means combination is not defined, it is supposed to be
-   * equal to 1. The same is true for the equivalent standard vehicles.
+   * Reads the value of a variable for all the mode-means combinations.
    *
    * @param costFunctions The properties that contain the cost functions.
+   * @param varName The name of the variable (AVGLOAD or ESV).
    * @param scenario The scenario currently being computed.
-   * @param group The group of commodities for which this information must be loaded from the cost
-   *     functions file.
+   * @param group The group of commodities.
+   * @return The values, indexed by mode and means. 1 if not defined.
    */
-  public static void loadVehicleCharacteristics(
-      Properties costFunctions, int scenario, byte group) {
-    averageLoad.clear();
-    equivalentStandardVehicleRatio.clear();
-    String key;
+  private static double[][] loadValues(
+      Properties costFunctions, String varName, int scenario, byte group) {
+    double[][] values = new double[NodusC.MAXMM][NodusC.MAXMM];
 
-    // Load capacities
     for (int mode = 0; mode < NodusC.MAXMM; mode++) {
       for (int means = 0; means < NodusC.MAXMM; means++) {
-        // averageLoad[mode][means] = 1;
-
-        String core = NodusC.VARNAME_AVERAGELOAD + "." + mode + "," + means;
+        String core = varName + "." + mode + "," + means;
 
         // Is there a specific value for this scenario and group?
         double value =
             PropUtils.doubleFromProperties(
                 costFunctions, scenario + "." + core + "." + group, Double.NaN);
-        if (!Double.isNaN(value)) {
-          key = mode + "-" + means;
-          averageLoad.put(key, Double.valueOf(value));
-          continue;
-        }
 
         // Is there a specific value for this scenario?
-        value = PropUtils.doubleFromProperties(costFunctions, scenario + "." + core, Double.NaN);
-        if (!Double.isNaN(value)) {
-          key = mode + "-" + means;
-          averageLoad.put(key, Double.valueOf(value));
-          continue;
+        if (Double.isNaN(value)) {
+          value = PropUtils.doubleFromProperties(costFunctions, scenario + "." + core, Double.NaN);
         }
 
         // Is there a specific value for this group?
-        value = PropUtils.doubleFromProperties(costFunctions, core + "." + group, Double.NaN);
-        if (!Double.isNaN(value)) {
-          key = mode + "-" + means;
-          averageLoad.put(key, Double.valueOf(value));
-          continue;
+        if (Double.isNaN(value)) {
+          value = PropUtils.doubleFromProperties(costFunctions, core + "." + group, Double.NaN);
         }
 
         // Is there a generic value ?
-        value = PropUtils.doubleFromProperties(costFunctions, core, Double.NaN);
-        if (!Double.isNaN(value)) {
-          key = mode + "-" + means;
-          averageLoad.put(key, Double.valueOf(value));
-        }
-      }
-    }
-
-    // Load equivalent standard vehicles ratios
-    for (int mode = 0; mode < NodusC.MAXMM; mode++) {
-      for (int means = 0; means < NodusC.MAXMM; means++) {
-        // equivalentStandardVehicleRatio[mode][means] = 1;
-
-        String core = NodusC.VARNAME_ESV + "." + mode + "," + means;
-
-        // Is there a specific value for this scenario and group?
-        double value =
-            PropUtils.doubleFromProperties(
-                costFunctions, scenario + "." + core + "." + group, Double.NaN);
-        if (!Double.isNaN(value)) {
-          key = mode + "-" + means;
-          equivalentStandardVehicleRatio.put(key, Double.valueOf(value));
-          continue;
-        }
-
-        // Is there a specific value for this scenario?
-        value = PropUtils.doubleFromProperties(costFunctions, scenario + "." + core, Double.NaN);
-        if (!Double.isNaN(value)) {
-          key = mode + "-" + means;
-          equivalentStandardVehicleRatio.put(key, Double.valueOf(value));
-          continue;
+        if (Double.isNaN(value)) {
+          value = PropUtils.doubleFromProperties(costFunctions, core, 1.0);
         }
 
-        // Is there a specific value for this group?
-        value = PropUtils.doubleFromProperties(costFunctions, core + "." + group, Double.NaN);
-        if (!Double.isNaN(value)) {
-          key = mode + "-" + means;
-          equivalentStandardVehicleRatio.put(key, Double.valueOf(value));
-          continue;
-        }
-
-        // Is there a generic value ?
-        value = PropUtils.doubleFromProperties(costFunctions, core, Double.NaN);
-        if (!Double.isNaN(value)) {
-          key = mode + "-" + means;
-          equivalentStandardVehicleRatio.put(key, Double.valueOf(value));
-        }
+        values[mode][means] = value;
       }
     }
+    return values;
   }
 }
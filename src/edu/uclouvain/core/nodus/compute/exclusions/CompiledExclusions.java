@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.exclusions;
+
+import edu.uclouvain.core.nodus.NodusC;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Exclusions of a node, compiled in a lookup table. The mode/means combinations of the virtual
+ * nodes generated at the node are numbered, and each exclusion is expanded once into the pairs of
+ * combinations it prohibits, wildcards included. Testing a movement is then a direct access
+ * instead of a scan of all the exclusions of the node.
+ *
+ * @author Bart Jourquin
+ */
+public class CompiledExclusions {
+
+  /** Prohibited movements for any group, indexed by pair of combinations. */
+  private boolean[] anyGroup = null;
+
+  /** Prohibited movements for a specific group, indexed by pair of combinations. */
+  private HashMap<Integer, boolean[]> byGroup = new HashMap<>();
+
+  /** Sorted mode/means keys (mode * MAXMM + means) of the virtual nodes of the node. */
+  private int[] modeMeansKeys;
+
+  /** Real node num. */
+  private int nodeId;
+
+  /**
+   * Prepares the lookup table for a node.
+   *
+   * @param nodeId The real node num.
+   * @param virtualNodes The virtual nodes generated at this node.
+   */
+  public CompiledExclusions(int nodeId, List<VirtualNode> virtualNodes) {
+    this.nodeId = nodeId;
+
+    int[] keys = new int[virtualNodes.size()];
+    int i = 0;
+    for (VirtualNode vn : virtualNodes) {
+      keys[i++] = getModeMeansKey(vn.getMode(), vn.getMeans());
+    }
+    modeMeansKeys = Arrays.stream(keys).sorted().distinct().toArray();
+  }
+
+  /**
+   * Adds an exclusion to the table.
+   *
+   * @param exclusion The exclusion, which must belong to the node of this table.
+   */
+  public void add(Exclusion exclusion) {
+    int n = modeMeansKeys.length;
+    boolean[] excluded;
+    if (exclusion.getGroup() == -1) {
+      if (anyGroup == null) {
+        anyGroup = new boolean[n * n];
+      }
+      excluded = anyGroup;
+    } else {
+      excluded = byGroup.get(exclusion.getGroup());
+      if (excluded == null) {
+        excluded = new boolean[n * n];
+        byGroup.put(exclusion.getGroup(), excluded);
+      }
+    }
+
+    // Expand the wildcards on the combinations that exist at this node
+    for (int i = 0; i < n; i++) {
+      int mode1 = modeMeansKeys[i] / NodusC.MAXMM;
+      int means1 = modeMeansKeys[i] % NodusC.MAXMM;
+      for (int j = 0; j < n; j++) {
+        int mode2 = modeMeansKeys[j] / NodusC.MAXMM;
+        int means2 = modeMeansKeys[j] % NodusC.MAXMM;
+        if (exclusion.isExcluded(exclusion.getGroup(), nodeId, mode1, means1, mode2, means2)) {
+          excluded[i * n + j] = true;
+        }
+      }
+    }
+  }
+
+  private static int getModeMeansKey(int mode, int means) {
+    return mode * NodusC.MAXMM + means;
+  }
+
+  /**
+   * Returns true if a movement is prohibited at this node for a given group.
+   *
+   * @param group Group of goods.
+   * @param mode1 Mode at the origin.
+   * @param means1 Means at the origin.
+   * @param mode2 Mode at the destination.
+   * @param means2 Means at the destination.
+   * @return True if excluded.
+   */
+  public boolean isExcluded(int group, int mode1, int means1, int mode2, int means2) {
+    int i = Arrays.binarySearch(modeMeansKeys, getModeMeansKey(mode1, means1));
+    int j = Arrays.binarySearch(modeMeansKeys, getModeMeansKey(mode2, means2));
+    if (i < 0 || j < 0) {
+      return false;
+    }
+
+    int index = i * modeMeansKeys.length + j;
+    if (anyGroup != null && anyGroup[index]) {
+      return true;
+    }
+    boolean[] excluded = byGroup.get(group);
+    return excluded != null && excluded[index];
+  }
+}
@@ -66,6 +66,24 @@ public class Exclusion {
     this.means2 = means2;
   }
 
+  /**
+   * Returns the group this exclusion belongs to.
+   *
+   * @return The group, or -1 if the exclusion is true for any group.
+   */
+  public int getGroup() {
+    return group;
+  }
+
+  /**
+   * Returns the node this exclusion belongs to.
+   *
+   * @return The real node num.
+   */
+  public int getNodeId() {
+    return nodeId;
+  }
+
   /**
    * Returns true if the operation relative to the given group and mode/means combinations is not
    * permitted at node num.
@@ -25,11 +25,11 @@ import com.bbn.openmap.Environment;
 import com.bbn.openmap.util.I18n;
 
 import edu.uclouvain.core.nodus.NodusC;
-import edu.uclouvain.core.nodus.NodusMapPanel;
 import edu.uclouvain.core.nodus.NodusProject;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNodeList;
 import edu.uclouvain.core.nodus.database.JDBCUtils;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -52,10 +52,10 @@ public class ExclusionReader {
 
   private int nbRecords = 0;
 
-  private NodusMapPanel nodusMapPanel;
-
   private NodusProject nodusProject;
 
+  private ProgressListener progressListener;
+
   private String tableName;
 
   private VirtualNetwork virtualNet;
@@ -67,7 +67,7 @@ public class ExclusionReader {
    */
   public ExclusionReader(VirtualNetwork vnet) {
     nodusProject = vnet.getNodusProject();
-    nodusMapPanel = nodusProject.getNodusMapPanel();
+    progressListener = nodusProject.getProgressListener();
     jdbcUtils = new JDBCUtils(nodusProject.getMainJDBCConnection());
     virtualNet = vnet;
 
@@ -95,12 +95,101 @@ public class ExclusionReader {
       stmt.close();
 
     } catch (Exception e) {
-      JOptionPane.showMessageDialog(
-          null, e.getMessage(), NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+      progressListener.showMessage(e.getMessage(), JOptionPane.ERROR_MESSAGE);
       isOk = false;
     }
   }
 
+  /**
+   * Computes a checksum of the content of the exclusion table, used to detect whether the
+   * exclusions changed since a virtual network was generated. The checksum is made of sums computed
+   * by the database, so that only one row has to be fetched whatever the size of the table. Besides
+   * the sum of each column, a weighted sum of the columns of each row detects the exclusions that
+   * were moved from a link to another.
+   *
+   * @return The checksum, or 0 if there are no exclusions.
+   */
+  public long getChecksum() {
+    if (!isOk || nbRecords == 0) {
+      return 0;
+    }
+
+    String group = jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_GROUP);
+    String num = jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_NUM);
+    String mode1 = jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MODE1);
+    String means1 = jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MEANS1);
+    String mode2 = jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MODE2);
+    String means2 = jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MEANS2);
+    String sql =
+        "SELECT SUM("
+            + group
+            + "), SUM("
+            + num
+            + "), SUM("
+            + mode1
+            + "), SUM("
+            + means1
+            + "), SUM("
+            + mode2
+            + "), SUM("
+            + means2
+            + "), SUM("
+            + num
+            + "*("
+            + group
+            + "+3*"
+            + mode1
+            + "+7*"
+            + means1
+            + "+11*"
+            + mode2
+            + "+13*"
+            + means2
+            + ")) FROM "
+            + tableName;
+
+    long checksum = nbRecords;
+    try {
+      Connection con = nodusProject.getMainJDBCConnection();
+      Statement stmt = con.createStatement();
+      ResultSet rs = stmt.executeQuery(sql);
+      if (rs.next()) {
+        for (int i = 1; i <= 7; i++) {
+          Object sum = rs.getObject(i);
+          checksum = 31 * checksum + (sum == null ? 0 : sum.toString().hashCode());
+        }
+      }
+      rs.close();
+      stmt.close();
+    } catch (Exception e) {
+      // The exclusions will be reported as unreadable when loaded
+      return -1;
+    }
+    return checksum;
+  }
+
+  /**
+   * Returns the SQL statement that selects the exclusions.
+   *
+   * @return The SQL statement.
+   */
+  private String getSelectStatement() {
+    return "SELECT "
+        + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_GROUP)
+        + ","
+        + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_NUM)
+        + ","
+        + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MODE1)
+        + ","
+        + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MEANS1)
+        + ","
+        + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MODE2)
+        + ","
+        + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MEANS2)
+        + " FROM "
+        + tableName;
+  }
+
   /**
    * Returns true if the list of exclusions is not empty.
    *
@@ -125,21 +214,7 @@ public class ExclusionReader {
     }
 
     // Load all exclusions for current group and for group 0
-    String sql =
-        "SELECT "
-            + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_GROUP)
-            + ","
-            + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_NUM)
-            + ","
-            + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MODE1)
-            + ","
-            + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MEANS1)
-            + ","
-            + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MODE2)
-            + ","
-            + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_MEANS2)
-            + " FROM "
-            + tableName;
+    String sql = getSelectStatement();
 
     // connect to database and execute query
     int group = -1;
@@ -161,10 +236,10 @@ public class ExclusionReader {
 
       VirtualNodeList[] vnl = virtualNet.getVirtualNodeLists();
 
-      nodusMapPanel.startProgress(nbRecords);
+      progressListener.startProgress(nbRecords);
 
       while (rs.next()) {
-        if (!nodusMapPanel.updateProgress(
+        if (!progressListener.updateProgress(
             i18n.get(ExclusionReader.class, "Loading_exclusions", "Loading exclusions"))) {
 
           return false;
@@ -221,13 +296,13 @@ public class ExclusionReader {
       stmt.close();
 
     } catch (Exception e) {
-      nodusMapPanel.stopProgress();
-      JOptionPane.showMessageDialog(null, e.toString(), NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+      progressListener.stopProgress();
+      progressListener.showMessage(e.toString(), JOptionPane.ERROR_MESSAGE);
 
       return false;
     }
 
-    nodusMapPanel.stopProgress();
+    progressListener.stopProgress();
 
     return true;
   }
@@ -0,0 +1,448 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.od;
+
+import edu.uclouvain.core.nodus.NodusC;
+import edu.uclouvain.core.nodus.compute.virtual.VirtualNodeList;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Column oriented storage of an origin-destination matrix. The OD cells are first appended in the
+ * order they are read. Once all are read, build() groups them by origin, group and class, so that
+ * the cells of a given (origin, group, class) combination are stored at the indexes
+ * getFirstCell(...) (included) to getLastCell(...) (excluded) of the columns. The origins and
+ * destinations are stored as indexes in the array of virtual node lists.
+ *
+ * <p>This takes a fraction of the memory needed by ODCell objects and allows the assignment
+ * workers to iterate over the demand without any allocation.
+ *
+ * @author Bart Jourquin
+ */
+public class ODDemand {
+
+  /** Index of the virtual node list at origin. Only used until build() is called. */
+  private int[] originIndex;
+
+  /** Index of the virtual node list at destination. */
+  private int[] destinationIndex;
+
+  /** Group of commodities. */
+  private byte[] group;
+
+  /** OD class. Null if the matrix has no classes. */
+  private byte[] odClass;
+
+  /** Quantity to transport. */
+  private double[] quantity;
+
+  /** Starting time, in seconds after midnight. Null if the matrix is not time dependent. */
+  private int[] startingTime;
+
+  /** Number of cells. */
+  private int nbCells;
+
+  /** Number of virtual node lists. */
+  private int nbOrigins;
+
+  /** Index of each group number in the array of groups, or -1. */
+  private int[] groupIndex;
+
+  /** Number of groups and classes, used to compute the index of a slice. */
+  private int nbGroups;
+
+  private int nbClasses;
+
+  /** Index of the first cell of each (origin, group, class) slice. */
+  private int[] sliceStart;
+
+  /**
+   * Creates an empty matrix.
+   *
+   * @param nbOrigins The number of virtual node lists.
+   * @param hasClasses True if the matrix contains OD classes.
+   * @param isTimeDependent True if the matrix contains starting times.
+   */
+  public ODDemand(int nbOrigins, boolean hasClasses, boolean isTimeDependent) {
+    this.nbOrigins = nbOrigins;
+    int capacity = 1024;
+    originIndex = new int[capacity];
+    destinationIndex = new int[capacity];
+    group = new byte[capacity];
+    quantity = new double[capacity];
+    if (hasClasses) {
+      odClass = new byte[capacity];
+    }
+    if (isTimeDependent) {
+      startingTime = new int[capacity];
+    }
+  }
+
+  /**
+   * Appends a cell to the matrix.
+   *
+   * @param originIndex Index of the virtual node list at origin.
+   * @param destinationIndex Index of the virtual node list at destination.
+   * @param group The group of commodities.
+   * @param odClass The OD class. Ignored if the matrix has no classes.
+   * @param quantity The quantity to transport.
+   * @param startingTime The starting time, in minutes after midnight. Ignored if the matrix is not
+   *     time dependent.
+   */
+  public void add(
+      int originIndex,
+      int destinationIndex,
+      byte group,
+      byte odClass,
+      double quantity,
+      int startingTime) {
+    if (nbCells == this.originIndex.length) {
+      int capacity = nbCells + (nbCells >> 1);
+      this.originIndex = Arrays.copyOf(this.originIndex, capacity);
+      this.destinationIndex = Arrays.copyOf(this.destinationIndex, capacity);
+      this.group = Arrays.copyOf(this.group, capacity);
+      this.quantity = Arrays.copyOf(this.quantity, capacity);
+      if (this.odClass != null) {
+        this.odClass = Arrays.copyOf(this.odClass, capacity);
+      }
+      if (this.startingTime != null) {
+        this.startingTime = Arrays.copyOf(this.startingTime, capacity);
+      }
+    }
+
+    this.originIndex[nbCells] = originIndex;
+    this.destinationIndex[nbCells] = destinationIndex;
+    this.group[nbCells] = group;
+    this.quantity[nbCells] = quantity;
+    if (this.odClass != null) {
+      this.odClass[nbCells] = odClass;
+    }
+    if (this.startingTime != null) {
+      this.startingTime[nbCells] = startingTime * 60;
+    }
+    nbCells++;
+  }
+
+  /**
+   * Groups the cells by origin, group and class. The cells of a slice keep the order in which they
+   * were read, and the quantities of the cells with the same destination (and starting time) are
+   * summed.
+   *
+   * @param groups The groups of commodities, in the order used by the assignment.
+   * @param maxClass The highest OD class.
+   */
+  public void build(byte[] groups, byte maxClass) {
+    nbGroups = groups.length;
+    nbClasses = maxClass + 1;
+    groupIndex = new int[NodusC.MAXMM];
+    Arrays.fill(groupIndex, -1);
+    for (int i = 0; i < groups.length; i++) {
+      groupIndex[groups[i]] = i;
+    }
+
+    // Counting sort on the slice index, which keeps the reading order within a slice
+    int nbSlices = nbOrigins * nbGroups * nbClasses;
+    sliceStart = new int[nbSlices + 1];
+    int[] slice = new int[nbCells];
+    for (int i = 0; i < nbCells; i++) {
+      slice[i] = getSliceIndex(originIndex[i], groupIndex[group[i]], getODClass(i));
+      sliceStart[slice[i] + 1]++;
+    }
+    originIndex = null;
+    for (int s = 0; s < nbSlices; s++) {
+      sliceStart[s + 1] += sliceStart[s];
+    }
+
+    int[] position = Arrays.copyOf(sliceStart, nbSlices);
+    int[] order = new int[nbCells];
+    for (int i = 0; i < nbCells; i++) {
+      order[position[slice[i]]++] = i;
+    }
+    slice = null;
+    position = null;
+
+    destinationIndex = permute(destinationIndex, order);
+    group = permute(group, order);
+    quantity = permute(quantity, order);
+    if (odClass != null) {
+      odClass = permute(odClass, order);
+    }
+    if (startingTime != null) {
+      startingTime = permute(startingTime, order);
+    }
+    order = null;
+
+    mergeDuplicates();
+  }
+
+  /**
+   * Sums the quantities of the cells of a slice that have the same destination and starting time,
+   * and compacts the columns.
+   */
+  private void mergeDuplicates() {
+    // Last cell seen for each destination in the current slice, chained by destination
+    int[] lastCell = new int[nbOrigins];
+    int[] stamp = new int[nbOrigins];
+    int[] previousCell = new int[nbCells];
+
+    int nbSlices = sliceStart.length - 1;
+    int newNbCells = 0;
+    int first = sliceStart[0];
+    for (int s = 0; s < nbSlices; s++) {
+      int last = sliceStart[s + 1];
+      sliceStart[s] = newNbCells;
+      for (int c = first; c < last; c++) {
+        int d = destinationIndex[c];
+        int t = getStartingTime(c);
+
+        // Search a previous cell of this slice with the same destination and starting time
+        int same = -1;
+        if (stamp[d] == s + 1) {
+          for (int p = lastCell[d]; p != -1; p = previousCell[p]) {
+            if (getStartingTime(p) == t) {
+              same = p;
+              break;
+            }
+          }
+        }
+
+        if (same != -1) {
+          quantity[same] += quantity[c];
+          continue;
+        }
+
+        // Keep this cell
+        destinationIndex[newNbCells] = d;
+        group[newNbCells] = group[c];
+        quantity[newNbCells] = quantity[c];
+        if (odClass != null) {
+          odClass[newNbCells] = odClass[c];
+        }
+        if (startingTime != null) {
+          startingTime[newNbCells] = startingTime[c];
+        }
+        previousCell[newNbCells] = stamp[d] == s + 1 ? lastCell[d] : -1;
+        lastCell[d] = newNbCells;
+        stamp[d] = s + 1;
+        newNbCells++;
+      }
+      first = last;
+    }
+    sliceStart[nbSlices] = newNbCells;
+
+    if (newNbCells < nbCells) {
+      nbCells = newNbCells;
+      destinationIndex = Arrays.copyOf(destinationIndex, nbCells);
+      group = Arrays.copyOf(group, nbCells);
+      quantity = Arrays.copyOf(quantity, nbCells);
+      if (odClass != null) {
+        odClass = Arrays.copyOf(odClass, nbCells);
+      }
+      if (startingTime != null) {
+        startingTime = Arrays.copyOf(startingTime, nbCells);
+      }
+    }
+  }
+
+  private static byte[] permute(byte[] values, int[] order) {
+    byte[] result = new byte[order.length];
+    for (int i = 0; i < order.length; i++) {
+      result[i] = values[order[i]];
+    }
+    return result;
+  }
+
+  private static double[] permute(double[] values, int[] order) {
+    double[] result = new double[order.length];
+    for (int i = 0; i < order.length; i++) {
+      result[i] = values[order[i]];
+    }
+    return result;
+  }
+
+  private static int[] permute(int[] values, int[] order) {
+    int[] result = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      result[i] = values[order[i]];
+    }
+    return result;
+  }
+
+  /**
+   * Returns the index of the virtual node list at destination of a cell.
+   *
+   * @param cell The index of the cell.
+   * @return The index of the virtual node list.
+   */
+  public int getDestinationIndex(int cell) {
+    return destinationIndex[cell];
+  }
+
+  /**
+   * Returns the index of the first cell of an (origin, group, class) slice.
+   *
+   * @param originIndex The index of the virtual node list at origin.
+   * @param groupIndex The index of the group of commodities.
+   * @param odClass The OD class.
+   * @return The index of the first cell.
+   */
+  public int getFirstCell(int originIndex, int groupIndex, byte odClass) {
+    return sliceStart[getSliceIndex(originIndex, groupIndex, odClass)];
+  }
+
+  /**
+   * Returns the group of commodities of a cell.
+   *
+   * @param cell The index of the cell.
+   * @return The group number.
+   */
+  public byte getGroup(int cell) {
+    return group[cell];
+  }
+
+  /**
+   * Returns the index following the last cell of an (origin, group, class) slice.
+   *
+   * @param originIndex The index of the virtual node list at origin.
+   * @param groupIndex The index of the group of commodities.
+   * @param odClass The OD class.
+   * @return The index following the last cell.
+   */
+  public int getLastCell(int originIndex, int groupIndex, byte odClass) {
+    return sliceStart[getSliceIndex(originIndex, groupIndex, odClass) + 1];
+  }
+
+  /**
+   * Returns the number of cells.
+   *
+   * @return The number of cells.
+   */
+  public int getNbCells() {
+    return nbCells;
+  }
+
+  /**
+   * Returns the OD class of a cell.
+   *
+   * @param cell The index of the cell.
+   * @return The OD class.
+   */
+  public byte getODClass(int cell) {
+    return odClass == null ? 0 : odClass[cell];
+  }
+
+  /**
+   * Returns the quantity to transport for a cell.
+   *
+   * @param cell The index of the cell.
+   * @return The quantity.
+   */
+  public double getQuantity(int cell) {
+    return quantity[cell];
+  }
+
+  private int getSliceIndex(int originIndex, int groupIndex, int odClass) {
+    return (originIndex * nbGroups + groupIndex) * nbClasses + odClass;
+  }
+
+  /**
+   * Returns the starting time of a cell.
+   *
+   * @param cell The index of the cell.
+   * @return The starting time, in seconds after midnight, or -1 if the matrix is not time
+   *     dependent.
+   */
+  public int getStartingTime(int cell) {
+    return startingTime == null ? -1 : startingTime[cell];
+  }
+
+  /**
+   * Returns true if there is a demand for a given origin, group and class.
+   *
+   * @param originIndex The index of the virtual node list at origin.
+   * @param groupNum The group number.
+   * @param odClass The OD class.
+   * @return True if the slice is not empty.
+   */
+  public boolean hasDemand(int originIndex, int groupNum, byte odClass) {
+    if (groupNum < 0 || groupNum >= NodusC.MAXMM || groupIndex[groupNum] == -1) {
+      return false;
+    }
+    if (odClass < 0 || odClass >= nbClasses) {
+      return false;
+    }
+    int slice = getSliceIndex(originIndex, groupIndex[groupNum], odClass);
+    return sliceStart[slice] < sliceStart[slice + 1];
+  }
+
+  /**
+   * Returns true if at least one cell belongs to a given OD class.
+   *
+   * @param c The OD class.
+   * @return True if there is a demand for this class.
+   */
+  public boolean hasDemandForClass(byte c) {
+    if (odClass == null) {
+      return c == 0 && nbCells > 0;
+    }
+    for (int i = 0; i < nbCells; i++) {
+      if (odClass[i] == c) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Creates the ODCell objects of all the cells from a given origin. Used by the assignment
+   * methods that modify the demand during the assignment.
+   *
+   * @param originIndex The index of the virtual node list at origin.
+   * @param vnl The virtual node lists.
+   * @return A list of ODCell.
+   */
+  public LinkedList<ODCell> toODCells(int originIndex, VirtualNodeList[] vnl) {
+    LinkedList<ODCell> cells = new LinkedList<>();
+    int originNodeId = vnl[originIndex].getRealNodeId();
+    int first = sliceStart[getSliceIndex(originIndex, 0, 0)];
+    int last = sliceStart[getSliceIndex(originIndex + 1, 0, 0)];
+    for (int c = first; c < last; c++) {
+      int destinationNodeId = vnl[destinationIndex[c]].getRealNodeId();
+      ODCell cell;
+      if (startingTime == null) {
+        cell = new ODCell(group[c], originNodeId, destinationNodeId, quantity[c], getODClass(c));
+      } else {
+        cell =
+            new ODCell(
+                group[c],
+                originNodeId,
+                destinationNodeId,
+                quantity[c],
+                startingTime[c] / 60,
+                getODClass(c));
+      }
+      cells.add(cell);
+    }
+    return cells;
+  }
+}
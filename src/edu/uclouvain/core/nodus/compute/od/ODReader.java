@@ -33,6 +33,7 @@ import edu.uclouvain.core.nodus.compute.real.RealNetworkObject;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNetwork;
 import edu.uclouvain.core.nodus.compute.virtual.VirtualNodeList;
 import edu.uclouvain.core.nodus.database.JDBCUtils;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -52,9 +53,30 @@ import javax.swing.JOptionPane;
  */
 public class ODReader {
 
+  /** Number of rows fetched at once from the database while reading the matrix. */
+  private static final int FETCH_SIZE = 10000;
+
   /** I18N mechanism. */
   private static I18n i18n = Environment.getI18n();
 
+  /** Demand kept for the next assignments when demand sharing is enabled, or null. */
+  private static SharedDemand sharedDemand = null;
+
+  /** True if the demand read is kept for the next assignments. */
+  private static boolean shareDemand = false;
+
+  /** A demand loaded from the OD matrix, with the query and the virtual network it was read for. */
+  private static class SharedDemand {
+    byte[] groups;
+    boolean hasClasses;
+    String key;
+    byte maxClass;
+    int nbRecords;
+    ODDemand odDemand;
+    double totalQuantity;
+    VirtualNodeList[] vnl;
+  }
+
   private JDBCUtils jdbcUtils = null;
 
   /**
@@ -143,6 +165,35 @@ public class ODReader {
     return tables;
   }
 
+  /**
+   * Returns the shared demand if it was read with the same query, or null.
+   *
+   * @param key The description of the query.
+   * @return The shared demand or null.
+   */
+  private static synchronized SharedDemand getSharedDemand(String key) {
+    if (sharedDemand != null && sharedDemand.key.equals(key)) {
+      return sharedDemand;
+    }
+    return null;
+  }
+
+  /**
+   * Enables or disables the sharing of the demand between successive assignments. When enabled,
+   * the demand read by an assignment is kept and given again to the next assignments that read
+   * the same OD matrix with the same filter on the same virtual network, without querying the
+   * database again. This is meant for a series of assignments made on the same OD matrix (see
+   * ScenarioSweep), during which the OD table is not expected to change.
+   *
+   * @param share True to share the demand, false to discard the shared demand.
+   */
+  public static synchronized void setShareDemand(boolean share) {
+    shareDemand = share;
+    if (!share) {
+      sharedDemand = null;
+    }
+  }
+
   /**
    * Tests if a given table is a valid basic OD table.
    *
@@ -222,10 +273,15 @@ public class ODReader {
 
   private int nbRecords;
 
+  private String demandKey;
+
+  /* Null if the project is opened without user interface */
   private NodusMapPanel nodusMapPanel;
 
   private String odTableName;
 
+  private ProgressListener progressListener;
+
   private double totalQuantity = 0;
 
   private String whereStmt;
@@ -236,9 +292,11 @@ public class ODReader {
    * @param ap AssignmentParameters
    */
   public ODReader(AssignmentParameters ap) {
-    nodusMapPanel = ap.getNodusProject().getNodusMapPanel();
-    jdbcUtils = new JDBCUtils(nodusMapPanel.getNodusProject().getMainJDBCConnection());
-    jdbcConnection = nodusMapPanel.getNodusProject().getMainJDBCConnection();
+    NodusProject nodusProject = ap.getNodusProject();
+    nodusMapPanel = nodusProject.getNodusMapPanel();
+    progressListener = nodusProject.getProgressListener();
+    jdbcUtils = new JDBCUtils(nodusProject.getMainJDBCConnection());
+    jdbcConnection = nodusProject.getMainJDBCConnection();
 
     odTableName = ap.getODMatrix();
 
@@ -248,13 +306,21 @@ public class ODReader {
 
     isTimeDependent = ap.isTimeDependent();
 
+    // The structure and size of the table are already known if its demand is shared
+    demandKey =
+        odTableName + "|" + whereStmt + "|" + limitedToHighligthedArea + "|" + isTimeDependent;
+    SharedDemand sd = getSharedDemand(demandKey);
+    if (sd != null) {
+      hasClasses = sd.hasClasses;
+      nbRecords = sd.nbRecords;
+      return;
+    }
+
     /** Does table exists? */
     if (!jdbcUtils.tableExists(odTableName)) {
-      JOptionPane.showMessageDialog(
-          null,
+      progressListener.showMessage(
           MessageFormat.format(
               i18n.get(ODReader.class, "TableNotFound", "Table {0} not found"), odTableName),
-          NodusC.APPNAME,
           JOptionPane.ERROR_MESSAGE);
 
       isOk = false;
@@ -262,7 +328,7 @@ public class ODReader {
       return;
     }
 
-    nodusMapPanel.setBusy(true);
+    setBusy(true);
 
     // Test the structure of the table
     try {
@@ -309,33 +375,33 @@ public class ODReader {
       rs.close();
 
       if (!grpField || !orgField || !dstField || !qtyField) {
-        nodusMapPanel.setBusy(false);
+        setBusy(false);
         isOk = false;
         String msg = i18n.get(ODReader.class, "InvalidODStructure", "Invalid O-D table structure");
-        JOptionPane.showMessageDialog(null, msg, NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+        progressListener.showMessage(msg, JOptionPane.ERROR_MESSAGE);
         return;
       }
 
       /** Time dependent assignments needs temporal classes in OD matrix */
       if (isTimeDependent && !timeField) {
-        nodusMapPanel.setBusy(false);
+        setBusy(false);
         isOk = false;
         String msg =
             i18n.get(
                 ODReader.class,
                 "Invalid Table",
                 "Time dependent O-D table structure must contain times");
-        JOptionPane.showMessageDialog(null, msg, NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+        progressListener.showMessage(msg, JOptionPane.ERROR_MESSAGE);
         return;
       }
     } catch (SQLException e) {
-      nodusMapPanel.setBusy(false);
+      setBusy(false);
       isOk = false;
       return;
     }
 
     // Fetch number of records to read
-    nodusMapPanel.setText(
+    progressListener.setText(
         i18n.get(ODReader.class, "GettingRows", "Getting number of rows. Please wait..."));
 
     String sql = "SELECT COUNT(*) FROM " + odTableName;
@@ -355,12 +421,11 @@ public class ODReader {
       stmt.close();
 
     } catch (Exception e) {
-      JOptionPane.showMessageDialog(
-          null, e.getMessage(), NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+      progressListener.showMessage(e.getMessage(), JOptionPane.ERROR_MESSAGE);
       isOk = false;
     }
 
-    nodusMapPanel.setBusy(false);
+    setBusy(false);
   }
 
   /**
@@ -385,7 +450,16 @@ public class ODReader {
 
     totalQuantity = 0;
 
-    nodusMapPanel.setText(
+    // Reuse the demand read by the previous assignment if possible
+    VirtualNodeList[] vnl = vnet.getVirtualNodeLists();
+    SharedDemand sd = getSharedDemand(demandKey);
+    if (sd != null && sd.vnl == vnl) {
+      totalQuantity = sd.totalQuantity;
+      setDemand(vnet, sd.odDemand, sd.groups, sd.maxClass);
+      return true;
+    }
+
+    progressListener.setText(
         i18n.get(ODReader.class, "Querying", "Querying OD table. Please wait..."));
 
     // Sample: select grp, org, dst, qty from od
@@ -416,111 +490,69 @@ public class ODReader {
     }
 
     // connect to database and execute query
+    ODDemand odDemand = new ODDemand(vnl.length, hasClasses, isTimeDependent);
+    byte[] groupsToAssign;
     try {
-      Statement stmt = jdbcConnection.createStatement();
-      nodusMapPanel.setBusy(true);
+      // Stream the records instead of loading the whole result set in memory
+      Statement stmt =
+          jdbcConnection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      stmt.setFetchSize(FETCH_SIZE);
+      setBusy(true);
 
       ResultSet rs = stmt.executeQuery(sqlStmt);
-      nodusMapPanel.setBusy(false);
+      setBusy(false);
 
-      nodusMapPanel.startProgress(nbRecords);
+      progressListener.startProgress(nbRecords);
 
-      VirtualNodeList[] vnl = vnet.getVirtualNodeLists();
+      int timeColumn = isTimeDependent ? 5 : -1;
+      int classColumn = hasClasses ? (isTimeDependent ? 6 : 5) : -1;
 
       // Get the records
       while (rs.next()) {
-        if (!nodusMapPanel.updateProgress(
+        if (!progressListener.updateProgress(
             i18n.get(ODReader.class, "LoadingMatrix", "Loading O-D matrix"))) {
+          rs.close();
+          stmt.close();
+          return false;
+        }
 
+        int group = rs.getInt(1);
+        if (rs.wasNull()) {
           return false;
         }
+        demandForGroup[group] = true;
 
-        int group = 0;
-        int origin = 0;
-        int destination = 0;
-        double quantity = 0;
-        byte odClass = 0;
-        int time = 0;
-        int nbFields = 4;
+        int origin = rs.getInt(2);
+        if (rs.wasNull()) {
+          return false;
+        }
 
-        if (isTimeDependent) {
-          nbFields++;
+        int destination = rs.getInt(3);
+        if (rs.wasNull()) {
+          return false;
         }
 
-        if (hasClasses) {
-          nbFields++;
+        double quantity = rs.getDouble(4);
+        if (rs.wasNull()) {
+          return false;
         }
 
-        for (int i = 1; i <= nbFields; i++) {
-          Object obj = rs.getObject(i);
-
-          switch (i) {
-            case 1: // Group
-              int value1 = JDBCUtils.getInt(obj);
-              if (value1 == Integer.MIN_VALUE) {
-                return false;
-              }
-              group = value1;
-              demandForGroup[value1] = true;
-
-              break;
-
-            case 2: // org
-              int value2 = JDBCUtils.getInt(obj);
-              if (value2 == Integer.MIN_VALUE) {
-                return false;
-              }
-              origin = value2;
-
-              break;
-
-            case 3: // dst
-              int value3 = JDBCUtils.getInt(obj);
-              if (value3 == Integer.MIN_VALUE) {
-                return false;
-              }
-              destination = value3;
-
-              break;
-
-            case 4: // qty
-              double value4 = JDBCUtils.getDouble(obj);
-              if (value4 == Double.MIN_VALUE) {
-                return false;
-              }
-              quantity = value4;
-              break;
-
-            case 5:
-              if (isTimeDependent) { // time
-                int value5 = JDBCUtils.getInt(obj);
-                if (value5 == Integer.MIN_VALUE) {
-                  return false;
-                }
-                time = value5;
-              } else { // class
-                byte value5 = JDBCUtils.getByte(obj);
-                if (value5 == Byte.MIN_VALUE) {
-                  return false;
-                }
-                odClass = value5;
-                if (odClass > maxClass) {
-                  maxClass = odClass;
-                }
-              }
-              break;
-            case 6: // class in Time dependent case
-              byte value6 = JDBCUtils.getByte(obj);
-              if (value6 == Byte.MIN_VALUE) {
-                return false;
-              }
-              odClass = value6;
-              if (odClass > maxClass) {
-                maxClass = odClass;
-              }
-              break;
-            default:
-              break;
+        int time = 0;
+        if (isTimeDependent) {
+          time = rs.getInt(timeColumn);
+          if (rs.wasNull()) {
+            return false;
+          }
+        }
+
+        byte odClass = 0;
+        if (hasClasses) {
+          odClass = rs.getByte(classColumn);
+          if (rs.wasNull()) {
+            return false;
+          }
+          if (odClass > maxClass) {
+            maxClass = odClass;
           }
         }
 
@@ -554,29 +586,36 @@ public class ODReader {
               continue;
             }
           }
-          // Add the demand to the list
-
-          ODCell odCell = null;
-          if (!hasClasses) {
-            if (isTimeDependent) {
-              odCell = new ODCell(group, origin, destination, quantity, time);
-            } else {
-              odCell = new ODCell(group, origin, destination, quantity);
-            }
-          } else {
-            if (isTimeDependent) {
-              odCell = new ODCell(group, origin, destination, quantity, time, odClass);
-            } else {
-              odCell = new ODCell(group, origin, destination, quantity, odClass);
-            }
-          }
-          vnl[orgIndex].addDemand(odCell);
+
+          // Add the demand to the matrix
+          odDemand.add(orgIndex, dstIndex, (byte) group, odClass, quantity, time);
           totalQuantity += quantity;
         }
       }
       rs.close();
       stmt.close();
 
+      // Get an array of group numbers for which there is a demand
+      int nbGroups = 0;
+
+      for (byte i = 0; i < NodusC.MAXMM; i++) {
+        if (demandForGroup[i]) {
+          nbGroups++;
+        }
+      }
+
+      groupsToAssign = new byte[nbGroups];
+      int j = 0;
+
+      for (byte i = 0; i < NodusC.MAXMM; i++) {
+        if (demandForGroup[i]) {
+          groupsToAssign[j++] = i;
+        }
+      }
+
+      // Group the cells by origin, group and class
+      odDemand.build(groupsToAssign, maxClass);
+
     } catch (Exception e) {
       String msg = e.toString();
 
@@ -584,37 +623,53 @@ public class ODReader {
         msg = i18n.get(ODReader.class, "InvalidRecordFound", "Invalid record found in O-D table");
       }
 
-      nodusMapPanel.stopProgress();
-      JOptionPane.showMessageDialog(null, msg, NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+      progressListener.stopProgress();
+      progressListener.showMessage(msg, JOptionPane.ERROR_MESSAGE);
 
       return false;
     }
 
-    // Get an array of group numbers for which there is a demand
-    int nbGroups = 0;
-
-    for (byte i = 0; i < NodusC.MAXMM; i++) {
-      if (demandForGroup[i]) {
-        nbGroups++;
+    setDemand(vnet, odDemand, groupsToAssign, maxClass);
+
+    // Keep the demand for the next assignments if asked
+    synchronized (ODReader.class) {
+      if (shareDemand) {
+        sd = new SharedDemand();
+        sd.groups = groupsToAssign;
+        sd.hasClasses = hasClasses;
+        sd.key = demandKey;
+        sd.maxClass = maxClass;
+        sd.nbRecords = nbRecords;
+        sd.odDemand = odDemand;
+        sd.totalQuantity = totalQuantity;
+        sd.vnl = vnl;
+        sharedDemand = sd;
       }
     }
 
-    byte[] groupsToAssign = new byte[nbGroups];
-    int j = 0;
+    progressListener.stopProgress();
 
-    for (byte i = 0; i < NodusC.MAXMM; i++) {
-      if (demandForGroup[i]) {
-        groupsToAssign[j++] = i;
-      }
+    return true;
+  }
+
+  /** Sets the wait cursor in the map panel, if the project is displayed. */
+  private void setBusy(boolean busy) {
+    if (nodusMapPanel != null) {
+      nodusMapPanel.setBusy(busy);
+    }
+  }
+
+  /** Gives the demand to the virtual network and to its virtual node lists. */
+  private void setDemand(VirtualNetwork vnet, ODDemand odDemand, byte[] groups, byte maxClass) {
+    VirtualNodeList[] vnl = vnet.getVirtualNodeLists();
+    vnet.setODDemand(odDemand);
+    for (int i = 0; i < vnl.length; i++) {
+      vnl[i].setODDemand(odDemand, i, vnl);
     }
 
-    vnet.setGroups(groupsToAssign);
+    vnet.setGroups(groups);
 
     // Set the classes
     vnet.setMaxClass(maxClass);
-
-    nodusMapPanel.stopProgress();
-
-    return true;
   }
 }
@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.real;
+
+import com.bbn.openmap.dataAccess.shape.DbfTableModel;
+import com.bbn.openmap.dataAccess.shape.EsriGraphicList;
+import com.bbn.openmap.layer.shape.NodusEsriLayer;
+import com.bbn.openmap.omGraphics.OMGraphic;
+
+import edu.uclouvain.core.nodus.NodusC;
+import edu.uclouvain.core.nodus.database.JDBCUtils;
+
+import java.util.Arrays;
+
+/**
+ * Primitive index that retrieves the graphic of a link from its num, across all the link layers of
+ * a project. It avoids testing each layer and boxing the link numbers when millions of result rows
+ * are read. The index is rebuilt when objects are added to or removed from a layer.
+ *
+ * @author Bart Jourquin
+ */
+public class RealLinkIndex {
+
+  /** Last built index. */
+  private static RealLinkIndex lastIndex = null;
+
+  /** Graphics of the links, indexed by num - minNum, or in the order of sortedNums. */
+  private OMGraphic[] graphics;
+
+  /** Graphic lists of the indexed layers. */
+  private EsriGraphicList[] graphicLists;
+
+  /** Layers the index is built for. */
+  private NodusEsriLayer[] layers;
+
+  /** Smallest link num, if the graphics are directly indexed by num. */
+  private int minNum;
+
+  /** Sorted link nums, or null if the graphics are directly indexed by num. */
+  private int[] sortedNums = null;
+
+  /** Versions of the num indexes of the layers when the index was built. */
+  private int[] versions;
+
+  /**
+   * Builds the index for a set of link layers.
+   *
+   * @param layers The link layers.
+   */
+  private RealLinkIndex(NodusEsriLayer[] layers) {
+    this.layers = layers;
+    graphicLists = new EsriGraphicList[layers.length];
+    versions = new int[layers.length];
+
+    int nbLinks = 0;
+    for (int i = 0; i < layers.length; i++) {
+      graphicLists[i] = layers[i].getEsriGraphicList();
+      versions[i] = layers[i].getNumIndexVersion();
+      nbLinks += layers[i].getModel().getRowCount();
+    }
+
+    // Read the nums, which are packed with their position to keep the first one in case of doubles
+    long[] numAndPosition = new long[nbLinks];
+    OMGraphic[] omgs = new OMGraphic[nbLinks];
+    int position = 0;
+    for (int i = 0; i < layers.length; i++) {
+      DbfTableModel model = layers[i].getModel();
+      for (int j = 0; j < model.getRowCount(); j++) {
+        int num = JDBCUtils.getInt(model.getValueAt(j, NodusC.DBF_IDX_NUM));
+        numAndPosition[position] = (long) num << 32 | position;
+        omgs[position] = graphicLists[i].getOMGraphicAt(j);
+        position++;
+      }
+    }
+    Arrays.sort(numAndPosition);
+
+    if (nbLinks == 0) {
+      graphics = new OMGraphic[0];
+      return;
+    }
+
+    // Index the graphics directly by num if the nums are dense enough
+    minNum = (int) (numAndPosition[0] >> 32);
+    long range = (numAndPosition[nbLinks - 1] >> 32) - minNum + 1;
+    if (range <= 2L * nbLinks) {
+      graphics = new OMGraphic[(int) range];
+      for (int k = nbLinks - 1; k >= 0; k--) {
+        graphics[(int) (numAndPosition[k] >> 32) - minNum] = omgs[(int) numAndPosition[k]];
+      }
+      return;
+    }
+
+    sortedNums = new int[nbLinks];
+    graphics = new OMGraphic[nbLinks];
+    int n = 0;
+    for (int k = 0; k < nbLinks; k++) {
+      int num = (int) (numAndPosition[k] >> 32);
+      if (n == 0 || sortedNums[n - 1] != num) {
+        sortedNums[n] = num;
+        graphics[n] = omgs[(int) numAndPosition[k]];
+        n++;
+      }
+    }
+    sortedNums = Arrays.copyOf(sortedNums, n);
+    graphics = Arrays.copyOf(graphics, n);
+  }
+
+  /**
+   * Returns the index of a set of link layers, built again only if the layers changed since the
+   * last call.
+   *
+   * @param layers The link layers of the project.
+   * @return The index.
+   */
+  public static synchronized RealLinkIndex getIndex(NodusEsriLayer[] layers) {
+    if (lastIndex == null || !lastIndex.isUpToDate(layers)) {
+      lastIndex = new RealLinkIndex(layers);
+    }
+    return lastIndex;
+  }
+
+  /**
+   * Returns the number of positions in the index. Some positions may be empty.
+   *
+   * @return The number of positions.
+   */
+  public int getNbPositions() {
+    return graphics.length;
+  }
+
+  /**
+   * Returns the position of a link in the index, which remains valid as long as the index is.
+   *
+   * @param num The num of the link.
+   * @return The position, or -1 if the link doesn't exist.
+   */
+  public int getPosition(int num) {
+    int i;
+    if (sortedNums == null) {
+      i = num - minNum;
+      if (i < 0 || i >= graphics.length) {
+        return -1;
+      }
+    } else {
+      i = Arrays.binarySearch(sortedNums, num);
+      if (i < 0) {
+        return -1;
+      }
+    }
+
+    if (graphics[i] == null) {
+      return -1;
+    }
+    return i;
+  }
+
+  /**
+   * Returns the real link of a given num.
+   *
+   * @param num The num of the link.
+   * @return The RealLink, or null if the link doesn't exist or was never assigned.
+   */
+  public RealLink getRealLink(int num) {
+    int i = getPosition(num);
+    if (i == -1) {
+      return null;
+    }
+    return (RealLink) graphics[i].getAttribute(0);
+  }
+
+  /**
+   * Returns the real link at a given position of the index.
+   *
+   * @param position The position of the link.
+   * @return The RealLink, or null if the position is empty.
+   */
+  public RealLink getRealLinkAt(int position) {
+    OMGraphic omg = graphics[position];
+    if (omg == null) {
+      return null;
+    }
+    return (RealLink) omg.getAttribute(0);
+  }
+
+  /** Returns true if the index still corresponds to the given layers. */
+  private boolean isUpToDate(NodusEsriLayer[] layers) {
+    if (layers.length != this.layers.length) {
+      return false;
+    }
+    for (int i = 0; i < layers.length; i++) {
+      if (layers[i] != this.layers[i]
+          || layers[i].getEsriGraphicList() != graphicLists[i]
+          || layers[i].getNumIndexVersion() != versions[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -35,9 +35,9 @@ import edu.uclouvain.core.nodus.NodusC;
 import edu.uclouvain.core.nodus.NodusMapPanel;
 import edu.uclouvain.core.nodus.NodusProject;
 import edu.uclouvain.core.nodus.compute.real.RealLink;
+import edu.uclouvain.core.nodus.compute.real.RealLinkIndex;
 import edu.uclouvain.core.nodus.compute.real.RealNetworkObject;
 import edu.uclouvain.core.nodus.compute.results.gui.ResultsDlg;
-import edu.uclouvain.core.nodus.database.JDBCUtils;
 import edu.uclouvain.core.nodus.database.dbf.ExportDBF;
 import edu.uclouvain.core.nodus.utils.FileUtils;
 
@@ -68,24 +68,8 @@ public class LinkResults implements ShapeConstants {
 
   static I18n i18n = Environment.getI18n();
 
-  /**
-   * Returns the RealLink stored in one of the link layers, or null if it doesn't exists.
-   *
-   * @param layers NodusEsriLayer[]
-   * @param linkNum int
-   * @return RealLink
-   */
-  private static RealLink getRealLink(NodusEsriLayer[] layers, int linkNum) {
-    for (NodusEsriLayer element : layers) {
-      if (element.numExists(linkNum)) {
-        OMGraphic omg = element.getEsriGraphicList().getOMGraphicAt(element.getNumIndex(linkNum));
-
-        return (RealLink) omg.getAttribute(0);
-      }
-    }
-
-    return null;
-  }
+  /** Number of rows fetched at once when reading large results. */
+  private static final int FETCH_SIZE = 10000;
 
   private boolean autoSliceDisplay = false;
 
@@ -97,6 +81,8 @@ public class LinkResults implements ShapeConstants {
 
   private boolean isTimeDependent = false;
 
+  private int sliceStep = 1;
+
   private double maxResult = Double.MIN_VALUE;
 
   private double minResult = Double.MAX_VALUE;
@@ -215,15 +201,16 @@ public class LinkResults implements ShapeConstants {
     try {
       // connect to database and execute query
       Statement stmt = jdbcConnection.createStatement();
+      stmt.setFetchSize(FETCH_SIZE);
       ResultSet rs = stmt.executeQuery(sqlStmt);
-      
+      RealLinkIndex realLinkIndex = RealLinkIndex.getIndex(linkLayers);
+
       // Retrieve result of query
       while (rs.next()) {
-        int n = JDBCUtils.getInt(rs.getObject(1));
-        RealLink rl = getRealLink(linkLayers, n);
+        RealLink rl = realLinkIndex.getRealLink(rs.getInt(1));
 
         if (rl != null) {
-          rl.setResult(JDBCUtils.getDouble(rs.getObject(2)));
+          rl.setResult(rs.getDouble(2));
         }
       }
 
@@ -237,6 +224,30 @@ public class LinkResults implements ShapeConstants {
       return false;
     }
 
+    return updateLinkLayers();
+  }
+
+  /**
+   * Displays the flows of a time slice kept in memory.
+   *
+   * @param cube The flows of all the time slices.
+   * @param slice The time slice to display.
+   * @return boolean True on success.
+   */
+  private boolean displayFlows(TimeDependentFlows cube, int slice) {
+    nodusMapPanel.setBusy(true);
+    cube.setResults(slice);
+    return updateLinkLayers();
+  }
+
+  /**
+   * Updates the width of the links according to their result, and exports them if needed.
+   *
+   * @return boolean True on success.
+   */
+  private boolean updateLinkLayers() {
+    final NodusEsriLayer[] linkLayers = nodusProject.getLinkLayers();
+
     if (isTimeDependent) {
       export = false;
     }
@@ -435,19 +446,22 @@ public class LinkResults implements ShapeConstants {
 
     try {
       Statement stmt = jdbcConnection.createStatement();
+      stmt.setFetchSize(FETCH_SIZE);
 
       // Execute query
       ResultSet rs = stmt.executeQuery(sqlStmt);
+      RealLinkIndex realLinkIndex = RealLinkIndex.getIndex(linkLayers);
 
-      // Retrieve result of query
+      // Retrieve result of query. A link can appear several times if the query is not grouped by
+      // link (both directions of a link for instance)
       while (rs.next()) {
-        RealLink rl = getRealLink(linkLayers, JDBCUtils.getInt(rs.getObject(1)));
+        RealLink rl = realLinkIndex.getRealLink(rs.getInt(1));
 
         if (rl != null) {
           double d = rl.getResult();
 
           // Add flow to current flow
-          d += JDBCUtils.getDouble(rs.getObject(2));
+          d += rs.getDouble(2);
           rl.setResult(d);
         }
       }
@@ -611,6 +625,8 @@ public class LinkResults implements ShapeConstants {
   /**
    * Displays the results of a time dependent assignment. This displays a map for each time slice.
    * The user is asked for the interval he wants between the display of two successive time slices.
+   * If the query also returns the time of the slices (third column), the flows of all the slices
+   * are loaded at once and the user can go back and forth with the arrow keys.
    *
    * @param sqlStmt The SQL query used to display this result.
    * @return True on success.
@@ -680,22 +696,36 @@ public class LinkResults implements ShapeConstants {
       return false;
     }
 
-    // Compute min and max values
+    int nbSlices = (assignmentEndTime - assignmentStartTime) / timeSliceDuration + 1;
+
+    // Load the flows of all the time slices at once. If the query doesn't return the time of the
+    // slices, only compute the extreme values and query each time slice separately.
+    TimeDependentFlows cube = null;
+    nodusMapPanel.setBusy(true);
     Connection jdbcConnection = nodusProject.getMainJDBCConnection();
     try {
       // connect to database and execute query
       Statement stmt = jdbcConnection.createStatement();
+      stmt.setFetchSize(FETCH_SIZE);
       ResultSet rs = stmt.executeQuery(sqlStmt);
 
-      // Retrieve min and max values
-      while (rs.next()) {
-        double result = JDBCUtils.getDouble(rs.getObject(2));
-        if (maxResult < result) {
-          maxResult = result;
-        }
+      if (rs.getMetaData().getColumnCount() >= 3) {
+        cube =
+            new TimeDependentFlows(RealLinkIndex.getIndex(nodusProject.getLinkLayers()), nbSlices);
+        cube.load(rs, assignmentStartTime, timeSliceDuration);
+        maxResult = Math.max(maxResult, cube.getMaxFlow());
+        minResult = Math.min(minResult, cube.getMinFlow());
+      } else {
+        // Retrieve min and max values
+        while (rs.next()) {
+          double result = rs.getDouble(2);
+          if (maxResult < result) {
+            maxResult = result;
+          }
 
-        if (minResult > result) {
-          minResult = result;
+          if (minResult > result) {
+            minResult = result;
+          }
         }
       }
 
@@ -708,10 +738,11 @@ public class LinkResults implements ShapeConstants {
 
       return false;
     }
+    nodusMapPanel.setBusy(false);
 
     cancelDisplay = false;
 
-    // Intercept ESC and Enter keys
+    // Intercept ESC, Enter and arrow keys
     KeyAdapter ka =
         new KeyAdapter() {
           @Override
@@ -722,8 +753,15 @@ public class LinkResults implements ShapeConstants {
               displayNextTimeSlice = true;
             }
 
-            // Enter key display next time slice
-            if (evt.getKeyCode() == KeyEvent.VK_ENTER) {
+            // Enter or right key display next time slice
+            if (evt.getKeyCode() == KeyEvent.VK_ENTER || evt.getKeyCode() == KeyEvent.VK_RIGHT) {
+              sliceStep = 1;
+              displayNextTimeSlice = true;
+            }
+
+            // Left key display previous time slice
+            if (evt.getKeyCode() == KeyEvent.VK_LEFT) {
+              sliceStep = -1;
               displayNextTimeSlice = true;
             }
           }
@@ -731,11 +769,17 @@ public class LinkResults implements ShapeConstants {
     nodusMapPanel.getMapBean().addKeyListener(ka);
     nodusMapPanel.getMapBean().requestFocus();
 
-    int currentTime = assignmentStartTime;
     final LabelLayer lbl = labelLayer;
 
-    while (currentTime <= assignmentEndTime) {
-      final int t = currentTime;
+    // The cube sets the flow of each link for each slice
+    if (cube != null) {
+      resetResults();
+    }
+
+    int slice = 0;
+    while (slice < nbSlices) {
+      final int t = assignmentStartTime + slice * timeSliceDuration;
+      sliceStep = 1;
       displayNextTimeSlice = false;
 
       if (lbl != null) {
@@ -752,10 +796,12 @@ public class LinkResults implements ShapeConstants {
         lbl.doPrepare();
       }
 
-      resetResults();
-      displayFlows(sqlStmt, t);
-
-      currentTime += timeSliceDuration;
+      if (cube != null) {
+        displayFlows(cube, slice);
+      } else {
+        resetResults();
+        displayFlows(sqlStmt, t);
+      }
 
       // Wait 1 second or press "Enter" to display next time slice
       Worker.post(
@@ -780,6 +826,8 @@ public class LinkResults implements ShapeConstants {
       if (cancelDisplay) {
         break;
       }
+
+      slice = Math.max(0, slice + sliceStep);
     }
 
     nodusMapPanel.getMapBean().removeKeyListener(ka);
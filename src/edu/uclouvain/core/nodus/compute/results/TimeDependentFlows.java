@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.results;
+
+import edu.uclouvain.core.nodus.compute.real.RealLink;
+import edu.uclouvain.core.nodus.compute.real.RealLinkIndex;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Link x time slice cube of the flows of a time dependent assignment. The cube is loaded by a
+ * single query and each time slice can then be displayed without going back to the database. The
+ * flows are stored as floats, in a direct buffer outside of the heap for large projects.
+ *
+ * @author Bart Jourquin
+ */
+class TimeDependentFlows {
+
+  /** Number of cells above which the cube is stored outside of the heap. */
+  private static final int OFF_HEAP_CELLS = 1 << 22;
+
+  /** Flows, stored slice by slice. */
+  private FloatBuffer flows;
+
+  private RealLinkIndex index;
+
+  private double maxFlow = Double.MIN_VALUE;
+
+  private double minFlow = Double.MAX_VALUE;
+
+  private int nbPositions;
+
+  private int nbSlices;
+
+  /**
+   * Creates an empty cube.
+   *
+   * @param index The index of the real links.
+   * @param nbSlices The number of time slices.
+   */
+  TimeDependentFlows(RealLinkIndex index, int nbSlices) {
+    this.index = index;
+    this.nbSlices = nbSlices;
+    nbPositions = index.getNbPositions();
+
+    long nbCells = (long) nbPositions * nbSlices;
+    if (nbCells * Float.BYTES > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Flow cube too large: " + nbCells + " cells");
+    }
+
+    if (nbCells > OFF_HEAP_CELLS) {
+      flows =
+          ByteBuffer.allocateDirect((int) nbCells * Float.BYTES)
+              .order(ByteOrder.nativeOrder())
+              .asFloatBuffer();
+    } else {
+      flows = FloatBuffer.wrap(new float[(int) nbCells]);
+    }
+  }
+
+  /**
+   * Returns the largest flow read.
+   *
+   * @return The max flow.
+   */
+  double getMaxFlow() {
+    return maxFlow;
+  }
+
+  /**
+   * Returns the smallest flow read.
+   *
+   * @return The min flow.
+   */
+  double getMinFlow() {
+    return minFlow;
+  }
+
+  /**
+   * Returns the number of time slices in the cube.
+   *
+   * @return The number of slices.
+   */
+  int getNbSlices() {
+    return nbSlices;
+  }
+
+  /**
+   * Fills the cube with the rows of a query that returns the link num, the flow and the time of
+   * the time slice, in that order. The extreme values are computed in the same pass.
+   *
+   * @param rs The result set to read.
+   * @param startTime The start time of the first slice.
+   * @param sliceDuration The duration of a time slice.
+   * @throws SQLException On error.
+   */
+  void load(ResultSet rs, int startTime, int sliceDuration) throws SQLException {
+    while (rs.next()) {
+      double flow = rs.getDouble(2);
+      if (maxFlow < flow) {
+        maxFlow = flow;
+      }
+      if (minFlow > flow) {
+        minFlow = flow;
+      }
+
+      int position = index.getPosition(rs.getInt(1));
+      int time = rs.getInt(3);
+      if (position == -1 || time < startTime) {
+        continue;
+      }
+      int slice = (time - startTime) / sliceDuration;
+      if (slice >= nbSlices) {
+        continue;
+      }
+
+      // A link can appear several times if the query is not grouped by link
+      int cell = slice * nbPositions + position;
+      flows.put(cell, flows.get(cell) + (float) flow);
+    }
+  }
+
+  /**
+   * Sets the flows of a time slice as result of the real links.
+   *
+   * @param slice The time slice.
+   */
+  void setResults(int slice) {
+    int offset = slice * nbPositions;
+    for (int i = 0; i < nbPositions; i++) {
+      RealLink rl = index.getRealLinkAt(i);
+      if (rl != null) {
+        rl.setResult(flows.get(offset + i));
+      }
+    }
+  }
+}
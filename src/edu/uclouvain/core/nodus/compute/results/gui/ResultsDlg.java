@@ -332,6 +332,7 @@ public class ResultsDlg extends EscapeDialog {
         nodusProject.getLocalProperty(NodusC.PROP_VNET_TABLE, defValue) + currentScenario;
     tableName = jdbcUtils.getCompliantIdentifier(tableName);
 
+    // The time is also returned in order to load all the time slices with a single query
     String timeString = "";
     if (isTimeDependent) {
       timeString = ", " + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_TIME);
@@ -341,7 +342,9 @@ public class ResultsDlg extends EscapeDialog {
         + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_LINK1)
         + ", SUM("
         + jdbcUtils.getQuotedCompliantIdentifier(typeOfFlow)
-        + ") FROM "
+        + ")"
+        + timeString
+        + " FROM "
         + tableName
         + " WHERE "
         + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_LINK1)
@@ -424,7 +427,7 @@ public class ResultsDlg extends EscapeDialog {
      * Example : SELECT ABS(miniproject_path0_detail.link), Sum(qty) FROM miniproject_path0_header
      * INNER JOIN miniproject_path0_detail ON miniproject_path0_header.pathidx =
      * miniproject_path0_detail.pathidx where org=11 and dst=3352 GROUP BY
-     * miniproject_path0_detail.link
+     * ABS(miniproject_path0_detail.link)
      */
     return "SELECT ABS("
         + detailTableName
@@ -454,10 +457,11 @@ public class ResultsDlg extends EscapeDialog {
         + jdbcUtils.getQuotedCompliantIdentifier(NodusC.DBF_DESTINATION)
         + " = ???"
         + timeWhereClause
-        + " GROUP BY "
+        + " GROUP BY ABS("
         + detailTableName
         + "."
-        + jdbcUtils.getCompliantIdentifier(NodusC.DBF_LINK);
+        + jdbcUtils.getCompliantIdentifier(NodusC.DBF_LINK)
+        + ")";
   }
 
   /** Initializes the GUI components of the dialog box. */
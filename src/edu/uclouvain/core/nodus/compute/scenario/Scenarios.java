@@ -32,10 +32,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -46,82 +43,115 @@ import java.util.LinkedList;
  */
 public class Scenarios {
 
-  /** Placeholder for virtual link records that must be compared between two scenarios. */
-  private class VnetRecord {
-
-    public double[] cost;
-
-    public double length;
-
-    public int line1;
-
-    public int line2;
-
-    public int link1;
-
-    public int link2;
-
-    public int means1;
-
-    public int means2;
-
-    public int mode1;
-
-    public int mode2;
+  /**
+   * Placeholder for virtual link records that must be compared between two scenarios. A record is
+   * reused for all the rows of a table.
+   */
+  private static class VnetRecord {
 
-    public int node1;
+    double[] cost;
 
-    public int node2;
+    /** node1, link1, mode1, means1, line1, node2, link2, mode2, means2, line2 and time. */
+    int[] key = new int[NB_KEY_FIELDS];
 
-    public double[] qty;
+    double length;
 
-    public int time;
+    double[] qty;
 
-    public int[] vehicles;
+    int[] vehicles;
 
-    public VnetRecord(int nbGroups) {
+    VnetRecord(int nbGroups) {
       qty = new double[nbGroups];
       cost = new double[nbGroups];
       vehicles = new int[nbGroups];
-      line1 = line2 = 0;
     }
 
     /**
-     * Create a unique key from the virtual link label elements.
+     * Adds (or subtracts) the results of another record with the same key to this record.
+     *
+     * @param other The other record.
+     * @param sign 1 to add, -1 to subtract.
+     */
+    void add(VnetRecord other, int sign) {
+      for (int i = 0; i < qty.length; i++) {
+        cost[i] += sign * other.cost[i];
+        qty[i] += sign * other.qty[i];
+        vehicles[i] += sign * other.vehicles[i];
+      }
+    }
+
+    /**
+     * Compares the key of this record with the key of another one, in the order used to sort the
+     * tables.
      *
-     * @return key
+     * @param other The other record.
+     * @return A negative value, zero or a positive value.
      */
-    public String getKey() {
-      NumberFormat format8 = new DecimalFormat("00000000");
-      NumberFormat format5 = new DecimalFormat("00000");
-      NumberFormat format4 = new DecimalFormat("0000");
-      NumberFormat format2 = new DecimalFormat("00");
-      String node1 = format8.format(this.node1);
-
-      if (this.node1 > 0) {
-        node1 = '+' + node1;
+    int compareKey(VnetRecord other) {
+      for (int i = 0; i < NB_KEY_FIELDS; i++) {
+        int c = Integer.compare(key[i], other.key[i]);
+        if (c != 0) {
+          return c;
+        }
       }
+      return 0;
+    }
 
-      String node2 = format8.format(this.node2);
+    /**
+     * Copies the key of another record and resets the results.
+     *
+     * @param other The other record.
+     */
+    void copyKey(VnetRecord other) {
+      System.arraycopy(other.key, 0, key, 0, NB_KEY_FIELDS);
+      length = other.length;
+      Arrays.fill(cost, 0);
+      Arrays.fill(qty, 0);
+      Arrays.fill(vehicles, 0);
+    }
 
-      if (this.node2 > 0) {
-        node2 = '+' + node2;
+    /**
+     * Reads the next row of a result set.
+     *
+     * @param rs The result set, which returns all the fields of a virtual network table.
+     * @param groupIndexes The index of each group of the table in this record.
+     * @return False if there is no more row.
+     * @throws SQLException On error.
+     */
+    boolean read(ResultSet rs, byte[] groupIndexes) throws SQLException {
+      if (!rs.next()) {
+        return false;
       }
 
-      return node1
-          + format8.format(link1)
-          + format2.format(mode1)
-          + format2.format(means1)
-          + format4.format(line1)
-          + node2
-          + format8.format(link2)
-          + format2.format(mode2)
-          + format2.format(means2)
-          + format4.format(line2)
-          + format5.format(time);
+      for (int i = 0; i < NB_KEY_FIELDS; i++) {
+        key[i] = rs.getInt(i + 1);
+      }
+      length = rs.getDouble(NB_KEY_FIELDS + 1);
+
+      // Fetch group related results
+      Arrays.fill(cost, 0);
+      Arrays.fill(qty, 0);
+      Arrays.fill(vehicles, 0);
+      int offset = NB_KEY_FIELDS + 2;
+      for (int i = 0; i < groupIndexes.length; i++) {
+        int index = groupIndexes[i];
+        cost[index] = rs.getDouble(offset + 3 * i);
+        qty[index] = rs.getDouble(offset + 3 * i + 1);
+        vehicles[index] = rs.getInt(offset + 3 * i + 2);
+      }
+      return true;
     }
   }
 
+  /** Number of rows sent to the database in a single batch. */
+  private static final int BATCH_SIZE = 1000;
+
+  /** Number of rows fetched at once from the compared tables. */
+  private static final int FETCH_SIZE = 10000;
+
+  /** Number of fields that identify a virtual link. */
+  private static final int NB_KEY_FIELDS = 11;
+
   private JDBCUtils jdbcUtils;
 
   private NodusProject nodusProject;
@@ -285,150 +315,56 @@ public class Scenarios {
       j++;
     }
 
-    /* Read the first table and create an hashtable with all the records */
-    HashMap<String, VnetRecord> hashMap = null;
-
-    String tableName =
-        nodusProject.getLocalProperty(NodusC.PROP_PROJECT_DOTNAME) + NodusC.SUFFIX_VNET;
-    tableName =
-        nodusProject.getLocalProperty(NodusC.PROP_VNET_TABLE, tableName) + referenceScenario;
-    tableName = jdbcUtils.getCompliantIdentifier(tableName);
-
-    String sqlStmt = "SELECT * from " + tableName;
-
-    if (whereString.length() > 0) {
-      sqlStmt += " WHERE " + whereString;
-    }
-
-    try {
-      Statement stmt = con.createStatement();
-      ResultSet rs = stmt.executeQuery(sqlStmt);
-
-      // Set initial capacity of the hash table to the number of records
-      // fetch + 10%
-      hashMap = new HashMap<>((int) (rs.getFetchSize() * 1.1));
-
-      // Retrieve result of query
-      while (rs.next()) {
-        VnetRecord vnr = new VnetRecord(groupsInResults.length);
-
-        // Fetch basic elements
-
-        vnr.node1 = JDBCUtils.getInt(rs.getObject(1));
-        vnr.link1 = JDBCUtils.getInt(rs.getObject(2));
-        vnr.mode1 = JDBCUtils.getInt(rs.getObject(3));
-        vnr.means1 = JDBCUtils.getInt(rs.getObject(4));
-        vnr.line1 = JDBCUtils.getInt(rs.getObject(5));
-        vnr.node2 = JDBCUtils.getInt(rs.getObject(6));
-        vnr.link2 = JDBCUtils.getInt(rs.getObject(7));
-        vnr.mode2 = JDBCUtils.getInt(rs.getObject(8));
-        vnr.means2 = JDBCUtils.getInt(rs.getObject(9));
-        vnr.line2 = JDBCUtils.getInt(rs.getObject(10));
-        vnr.time = JDBCUtils.getInt(rs.getObject(11));
-        vnr.length = JDBCUtils.getDouble(rs.getObject(12));
-
-        // Fetch group related results
-        int offset = 13;
-
-        for (int i = 0; i < indexesForTable1.length; i++) {
-          int index = indexesForTable1[i];
-          vnr.cost[index] = JDBCUtils.getDouble(rs.getObject(offset + 3 * i));
-          vnr.qty[index] = JDBCUtils.getDouble(rs.getObject(offset + 3 * i + 1));
-          vnr.vehicles[index] = JDBCUtils.getInt(rs.getObject(offset + 3 * i + 2));
-        }
-
-        // Put this record in the hash table
-        hashMap.put(vnr.getKey(), vnr);
+    /*
+     * Both tables are read ordered on the virtual link key and merged row by row, so that only the
+     * current row of each table is kept in memory.
+     */
+    String[] keyFields = {
+      NodusC.DBF_NODE1,
+      NodusC.DBF_LINK1,
+      NodusC.DBF_MODE1,
+      NodusC.DBF_MEANS1,
+      NodusC.DBF_SERVICE1,
+      NodusC.DBF_NODE2,
+      NodusC.DBF_LINK2,
+      NodusC.DBF_MODE2,
+      NodusC.DBF_MEANS2,
+      NodusC.DBF_SERVICE2,
+      NodusC.DBF_TIME
+    };
+    String orderBy = " ORDER BY ";
+    for (int i = 0; i < keyFields.length; i++) {
+      if (i > 0) {
+        orderBy += ", ";
       }
-
-      rs.close();
-      stmt.close();
-
-    } catch (SQLException ex) {
-      System.err.println(ex.toString());
+      orderBy += jdbcUtils.getQuotedCompliantIdentifier(keyFields[i]);
     }
 
-    /** Read the second table and update the hashtable with all the records */
-    tableName = nodusProject.getLocalProperty(NodusC.PROP_PROJECT_DOTNAME) + NodusC.SUFFIX_VNET;
-    tableName =
-        nodusProject.getLocalProperty(NodusC.PROP_VNET_TABLE, tableName) + scenarioToCompare;
-    tableName = jdbcUtils.getCompliantIdentifier(tableName);
-
-    sqlStmt = "SELECT * from " + tableName;
-
+    String where = "";
     if (whereString.length() > 0) {
-      sqlStmt += " WHERE " + whereString;
+      where = " WHERE " + whereString;
     }
 
-    try {
-      Statement stmt = con.createStatement();
-      ResultSet rs = stmt.executeQuery(sqlStmt);
-
-      // Retrieve result of query
-      while (rs.next()) {
-        VnetRecord vnr = new VnetRecord(groupsInResults.length);
-
-        // Fetch basic elements
-
-        vnr.node1 = JDBCUtils.getInt(rs.getObject(1));
-        vnr.link1 = JDBCUtils.getInt(rs.getObject(2));
-        vnr.mode1 = JDBCUtils.getInt(rs.getObject(3));
-        vnr.means1 = JDBCUtils.getInt(rs.getObject(4));
-        vnr.line1 = JDBCUtils.getInt(rs.getObject(5));
-        vnr.node2 = JDBCUtils.getInt(rs.getObject(6));
-        vnr.link2 = JDBCUtils.getInt(rs.getObject(7));
-        vnr.mode2 = JDBCUtils.getInt(rs.getObject(8));
-        vnr.means2 = JDBCUtils.getInt(rs.getObject(9));
-        vnr.line2 = JDBCUtils.getInt(rs.getObject(10));
-        vnr.time = JDBCUtils.getInt(rs.getObject(11));
-        vnr.length = JDBCUtils.getDouble(rs.getObject(12));
-
-        // Look if this virtual links already exists
-        String key = vnr.getKey();
-        VnetRecord vnr2 = hashMap.get(key);
-
-        if (vnr2 != null) {
-          vnr = vnr2;
-        } else {
-          hashMap.put(key, vnr);
-        }
-
-        // Fetch group related results and substract values from the
-        // scenario 1
-        int offset = 13;
-
-        for (int i = 0; i < indexesForTable2.length; i++) {
-          int index = indexesForTable2[i];
-          if (compare) {
-            vnr.cost[index] -= JDBCUtils.getDouble(rs.getObject(offset + 3 * i));
-            vnr.qty[index] -= JDBCUtils.getDouble(rs.getObject(offset + 3 * i + 1));
-            vnr.vehicles[index] -= JDBCUtils.getInt(rs.getObject(offset + 3 * i + 2));
-          } else {
-            vnr.cost[index] += JDBCUtils.getDouble(rs.getObject(offset + 3 * i));
-            vnr.qty[index] += JDBCUtils.getDouble(rs.getObject(offset + 3 * i + 1));
-            vnr.vehicles[index] += JDBCUtils.getInt(rs.getObject(offset + 3 * i + 2));
-          }
-        }
-      }
-
-      rs.close();
-      stmt.close();
+    String tableName1 =
+        nodusProject.getLocalProperty(NodusC.PROP_PROJECT_DOTNAME) + NodusC.SUFFIX_VNET;
+    tableName1 =
+        nodusProject.getLocalProperty(NodusC.PROP_VNET_TABLE, tableName1) + referenceScenario;
+    tableName1 = jdbcUtils.getCompliantIdentifier(tableName1);
 
-    } catch (SQLException ex) {
-      System.err.println(ex.toString());
-      return;
-    }
+    String tableName2 =
+        nodusProject.getLocalProperty(NodusC.PROP_PROJECT_DOTNAME) + NodusC.SUFFIX_VNET;
+    tableName2 =
+        nodusProject.getLocalProperty(NodusC.PROP_VNET_TABLE, tableName2) + scenarioToCompare;
+    tableName2 = jdbcUtils.getCompliantIdentifier(tableName2);
 
-    /** Now create the result table and save the data into it */
     try {
-
       // Create result table
       if (!VirtualNetworkWriter.initTable(nodusProject, resultScenario, groupsInResults)) {
         return;
       }
 
       /** Prepared different statement for the different version of Virtual Network */
-      sqlStmt =
+      String sqlStmt =
           "INSERT INTO "
               + VirtualNetworkWriter.getTableName()
               + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,";
@@ -439,59 +375,73 @@ public class Scenarios {
       sqlStmt += "?,?,?)";
       PreparedStatement prepStmt = con.prepareStatement(sqlStmt);
 
-      // Save the data from the hashtable.
-      Statement stmt = con.createStatement();
-
-      Iterator<VnetRecord> it = hashMap.values().iterator();
-      while (it.hasNext()) {
-        VnetRecord vnr = it.next();
-
-        int idx = 1;
-        /*
-         * With the virtual network 3, insert in the table the line origin and the line
-         * destination. With the virtual network 2, don't make any change.
-         */
-        prepStmt.setInt(idx++, vnr.node1);
-        prepStmt.setInt(idx++, vnr.link1);
-        prepStmt.setInt(idx++, vnr.mode1);
-        prepStmt.setInt(idx++, vnr.means1);
-        prepStmt.setInt(idx++, vnr.line1);
-        prepStmt.setInt(idx++, vnr.node2);
-        prepStmt.setInt(idx++, vnr.link2);
-        prepStmt.setInt(idx++, vnr.mode2);
-        prepStmt.setInt(idx++, vnr.means2);
-        prepStmt.setInt(idx++, vnr.line2);
-        prepStmt.setInt(idx++, vnr.time);
-        prepStmt.setDouble(idx++, vnr.length);
-
-        // double totalCost = 0.0;
-        double totalQty = 0.0;
-        double averageWeight = 0.0;
-        int totalVehicles = 0;
-
-        for (byte k = 0; k < (byte) groupsInResults.length; k++) {
-          // totalCost += vnr.cost[k];
-          totalQty += vnr.qty[k];
-          averageWeight += vnr.qty[k] * vnr.cost[k];
-          totalVehicles += vnr.vehicles[k];
-
-          prepStmt.setDouble(idx++, vnr.cost[k]);
-          prepStmt.setDouble(idx++, vnr.qty[k]);
-          prepStmt.setInt(idx++, vnr.vehicles[k]);
+      // The cursors must remain open while the batches are committed
+      Statement stmt1 =
+          con.createStatement(
+              ResultSet.TYPE_FORWARD_ONLY,
+              ResultSet.CONCUR_READ_ONLY,
+              ResultSet.HOLD_CURSORS_OVER_COMMIT);
+      stmt1.setFetchSize(FETCH_SIZE);
+      ResultSet rs1 = stmt1.executeQuery("SELECT * FROM " + tableName1 + where + orderBy);
+
+      Statement stmt2 =
+          con.createStatement(
+              ResultSet.TYPE_FORWARD_ONLY,
+              ResultSet.CONCUR_READ_ONLY,
+              ResultSet.HOLD_CURSORS_OVER_COMMIT);
+      stmt2.setFetchSize(FETCH_SIZE);
+      ResultSet rs2 = stmt2.executeQuery("SELECT * FROM " + tableName2 + where + orderBy);
+
+      // Records of the second table are subtracted from the first one when comparing
+      int sign = compare ? -1 : 1;
+      VnetRecord vnr1 = new VnetRecord(groupsInResults.length);
+      VnetRecord vnr2 = new VnetRecord(groupsInResults.length);
+      VnetRecord onlyInTable2 = new VnetRecord(groupsInResults.length);
+      boolean hasRecord1 = vnr1.read(rs1, indexesForTable1);
+      boolean hasRecord2 = vnr2.read(rs2, indexesForTable2);
+      int nbBatchedRows = 0;
+
+      while (hasRecord1 || hasRecord2) {
+        int c;
+        if (!hasRecord1) {
+          c = 1;
+        } else if (!hasRecord2) {
+          c = -1;
+        } else {
+          c = vnr1.compareKey(vnr2);
         }
 
-        if (totalQty > 0) {
-          averageWeight /= totalQty;
+        if (c <= 0) {
+          // Virtual link of the first table, that may also exist in the second one
+          if (c == 0) {
+            vnr1.add(vnr2, sign);
+            hasRecord2 = vnr2.read(rs2, indexesForTable2);
+          }
+          addRecord(prepStmt, vnr1);
+          hasRecord1 = vnr1.read(rs1, indexesForTable1);
+        } else {
+          // Virtual link that only exists in the second table
+          onlyInTable2.copyKey(vnr2);
+          onlyInTable2.add(vnr2, sign);
+          addRecord(prepStmt, onlyInTable2);
+          hasRecord2 = vnr2.read(rs2, indexesForTable2);
         }
 
-        prepStmt.setDouble(idx++, averageWeight);
-        prepStmt.setDouble(idx++, totalQty);
-        prepStmt.setInt(idx++, totalVehicles);
+        if (++nbBatchedRows == BATCH_SIZE) {
+          prepStmt.executeBatch();
+          nbBatchedRows = 0;
+        }
+      }
 
-        prepStmt.executeUpdate();
+      if (nbBatchedRows > 0) {
+        prepStmt.executeBatch();
       }
 
-      stmt.close();
+      rs1.close();
+      stmt1.close();
+      rs2.close();
+      stmt2.close();
+      prepStmt.close();
       if (!con.getAutoCommit()) {
         con.commit();
       }
@@ -501,6 +451,45 @@ public class Scenarios {
     }
   }
 
+  /**
+   * Adds a record to the batch of rows to insert in the result table.
+   *
+   * @param prepStmt The insert statement.
+   * @param vnr The record.
+   * @throws SQLException On error.
+   */
+  private void addRecord(PreparedStatement prepStmt, VnetRecord vnr) throws SQLException {
+    int idx = 1;
+    for (int i = 0; i < NB_KEY_FIELDS; i++) {
+      prepStmt.setInt(idx++, vnr.key[i]);
+    }
+    prepStmt.setDouble(idx++, vnr.length);
+
+    double totalQty = 0.0;
+    double averageWeight = 0.0;
+    int totalVehicles = 0;
+
+    for (int k = 0; k < vnr.qty.length; k++) {
+      totalQty += vnr.qty[k];
+      averageWeight += vnr.qty[k] * vnr.cost[k];
+      totalVehicles += vnr.vehicles[k];
+
+      prepStmt.setDouble(idx++, vnr.cost[k]);
+      prepStmt.setDouble(idx++, vnr.qty[k]);
+      prepStmt.setInt(idx++, vnr.vehicles[k]);
+    }
+
+    if (totalQty > 0) {
+      averageWeight /= totalQty;
+    }
+
+    prepStmt.setDouble(idx++, averageWeight);
+    prepStmt.setDouble(idx++, totalQty);
+    prepStmt.setInt(idx++, totalVehicles);
+
+    prepStmt.addBatch();
+  }
+
   /**
    * Removes a scenario, dropping all the relevant tables in the database and its local properties.
    *
@@ -0,0 +1,377 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.virtual;
+
+import edu.uclouvain.core.nodus.compute.assign.AssignmentExecutor;
+import edu.uclouvain.core.nodus.compute.costs.CostParser;
+import edu.uclouvain.core.nodus.compute.real.RealLink;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.swing.JOptionPane;
+
+/**
+ * Computes the first derivative of the objective function used by the line search of the
+ * Frank-Wolfe like assignments, for a given descent step.
+ *
+ * <p>The flow deltas (auxiliary - current flow) of the virtual links are gathered once per
+ * iteration by prepare(). Only the links that carry a delta are evaluated afterwards, and the costs
+ * of the links that do not depend on the flow (see CostParser.isFlowDependent()) are computed only
+ * once. For each step, the flow on the other links is interpolated between the current and the
+ * auxiliary standard vehicles, and the work is split by link range over the threads of the
+ * assignment. Each thread uses its own cost parsers, in which the cost functions are only compiled
+ * once.
+ *
+ * @author Bart Jourquin
+ */
+public class FrankWolfeLineSearch {
+
+  private VirtualNetwork virtualNet;
+
+  private int nbGroups;
+
+  private int nbODClasses;
+
+  /* All the virtual links of the network */
+  private VirtualLink[] links;
+
+  /* True for the links excluded for a group, or null if the group has no exclusions */
+  private boolean[][] excluded;
+
+  /* Cost parsers used by each chunk: [chunk][odClass][groupIndex] */
+  private CostParser[][][] parsers = null;
+
+  private int nbChunks;
+
+  private AssignmentExecutor executor;
+
+  /* Links with a non null delta for at least one group (flow dependent ones first), and deltas */
+  private int[] activeLinks;
+  private int nbActiveLinks;
+  private double[] activeDeltas;
+  private double[] currentVehicles;
+  private double[] deltaVehicles;
+
+  /* Part of the derivative that does not depend on the descent step */
+  private double constantPart;
+
+  // Error message returned by a parser
+  private volatile String errorMessage = null;
+
+  /**
+   * Initializes the line search for a given virtual network. The exclusions must already be
+   * loaded.
+   *
+   * @param virtualNet The virtual network.
+   * @param executor The executor of the assignment.
+   */
+  public FrankWolfeLineSearch(VirtualNetwork virtualNet, AssignmentExecutor executor) {
+    this.virtualNet = virtualNet;
+    this.executor = executor;
+    nbGroups = virtualNet.getNbGroups();
+    nbODClasses = virtualNet.getNbODClasses();
+    nbChunks = executor.getParallelism();
+
+    // Gather the virtual links and their exclusions
+    VirtualNodeList[] vnl = virtualNet.getVirtualNodeLists();
+    byte[] groups = virtualNet.getGroups();
+    List<VirtualLink> linkList = new ArrayList<>();
+    List<Integer> excludedLinks = new ArrayList<>();
+    List<Byte> excludedGroups = new ArrayList<>();
+
+    for (int i = 0; i < vnl.length; i++) {
+      Iterator<VirtualNode> nodeLit = vnl[i].getVirtualNodeList().iterator();
+      while (nodeLit.hasNext()) {
+        VirtualNode vn = nodeLit.next();
+        Iterator<VirtualLink> linkLit = vn.getVirtualLinkList().iterator();
+        while (linkLit.hasNext()) {
+          VirtualLink vl = linkLit.next();
+          for (byte groupIndex = 0; groupIndex < nbGroups; groupIndex++) {
+            if (isVirtualLinkExcluded(vnl[i], vl, groups[groupIndex])) {
+              excludedLinks.add(linkList.size());
+              excludedGroups.add(groupIndex);
+            }
+          }
+          linkList.add(vl);
+        }
+      }
+    }
+
+    links = linkList.toArray(new VirtualLink[linkList.size()]);
+    excluded = new boolean[nbGroups][];
+    for (int i = 0; i < excludedLinks.size(); i++) {
+      byte groupIndex = excludedGroups.get(i);
+      if (excluded[groupIndex] == null) {
+        excluded[groupIndex] = new boolean[links.length];
+      }
+      excluded[groupIndex][excludedLinks.get(i)] = true;
+    }
+
+    activeLinks = new int[links.length];
+    activeDeltas = new double[links.length * nbGroups];
+    currentVehicles = new double[links.length];
+    deltaVehicles = new double[links.length];
+  }
+
+  /**
+   * Computes the first derivative of the objective function for a given descent step. NaN is
+   * returned if an error occurred.
+   *
+   * @param approachedLambda An estimated/approached value of the descent.
+   * @return The first derivative of the objective function.
+   */
+  public double firstDerivative(double approachedLambda) {
+    double firstDerivative = evaluate(nbActiveLinks, approachedLambda, true);
+    if (Double.isNaN(firstDerivative)) {
+      return Double.NaN;
+    }
+    return constantPart + firstDerivative;
+  }
+
+  /**
+   * Finds, by bisection, the descent step for which the first derivative of the objective function
+   * is null. prepare() must be called first. NaN is returned if an error occurred.
+   *
+   * @param precision The width of the interval under which the bisection stops.
+   * @return The descent step.
+   */
+  public double search(double precision) {
+    double li = 0.0;
+    double ls = 1.0;
+    double m = 0.5;
+
+    while (ls - li > precision) {
+      double firstDerivativeValue = firstDerivative(m);
+
+      // If task was aborted
+      if (Double.isNaN(firstDerivativeValue)) {
+        return Double.NaN;
+      }
+
+      if (firstDerivativeValue == 0.0) {
+        return m;
+      }
+
+      if (firstDerivativeValue < 0.0) {
+        li = m;
+      } else {
+        ls = m;
+      }
+
+      m = (li + ls) / 2.0;
+    }
+    return m;
+  }
+
+  /**
+   * Returns true if the cost of a virtual link depends on the flow for at least one group and OD
+   * class.
+   *
+   * @param vl Virtual link.
+   * @return True if the cost must be interpolated for each descent step.
+   */
+  private boolean isFlowDependent(VirtualLink vl) {
+    if (vl.getType() != VirtualLink.TYPE_MOVE) {
+      return false;
+    }
+    for (byte odClass = 0; odClass < nbODClasses; odClass++) {
+      for (byte groupIndex = 0; groupIndex < nbGroups; groupIndex++) {
+        if (parsers[0][odClass][groupIndex].isFlowDependent(vl)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if a given virtual link is excluded for a group.
+   *
+   * @param vnl The virtual node list the link starts from.
+   * @param vl Virtual link.
+   * @param group Group of commodities.
+   * @return True if virtual link is excluded.
+   */
+  private boolean isVirtualLinkExcluded(VirtualNodeList vnl, VirtualLink vl, byte group) {
+    return vnl.isExcluded(
+        group,
+        vl.getBeginVirtualNode().getMode(),
+        vl.getBeginVirtualNode().getMeans(),
+        vl.getEndVirtualNode().getMode(),
+        vl.getEndVirtualNode().getMeans());
+  }
+
+  /**
+   * Gathers the flow deltas of the current iteration. Must be called once the auxiliary flows are
+   * assigned and transformed in vehicles, before the first call to firstDerivative().
+   *
+   * @return True on success.
+   */
+  public boolean prepare() {
+    if (parsers == null) {
+      parsers = new CostParser[nbChunks][nbODClasses][nbGroups];
+      for (int chunk = 0; chunk < nbChunks; chunk++) {
+        for (byte odClass = 0; odClass < nbODClasses; odClass++) {
+          for (byte groupIndex = 0; groupIndex < nbGroups; groupIndex++) {
+            CostParser cp = virtualNet.newCostParser(groupIndex, odClass);
+            if (!cp.isInitialized()) {
+              virtualNet
+                  .getNodusProject()
+                  .getProgressListener()
+                  .showMessage(cp.getErrorMessage(), JOptionPane.ERROR_MESSAGE);
+              return false;
+            }
+            parsers[chunk][odClass][groupIndex] = cp;
+          }
+        }
+      }
+    }
+
+    // The links which cost does not depend on the flow are put at the end of the active links
+    int nbMoves = 0;
+    int nbOthers = 0;
+    for (int i = 0; i < links.length; i++) {
+      VirtualLink vl = links[i];
+      boolean hasDelta = false;
+      for (byte groupIndex = 0; groupIndex < nbGroups; groupIndex++) {
+        if (vl.getAuxiliaryFlow(groupIndex) != vl.getCurrentFlow(groupIndex)) {
+          hasDelta = true;
+          break;
+        }
+      }
+      if (!hasDelta) {
+        continue;
+      }
+
+      int k;
+      if (isFlowDependent(vl)) {
+        k = nbMoves++;
+        RealLink rl = vl.getRealLink();
+        currentVehicles[k] = rl.getCurrentStandardVehicles(vl);
+        deltaVehicles[k] = rl.getAuxiliaryStandardVehicles(vl) - currentVehicles[k];
+      } else {
+        k = links.length - ++nbOthers;
+      }
+      activeLinks[k] = i;
+      for (byte groupIndex = 0; groupIndex < nbGroups; groupIndex++) {
+        activeDeltas[k * nbGroups + groupIndex] =
+            vl.getAuxiliaryFlow(groupIndex) - vl.getCurrentFlow(groupIndex);
+      }
+    }
+    nbActiveLinks = nbMoves;
+
+    // Move the static links just after the flow dependent ones
+    System.arraycopy(activeLinks, links.length - nbOthers, activeLinks, nbMoves, nbOthers);
+    System.arraycopy(
+        activeDeltas,
+        (links.length - nbOthers) * nbGroups,
+        activeDeltas,
+        nbMoves * nbGroups,
+        nbOthers * nbGroups);
+
+    constantPart = evaluate(nbOthers, 0, false);
+    return !Double.isNaN(constantPart);
+  }
+
+  /**
+   * Evaluates the derivative on a range of active links, split in chunks over the executor.
+   *
+   * @param length The number of links to evaluate, starting after the flow dependent links if these
+   *     are not interpolated.
+   * @param lambda The descent step.
+   * @param moves True to evaluate the flow dependent links, false to evaluate the static ones.
+   * @return The sum of the delta x cost products, or NaN if an error occurred.
+   */
+  private double evaluate(int length, double lambda, boolean moves) {
+    int offset = moves ? 0 : nbActiveLinks;
+    int chunkSize = (length + nbChunks - 1) / nbChunks;
+
+    List<Callable<Double>> tasks = new ArrayList<>();
+    for (int chunk = 0; chunk < nbChunks; chunk++) {
+      final int from = offset + chunk * chunkSize;
+      final int to = offset + Math.min(length, (chunk + 1) * chunkSize);
+      if (from >= to) {
+        break;
+      }
+      final CostParser[][] cp = parsers[chunk];
+      tasks.add(() -> evaluate(cp, from, to, lambda, moves));
+    }
+
+    List<Double> results = executor.invokeAll(tasks);
+    if (results == null) {
+      return Double.NaN;
+    }
+    double result = 0.0;
+    for (double r : results) {
+      result += r;
+    }
+
+    if (Double.isNaN(result) && errorMessage != null) {
+      virtualNet
+          .getNodusProject()
+          .getProgressListener()
+          .showMessage(errorMessage, JOptionPane.ERROR_MESSAGE);
+      errorMessage = null;
+    }
+    return result;
+  }
+
+  /**
+   * Evaluates the derivative on a chunk of active links.
+   *
+   * @param cp The cost parsers of the chunk, for each OD class and group.
+   * @param from The first active link of the chunk.
+   * @param to The active link after the last one of the chunk.
+   * @param lambda The descent step.
+   * @param moves True if the chunk contains flow dependent links.
+   * @return The sum of the delta x cost products, or NaN if an error occurred.
+   */
+  private double evaluate(CostParser[][] cp, int from, int to, double lambda, boolean moves) {
+    double result = 0.0;
+    for (int k = from; k < to; k++) {
+      int i = activeLinks[k];
+      VirtualLink vl = links[i];
+      double vehicles = moves ? currentVehicles[k] + lambda * deltaVehicles[k] : -1;
+
+      for (byte groupIndex = 0; groupIndex < nbGroups; groupIndex++) {
+        double delta = activeDeltas[k * nbGroups + groupIndex];
+        if (delta == 0.0 || excluded[groupIndex] != null && excluded[groupIndex][i]) {
+          continue;
+        }
+        for (int odClass = 0; odClass < nbODClasses; odClass++) {
+          double cost = cp[odClass][groupIndex].compute(vl, vehicles);
+          if (cost == CostParser.PARSER_ERROR) {
+            errorMessage = cp[odClass][groupIndex].getErrorMessage();
+            return Double.NaN;
+          }
+          if (cost != CostParser.UNDEFINED_FUNCTION) {
+            result += delta * cost;
+          }
+        }
+      }
+    }
+    return result;
+  }
+}
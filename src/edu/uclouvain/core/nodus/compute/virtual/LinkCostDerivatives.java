@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.virtual;
+
+import edu.uclouvain.core.nodus.compute.assign.AssignmentExecutor;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyGraph;
+import edu.uclouvain.core.nodus.compute.costs.CostParser;
+import edu.uclouvain.core.nodus.compute.costs.VehiclesParser;
+import edu.uclouvain.core.nodus.compute.real.RealLink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.swing.JOptionPane;
+
+/**
+ * Computes, for each arc of an adjacency graph, the derivative of its cost with respect to the
+ * flow (in tons) assigned on it. These derivatives are used by the bush based assignment to
+ * compute the quantity to shift between two path segments (Newton step).
+ *
+ * <p>The costs depend on the number of standard vehicles on the real links, which is a step
+ * function of the flow. The derivative is therefore estimated by a finite difference on the
+ * standard vehicles, converted in tons with the average load and the equivalent standard vehicle
+ * ratio of the transportation mode and means. The costs that do not depend on the flow have a
+ * null derivative. As for the line search of Frank-Wolfe, the arcs are split in chunks evaluated
+ * by the threads of the assignment, each chunk using its own cost parsers.
+ *
+ * @author Bart Jourquin
+ */
+public class LinkCostDerivatives {
+
+  /* Relative step (in standard vehicles) of the finite differences, at least one vehicle */
+  private static final double RELATIVE_STEP = 0.01;
+
+  private AssignmentExecutor executor;
+
+  private int nbChunks;
+
+  /* Cost parsers used by each chunk: [chunk][odClass][groupIndex] */
+  private CostParser[][][] parsers;
+
+  private VirtualNetwork virtualNet;
+
+  // Error message returned by a parser
+  private volatile String errorMessage = null;
+
+  /**
+   * Initializes the derivatives computation for a given virtual network.
+   *
+   * @param virtualNet The virtual network.
+   * @param executor The executor of the assignment.
+   */
+  public LinkCostDerivatives(VirtualNetwork virtualNet, AssignmentExecutor executor) {
+    this.virtualNet = virtualNet;
+    this.executor = executor;
+    nbChunks = executor.getParallelism();
+    parsers = new CostParser[nbChunks][virtualNet.getNbODClasses()][virtualNet.getNbGroups()];
+  }
+
+  /**
+   * Computes the derivatives of the arc costs of the graph of a group, for the current standard
+   * vehicles on the real links. The costs of the OD class must have been computed before.
+   *
+   * @param odClass The OD class.
+   * @param groupIndex The index of the group.
+   * @param graph The adjacency graph of the group.
+   * @return The derivative of the cost of each arc, or null if an error occurred.
+   */
+  public double[] compute(byte odClass, byte groupIndex, AdjacencyGraph graph) {
+    VehiclesParser vp = virtualNet.getVehiclesParsers()[groupIndex];
+    double[] derivatives = new double[graph.getNbArcs()];
+    int chunkSize = (derivatives.length + nbChunks - 1) / nbChunks;
+
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    for (int chunk = 0; chunk < nbChunks; chunk++) {
+      final int from = chunk * chunkSize;
+      final int to = Math.min(derivatives.length, (chunk + 1) * chunkSize);
+      if (from >= to) {
+        break;
+      }
+      final CostParser cp = getParser(chunk, odClass, groupIndex);
+      if (cp == null) {
+        return null;
+      }
+      tasks.add(() -> compute(cp, vp, graph, derivatives, from, to));
+    }
+
+    if (!executor.run(tasks)) {
+      if (errorMessage != null) {
+        virtualNet
+            .getNodusProject()
+            .getProgressListener()
+            .showMessage(errorMessage, JOptionPane.ERROR_MESSAGE);
+        errorMessage = null;
+      }
+      return null;
+    }
+    return derivatives;
+  }
+
+  /**
+   * Computes the derivatives of a chunk of arcs.
+   *
+   * @param cp The cost parser of the chunk.
+   * @param vp The vehicles of the group.
+   * @param graph The adjacency graph of the group.
+   * @param derivatives The array to fill.
+   * @param from The first arc of the chunk.
+   * @param to The arc after the last one of the chunk.
+   * @return False if an error occurred.
+   */
+  private boolean compute(
+      CostParser cp,
+      VehiclesParser vp,
+      AdjacencyGraph graph,
+      double[] derivatives,
+      int from,
+      int to) {
+    for (int arc = from; arc < to; arc++) {
+      VirtualLink vl = graph.virtualLink[arc];
+      if (vl.getType() != VirtualLink.TYPE_MOVE || !cp.isFlowDependent(vl)) {
+        continue;
+      }
+
+      int mode = vl.getBeginVirtualNode().getMode();
+      int means = vl.getBeginVirtualNode().getMeans();
+      double averageLoad = vp.getVehicleAverageLoad(mode, means);
+      if (averageLoad <= 0) {
+        continue;
+      }
+      double vehiclesPerTon = vp.getEquivalentStandardVehicleRatio(mode, means) / averageLoad;
+
+      RealLink rl = vl.getRealLink();
+      double vehicles = rl.getCurrentStandardVehicles(vl);
+      double step = Math.max(1.0, vehicles * RELATIVE_STEP);
+      double cost = cp.compute(vl, vehicles);
+      double nextCost = cp.compute(vl, vehicles + step);
+      if (cost == CostParser.PARSER_ERROR || nextCost == CostParser.PARSER_ERROR) {
+        errorMessage = cp.getErrorMessage();
+        return false;
+      }
+      if (cost == CostParser.UNDEFINED_FUNCTION || nextCost == CostParser.UNDEFINED_FUNCTION) {
+        continue;
+      }
+
+      derivatives[arc] = Math.max(0.0, (nextCost - cost) / step) * vehiclesPerTon;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the cost parser of a chunk, created the first time it is needed.
+   *
+   * @param chunk The chunk.
+   * @param odClass The OD class.
+   * @param groupIndex The index of the group.
+   * @return The cost parser, or null if the cost functions cannot be parsed.
+   */
+  private CostParser getParser(int chunk, byte odClass, byte groupIndex) {
+    if (parsers[chunk][odClass][groupIndex] == null) {
+      CostParser cp = virtualNet.newCostParser(groupIndex, odClass);
+      if (!cp.isInitialized()) {
+        virtualNet
+            .getNodusProject()
+            .getProgressListener()
+            .showMessage(cp.getErrorMessage(), JOptionPane.ERROR_MESSAGE);
+        return null;
+      }
+      parsers[chunk][odClass][groupIndex] = cp;
+    }
+    return parsers[chunk][odClass][groupIndex];
+  }
+}
@@ -27,6 +27,7 @@ import com.bbn.openmap.util.I18n;
 import edu.uclouvain.core.nodus.NodusC;
 import edu.uclouvain.core.nodus.NodusProject;
 import edu.uclouvain.core.nodus.compute.assign.AssignmentParameters;
+import edu.uclouvain.core.nodus.compute.assign.AssignmentTimings;
 import edu.uclouvain.core.nodus.compute.assign.workers.AssignmentWorker;
 import edu.uclouvain.core.nodus.compute.assign.workers.PathDetailedCosts;
 import edu.uclouvain.core.nodus.compute.od.ODCell;
@@ -35,36 +36,151 @@ import edu.uclouvain.core.nodus.database.JDBCIndex;
 import edu.uclouvain.core.nodus.database.JDBCUtils;
 import edu.uclouvain.core.nodus.swing.SingleInstanceMessagePane;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 
 import javax.swing.JOptionPane;
 
 /**
  * Writes the path headers and detail tables in the database.
  *
+ * <p>The worker threads append the paths to buffers of their own, without any lock. Full buffers
+ * are handed to a background thread that writes them in the database, using JDBC batches or, for
+ * the embedded H2 and PostgreSQL engines, a bulk load of CSV data. The path indexes are chosen by
+ * the workers, so the order in which the buffers are written has no influence on the content of
+ * the tables. All the rows are in the database once flush() or close() returned.
+ *
  * @author Bart Jourquin
  */
 public class PathWriter {
 
+  /** Rows are bulk loaded using the CSVREAD function of H2. */
+  private static final int BULK_H2 = 1;
+
+  /** Rows are bulk loaded using the COPY command of PostgreSQL. */
+  private static final int BULK_POSTGRESQL = 2;
+
+  /** Rows are inserted using JDBC batches. */
+  private static final int BULK_NONE = 0;
+
+  /**
+   * Classes of the PostgreSQL driver used for the bulk loads. They are loaded by reflection, as the
+   * driver is only needed by the projects stored in a PostgreSQL database.
+   */
+  private static final String PG_CONNECTION = "org.postgresql.PGConnection";
+
+  private static final String PG_COPY_MANAGER = "org.postgresql.copy.CopyManager";
+
+  /** Number of header rows a thread buffers before handing them to the background thread. */
+  private static final int BUFFER_SIZE = 1024;
+
+  /** Number of rows written between two commits or bulk loads. */
+  private static final int COMMIT_INTERVAL = 50000;
+
+  /** Maximum number of full buffers waiting to be written. Workers wait if it is reached. */
+  private static final int QUEUE_SIZE = 64;
+
+  /** Number of int and double values stored for each header row. */
+  private static final int HEADER_INTS = 11;
+
+  private static final int HEADER_DOUBLES = 8;
+
+  /** Number of int values stored for each detail row. */
+  private static final int DETAIL_INTS = 4;
+
+  /** Number of detail rows a thread buffers before handing them to the background thread. */
+  private static final int DETAIL_BUFFER_SIZE = BUFFER_SIZE * 8;
+
+  /**
+   * Rows appended by a single thread. A buffer is only accessed by its owner until it is handed to
+   * the background thread, which gives it back once written.
+   */
+  private static class PathBuffer {
+    int[] headerInts = new int[BUFFER_SIZE * HEADER_INTS];
+    double[] headerDoubles = new double[BUFFER_SIZE * HEADER_DOUBLES];
+    int nbHeaders;
+
+    int[] details = new int[DETAIL_BUFFER_SIZE * DETAIL_INTS];
+    int nbDetails;
+
+    /**
+     * Thread the buffer is used by. Reset when the buffer is handed to the background thread, as
+     * the worker threads are kept from one iteration to the next.
+     */
+    volatile Thread owner;
+
+    /** Not null for the markers used to wait for the background thread. */
+    CountDownLatch written;
+
+    /** Marks the end of the background thread. */
+    boolean stop;
+
+    boolean isEmpty() {
+      return nbHeaders == 0 && nbDetails == 0;
+    }
+
+    boolean isFull() {
+      return nbHeaders == BUFFER_SIZE || nbDetails == DETAIL_BUFFER_SIZE;
+    }
+
+    void clear() {
+      nbHeaders = 0;
+      nbDetails = 0;
+    }
+  }
+
+  private Set<PathBuffer> activeBuffers = ConcurrentHashMap.newKeySet();
+
+  private int bulkLoad = BULK_NONE;
+
+  private StringBuilder bulkDetails = new StringBuilder();
+
+  private StringBuilder bulkHeaders = new StringBuilder();
+
   private Connection con;
 
-  private int currentPathIndex = 1;
+  private Thread drainThread;
+
+  private volatile boolean failed = false;
 
-  private DecimalFormat df;
+  private ConcurrentLinkedQueue<PathBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
 
   private JDBCUtils jdbcUtils;
 
+  private ThreadLocal<PathBuffer> localBuffer = new ThreadLocal<>();
+
+  private int nbBulkDetails;
+
+  private int nbBulkHeaders;
+
   private NodusProject nodusProject;
 
+  private int nbUncommittedRows;
+
+  /** Rows written by the background thread. */
+  private long nbWrittenRows = 0;
+
   private String pathDetailTableName;
 
   private String pathHeaderTableName;
 
+  private BlockingQueue<PathBuffer> pendingBuffers = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
   private PreparedStatement prepStmtDetails;
 
   private PreparedStatement prepStmtHeaders;
@@ -75,6 +191,11 @@ public class PathWriter {
 
   private int scenario;
 
+  private AssignmentTimings timings;
+
+  /** Time spent by the background thread to write the rows, in nanoseconds. */
+  private long writeDuration = 0;
+
   private static I18n i18n = Environment.getI18n();
 
   /**
@@ -87,14 +208,10 @@ public class PathWriter {
     jdbcUtils = new JDBCUtils(nodusProject.getMainJDBCConnection());
 
     scenario = assignmentParameters.getScenario();
+    timings = assignmentParameters.getTimings();
     savePaths = assignmentParameters.isSavePaths();
     saveDetailedPaths = assignmentParameters.isDetailedPaths();
 
-    // Decimal format used in sql statements
-    DecimalFormatSymbols dfs = new DecimalFormatSymbols();
-    dfs.setDecimalSeparator('.');
-    df = new DecimalFormat("0.000", dfs);
-
     con = nodusProject.getMainJDBCConnection();
 
     // Prepare tables
@@ -107,6 +224,17 @@ public class PathWriter {
     // Create new tables if needed
     if (isSavePaths()) {
       resetPathsTables();
+      bulkLoad = getBulkLoadMethod();
+
+      drainThread =
+          new Thread("PathWriter") {
+            @Override
+            public void run() {
+              drain();
+            }
+          };
+      drainThread.setDaemon(true);
+      drainThread.start();
     } else {
       // Drop existing tables if they exist
       jdbcUtils.dropTable(pathHeaderTableName);
@@ -119,18 +247,26 @@ public class PathWriter {
     SingleInstanceMessagePane.reset();
   }
 
-  /** Closes the connection to the database. */
+  /** Writes the pending rows and closes the prepared statements. */
   public void close() {
 
     if (!savePaths) {
       return;
     }
 
+    flush();
+
+    PathBuffer stop = new PathBuffer();
+    stop.stop = true;
     try {
-      if (!con.getAutoCommit()) {
-        con.commit();
-      }
+      pendingBuffers.put(stop);
+      drainThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    timings.add(AssignmentTimings.PATHS, writeDuration, nbWrittenRows);
 
+    try {
       prepStmtHeaders.close();
       if (saveDetailedPaths) {
         prepStmtDetails.close();
@@ -141,6 +277,308 @@ public class PathWriter {
     }
   }
 
+  /**
+   * Appends a CSV line to a bulk load buffer.
+   *
+   * @param sb The buffer.
+   * @param values The values of the line.
+   * @param offset Index of the first value.
+   * @param nb Number of values.
+   */
+  private static void appendCsv(StringBuilder sb, int[] values, int offset, int nb) {
+    for (int i = 0; i < nb; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(values[offset + i]);
+    }
+    sb.append('\n');
+  }
+
+  /** Loop of the background thread. */
+  private void drain() {
+    while (true) {
+      PathBuffer buffer;
+      try {
+        buffer = pendingBuffers.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      if (buffer.stop) {
+        return;
+      }
+
+      long start = System.nanoTime();
+
+      if (buffer.written != null) {
+        // The thread waiting in flush() must always be released
+        try {
+          if (!failed) {
+            if (bulkLoad != BULK_NONE) {
+              flushBulk();
+            }
+            if (!con.getAutoCommit()) {
+              con.commit();
+            }
+          }
+        } catch (Exception e) {
+          reportError(e);
+        } finally {
+          nbUncommittedRows = 0;
+          writeDuration += System.nanoTime() - start;
+          buffer.written.countDown();
+        }
+        continue;
+      }
+
+      if (!failed) {
+        try {
+          if (bulkLoad == BULK_NONE) {
+            writeBatch(buffer);
+          } else {
+            appendBulk(buffer);
+          }
+
+          if (nbUncommittedRows >= COMMIT_INTERVAL) {
+            if (bulkLoad != BULK_NONE) {
+              flushBulk();
+            }
+            if (!con.getAutoCommit()) {
+              con.commit();
+            }
+            nbUncommittedRows = 0;
+          }
+        } catch (Exception e) {
+          reportError(e);
+        }
+      }
+      writeDuration += System.nanoTime() - start;
+      nbWrittenRows += buffer.nbHeaders + buffer.nbDetails;
+
+      buffer.clear();
+      freeBuffers.add(buffer);
+    }
+  }
+
+  /**
+   * Appends the content of a buffer to the bulk load buffers.
+   *
+   * @param buffer The buffer to write.
+   */
+  private void appendBulk(PathBuffer buffer) {
+    for (int i = 0; i < buffer.nbHeaders; i++) {
+      int ii = i * HEADER_INTS;
+      int di = i * HEADER_DOUBLES;
+      int[] hi = buffer.headerInts;
+      double[] hd = buffer.headerDoubles;
+
+      bulkHeaders.append(hi[ii]).append(',').append(hi[ii + 1]).append(',');
+      bulkHeaders.append(hi[ii + 2]).append(',').append(hi[ii + 3]).append(',');
+      bulkHeaders.append(hi[ii + 4]).append(',');
+      bulkHeaders.append(round(hd[di])).append(',');
+      bulkHeaders.append((float) round(hd[di + 1])).append(',');
+      bulkHeaders.append((float) round(hd[di + 2])).append(',');
+      for (int j = 3; j < HEADER_DOUBLES; j++) {
+        bulkHeaders.append(hd[di + j]).append(',');
+      }
+      for (int j = 5; j < HEADER_INTS; j++) {
+        bulkHeaders.append(hi[ii + j]);
+        bulkHeaders.append(j < HEADER_INTS - 1 ? ',' : '\n');
+      }
+    }
+    nbBulkHeaders += buffer.nbHeaders;
+
+    for (int i = 0; i < buffer.nbDetails; i++) {
+      appendCsv(bulkDetails, buffer.details, i * DETAIL_INTS, DETAIL_INTS);
+    }
+    nbBulkDetails += buffer.nbDetails;
+
+    nbUncommittedRows += buffer.nbHeaders + buffer.nbDetails;
+  }
+
+  /**
+   * Writes all the rows appended so far in the database. This must only be called when no worker
+   * thread is saving paths, for instance once all the workers of an iteration are done.
+   */
+  public void flush() {
+    if (!savePaths) {
+      return;
+    }
+
+    for (PathBuffer buffer : activeBuffers) {
+      handOff(buffer);
+    }
+
+    PathBuffer marker = new PathBuffer();
+    marker.written = new CountDownLatch(1);
+    try {
+      pendingBuffers.put(marker);
+      marker.written.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Loads the content of the bulk load buffers in the tables.
+   *
+   * @throws SQLException On database error.
+   * @throws IOException If the temporary CSV file could not be written.
+   */
+  private void flushBulk() throws SQLException, IOException {
+    if (nbBulkHeaders > 0) {
+      bulkLoad(pathHeaderTableName, bulkHeaders, HEADER_INTS + HEADER_DOUBLES);
+    }
+    if (nbBulkDetails > 0) {
+      bulkLoad(pathDetailTableName, bulkDetails, DETAIL_INTS);
+    }
+    bulkHeaders.setLength(0);
+    bulkDetails.setLength(0);
+    nbBulkHeaders = 0;
+    nbBulkDetails = 0;
+  }
+
+  /**
+   * Loads CSV formatted rows in a table.
+   *
+   * @param tableName The name of the table.
+   * @param csv The rows, without header line.
+   * @param nbColumns The number of columns of the table.
+   * @throws SQLException On database error.
+   * @throws IOException If the temporary CSV file could not be written.
+   */
+  private void bulkLoad(String tableName, StringBuilder csv, int nbColumns)
+      throws SQLException, IOException {
+    if (bulkLoad == BULK_POSTGRESQL) {
+      copyIn(
+          "COPY " + tableName + " FROM STDIN WITH (FORMAT csv)", new StringReader(csv.toString()));
+      return;
+    }
+
+    // H2 : write a temporary file read by CSVREAD
+    File f = File.createTempFile("nodus", ".csv");
+    try {
+      Writer w = new FileWriter(f);
+      w.write(csv.toString());
+      w.close();
+
+      // The file has no header line, so the column names must be given
+      String columns = "";
+      for (int i = 1; i <= nbColumns; i++) {
+        columns += "C" + i + (i < nbColumns ? "," : "");
+      }
+
+      Statement stmt = con.createStatement();
+      stmt.execute(
+          "INSERT INTO "
+              + tableName
+              + " SELECT * FROM CSVREAD('"
+              + f.getAbsolutePath().replace("'", "''")
+              + "', '"
+              + columns
+              + "', 'charset=UTF-8')");
+      stmt.close();
+    } finally {
+      f.delete();
+    }
+  }
+
+  /**
+   * Runs a COPY ... FROM STDIN command using the copy API of the PostgreSQL driver.
+   *
+   * @param sql The COPY command.
+   * @param reader The CSV formatted rows.
+   * @throws SQLException On database error, or if the driver does not provide the copy API.
+   * @throws IOException If the rows could not be read.
+   */
+  private void copyIn(String sql, Reader reader) throws SQLException, IOException {
+    try {
+      Class<?> pgConnection = Class.forName(PG_CONNECTION);
+      Object copyManager = pgConnection.getMethod("getCopyAPI").invoke(con.unwrap(pgConnection));
+      Class.forName(PG_COPY_MANAGER)
+          .getMethod("copyIn", String.class, Reader.class)
+          .invoke(copyManager, sql, reader);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof SQLException) {
+        throw (SQLException) e.getCause();
+      }
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new SQLException(e.getCause());
+    } catch (ReflectiveOperationException e) {
+      throw new SQLException(e);
+    }
+  }
+
+  /**
+   * Returns the fastest way to load rows in the database. The files read by CSVREAD must be
+   * accessible by the database, so bulk loads are only used with embedded H2 databases.
+   *
+   * @return BULK_NONE, BULK_H2 or BULK_POSTGRESQL.
+   */
+  private int getBulkLoadMethod() {
+    switch (JDBCUtils.getDbEngine(con)) {
+      case JDBCUtils.DB_H2:
+        String url = nodusProject.getLocalProperty(NodusC.PROP_JDBC_URL, "");
+        if (url.startsWith("jdbc:h2:tcp:") || url.startsWith("jdbc:h2:ssl:")) {
+          return BULK_NONE;
+        }
+        return BULK_H2;
+      case JDBCUtils.DB_POSTGRESQL:
+        try {
+          if (con.isWrapperFor(Class.forName(PG_CONNECTION))) {
+            return BULK_POSTGRESQL;
+          }
+        } catch (ClassNotFoundException | SQLException e) {
+          // The rows are inserted using batches
+        }
+        return BULK_NONE;
+      default:
+        return BULK_NONE;
+    }
+  }
+
+  /**
+   * Returns the buffer of the current thread.
+   *
+   * @return PathBuffer
+   */
+  private PathBuffer getBuffer() {
+    PathBuffer buffer = localBuffer.get();
+    if (buffer == null || buffer.owner != Thread.currentThread()) {
+      buffer = freeBuffers.poll();
+      if (buffer == null) {
+        buffer = new PathBuffer();
+      }
+      buffer.owner = Thread.currentThread();
+      localBuffer.set(buffer);
+      activeBuffers.add(buffer);
+    }
+    return buffer;
+  }
+
+  /**
+   * Hands a buffer to the background thread, waiting if too many buffers are pending.
+   *
+   * @param buffer The buffer to write.
+   */
+  private void handOff(PathBuffer buffer) {
+    activeBuffers.remove(buffer);
+    buffer.owner = null;
+    if (buffer.isEmpty()) {
+      buffer.clear();
+      freeBuffers.add(buffer);
+      return;
+    }
+    try {
+      pendingBuffers.put(buffer);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   /**
    * Returns true if the detailed paths must be stored in the database.
    *
@@ -150,6 +588,33 @@ public class PathWriter {
     return savePaths;
   }
 
+  /**
+   * Displays a database error. Once an error occurred, the remaining rows are discarded and the
+   * save methods return false.
+   *
+   * @param e The exception.
+   */
+  private void reportError(Exception e) {
+    failed = true;
+    nodusProject.getProgressListener().stopProgress();
+    SingleInstanceMessagePane.display(
+        nodusProject.getProgressListener(),
+        i18n.get(
+            PathWriter.class, "Invalid_value", "Invalid value in header fields. See Stack Trace."),
+        JOptionPane.ERROR_MESSAGE);
+    e.printStackTrace();
+  }
+
+  /**
+   * Rounds a value to three decimals. NaN and infinite values are returned unchanged.
+   *
+   * @param value The value to round.
+   * @return The rounded value.
+   */
+  private static double round(double value) {
+    return Math.rint(value * 1000.0) / 1000.0;
+  }
+
   /** Creates empty tables to store the paths. */
   private void resetPathsTables() {
 
@@ -228,22 +693,13 @@ public class PathWriter {
     }
   }
 
-  /**
-   * Save a link and its associated quantity in the detailed path.
-   *
-   * @param virtualLink The virtual link to save.
-   */
-  public synchronized void savePathLink(VirtualLink virtualLink) {
-    savePathLink(virtualLink, currentPathIndex);
-  }
-
   /**
    * Save a link and its associated quantity in the detailed path.
    *
    * @param virtualLink The virtual link to save.
    * @param pathIndex The index of the path.
    */
-  public synchronized void savePathLink(VirtualLink virtualLink, int pathIndex) {
+  public void savePathLink(VirtualLink virtualLink, int pathIndex) {
     if (!saveDetailedPaths) {
       return;
     }
@@ -255,16 +711,16 @@ public class PathWriter {
       up = -1;
     }
 
-    // Set values
-    try {
-      int idx = 1;
-      prepStmtDetails.setInt(idx++, pathIndex);
-      prepStmtDetails.setInt(idx++, up * virtualLink.getBeginVirtualNode().getRealLinkId());
-      prepStmtDetails.setInt(idx++, virtualLink.getBeginVirtualNode().getMode());
-      prepStmtDetails.setInt(idx++, virtualLink.getBeginVirtualNode().getMeans());
-      prepStmtDetails.executeUpdate();
-    } catch (Exception e) {
-      System.err.println(e.toString());
+    PathBuffer buffer = getBuffer();
+    int idx = buffer.nbDetails * DETAIL_INTS;
+    buffer.details[idx++] = pathIndex;
+    buffer.details[idx++] = up * virtualLink.getBeginVirtualNode().getRealLinkId();
+    buffer.details[idx++] = virtualLink.getBeginVirtualNode().getMode();
+    buffer.details[idx] = virtualLink.getBeginVirtualNode().getMeans();
+    buffer.nbDetails++;
+
+    if (buffer.isFull()) {
+      handOff(buffer);
     }
   }
 
@@ -282,9 +738,10 @@ public class PathWriter {
    * @param ulMode The ID of the mode used at the destination.
    * @param ulMeans The ID of the means used at the destination.
    * @param nbTranshipments The number of transhipment operations along the path.
-   * @return True on success.
+   * @param pathIndex The index of the path.
+   * @return False if the paths could not be written in the database.
    */
-  public synchronized boolean savePathHeader(
+  public boolean savePathHeader(
       int iteration,
       ODCell odCell,
       double quantity,
@@ -295,10 +752,14 @@ public class PathWriter {
       byte ldMeans,
       byte ulMode,
       byte ulMeans,
-      int nbTranshipments) {
-    if (!savePathHeader(
+      int nbTranshipments,
+      int pathIndex) {
+    return savePathHeader(
         iteration,
-        odCell,
+        odCell.getGroup(),
+        odCell.getOriginNodeId(),
+        odCell.getDestinationNodeId(),
+        odCell.getStartingTime(),
         quantity,
         length,
         duration,
@@ -308,18 +769,17 @@ public class PathWriter {
         ulMode,
         ulMeans,
         nbTranshipments,
-        currentPathIndex)) {
-      return false;
-    }
-    currentPathIndex++;
-    return true;
+        pathIndex);
   }
 
   /**
    * Save the header for a path for a give O-D pair computed at a given iteration.
    *
    * @param iteration The iteration of the assignment.
-   * @param odCell The OD cell associated to this path.
+   * @param group The group of commodities.
+   * @param originNodeId The ID of the real node at origin.
+   * @param destinationNodeId The ID of the real node at destination.
+   * @param startingTime The starting time, in seconds after midnight, or -1.
    * @param quantity The quantity to assign to this path.
    * @param length The length of this path.
    * @param duration The travel duration (in seconds).
@@ -330,11 +790,14 @@ public class PathWriter {
    * @param ulMeans The ID of the means used at the destination.
    * @param nbTranshipments The number of transhipment operations along the path.
    * @param pathIndex The index of the path.
-   * @return True on success.
+   * @return False if the paths could not be written in the database.
    */
-  public synchronized boolean savePathHeader(
+  public boolean savePathHeader(
       int iteration,
-      ODCell odCell,
+      int group,
+      int originNodeId,
+      int destinationNodeId,
+      int startingTime,
       double quantity,
       float length,
       float duration,
@@ -345,42 +808,42 @@ public class PathWriter {
       byte ulMeans,
       int nbTranshipments,
       int pathIndex) {
-    try {
-
-      int idx = 1;
-      prepStmtHeaders.setInt(idx++, odCell.getGroup());
-      prepStmtHeaders.setInt(idx++, odCell.getOriginNodeId());
-      prepStmtHeaders.setInt(idx++, odCell.getDestinationNodeId());
-      prepStmtHeaders.setInt(idx++, odCell.getStartingTime() / 60);
-      prepStmtHeaders.setInt(idx++, iteration);
-      prepStmtHeaders.setDouble(idx++, Double.parseDouble(df.format(quantity)));
-      prepStmtHeaders.setFloat(idx++, Float.parseFloat(df.format(length)));
-      prepStmtHeaders.setFloat(idx++, Float.parseFloat(df.format(duration)));
-      prepStmtHeaders.setDouble(idx++, pc.ldCosts);
-      prepStmtHeaders.setDouble(idx++, pc.ulCosts);
-      prepStmtHeaders.setDouble(idx++, pc.trCosts);
-      prepStmtHeaders.setDouble(idx++, pc.tpCosts);
-      prepStmtHeaders.setDouble(idx++, pc.mvCosts);
-      prepStmtHeaders.setInt(idx++, ldMode);
-      prepStmtHeaders.setInt(idx++, ldMeans);
-      prepStmtHeaders.setInt(idx++, ulMode);
-      prepStmtHeaders.setInt(idx++, ldMeans);
-      prepStmtHeaders.setInt(idx++, nbTranshipments);
-      prepStmtHeaders.setInt(idx++, pathIndex);
-
-      prepStmtHeaders.executeUpdate();
-    } catch (Exception e) {
-      nodusProject.getNodusMapPanel().stopProgress();
-      SingleInstanceMessagePane.display(
-          nodusProject.getNodusMapPanel(),
-          i18n.get(
-              PathWriter.class,
-              "Invalid_value",
-              "Invalid value in header fields. See Stack Trace."),
-          JOptionPane.ERROR_MESSAGE);
-      e.printStackTrace();
+    if (failed) {
       return false;
     }
+
+    PathBuffer buffer = getBuffer();
+
+    int idx = buffer.nbHeaders * HEADER_INTS;
+    int[] hi = buffer.headerInts;
+    hi[idx++] = group;
+    hi[idx++] = originNodeId;
+    hi[idx++] = destinationNodeId;
+    hi[idx++] = startingTime / 60;
+    hi[idx++] = iteration;
+    hi[idx++] = ldMode;
+    hi[idx++] = ldMeans;
+    hi[idx++] = ulMode;
+    hi[idx++] = ulMeans;
+    hi[idx++] = nbTranshipments;
+    hi[idx] = pathIndex;
+
+    idx = buffer.nbHeaders * HEADER_DOUBLES;
+    double[] hd = buffer.headerDoubles;
+    hd[idx++] = quantity;
+    hd[idx++] = length;
+    hd[idx++] = duration;
+    hd[idx++] = pc.ldCosts;
+    hd[idx++] = pc.ulCosts;
+    hd[idx++] = pc.trCosts;
+    hd[idx++] = pc.tpCosts;
+    hd[idx] = pc.mvCosts;
+
+    buffer.nbHeaders++;
+
+    if (buffer.isFull()) {
+      handOff(buffer);
+    }
     return true;
   }
 
@@ -396,6 +859,8 @@ public class PathWriter {
       return;
     }
 
+    flush();
+
     try {
 
       Statement stmt = con.createStatement();
@@ -448,4 +913,52 @@ public class PathWriter {
       System.err.println(e.toString());
     }
   }
+
+  /**
+   * Writes the content of a buffer using JDBC batches.
+   *
+   * @param buffer The buffer to write.
+   * @throws SQLException On database error.
+   */
+  private void writeBatch(PathBuffer buffer) throws SQLException {
+    for (int i = 0; i < buffer.nbHeaders; i++) {
+      int ii = i * HEADER_INTS;
+      int di = i * HEADER_DOUBLES;
+      int[] hi = buffer.headerInts;
+      double[] hd = buffer.headerDoubles;
+
+      int idx = 1;
+      prepStmtHeaders.setInt(idx++, hi[ii]);
+      prepStmtHeaders.setInt(idx++, hi[ii + 1]);
+      prepStmtHeaders.setInt(idx++, hi[ii + 2]);
+      prepStmtHeaders.setInt(idx++, hi[ii + 3]);
+      prepStmtHeaders.setInt(idx++, hi[ii + 4]);
+      prepStmtHeaders.setDouble(idx++, round(hd[di]));
+      prepStmtHeaders.setFloat(idx++, (float) round(hd[di + 1]));
+      prepStmtHeaders.setFloat(idx++, (float) round(hd[di + 2]));
+      for (int j = 3; j < HEADER_DOUBLES; j++) {
+        prepStmtHeaders.setDouble(idx++, hd[di + j]);
+      }
+      for (int j = 5; j < HEADER_INTS; j++) {
+        prepStmtHeaders.setInt(idx++, hi[ii + j]);
+      }
+      prepStmtHeaders.addBatch();
+    }
+    if (buffer.nbHeaders > 0) {
+      prepStmtHeaders.executeBatch();
+    }
+
+    for (int i = 0; i < buffer.nbDetails; i++) {
+      int di = i * DETAIL_INTS;
+      for (int j = 0; j < DETAIL_INTS; j++) {
+        prepStmtDetails.setInt(j + 1, buffer.details[di + j]);
+      }
+      prepStmtDetails.addBatch();
+    }
+    if (buffer.nbDetails > 0) {
+      prepStmtDetails.executeBatch();
+    }
+
+    nbUncommittedRows += buffer.nbHeaders + buffer.nbDetails;
+  }
 }
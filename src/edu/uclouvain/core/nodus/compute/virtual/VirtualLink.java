@@ -21,12 +21,8 @@
 
 package edu.uclouvain.core.nodus.compute.virtual;
 
-import edu.uclouvain.core.nodus.compute.assign.modalsplit.Path;
 import edu.uclouvain.core.nodus.compute.real.RealLink;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-
 /**
  * This class holds all the information relative to a virtual link.
  *
@@ -84,9 +80,6 @@ public class VirtualLink {
   /* Number of groups in the OD matrix */
   private byte nbGroups;
 
-  /* Used for the fast multiflow assignment */
-  private LinkedList<PathODCell>[] pathODCellList = null;
-
   /**
    * Current flow (per group) computed during the precedent iteration. Needed to compute the lambda
    * parameter used in the equilibrium assignment algorithms
@@ -183,20 +176,6 @@ public class VirtualLink {
     auxiliaryFlow[groupIndex] += flow;
   }
 
-  /**
-   * Adds a pathODCell to this virtual link.
-   *
-   * @param groupIndex Index of the group of commodities.
-   * @param pathODCell The pathODCell to add.
-   */
-  public void addCell(byte groupIndex, PathODCell pathODCell) {
-    if (pathODCellList[groupIndex] == null) {
-      pathODCellList[groupIndex] = new LinkedList<>();
-    }
-
-    pathODCellList[groupIndex].add(pathODCell);
-  }
-
   /**
    * Adds a flow of a dynamic assignment to this virtual link.
    *
@@ -399,6 +378,15 @@ public class VirtualLink {
     return realLink.getSpeed();
   }
 
+  /**
+   * Returns the real link this virtual link is associated to.
+   *
+   * @return The real link, or null if this virtual link is not a moving link.
+   */
+  public RealLink getRealLink() {
+    return realLink;
+  }
+
   /**
    * Returns the type of virtual link.
    *
@@ -484,6 +472,16 @@ public class VirtualLink {
     }
   }
 
+  /**
+   * Sets the ID of this virtual link. Used by the virtual network generator, which creates the
+   * links in parallel and numbers them afterwards.
+   *
+   * @param id The ID of this virtual link.
+   */
+  void setId(int id) {
+    virtualLinkId = id;
+  }
+
   /**
    * Sets the number of groups of commodities the assignment has to handle. This method also
    * initializes all internal data arrays.
@@ -491,7 +489,6 @@ public class VirtualLink {
    * @param nbGroups Number of groups the assignment has to handle.
    * @param nbTimeSlices Number of time slices the assignment will cover.
    */
-  @SuppressWarnings("unchecked")
   public void setNbGroups(int nbGroups, int nbTimeSlices) {
     weight = new double[nbGroups];
     currentFlow = new double[nbGroups][nbTimeSlices];
@@ -521,8 +518,6 @@ public class VirtualLink {
         auxiliaryVehicles[i] = 0;
       }
     }
-
-    pathODCellList = new LinkedList[nbGroups];
   }
 
   /**
@@ -535,59 +530,6 @@ public class VirtualLink {
     this.weight[groupIndex] = weight;
   }
 
-  /**
-   * For each path that makes use of this virtual link, assigns a share of the demand. This is
-   * called by the exact multi-flow assignment algorithm once the modal split function has been
-   * called.
-   *
-   * @param groupIndex The index of the group of commodities.
-   * @param path The set of path computed by the one of the exact multi-flow assignment algorithm.
-   */
-  public void spreadFlowOverPaths(byte groupIndex, Path[] path) {
-    if (pathODCellList[groupIndex] == null) {
-      return;
-    }
-
-    Iterator<PathODCell> it = pathODCellList[groupIndex].iterator();
-    while (it.hasNext()) {
-      PathODCell pathODCell = it.next();
-
-      if (path[pathODCell.alternativePath].weight != Double.MAX_VALUE) {
-        addFlow(groupIndex, pathODCell.quantity * path[pathODCell.alternativePath].weight);
-      }
-    }
-
-    pathODCellList[groupIndex].clear();
-  }
-
-  /**
-   * For each path that makes use of this virtual link, assigns a share of the demand. This is
-   * called by the exact multi-flow assignment algorithm once the modal split function has been
-   * called.
-   *
-   * @param groupIndex The index of the group of commodities.
-   * @param path The set of path computed by the one of the fast multi-flow assignment algorithm.
-   */
-  public void spreadFlowOverPaths(byte groupIndex, Path[][] path) {
-    if (pathODCellList[groupIndex] == null) {
-      return;
-    }
-
-    Iterator<PathODCell> it = pathODCellList[groupIndex].iterator();
-
-    while (it.hasNext()) {
-      PathODCell pathODCell = it.next();
-      if (path[pathODCell.alternativePath][pathODCell.indexInODLine].weight != Double.MAX_VALUE) {
-        addFlow(
-            groupIndex,
-            pathODCell.quantity
-                * path[pathODCell.alternativePath][pathODCell.indexInODLine].weight);
-      }
-    }
-
-    pathODCellList[groupIndex].clear();
-  }
-
   /** Returns a string representation of the virtual link. */
   @Override
   public String toString() {
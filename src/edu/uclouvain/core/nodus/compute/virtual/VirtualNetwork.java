@@ -37,28 +37,39 @@ import com.bbn.openmap.util.I18n;
 import edu.uclouvain.core.nodus.NodusC;
 import edu.uclouvain.core.nodus.NodusMapPanel;
 import edu.uclouvain.core.nodus.NodusProject;
+import edu.uclouvain.core.nodus.compute.assign.AssignmentExecutor;
 import edu.uclouvain.core.nodus.compute.assign.AssignmentParameters;
-import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyNode;
+import edu.uclouvain.core.nodus.compute.assign.AssignmentTimings;
+import edu.uclouvain.core.nodus.compute.assign.shortestpath.AdjacencyGraph;
 import edu.uclouvain.core.nodus.compute.costs.CostParser;
 import edu.uclouvain.core.nodus.compute.costs.CostParserWorker;
 import edu.uclouvain.core.nodus.compute.costs.CostParserWorkerParameters;
+import edu.uclouvain.core.nodus.compute.costs.LinkCosts;
 import edu.uclouvain.core.nodus.compute.costs.VehiclesParser;
 import edu.uclouvain.core.nodus.compute.od.ODCell;
+import edu.uclouvain.core.nodus.compute.od.ODDemand;
 import edu.uclouvain.core.nodus.compute.real.RealLink;
 import edu.uclouvain.core.nodus.compute.real.RealNetworkObject;
 import edu.uclouvain.core.nodus.database.JDBCUtils;
-import edu.uclouvain.core.nodus.utils.WorkQueue;
+import edu.uclouvain.core.nodus.services.Service;
+import edu.uclouvain.core.nodus.services.ServiceEditor;
+import edu.uclouvain.core.nodus.services.ServiceIndex;
+import edu.uclouvain.core.nodus.swing.SingleInstanceMessagePane;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.text.DecimalFormat;
 import java.text.MessageFormat;
-import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JOptionPane;
 
@@ -94,6 +105,37 @@ public class VirtualNetwork {
     }
   }
 
+  /**
+   * Nodes and links created by a generation task. They are numbered once all the tasks are
+   * completed, in the order of the tasks, so that the IDs do not depend on the scheduling.
+   */
+  private static class GeneratedObjects {
+
+    /** Created links, in creation order. */
+    ArrayList<VirtualLink> links = new ArrayList<>();
+
+    /** Index of the virtual node list each node must be added to, or -1. */
+    int[] nodeListIndexes = new int[16];
+
+    /** Created nodes, in creation order. */
+    ArrayList<VirtualNode> nodes = new ArrayList<>();
+
+    void addLink(VirtualLink vl) {
+      links.add(vl);
+    }
+
+    void addNode(VirtualNode vn, int nodeListIndex) {
+      if (nodes.size() == nodeListIndexes.length) {
+        nodeListIndexes = Arrays.copyOf(nodeListIndexes, 2 * nodeListIndexes.length);
+      }
+      nodeListIndexes[nodes.size()] = nodeListIndex;
+      nodes.add(vn);
+    }
+  }
+
+  /* Number of generation tasks per thread, to balance the load */
+  private static final int CHUNKS_PER_THREAD = 4;
+
   private static I18n i18n = Environment.getI18n();
 
   private int assignmentEndTime = -1;
@@ -105,14 +147,33 @@ public class VirtualNetwork {
 
   private Properties costFunctions = null;
 
-  /* Formater used in progress-bar display */
-  private NumberFormat formatter = new DecimalFormat("0.00000");
+  /*
+   * Cost parsers kept from one cost computation to the next, so that the cost functions are only
+   * compiled once. Keyed by group index, OD class and time slice.
+   */
+  private HashMap<Integer, CostParser> costParsers = new HashMap<>();
+
+  /* Cost functions the cached cost parsers were created for */
+  private Properties costParsersFunctions = null;
+
+  /* Capacities of the vehicles for each group, and the cost functions they were read from */
+  private VehiclesParser[] vehiclesParsers = null;
+  private Properties vehiclesParsersFunctions = null;
+
+  /* Executor of the assignment the costs are computed for */
+  private AssignmentExecutor executor = null;
+
+  /*
+   * Costs of the virtual links kept from one cost computation to the next, so that only the flow
+   * dependent costs are computed again. Same keys as the cost parsers.
+   */
+  private HashMap<Integer, LinkCosts> linkCosts = new HashMap<>();
 
   /*
    * Data structure used to represent a virtual network in a form that is suitable for the use with
-   * the algorithm of Dijkstra (shortest paths)
+   * the algorithm of Dijkstra (shortest paths). Reset each time the costs are computed.
    */
-  private AdjacencyNode[][] graph = null;
+  private AdjacencyGraph[] graph = null;
 
   /* Vector that will contain the groups to assign */
   private byte[] groups = null;
@@ -126,6 +187,9 @@ public class VirtualNetwork {
    */
   private boolean[][] linesForModeMeans = new boolean[NodusC.MAXMM][NodusC.MAXMM];
 
+  /* True once the mode/means combinations that need services are loaded from the cost functions */
+  private boolean linesForModeMeansLoaded = false;
+
   /* Content of the .dbf tables associated to the link layers */
   private DbfTableModel[] linksDbf = null;
 
@@ -138,6 +202,9 @@ public class VirtualNetwork {
   /* Number of od classes that are defined */
   private byte nbODClasses;
 
+  /* Number of threads used to generate the network if the executor is not set */
+  private int nbThreads;
+
   /* Number of real links in the project */
   private int nbRealLinks = 0;
 
@@ -155,15 +222,22 @@ public class VirtualNetwork {
   /* Hash table used to associate a node number with its index in the data structure */
   private HashMap<Integer, NodeLayerAndRowIndex> nodeIndex = null;
 
+  /* Sorted node numbers and their index in the data structure, for fast primitive lookups */
+  private int[] sortedNodeNums = null;
+  private int[] sortedNodeListIndexes = null;
+
   /* Content of the .dbf tables associated to the node layers */
   private DbfTableModel[] nodesDbf = null;
 
   /* Set of Esri layers that contain the real nodes */
   private NodusEsriLayer[] nodesEsriLayer;
 
-  /* Main frame of the application */
+  /* Main frame of the application, or null if the project is opened without user interface */
   private NodusMapPanel nodusMapPanel;
 
+  /* Used to update the progress bar and to display the error messages */
+  private ProgressListener progressListener;
+
   /* Opened project for which a virtual network must be generated */
   private NodusProject nodusProject;
 
@@ -176,15 +250,36 @@ public class VirtualNetwork {
     return nodusProject;
   }
 
+  /**
+   * Returns the durations of the phases of the assignment this virtual network is built for.
+   *
+   * @return AssignmentTimings
+   */
+  public AssignmentTimings getTimings() {
+    return timings;
+  }
+
   private boolean[] odClassHasDemand = null;
 
+  /* Demand loaded from the OD matrix. */
+  private ODDemand odDemand = null;
+
   private int scenario;
 
+  /* Services of the project, indexed during the generation */
+  private ServiceIndex serviceIndex = null;
+
   private int timeSliceDuration = 0;
 
+  /* Durations of the phases of the assignment */
+  private AssignmentTimings timings;
+
   /* Basic structure used for virtual networks. */
   private VirtualNodeList[] vnl = null;
 
+  /* Virtual links indexed by id, built on demand */
+  private VirtualLink[] virtualLinks = null;
+
   /**
    * Initializes a new virtual network.
    *
@@ -194,6 +289,9 @@ public class VirtualNetwork {
 
     nodusProject = ap.getNodusProject();
     this.nodusMapPanel = nodusProject.getNodusMapPanel();
+    progressListener = nodusProject.getProgressListener();
+    nbThreads = ap.getThreads();
+    timings = ap.getTimings();
 
     scenario = nodusProject.getLocalProperty(NodusC.PROP_SCENARIO, 0);
 
@@ -272,14 +370,15 @@ public class VirtualNetwork {
   }
 
   /**
-   * Creates a queue of cost parser workers and a pool of threads that will handle these workers.
+   * Computes the costs of the virtual links, running a cost parser worker per group on the executor
+   * of the assignment.
    *
    * @param iteration The iteration for which the costs must be computed.
    * @param odClass The OD class for which the costs must be computed.
    * @param timeSlice The time slice for which the costs must be computed.
    * @param costFunctionsObject The cost functions. Can be a String (cost functions file name) or a
    *     Properties object in which the costs are already loaded.
-   * @param nbThreads The number of thread to create in the pool.
+   * @param nbThreads The number of threads to use if the executor of the assignment is not set.
    * @return True on success.
    */
   public boolean computeCosts(
@@ -300,11 +399,9 @@ public class VirtualNetwork {
       try {
         costFunctions.load(new FileInputStream(costFunctionsFileName.trim()));
       } catch (IOException ex) {
-        JOptionPane.showMessageDialog(
-            null,
+        progressListener.showMessage(
             MessageFormat.format(
                 i18n.get(VirtualNetwork.class, "not_found", "{0} not found."), costFunctionsObject),
-            NodusC.APPNAME,
             JOptionPane.ERROR_MESSAGE);
 
         return false;
@@ -314,82 +411,81 @@ public class VirtualNetwork {
       return false;
     }
 
-    // Create the work queue
-    WorkQueue queue = new WorkQueue();
+    // The weights will change, so the adjacency graphs must be rebuilt
+    graph = null;
 
-    // Create a set of worker threads
-    CostParserWorker[] worker = new CostParserWorker[nbThreads];
-    for (int i = 0; i < worker.length; i++) {
-      worker[i] = new CostParserWorker(queue);
+    // Use the executor of the assignment, or a temporary one
+    AssignmentExecutor executor = this.executor;
+    if (executor == null) {
+      executor = new AssignmentExecutor(nbThreads);
     }
 
-    // long start = System.currentTimeMillis();
+    long start = System.nanoTime();
 
-    // Add the works to the queue
+    // Create a task per group
+    List<CostParserWorker> worker = new ArrayList<>();
+    int lengthOfTask = 0;
     for (byte groupIndex = 0; groupIndex < getNbGroups(); groupIndex++) {
-      CostParser cp =
-          new CostParser(costFunctions, nodusProject, groups[groupIndex], odClass, timeSlice);
+      CostParser cp = getCostParser(groupIndex, odClass, timeSlice);
       if (!cp.isInitialized()) {
         // Display the error message
-        JOptionPane.showMessageDialog(
-            null, cp.getErrorMessage(), NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+        progressListener.showMessage(cp.getErrorMessage(), JOptionPane.ERROR_MESSAGE);
         return false;
       }
 
+      // A first computation scans the whole network, the next ones update the progress bar once
+      LinkCosts lc = getLinkCosts(groupIndex, odClass, timeSlice);
+      if (lc.isInitialized()) {
+        lengthOfTask++;
+      } else {
+        lengthOfTask += vnl.length;
+      }
+
       CostParserWorkerParameters cpp =
           new CostParserWorkerParameters(
-              worker, nodusProject, odClass, groupIndex, groups[groupIndex], this, cp);
-      queue.addWork(cpp);
+              nodusProject, odClass, groupIndex, groups[groupIndex], this, cp, lc);
+      worker.add(new CostParserWorker(cpp, executor));
     }
 
-    // Add special end-of-stream markers to terminate the workers
-    for (int i = 0; i < worker.length; i++) {
-      queue.addWork(WorkQueue.NO_MORE_WORK);
-    }
+    progressListener.startProgress(lengthOfTask);
 
-    nodusMapPanel.startProgress(getNbGroups() * vnl.length);
+    // Run the tasks and wait until they are all completed
+    boolean success = executor.run(worker);
 
-    // Start the threads on the now correctly initialized parsers
-    for (CostParserWorker element : worker) {
-      element.start();
-    }
+    progressListener.stopProgress();
 
-    // Wait until all the works are completed
-    for (int i = 0; i < nbThreads; i++) {
-      try {
-        worker[i].join();
-      } catch (InterruptedException ex) {
-        ex.printStackTrace();
-      }
+    if (executor != this.executor) {
+      executor.shutdown();
     }
 
-    nodusMapPanel.stopProgress();
-
     // Test if everything was OK
-    for (int i = 0; i < nbThreads; i++) {
-      if (worker[i].isCancelled()) {
-        if (worker[i].getErrorMessage() != null) {
-          JOptionPane.showMessageDialog(
-              null, worker[i].getErrorMessage(), NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+    if (!success) {
+      for (CostParserWorker element : worker) {
+        if (element.getErrorMessage() != null) {
+          progressListener.showMessage(element.getErrorMessage(), JOptionPane.ERROR_MESSAGE);
+          break;
         }
-        return false;
       }
+      return false;
     }
 
-    // long end = System.currentTimeMillis();
-    // System.out.println("Duration : " + ((end - start) / 1000));
+    timings.add(
+        AssignmentTimings.COSTS,
+        System.nanoTime() - start,
+        (long) getNbVirtualLinks() * getNbGroups());
 
     return true;
   }
 
   /**
-   * Creates a queue of cost parser workers and a pool of threads that will handle these workers.
+   * Computes the costs of the virtual links, running a cost parser worker per group on the executor
+   * of the assignment.
    *
    * @param iteration The iteration for which the costs must be computed.
    * @param odClass The OD class for which the costs must be computed.
    * @param costFunctionsObject The cost functions. Can be a String (cost functions file name) or a
    *     Properties object in which the costs are already loaded.
-   * @param nbThreads The number of thread to create in the pool.
+   * @param nbThreads The number of threads to use if the executor of the assignment is not set.
    * @return True on success.
    */
   public boolean computeCosts(
@@ -397,6 +493,96 @@ public class VirtualNetwork {
     return computeCosts(iteration, odClass, (byte) -1, costFunctionsObject, nbThreads);
   }
 
+  /**
+   * Returns a new cost parser for a given group and OD class, that is not shared with the cost
+   * computations of the virtual network. Such parsers can be used concurrently by several threads
+   * working on the same group.
+   *
+   * @param groupIndex The index of the group of commodities.
+   * @param odClass The OD class.
+   * @return A new cost parser.
+   */
+  CostParser newCostParser(byte groupIndex, byte odClass) {
+    return new CostParser(costFunctions, nodusProject, groups[groupIndex], odClass, (byte) -1);
+  }
+
+  /**
+   * Returns the cost parser for a given group, OD class and time slice. The parsers are reused as
+   * long as the cost functions do not change, which avoids compiling the formulas again at each
+   * iteration of the equilibrium assignments.
+   *
+   * @param groupIndex The index of the group.
+   * @param odClass The OD class.
+   * @param timeSlice The time slice, or -1.
+   * @return The cost parser.
+   */
+  private synchronized CostParser getCostParser(byte groupIndex, byte odClass, byte timeSlice) {
+    if (!costFunctions.equals(costParsersFunctions)) {
+      costParsers.clear();
+      linkCosts.clear();
+      costParsersFunctions = costFunctions;
+    }
+
+    int key = getCostKey(groupIndex, odClass, timeSlice);
+    CostParser cp = costParsers.get(key);
+    if (cp == null) {
+      cp = new CostParser(costFunctions, nodusProject, groups[groupIndex], odClass, timeSlice);
+      costParsers.put(key, cp);
+    } else {
+      cp.reset();
+    }
+    return cp;
+  }
+
+  /**
+   * Returns the capacities of the vehicles for all the groups. They are read again from the cost
+   * functions only if these changed.
+   *
+   * @return A vehicles parser per group.
+   */
+  synchronized VehiclesParser[] getVehiclesParsers() {
+    if (vehiclesParsers == null || !costFunctions.equals(vehiclesParsersFunctions)) {
+      vehiclesParsers = new VehiclesParser[getNbGroups()];
+      for (byte groupIndex = 0; groupIndex < vehiclesParsers.length; groupIndex++) {
+        vehiclesParsers[groupIndex] =
+            new VehiclesParser(costFunctions, scenario, groups[groupIndex]);
+      }
+      vehiclesParsersFunctions = costFunctions;
+    }
+    return vehiclesParsers;
+  }
+
+  /**
+   * Returns the key used to cache the cost parsers and link costs.
+   *
+   * @param groupIndex The index of the group.
+   * @param odClass The OD class.
+   * @param timeSlice The time slice, or -1.
+   * @return The key.
+   */
+  private static int getCostKey(byte groupIndex, byte odClass, byte timeSlice) {
+    return ((odClass & 0xFF) << 16) | ((timeSlice & 0xFF) << 8) | (groupIndex & 0xFF);
+  }
+
+  /**
+   * Returns the costs kept from the previous computation for a given group, OD class and time
+   * slice. They are discarded, together with the cost parsers, when the cost functions change.
+   *
+   * @param groupIndex The index of the group.
+   * @param odClass The OD class.
+   * @param timeSlice The time slice, or -1.
+   * @return The link costs, which are not initialized before the first computation.
+   */
+  private synchronized LinkCosts getLinkCosts(byte groupIndex, byte odClass, byte timeSlice) {
+    int key = getCostKey(groupIndex, odClass, timeSlice);
+    LinkCosts lc = linkCosts.get(key);
+    if (lc == null) {
+      lc = new LinkCosts(nbVirtualLinks);
+      linkCosts.put(key, lc);
+    }
+    return lc;
+  }
+
   /**
    * Select the real network objects that will be considered during the assignment.
    *
@@ -429,7 +615,9 @@ public class VirtualNetwork {
     }
 
     // Keep only the objects in the highlighted area if needed.
-    if (isLimitedToHighlightedArea && nodusMapPanel.isHighlightedAreaLayerVisible()) {
+    if (isLimitedToHighlightedArea
+        && nodusMapPanel != null
+        && nodusMapPanel.isHighlightedAreaLayerVisible()) {
       HighlightedAreaLayer hlal = nodusMapPanel.getHighlightedAreaLayer();
       for (NodusEsriLayer element : linksEsriLayer) {
         EsriGraphicList egl = element.getEsriGraphicList();
@@ -497,41 +685,73 @@ public class VirtualNetwork {
    * @param timeSlice The time slice to consider.
    */
   public void flowsToVehicles(byte timeSlice) {
-    /** Use the flows on the virtual links to compute the number of vehicles needed. */
-    for (byte groupIndex = 0; groupIndex < getNbGroups(); groupIndex++) {
-      // Load the capacities of the vehicles
-      VehiclesParser.loadVehicleCharacteristics(costFunctions, scenario, groups[groupIndex]);
-
-      for (VirtualNodeList element : vnl) {
-        // Iterate through all the virtual nodes generated for this real node
-        Iterator<VirtualNode> nodeLit = element.getVirtualNodeList().iterator();
+    flowsToVehicles(timeSlice, timeSlice, null);
+  }
 
-        while (nodeLit.hasNext()) {
-          VirtualNode vn = nodeLit.next();
+  /**
+   * Computes the number of vehicles that correspond to the flows assigned on the virtual links
+   * during a range of time slices. The virtual node lists are handled one after the other, and
+   * the number of lists already handled is published in nbHandledNodeLists, so that another thread
+   * can already save the results of these lists.
+   *
+   * @param firstTimeSlice The first time slice to consider.
+   * @param lastTimeSlice The last time slice to consider.
+   * @param nbHandledNodeLists If not null, updated each time a virtual node list is handled and
+   *     notified every 256 lists and at the end.
+   */
+  public void flowsToVehicles(
+      byte firstTimeSlice, byte lastTimeSlice, AtomicInteger nbHandledNodeLists) {
+    // Get the capacities of the vehicles for all the groups
+    int nbGroups = getNbGroups();
+    VehiclesParser[] vehiclesParsers = getVehiclesParsers();
 
-          /*
-           * Iterate through all the virtual links that start from this virtual node
-           */
-          Iterator<VirtualLink> linkLit = vn.getVirtualLinkList().iterator();
+    /** Use the flows on the virtual links to compute the number of vehicles needed. */
+    for (int i = 0; i < vnl.length; i++) {
+      // Iterate through all the virtual nodes generated for this real node
+      Iterator<VirtualNode> nodeLit = vnl[i].getVirtualNodeList().iterator();
 
-          while (linkLit.hasNext()) {
-            VirtualLink vl = linkLit.next();
+      while (nodeLit.hasNext()) {
+        VirtualNode vn = nodeLit.next();
 
-            // Vehicles are only computed for moving virtual links
-            if (vl.getType() == VirtualLink.TYPE_MOVE) {
+        /*
+         * Iterate through all the virtual links that start from this virtual node
+         */
+        Iterator<VirtualLink> linkLit = vn.getVirtualLinkList().iterator();
 
-              double averageLoad =
-                  VehiclesParser.getVehicleAverageLoad(
-                      vl.getBeginVirtualNode().getMode(), vl.getBeginVirtualNode().getMeans());
-              double esv =
-                  VehiclesParser.getEquivalentStandardVehicleRatio(
-                      vl.getBeginVirtualNode().getMode(), vl.getBeginVirtualNode().getMeans());
+        while (linkLit.hasNext()) {
+          VirtualLink vl = linkLit.next();
 
-              vl.initializeVehicles(groupIndex, timeSlice, averageLoad, esv);
+          // Vehicles are only computed for moving virtual links
+          if (vl.getType() == VirtualLink.TYPE_MOVE) {
+            int mode = vl.getBeginVirtualNode().getMode();
+            int means = vl.getBeginVirtualNode().getMeans();
+
+            for (byte groupIndex = 0; groupIndex < nbGroups; groupIndex++) {
+              VehiclesParser vp = vehiclesParsers[groupIndex];
+              double averageLoad = vp.getVehicleAverageLoad(mode, means);
+              double esv = vp.getEquivalentStandardVehicleRatio(mode, means);
+              for (int timeSlice = firstTimeSlice; timeSlice <= lastTimeSlice; timeSlice++) {
+                vl.initializeVehicles(groupIndex, (byte) timeSlice, averageLoad, esv);
+              }
             }
           }
         }
       }
+
+      if (nbHandledNodeLists != null) {
+        nbHandledNodeLists.set(i + 1);
+        if ((i & 0xFF) == 0xFF) {
+          synchronized (nbHandledNodeLists) {
+            nbHandledNodeLists.notifyAll();
+          }
+        }
+      }
+    }
+
+    if (nbHandledNodeLists != null) {
+      synchronized (nbHandledNodeLists) {
+        nbHandledNodeLists.notifyAll();
+      }
     }
   }
 
@@ -551,411 +771,710 @@ public class VirtualNetwork {
    */
   public boolean generate() {
 
-    nodusMapPanel.startProgress(lengthOfTask);
+    progressListener.startProgress(lengthOfTask);
 
-    loadLinesForModeMeans();
+    initializeVirtualNodeLists();
 
-    /* Create array of linked lists */
-    vnl = new VirtualNodeList[nbRealNodes];
-    for (int i = 0; i < nbRealNodes; i++) {
-      vnl[i] = null;
+    // The services are looked up in a read-only snapshot, shared by the threads
+    serviceIndex = new ServiceIndex(nodusProject.getServiceEditor());
+
+    // Use the executor of the assignment, or a temporary one
+    AssignmentExecutor executor = this.executor;
+    if (executor == null) {
+      executor = new AssignmentExecutor(nbThreads);
     }
 
-    initializeNodeIndexMap();
+    boolean success =
+        generateMovingLinks(executor)
+            && generateTranshipmentLinks(executor)
+            && generateLoadingLinks(executor);
 
-    /* Generate the "moving" virtual links and their associated nodes */
-    for (int i = 0; i < nbLinkLayers; i++) {
-      EsriGraphicList egl = linksEsriLayer[i].getEsriGraphicList();
+    if (executor != this.executor) {
+      executor.shutdown();
+    }
+    serviceIndex = null;
 
-      for (int j = 0; j < linksDbf[i].getRowCount(); j++) {
-        if (!nodusMapPanel.updateProgress(
-            i18n.get(VirtualNetwork.class, "Moving_virtual_links", "Moving virtual links"))) {
-          return false;
-        }
+    if (!success) {
+      return false;
+    }
 
-        RealLink realLink = (RealLink) egl.getOMGraphicAt(j).getAttribute(0);
+    // System.out.println(nbVirtualNodes + " " + nbVirtualLinks);
+    // End of generation
+    progressListener.stopProgress();
+    return true;
+  }
 
-        if (!realLink.isInHighlightedArea()) {
-          continue;
-        }
+  /**
+   * Generates the "moving" virtual links and their associated nodes. The link layers are split in
+   * ranges of records that are handled in parallel. The generated nodes and links are then numbered
+   * and added to the virtual node lists in the order of the records, so that they get the same IDs
+   * as if the records were handled one after the other.
+   *
+   * @param executor The executor the tasks run on.
+   * @return True on success.
+   */
+  private boolean generateMovingLinks(AssignmentExecutor executor) {
+    int chunkSize = getChunkSize(nbRealLinks, executor);
+    SingleInstanceMessagePane.reset();
 
-        /* Get the relevant fields to build the virtual nodes */
-        List<Object> values = linksDbf[i].getRecord(j);
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    List<GeneratedObjects> generated = new ArrayList<>();
+    for (int i = 0; i < nbLinkLayers; i++) {
+      int nbRows = linksDbf[i].getRowCount();
+      for (int firstRow = 0; firstRow < nbRows; firstRow += chunkSize) {
+        final int layerIndex = i;
+        final int from = firstRow;
+        final int to = Math.min(nbRows, firstRow + chunkSize);
+        final GeneratedObjects go = new GeneratedObjects();
+        generated.add(go);
+        tasks.add(() -> generateMovingLinks(layerIndex, from, to, go));
+      }
+    }
 
-        // Ignore not enabled links
-        int enabled = Integer.valueOf(JDBCUtils.getInt(values.get(NodusC.DBF_IDX_ENABLED)));
-        if (enabled == 0) {
-          continue;
-        }
+    if (!executor.run(tasks)) {
+      return false;
+    }
 
-        int link = JDBCUtils.getInt(values.get(NodusC.DBF_IDX_NUM));
+    for (GeneratedObjects go : generated) {
+      number(go);
+    }
+    return true;
+  }
 
-        Integer node1 = Integer.valueOf(JDBCUtils.getInt(values.get(NodusC.DBF_IDX_NODE1)));
+  /**
+   * Generates the "moving" virtual links for a range of records of a link layer.
+   *
+   * @param layerIndex The index of the link layer.
+   * @param firstRow The first record to handle.
+   * @param lastRow The record after the last one to handle.
+   * @param generated Receives the generated nodes and links.
+   * @return True on success.
+   */
+  private boolean generateMovingLinks(
+      int layerIndex, int firstRow, int lastRow, GeneratedObjects generated) {
+    String msg = i18n.get(VirtualNetwork.class, "Moving_virtual_links", "Moving virtual links");
+    EsriGraphicList egl = linksEsriLayer[layerIndex].getEsriGraphicList();
+
+    // Read the relevant fields once
+    int nbRows = lastRow - firstRow;
+    boolean[] enabled = new boolean[nbRows];
+    int[] num = new int[nbRows];
+    int[] node1 = new int[nbRows];
+    int[] node2 = new int[nbRows];
+    byte[] mode = new byte[nbRows];
+    byte[] means = new byte[nbRows];
+    for (int r = 0; r < nbRows; r++) {
+      List<Object> values = linksDbf[layerIndex].getRecord(firstRow + r);
+
+      // Ignore not enabled links
+      enabled[r] = JDBCUtils.getInt(values.get(NodusC.DBF_IDX_ENABLED)) != 0;
+      if (!enabled[r]) {
+        continue;
+      }
+      num[r] = JDBCUtils.getInt(values.get(NodusC.DBF_IDX_NUM));
+      node1[r] = JDBCUtils.getInt(values.get(NodusC.DBF_IDX_NODE1));
+      node2[r] = JDBCUtils.getInt(values.get(NodusC.DBF_IDX_NODE2));
+      mode[r] = JDBCUtils.getByte(values.get(NodusC.DBF_IDX_MODE));
+      means[r] = JDBCUtils.getByte(values.get(NodusC.DBF_IDX_MEANS));
+    }
 
-        Integer node2 = Integer.valueOf(JDBCUtils.getInt(values.get(NodusC.DBF_IDX_NODE2)));
+    for (int r = 0; r < nbRows; r++) {
+      if (!progressListener.updateProgress(msg)) {
+        return false;
+      }
 
-        byte mode = JDBCUtils.getByte(values.get(NodusC.DBF_IDX_MODE));
+      if (!enabled[r]) {
+        continue;
+      }
 
-        byte means = JDBCUtils.getByte(values.get(NodusC.DBF_IDX_MEANS));
-        LinkedList<Integer> services =
-            nodusMapPanel.getNodusProject().getServiceEditor().getServicesForLink(link);
+      OMGraphic omg = egl.getOMGraphicAt(firstRow + r);
+      RealLink realLink = (RealLink) omg.getAttribute(0);
+      if (!realLink.isInHighlightedArea()) {
+        continue;
+      }
 
-        /* iterate through all means of the link */
-        for (byte k = 1; k <= means; k++) {
-          /*
-           * test the Mode Means is Line exclusive (if is exists lines for these mode and means,
-           * for instance the railroads) (if not exclusive the traffic don't need to follow the
-           * way of a line, for instance a car) then if is true, we make the virtual network with
-           * the line number and force the traffic to follow the lines. and if is false, we make
-           * the virtual network with a default number for line (default number = 0) so the
-           * traffic is free.
-           */
-          if (isServiceForModeMeans(mode, k)) {
-
-            if (services != null) {
-              /*
-               * test if the link has a line. If false a virtual Link is not created
-               * for this real link.
-               */
-              Iterator<Integer> it = services.iterator();
-              while (it.hasNext()) {
-                /*
-                 * A virtualLink is created for all thes line of the mode /means.
-                 */
-                int service = it.next();
-                int meansByService =
-                    nodusMapPanel.getNodusProject().getServiceEditor().getMeansForService(service);
-                // Virtual nodes
-                if (meansByService == k) {
-                  NodeLayerAndRowIndex idx = nodeIndex.get(node1);
-                  double lat = vnl[idx.indexInVirtualNodeList].getGraphic().getLat();
-                  double lon = vnl[idx.indexInVirtualNodeList].getGraphic().getLon();
-
-                  VirtualNode n1p =
-                      new VirtualNode(
-                          nbVirtualNodes++,
-                          node1.intValue(),
-                          link,
-                          mode,
-                          k,
-                          (short) service,
-                          lat,
-                          lon);
-                  vnl[idx.indexInVirtualNodeList].addVirtualNode(n1p);
-
-                  VirtualNode n1n =
-                      new VirtualNode(
-                          nbVirtualNodes++,
-                          -node1.intValue(),
-                          link,
-                          mode,
-                          k,
-                          (short) service,
-                          lat,
-                          lon);
-                  vnl[idx.indexInVirtualNodeList].addVirtualNode(n1n);
-
-                  idx = nodeIndex.get(node2);
-                  lat = vnl[idx.indexInVirtualNodeList].getGraphic().getLat();
-                  lon = vnl[idx.indexInVirtualNodeList].getGraphic().getLon();
-
-                  VirtualNode n2p =
-                      new VirtualNode(
-                          nbVirtualNodes++,
-                          node2.intValue(),
-                          link,
-                          mode,
-                          k,
-                          (short) service,
-                          lat,
-                          lon);
-                  vnl[idx.indexInVirtualNodeList].addVirtualNode(n2p);
-
-                  VirtualNode n2n =
-                      new VirtualNode(
-                          nbVirtualNodes++,
-                          -node2.intValue(),
-                          link,
-                          mode,
-                          k,
-                          (short) service,
-                          lat,
-                          lon);
-                  vnl[idx.indexInVirtualNodeList].addVirtualNode(n2n);
-
-                  /*
-                   * Moving virtual links are negative to positive oriented
-                   */
-                  n1n.add(new VirtualLink(nbVirtualLinks++, i, j, n1n, n2p, realLink));
-                  n2n.add(new VirtualLink(nbVirtualLinks++, i, j, n2n, n1p, realLink));
-                }
-              }
+      if (getNodeListIndex(node1[r]) == -1 || getNodeListIndex(node2[r]) == -1) {
+        SingleInstanceMessagePane.display(
+            progressListener,
+            MessageFormat.format(
+                i18n.get(
+                    VirtualNetwork.class, "End_node_not_found", "Link {0}: end node not found."),
+                Integer.toString(num[r])),
+            JOptionPane.ERROR_MESSAGE);
+        return false;
+      }
+
+      int[] services = serviceIndex.getServicesForLink(omg);
+
+      /* iterate through all means of the link */
+      for (byte k = 1; k <= means[r]; k++) {
+        /*
+         * If services exist for this mode and means (for instance the railroads), a virtual link
+         * is generated for each service of these means that uses the link, which forces the
+         * traffic to follow the services. If not, the virtual links are generated with a default
+         * service number (0), so the traffic is free.
+         */
+        if (!isServiceForModeMeans(mode[r], k)) {
+          addMovingLinks(
+              generated,
+              realLink,
+              layerIndex,
+              firstRow + r,
+              num[r],
+              node1[r],
+              node2[r],
+              mode[r],
+              k,
+              (short) 0);
+        } else if (services != null) {
+          for (int service : services) {
+            if (serviceIndex.getMeansForService(service) == k) {
+              addMovingLinks(
+                  generated,
+                  realLink,
+                  layerIndex,
+                  firstRow + r,
+                  num[r],
+                  node1[r],
+                  node2[r],
+                  mode[r],
+                  k,
+                  (short) service);
             }
-          } else {
-            /*
-             * A VirtualLink is created for the link, with not lines, because the
-             * mode means aren't exclusive line.
-             */
-
-            // Virtual nodes
-            NodeLayerAndRowIndex idx = nodeIndex.get(node1);
-            double lat = vnl[idx.indexInVirtualNodeList].getGraphic().getLat();
-            double lon = vnl[idx.indexInVirtualNodeList].getGraphic().getLon();
-
-            VirtualNode n1p =
-                new VirtualNode(
-                    nbVirtualNodes++, node1.intValue(), link, mode, k, (short) 0, lat, lon);
-            vnl[idx.indexInVirtualNodeList].addVirtualNode(n1p);
-
-            VirtualNode n1n =
-                new VirtualNode(
-                    nbVirtualNodes++, -node1.intValue(), link, mode, k, (short) 0, lat, lon);
-            vnl[idx.indexInVirtualNodeList].addVirtualNode(n1n);
-
-            idx = nodeIndex.get(node2);
-            lat = vnl[idx.indexInVirtualNodeList].getGraphic().getLat();
-            lon = vnl[idx.indexInVirtualNodeList].getGraphic().getLon();
-
-            VirtualNode n2p =
-                new VirtualNode(
-                    nbVirtualNodes++, node2.intValue(), link, mode, k, (short) 0, lat, lon);
-            vnl[idx.indexInVirtualNodeList].addVirtualNode(n2p);
-
-            VirtualNode n2n =
-                new VirtualNode(
-                    nbVirtualNodes++, -node2.intValue(), link, mode, k, (short) 0, lat, lon);
-            vnl[idx.indexInVirtualNodeList].addVirtualNode(n2n);
-
-            n1n.add(new VirtualLink(nbVirtualLinks++, i, j, n1n, n2p, realLink));
-            n2n.add(new VirtualLink(nbVirtualLinks++, i, j, n2n, n1p, realLink));
           }
         }
       }
     }
+    return true;
+  }
 
-    for (VirtualNodeList element : vnl) {
-      if (!nodusMapPanel.updateProgress(
-          i18n.get(
-              VirtualNetwork.class, "Transhipment_virtual_links", "Transhipment virtual links"))) {
+  /**
+   * Creates the four virtual nodes and the two moving virtual links generated for a real link,
+   * mode, means and service. The nodes and links are not numbered yet.
+   *
+   * @param generated Receives the generated nodes and links.
+   * @param realLink The real link.
+   * @param layerIndex The index of the layer of the real link.
+   * @param row The index of the real link in its layer.
+   * @param link The ID of the real link.
+   * @param node1 The ID of the origin node of the real link.
+   * @param node2 The ID of the destination node of the real link.
+   * @param mode The transportation mode.
+   * @param means The transportation means.
+   * @param service The service, or 0.
+   */
+  private void addMovingLinks(
+      GeneratedObjects generated,
+      RealLink realLink,
+      int layerIndex,
+      int row,
+      int link,
+      int node1,
+      int node2,
+      byte mode,
+      byte means,
+      short service) {
+
+    // Virtual nodes
+    int index1 = getNodeListIndex(node1);
+    double lat = vnl[index1].getGraphic().getLat();
+    double lon = vnl[index1].getGraphic().getLon();
+    VirtualNode n1p = new VirtualNode(0, node1, link, mode, means, service, lat, lon);
+    VirtualNode n1n = new VirtualNode(0, -node1, link, mode, means, service, lat, lon);
+
+    int index2 = getNodeListIndex(node2);
+    lat = vnl[index2].getGraphic().getLat();
+    lon = vnl[index2].getGraphic().getLon();
+    VirtualNode n2p = new VirtualNode(0, node2, link, mode, means, service, lat, lon);
+    VirtualNode n2n = new VirtualNode(0, -node2, link, mode, means, service, lat, lon);
+
+    generated.addNode(n1p, index1);
+    generated.addNode(n1n, index1);
+    generated.addNode(n2p, index2);
+    generated.addNode(n2n, index2);
+
+    /*
+     * Moving virtual links are negative to positive oriented
+     */
+    VirtualLink vl = new VirtualLink(0, layerIndex, row, n1n, n2p, realLink);
+    n1n.add(vl);
+    generated.addLink(vl);
+
+    vl = new VirtualLink(0, layerIndex, row, n2n, n1p, realLink);
+    n2n.add(vl);
+    generated.addLink(vl);
+  }
+
+  /**
+   * Generates the transit, transhipment, switching and stop virtual links. The virtual node lists
+   * are independent from each other, and are thus handled in parallel.
+   *
+   * @param executor The executor the tasks run on.
+   * @return True on success.
+   */
+  private boolean generateTranshipmentLinks(AssignmentExecutor executor) {
+    int chunkSize = getChunkSize(vnl.length, executor);
+
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    List<GeneratedObjects> generated = new ArrayList<>();
+    for (int first = 0; first < vnl.length; first += chunkSize) {
+      final int from = first;
+      final int to = Math.min(vnl.length, first + chunkSize);
+      final GeneratedObjects go = new GeneratedObjects();
+      generated.add(go);
+      tasks.add(() -> generateTranshipmentLinks(from, to, go));
+    }
+
+    if (!executor.run(tasks)) {
+      return false;
+    }
+
+    for (GeneratedObjects go : generated) {
+      number(go);
+    }
+    return true;
+  }
+
+  /**
+   * Generates the transit, transhipment, switching and stop virtual links for a range of virtual
+   * node lists.
+   *
+   * @param from The index of the first virtual node list.
+   * @param to The index after the last virtual node list.
+   * @param generated Receives the generated links.
+   * @return True on success.
+   */
+  private boolean generateTranshipmentLinks(int from, int to, GeneratedObjects generated) {
+    String msg =
+        i18n.get(VirtualNetwork.class, "Transhipment_virtual_links", "Transhipment virtual links");
 
+    for (int e = from; e < to; e++) {
+      if (!progressListener.updateProgress(msg)) {
         return false;
       }
 
+      VirtualNodeList element = vnl[e];
       LinkedList<VirtualNode> ll = element.getVirtualNodeList();
-      Iterator<VirtualNode> lit1 = ll.iterator();
+      VirtualNode[] nodes = ll.toArray(new VirtualNode[ll.size()]);
 
-      while (lit1.hasNext()) {
-        VirtualNode beginNode = lit1.next();
-        Iterator<VirtualNode> lit2 = ll.listIterator(ll.indexOf(beginNode));
+      // The stop points only depend on the node
+      boolean[] isStop = new boolean[nodes.length];
+      for (int n = 0; n < nodes.length; n++) {
+        isStop[n] =
+            serviceIndex.isNodeStopService(nodes[n].getRealNodeId(false), nodes[n].getService());
+      }
+
+      NodeLayerAndRowIndex idx = null;
+
+      for (int b = 0; b < nodes.length; b++) {
+        VirtualNode beginNode = nodes[b];
 
-        while (lit2.hasNext()) {
-          VirtualNode endNode = lit2.next();
+        for (int n = b; n < nodes.length; n++) {
+          VirtualNode endNode = nodes[n];
 
           // These virtual links are always from + to -
-          if (beginNode.getSign() != endNode.getSign()) {
-
-            /*
-             * Transhipment links are generated for transhipment nodes only and Transit
-             * links are generated for same mode/means combinations
-             */
-            boolean n1 =
-                nodusMapPanel
-                    .getNodusProject()
-                    .getServiceEditor()
-                    .isNodeStopService(beginNode.getRealNodeId(false), beginNode.getService());
-            if (beginNode.getService() == 0) {
-              n1 = true;
-            }
+          if (beginNode.getSign() == endNode.getSign()) {
+            continue;
+          }
 
-            boolean n2 =
-                nodusMapPanel
-                    .getNodusProject()
-                    .getServiceEditor()
-                    .isNodeStopService(endNode.getRealNodeId(false), endNode.getService());
-            if (endNode.getService() == 0) {
-              n2 = true;
+          /*
+           * Transhipment links are generated for transhipment nodes only and Transit
+           * links are generated for same mode/means combinations
+           */
+          boolean n1 = isStop[b] || beginNode.getService() == 0;
+          boolean n2 = isStop[n] || endNode.getService() == 0;
+
+          if (element.isTranshipmentNode() && n1 && n2
+              || beginNode.getModeMeansServiceKey() == endNode.getModeMeansServiceKey()
+              || beginNode.getModeMeansKey() == endNode.getModeMeansKey()
+                  && element.isChangingServiceNode()
+                  && n1
+                  && n2) {
+
+            // Find out which type of virtual link it is
+            byte type;
+
+            if (beginNode.getModeMeansServiceKey() == endNode.getModeMeansServiceKey()
+                && isStop[b]
+                && beginNode.getRealNodeId(false) == endNode.getRealNodeId(false)) {
+              type = VirtualLink.TYPE_STOP;
+            } else if (beginNode.getModeMeansServiceKey() == endNode.getModeMeansServiceKey()) {
+              type = VirtualLink.TYPE_TRANSIT;
+            } else if (beginNode.getModeMeansKey() == endNode.getModeMeansKey()) {
+              type = VirtualLink.TYPE_SWITCH;
+            } else {
+              type = VirtualLink.TYPE_TRANSHIP;
             }
 
-            if (element.isTranshipmentNode() && n1 && n2
-                || beginNode.getModeMeansServiceKey() == endNode.getModeMeansServiceKey()
-                || beginNode.getModeMeansKey() == endNode.getModeMeansKey()
-                    && element.isChangingServiceNode()
-                    && n1
-                    && n2) {
-              NodeLayerAndRowIndex idx = nodeIndex.get(Integer.valueOf(element.getRealNodeId()));
-
-              // Find out which type of virtual link it is
-              byte type;
-
-              if (beginNode.getModeMeansServiceKey() == endNode.getModeMeansServiceKey()
-                  && nodusMapPanel
-                      .getNodusProject()
-                      .getServiceEditor()
-                      .isNodeStopService(beginNode.getRealNodeId(false), beginNode.getService())
-                  && beginNode.getRealNodeId(false) == endNode.getRealNodeId(false)) {
-                type = VirtualLink.TYPE_STOP;
-              } else if (beginNode.getModeMeansServiceKey() == endNode.getModeMeansServiceKey()) {
-                type = VirtualLink.TYPE_TRANSIT;
-              } else if (beginNode.getModeMeansKey() == endNode.getModeMeansKey()) {
-                type = VirtualLink.TYPE_SWITCH;
-              } else {
-                type = VirtualLink.TYPE_TRANSHIP;
+            if (type == VirtualLink.TYPE_TRANSHIP
+                || type == VirtualLink.TYPE_SWITCH
+                || beginNode.getRealLinkId() != endNode.getRealLinkId()) {
+
+              // test if transit is allowed here
+              if (type == VirtualLink.TYPE_TRANSIT && !element.isTransitAllowed()) {
+                continue;
+              }
+
+              if (idx == null) {
+                idx = nodeIndex.get(element.getRealNodeId());
               }
 
-              if (type == VirtualLink.TYPE_TRANSHIP
-                  || type == VirtualLink.TYPE_SWITCH
-                  || beginNode.getRealLinkId() != endNode.getRealLinkId()) {
-
-                // test if transit is allowed here
-                boolean generateVirtualLink = true;
-                if (type == VirtualLink.TYPE_TRANSIT && !element.isTransitAllowed()) {
-                  generateVirtualLink = false;
-                }
-
-                if (generateVirtualLink) {
-                  if (beginNode.getSign() == VirtualNode.POSITIVE) {
-                    beginNode.add(
-                        new VirtualLink(
-                            nbVirtualLinks++,
-                            idx.layerIndex,
-                            idx.rowInLayer,
-                            beginNode,
-                            endNode,
-                            type));
-                  } else {
-                    endNode.add(
-                        new VirtualLink(
-                            nbVirtualLinks++,
-                            idx.layerIndex,
-                            idx.rowInLayer,
-                            endNode,
-                            beginNode,
-                            type));
-                  }
-                }
+              VirtualLink vl;
+              if (beginNode.getSign() == VirtualNode.POSITIVE) {
+                vl =
+                    new VirtualLink(
+                        0, idx.layerIndex, idx.rowInLayer, beginNode, endNode, type);
+                beginNode.add(vl);
+              } else {
+                vl =
+                    new VirtualLink(
+                        0, idx.layerIndex, idx.rowInLayer, endNode, beginNode, type);
+                endNode.add(vl);
               }
+              generated.addLink(vl);
             }
           }
-        } // while (lit2.hasNext())
-      } // while (lit1.hasNext())
-    } // for (int i = 0 ; i < VN.length ; i++)
+        }
+      }
+    }
+    return true;
+  }
 
+  /**
+   * Generates the loading and unloading virtual nodes and links. The virtual node lists are
+   * handled in parallel.
+   *
+   * @param executor The executor the tasks run on.
+   * @return True on success.
+   */
+  private boolean generateLoadingLinks(AssignmentExecutor executor) {
+    int chunkSize = getChunkSize(vnl.length, executor);
+
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    List<GeneratedObjects> generated = new ArrayList<>();
+    for (int first = 0; first < vnl.length; first += chunkSize) {
+      final int from = first;
+      final int to = Math.min(vnl.length, first + chunkSize);
+      final GeneratedObjects go = new GeneratedObjects();
+      generated.add(go);
+      tasks.add(() -> generateLoadingLinks(from, to, go));
+    }
+
+    if (!executor.run(tasks)) {
+      return false;
+    }
+
+    for (GeneratedObjects go : generated) {
+      number(go);
+    }
+
+    initializeLoadingVirtualNodes();
+    return true;
+  }
+
+  /**
+   * Tells the virtual node lists which of their nodes are the loading and unloading virtual nodes.
+   * The loading virtual node is the last one of the list, preceded by the unloading node.
+   */
+  void initializeLoadingVirtualNodes() {
     for (VirtualNodeList element : vnl) {
-      if (!nodusMapPanel.updateProgress(
-          i18n.get(
-              VirtualNetwork.class, "Un_Loading_virtual_links", "(Un)Loading virtual links"))) {
+      if (element.isLoadingUnloadingNode()) {
+        LinkedList<VirtualNode> ll = element.getVirtualNodeList();
+        element.setLoadingVirtualNodeNum(ll.getLast().getId());
+        element.setUnloadingVirtualNodeId(ll.get(ll.size() - 2).getId());
+      }
+    }
+  }
 
+  /**
+   * Generates the loading and unloading virtual nodes and links for a range of virtual node lists.
+   *
+   * @param from The index of the first virtual node list.
+   * @param to The index after the last virtual node list.
+   * @param generated Receives the generated nodes and links.
+   * @return True on success.
+   */
+  private boolean generateLoadingLinks(int from, int to, GeneratedObjects generated) {
+    String msg =
+        i18n.get(VirtualNetwork.class, "Un_Loading_virtual_links", "(Un)Loading virtual links");
+
+    for (int e = from; e < to; e++) {
+      if (!progressListener.updateProgress(msg)) {
         return false;
       }
 
+      VirtualNodeList element = vnl[e];
+      if (!element.isLoadingUnloadingNode()) {
+        continue;
+      }
+
       double lat = element.getGraphic().getLat();
       double lon = element.getGraphic().getLon();
 
-      if (element.isLoadingUnloadingNode()) {
-        VirtualNode loadingNode =
-            new VirtualNode(
-                nbVirtualNodes++,
-                -element.getRealNodeId(),
-                0,
-                (byte) 0,
-                (byte) 0,
-                (short) 0,
-                lat,
-                lon);
-        VirtualNode unLoadingNode =
-            new VirtualNode(
-                nbVirtualNodes++,
-                element.getRealNodeId(),
-                0,
-                (byte) 0,
-                (byte) 0,
-                (short) 0,
-                lat,
-                lon);
-
-        // Create all (un)loading virtual links. Must be - to - or + to
-        // + oriented
-        Iterator<VirtualNode> lit = element.getVirtualNodeList().iterator();
-
-        while (lit.hasNext()) {
-          VirtualNode currentNode = lit.next();
-          NodeLayerAndRowIndex idx = nodeIndex.get(Integer.valueOf(element.getRealNodeId()));
-          boolean n =
-              nodusMapPanel
-                  .getNodusProject()
-                  .getServiceEditor()
-                  .isNodeStopService(currentNode.getRealNodeId(false), currentNode.getService());
-          if (currentNode.getSign() == VirtualNode.NEGATIVE
-              && (n || !isServiceForModeMeans(currentNode.getMode(), currentNode.getMeans()))) {
-            VirtualLink vl =
-                new VirtualLink(
-                    nbVirtualLinks++,
-                    idx.layerIndex,
-                    idx.rowInLayer,
-                    loadingNode,
-                    currentNode,
-                    VirtualLink.TYPE_LOAD);
-            loadingNode.add(vl);
-          }
-          if (currentNode.getSign() == VirtualNode.POSITIVE
-              && (n || !isServiceForModeMeans(currentNode.getMode(), currentNode.getMeans()))) {
-            VirtualLink vl =
-                new VirtualLink(
-                    nbVirtualLinks++,
-                    idx.layerIndex,
-                    idx.rowInLayer,
-                    currentNode,
-                    unLoadingNode,
-                    VirtualLink.TYPE_UNLOAD);
-            currentNode.add(vl);
-          }
+      VirtualNode loadingNode =
+          new VirtualNode(
+              0, -element.getRealNodeId(), 0, (byte) 0, (byte) 0, (short) 0, lat, lon);
+      VirtualNode unLoadingNode =
+          new VirtualNode(0, element.getRealNodeId(), 0, (byte) 0, (byte) 0, (short) 0, lat, lon);
+      generated.addNode(loadingNode, -1);
+      generated.addNode(unLoadingNode, -1);
+
+      NodeLayerAndRowIndex idx = nodeIndex.get(element.getRealNodeId());
+
+      // Create all (un)loading virtual links. Must be - to - or + to
+      // + oriented
+      for (VirtualNode currentNode : element.getVirtualNodeList()) {
+        boolean n =
+            serviceIndex.isNodeStopService(
+                    currentNode.getRealNodeId(false), currentNode.getService())
+                || !isServiceForModeMeans(currentNode.getMode(), currentNode.getMeans());
+        if (!n) {
+          continue;
         }
 
-        /*
-         * Add the two new nodes to the list. Put the loading virtual node as last node so its
-         * easy to find it back when needed
-         */
-        element.addVirtualNode(unLoadingNode);
-        element.addVirtualNode(loadingNode);
+        if (currentNode.getSign() == VirtualNode.NEGATIVE) {
+          VirtualLink vl =
+              new VirtualLink(
+                  0,
+                  idx.layerIndex,
+                  idx.rowInLayer,
+                  loadingNode,
+                  currentNode,
+                  VirtualLink.TYPE_LOAD);
+          loadingNode.add(vl);
+          generated.addLink(vl);
+        } else {
+          VirtualLink vl =
+              new VirtualLink(
+                  0,
+                  idx.layerIndex,
+                  idx.rowInLayer,
+                  currentNode,
+                  unLoadingNode,
+                  VirtualLink.TYPE_UNLOAD);
+          currentNode.add(vl);
+          generated.addLink(vl);
+        }
+      }
+
+      /*
+       * Add the two new nodes to the list. Put the loading virtual node as last node so its
+       * easy to find it back when needed
+       */
+      element.addVirtualNode(unLoadingNode);
+      element.addVirtualNode(loadingNode);
+    }
+    return true;
+  }
 
-        element.setLoadingVirtualNodeNum(loadingNode.getId());
-        element.setUnloadingVirtualNodeId(unLoadingNode.getId());
+  /**
+   * Returns the size of the chunks the generation tasks are split in.
+   *
+   * @param size The number of items to split.
+   * @param executor The executor the tasks run on.
+   * @return The number of items per chunk.
+   */
+  private static int getChunkSize(int size, AssignmentExecutor executor) {
+    int nbChunks = executor.getParallelism() * CHUNKS_PER_THREAD;
+    return Math.max(1, (size + nbChunks - 1) / nbChunks);
+  }
+
+  /**
+   * Numbers the nodes and links generated by a task, and adds the nodes to their virtual node list.
+   * Must be called in the order of the tasks.
+   *
+   * @param generated The generated nodes and links.
+   */
+  private void number(GeneratedObjects generated) {
+    for (int k = 0; k < generated.nodes.size(); k++) {
+      VirtualNode vn = generated.nodes.get(k);
+      vn.setId(nbVirtualNodes++);
+      if (generated.nodeListIndexes[k] != -1) {
+        vnl[generated.nodeListIndexes[k]].addVirtualNode(vn);
       }
     }
+    for (VirtualLink vl : generated.links) {
+      vl.setId(nbVirtualLinks++);
+    }
+  }
 
-    // System.out.println(nbVirtualNodes + " " + nbVirtualLinks);
-    // End of generation
-    nodusMapPanel.stopProgress();
-    return true;
+  /**
+   * Creates the (still empty) virtual node lists associated to the real nodes.
+   *
+   * @return The virtual node lists.
+   */
+  VirtualNodeList[] initializeVirtualNodeLists() {
+    loadLinesForModeMeans();
+
+    /* Create array of linked lists */
+    vnl = new VirtualNodeList[nbRealNodes];
+
+    initializeNodeIndexMap();
+    return vnl;
+  }
+
+  /**
+   * Sets the number of virtual nodes and links once the virtual node lists are filled from a
+   * snapshot.
+   *
+   * @param nbVirtualNodes The number of virtual nodes, including the unused ID 0.
+   * @param nbVirtualLinks The number of virtual links, including the unused ID 0.
+   */
+  void setNbVirtualObjects(int nbVirtualNodes, int nbVirtualLinks) {
+    this.nbVirtualNodes = nbVirtualNodes;
+    this.nbVirtualLinks = nbVirtualLinks;
+  }
+
+  /**
+   * Computes a fingerprint of everything the generated virtual network depends on: the content and
+   * the geometry of the node and link layers, the objects kept in the highlighted area, the
+   * services and the mode/means combinations that must follow them. The fingerprint only depends
+   * on the content of the project, and can thus be compared with the one of a snapshot saved by
+   * another session.
+   *
+   * @return The fingerprint.
+   */
+  long computeFingerprint() {
+    loadLinesForModeMeans();
+
+    long h = 1;
+    IdentityHashMap<OMGraphic, Integer> linkNums = new IdentityHashMap<>(nbRealLinks);
+    for (int i = 0; i < nbLinkLayers; i++) {
+      EsriGraphicList egl = linksEsriLayer[i].getEsriGraphicList();
+      h = 31 * h + linksDbf[i].getRowCount();
+      for (int j = 0; j < linksDbf[i].getRowCount(); j++) {
+        List<Object> values = linksDbf[i].getRecord(j);
+        OMGraphic omg = egl.getOMGraphicAt(j);
+        linkNums.put(omg, JDBCUtils.getInt(values.get(NodusC.DBF_IDX_NUM)));
+        h = 31 * h + values.hashCode();
+        if (omg instanceof OMPoly) {
+          h = 31 * h + Arrays.hashCode(((OMPoly) omg).getLatLonArray());
+        }
+        h = 31 * h + (((RealNetworkObject) omg.getAttribute(0)).isInHighlightedArea() ? 1 : 0);
+      }
+    }
+
+    for (int i = 0; i < nodesDbf.length; i++) {
+      EsriGraphicList egl = nodesEsriLayer[i].getEsriGraphicList();
+      h = 31 * h + nodesDbf[i].getRowCount();
+      for (int j = 0; j < nodesDbf[i].getRowCount(); j++) {
+        OMPoint omPoint = (OMPoint) egl.getOMGraphicAt(j);
+        h = 31 * h + nodesDbf[i].getRecord(j).hashCode();
+        h = 31 * h + Double.doubleToLongBits(omPoint.getLat());
+        h = 31 * h + Double.doubleToLongBits(omPoint.getLon());
+        h = 31 * h + (((RealNetworkObject) omPoint.getAttribute(0)).isInHighlightedArea() ? 1 : 0);
+      }
+    }
+
+    ServiceEditor serviceEditor = nodusProject.getServiceEditor();
+    Iterator<String> it = serviceEditor.getServiceNamesIterator();
+    while (it.hasNext()) {
+      Service service = serviceEditor.getService(it.next());
+      h = 31 * h + service.getId();
+      h = 31 * h + service.getMode();
+      h = 31 * h + service.getMeans();
+      for (OMGraphic omg : service.getLinks()) {
+        h = 31 * h + linkNums.getOrDefault(omg, -1);
+      }
+      h = 31 * h + service.getStopNodes().hashCode();
+    }
+
+    for (boolean[] element : linesForModeMeans) {
+      h = 31 * h + Arrays.hashCode(element);
+    }
+    return h;
+  }
+
+  /**
+   * Reuses the virtual nodes and links generated for a previous assignment, which must have been
+   * made on the same network. The demand it loaded is discarded. The flows and weights are reset
+   * when the groups are set.
+   *
+   * @param other The virtual network of the previous assignment.
+   */
+  void reuse(VirtualNetwork other) {
+    linesForModeMeans = other.linesForModeMeans;
+    linesForModeMeansLoaded = true;
+    vnl = other.vnl;
+    nodeIndex = other.nodeIndex;
+    sortedNodeNums = other.sortedNodeNums;
+    sortedNodeListIndexes = other.sortedNodeListIndexes;
+    nbVirtualNodes = other.nbVirtualNodes;
+    nbVirtualLinks = other.nbVirtualLinks;
+    virtualLinks = other.virtualLinks;
+
+    for (VirtualNodeList element : vnl) {
+      element.resetDemand();
+    }
   }
 
   /**
-   * Generates the adjacency list for the generated virtual network for a given group index. This is
-   * the structure that will be used by the shortest path algorithm.
+   * Returns the adjacency graph of the generated virtual network for a given group index. This is
+   * the structure that will be used by the shortest path algorithms. The graph is only built once
+   * for each group after the costs are computed and is shared by all the workers, that therefore
+   * must not modify it (see AdjacencyGraph.copy()).
    *
-   * @param groupIndex The index of the group for which the adjacency list must be generated.
-   * @return AdjacencyNode[] The adjacency list.
+   * @param groupIndex The index of the group for which the adjacency graph must be generated.
+   * @return AdjacencyGraph The adjacency graph.
    */
-  public synchronized AdjacencyNode[] generateAdjacencyList(byte groupIndex) {
-    // Compute number of virtual nodes
+  public synchronized AdjacencyGraph generateAdjacencyList(byte groupIndex) {
+    // Initialize if needed
+    if (graph == null) {
+      graph = new AdjacencyGraph[getNbGroups()];
+      availableModeMeans = new int[getNbGroups()][];
+    }
+
+    if (graph[groupIndex] != null) {
+      return graph[groupIndex];
+    }
+
+    // Compute number of virtual nodes and arcs
     int nbNodes = 0;
+    int nbArcs = 0;
     int nbAvailableModeMeans = 0;
 
     byte[][] mm = new byte[NodusC.MAXMM][NodusC.MAXMM];
 
     for (VirtualNodeList element : vnl) {
       nbNodes += element.getVirtualNodeList().size();
+      Iterator<VirtualNode> nodeLit = element.getVirtualNodeList().iterator();
+      while (nodeLit.hasNext()) {
+        Iterator<VirtualLink> linkLit = nodeLit.next().getVirtualLinkList().iterator();
+        while (linkLit.hasNext()) {
+          // Ignore excluded links
+          if (linkLit.next().getWeight(groupIndex) >= 0) {
+            nbArcs++;
+          }
+        }
+      }
     }
 
-    // Initialize if needed
-    if (graph == null) {
+    AdjacencyGraph g = new AdjacencyGraph(nbNodes + 1, nbArcs);
 
-      graph = new AdjacencyNode[getNbGroups()][];
-      availableModeMeans = new int[getNbGroups()][];
+    // Count the arcs that leave each node
+
+    for (VirtualNodeList element : vnl) {
+      Iterator<VirtualNode> nodeLit = element.getVirtualNodeList().iterator();
+      while (nodeLit.hasNext()) {
+        VirtualNode vn = nodeLit.next();
+        g.latitude[vn.getId()] = vn.getLatitude();
+        g.longitude[vn.getId()] = vn.getLongitude();
+
+        Iterator<VirtualLink> linkLit = vn.getVirtualLinkList().iterator();
+        while (linkLit.hasNext()) {
+          if (linkLit.next().getWeight(groupIndex) >= 0) {
+            g.firstArc[vn.getId() + 1]++;
+          }
+        }
+      }
+    }
+
+    for (int i = 1; i < g.firstArc.length; i++) {
+      g.firstArc[i] += g.firstArc[i - 1];
     }
 
-    // Create the adjacency vector
-    graph[groupIndex] = new AdjacencyNode[nbNodes + 1];
+    // Fill the arcs, keeping the order of the virtual links of each node
+    int[] nextArc = g.firstArc.clone();
 
     for (VirtualNodeList element : vnl) {
       // Iterate through all the virtual nodes generated for this real
@@ -965,9 +1484,6 @@ public class VirtualNetwork {
       while (nodeLit.hasNext()) {
         VirtualNode vn = nodeLit.next();
 
-        AdjacencyNode current = new AdjacencyNode(vn);
-        graph[groupIndex][vn.getId()] = current;
-
         // Iterate through all the virtual links that start from this virtual node
         Iterator<VirtualLink> linkLit = vn.getVirtualLinkList().iterator();
 
@@ -989,10 +1505,11 @@ public class VirtualNetwork {
             }
           }
 
-          // if (vl.getBeginNode() != vlorigin) {
-          current.setNext(new AdjacencyNode(vl.getEndVirtualNode()), groupIndex, vl);
-          current = current.nextNode;
-          // }
+          int arc = nextArc[vn.getId()]++;
+          g.tail[arc] = vn.getId();
+          g.head[arc] = vl.getEndVirtualNode().getId();
+          g.weight[arc] = vl.getWeight(groupIndex);
+          g.virtualLink[arc] = vl;
         }
       }
     }
@@ -1009,7 +1526,8 @@ public class VirtualNetwork {
       }
     }
 
-    return graph[groupIndex];
+    graph[groupIndex] = g;
+    return g;
   }
 
   /**
@@ -1070,6 +1588,15 @@ public class VirtualNetwork {
     return nbODClasses;
   }
 
+  /**
+   * Returns the demand loaded from the OD matrix.
+   *
+   * @return The OD demand, or null if no matrix was loaded yet.
+   */
+  public ODDemand getODDemand() {
+    return odDemand;
+  }
+
   /**
    * Returns the number of time slices (for time dependent assignments only).
    *
@@ -1168,12 +1695,10 @@ public class VirtualNetwork {
       try {
         costFunctions.load(new FileInputStream(costFunctionsFileName.trim()));
       } catch (IOException ex) {
-        JOptionPane.showMessageDialog(
-            null,
+        progressListener.showMessage(
             MessageFormat.format(
                 i18n.get(VirtualNetwork.class, "not_found", "{0} not found."),
                 costFunctionsFileName),
-            NodusC.APPNAME,
             JOptionPane.ERROR_MESSAGE);
         return Double.NaN;
       }
@@ -1195,6 +1720,25 @@ public class VirtualNetwork {
     return vnl;
   }
 
+  /**
+   * Returns the virtual links indexed by id. The array is built the first time it is needed.
+   *
+   * @return An array of virtual links. The entry at index 0 is null, as ids start at 1.
+   */
+  public synchronized VirtualLink[] getVirtualLinks() {
+    if (virtualLinks == null) {
+      virtualLinks = new VirtualLink[nbVirtualLinks];
+      for (VirtualNodeList element : vnl) {
+        for (VirtualNode vn : element.getVirtualNodeList()) {
+          for (VirtualLink vl : vn.getVirtualLinkList()) {
+            virtualLinks[vl.getId()] = vl;
+          }
+        }
+      }
+    }
+    return virtualLinks;
+  }
+
   /**
    * Creates an hash table associating an index in the VNL structure to all the real nodes numbers.
    */
@@ -1221,6 +1765,33 @@ public class VirtualNetwork {
         index++;
       }
     }
+
+    long[] pairs = new long[nbRealNodes];
+    for (NodeLayerAndRowIndex idx : nodeIndex.values()) {
+      int num = vnl[idx.indexInVirtualNodeList].getRealNodeId();
+      pairs[idx.indexInVirtualNodeList] = (long) num << 32 | idx.indexInVirtualNodeList;
+    }
+    Arrays.sort(pairs);
+    sortedNodeNums = new int[nbRealNodes];
+    sortedNodeListIndexes = new int[nbRealNodes];
+    for (int i = 0; i < nbRealNodes; i++) {
+      sortedNodeNums[i] = (int) (pairs[i] >> 32);
+      sortedNodeListIndexes[i] = (int) pairs[i];
+    }
+  }
+
+  /**
+   * Returns the index of a real node in the VNL structure.
+   *
+   * @param realNodeId The ID of the real node.
+   * @return The index, or -1 if the node doesn't exist.
+   */
+  private int getNodeListIndex(int realNodeId) {
+    int i = Arrays.binarySearch(sortedNodeNums, realNodeId);
+    if (i < 0) {
+      return -1;
+    }
+    return sortedNodeListIndexes[i];
   }
 
   /**
@@ -1239,6 +1810,10 @@ public class VirtualNetwork {
    * "SERVICELINE.mode,means" variable exists in the cost functions.
    */
   private void loadLinesForModeMeans() {
+    if (linesForModeMeansLoaded) {
+      return;
+    }
+    linesForModeMeansLoaded = true;
 
     Properties costFunctions;
 
@@ -1252,11 +1827,9 @@ public class VirtualNetwork {
     try {
       costFunctions.load(new FileInputStream(costFunctionsFileName.trim()));
     } catch (IOException ex) {
-      JOptionPane.showMessageDialog(
-          null,
+      progressListener.showMessage(
           MessageFormat.format(
               i18n.get(VirtualNetwork.class, "not_found", "{0} not found."), costFunctionsFileName),
-          NodusC.APPNAME,
           JOptionPane.ERROR_MESSAGE);
       return;
     }
@@ -1271,101 +1844,6 @@ public class VirtualNetwork {
     }
   }
 
-  /**
-   * Computes the first derivative of the objective function used in Frank-Wolfe like assignment
-   * techniques. The iteration parameter is only used as information to pass to the progress-bar.
-   * NaN is returned if task was aborted
-   *
-   * @param iteration The current iteration in the assignment.
-   * @param approachedLambda An estimated/approached value of the descent.
-   * @return The first derivative of the objective function.
-   */
-  public double objectiveFunctionFirstDerivative(
-      int iteration, double approachedLambda, int threads) {
-    double firstDerivative = 0.0;
-
-    nodusMapPanel.startProgress(vnl.length * getNbGroups() * nbODClasses);
-
-    System.out.println(
-        MessageFormat.format(
-            i18n.get(
-                VirtualNetwork.class,
-                "Last_lambda_descent",
-                "Iteration {0}: Last lambda descent={1}"),
-            iteration,
-            formatter.format(approachedLambda)));
-
-    for (byte odClass = 0; odClass < nbODClasses; odClass++) {
-
-      // Create the work queue
-      WorkQueue queue = new WorkQueue();
-
-      // Create a set of worker threads
-      CostParserWorker[] worker = new CostParserWorker[threads];
-      for (int i = 0; i < worker.length; i++) {
-        worker[i] = new CostParserWorker(queue);
-      }
-
-      // Add the works to the queue
-      for (byte groupIndex = 0; groupIndex < getNbGroups(); groupIndex++) {
-        CostParser cp =
-            new CostParser(costFunctions, nodusProject, groups[groupIndex], odClass, (byte) -1);
-        if (!cp.isInitialized()) {
-          nodusMapPanel.stopProgress();
-          // Display the error message
-          JOptionPane.showMessageDialog(
-              null, cp.getErrorMessage(), NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
-          return Double.NaN;
-        }
-
-        CostParserWorkerParameters cpp =
-            new CostParserWorkerParameters(
-                worker, nodusProject, odClass, groupIndex, groups[groupIndex], this, cp, true);
-        queue.addWork(cpp);
-      }
-
-      // Add special end-of-stream markers to terminate the workers
-      for (int i = 0; i < worker.length; i++) {
-        queue.addWork(WorkQueue.NO_MORE_WORK);
-      }
-
-      // Start the threads on the now correctly initialized parsers
-      for (CostParserWorker element : worker) {
-        element.start();
-      }
-
-      // Wait until all the works are completed
-      for (int i = 0; i < threads; i++) {
-        try {
-          worker[i].join();
-        } catch (InterruptedException ex) {
-          ex.printStackTrace();
-        }
-      }
-
-      // Test if everything was OK
-      for (int i = 0; i < threads; i++) {
-        if (worker[i].isCancelled()) {
-          if (worker[i].getErrorMessage() != null) {
-            JOptionPane.showMessageDialog(
-                null, worker[i].getErrorMessage(), NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
-          }
-          nodusMapPanel.stopProgress();
-          return Double.NaN;
-        }
-      }
-
-      // Add the zpm value computed for each group
-      for (CostParserWorker element : worker) {
-        firstDerivative += element.getFirstDerivative();
-      }
-    }
-
-    nodusMapPanel.stopProgress();
-
-    return firstDerivative;
-  }
-
   /**
    * Returns true if the given OD class has demand stored in the OD matrix.
    *
@@ -1445,6 +1923,25 @@ public class VirtualNetwork {
     }
   }
 
+  /**
+   * Sets the executor of the assignment, on which the costs are computed. If not set, a temporary
+   * pool of threads is used for each cost computation.
+   *
+   * @param executor The executor of the assignment.
+   */
+  public void setExecutor(AssignmentExecutor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Sets the demand loaded from the OD matrix.
+   *
+   * @param odDemand The OD demand.
+   */
+  public void setODDemand(ODDemand odDemand) {
+    this.odDemand = odDemand;
+  }
+
   /**
    * Sets the ID of the highest OD class encountered in the OD matrix.
    *
@@ -1459,6 +1956,13 @@ public class VirtualNetwork {
     }
 
     // Detect the classes for which there is a demand
+    if (odDemand != null) {
+      for (int i = 0; i <= maxClass; i++) {
+        odClassHasDemand[i] = odDemand.hasDemandForClass((byte) i);
+      }
+      return;
+    }
+
     for (VirtualNodeList element : vnl) {
       LinkedList<ODCell> odLine = element.getInitialDemandList();
       if (odLine != null) {
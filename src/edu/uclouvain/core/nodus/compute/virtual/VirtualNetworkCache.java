@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.virtual;
+
+import com.bbn.openmap.dataAccess.shape.EsriGraphicList;
+import com.bbn.openmap.layer.shape.NodusEsriLayer;
+
+import edu.uclouvain.core.nodus.NodusC;
+import edu.uclouvain.core.nodus.NodusProject;
+import edu.uclouvain.core.nodus.compute.assign.AssignmentTimings;
+import edu.uclouvain.core.nodus.compute.exclusions.ExclusionReader;
+
+import java.io.File;
+
+/**
+ * Keeps the virtual network generated for the last assignment, so that the next assignments made
+ * on the same network (with another OD matrix, modal split method or number of iterations for
+ * instance) reuse its virtual nodes and links instead of generating them again. The cached network
+ * is identified by a fingerprint of the layers, services, exclusions and highlighted area it was
+ * generated from.
+ *
+ * <p>The cache can be disabled with the "vn.cache" project property. If the "vn.snapshot" property
+ * is set, the generated network is also saved in a snapshot file next to the project, which is
+ * used by the next sessions as long as the fingerprint doesn't change.
+ *
+ * @author Bart Jourquin
+ */
+public class VirtualNetworkCache {
+
+  /** Fingerprint of the cached virtual network. */
+  private static long fingerprint;
+
+  /** Layers the real links and nodes of the cached virtual network belong to. */
+  private static EsriGraphicList[] graphicLists = null;
+
+  /** Virtual network of the last assignment. */
+  private static VirtualNetwork virtualNetwork = null;
+
+  /** Discards the cached virtual network. Must be called when the project is closed. */
+  public static synchronized void clear() {
+    virtualNetwork = null;
+    graphicLists = null;
+  }
+
+  /**
+   * Generates the virtual nodes and links of a virtual network and loads its exclusions. The
+   * virtual nodes and links of the previous assignment are reused if the network didn't change
+   * since then.
+   *
+   * @param vnet The virtual network, just created for a new assignment.
+   * @return True on success.
+   */
+  public static synchronized boolean generate(VirtualNetwork vnet) {
+    long start = System.nanoTime();
+    boolean success = generateOrReuse(vnet);
+    if (success) {
+      vnet.getTimings()
+          .add(AssignmentTimings.GENERATION, System.nanoTime() - start, vnet.getNbVirtualLinks());
+    }
+    return success;
+  }
+
+  /** Generates the virtual network, or reuses the cached one. */
+  private static boolean generateOrReuse(VirtualNetwork vnet) {
+    NodusProject nodusProject = vnet.getNodusProject();
+    boolean useCache = nodusProject.getLocalProperty(NodusC.PROP_VN_CACHE, true);
+    boolean useSnapshot = nodusProject.getLocalProperty(NodusC.PROP_VN_SNAPSHOT, false);
+
+    ExclusionReader er = new ExclusionReader(vnet);
+
+    long fp = 0;
+    EsriGraphicList[] lists = getGraphicLists(vnet);
+    if (useCache || useSnapshot) {
+      fp = 31 * vnet.computeFingerprint() + er.getChecksum();
+
+      if (useCache && isCached(fp, lists)) {
+        vnet.reuse(virtualNetwork);
+        virtualNetwork = vnet;
+        return true;
+      }
+    }
+    clear();
+
+    File file =
+        new File(
+            nodusProject.getLocalProperty(NodusC.PROP_PROJECT_DOTPATH)
+                + nodusProject.getLocalProperty(NodusC.PROP_PROJECT_DOTNAME)
+                + NodusC.TYPE_VNS);
+    if (!useSnapshot || !VirtualNetworkSnapshot.read(file, fp, vnet)) {
+      if (!vnet.generate()) {
+        return false;
+      }
+      if (useSnapshot) {
+        VirtualNetworkSnapshot.write(file, fp, vnet);
+      }
+    }
+
+    // Read the exclusions
+    if (er.hasExclusions()) {
+      if (!er.loadExclusions()) {
+        return false;
+      }
+    }
+
+    if (useCache) {
+      fingerprint = fp;
+      graphicLists = lists;
+      virtualNetwork = vnet;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the lists of graphics of the node and link layers of a virtual network. A network can
+   * only be reused if its real nodes and links are still the same objects.
+   */
+  private static EsriGraphicList[] getGraphicLists(VirtualNetwork vnet) {
+    NodusEsriLayer[] nodeLayers = vnet.getRealNodes();
+    NodusEsriLayer[] linkLayers = vnet.getRealLinks();
+    EsriGraphicList[] lists = new EsriGraphicList[nodeLayers.length + linkLayers.length];
+    for (int i = 0; i < nodeLayers.length; i++) {
+      lists[i] = nodeLayers[i].getEsriGraphicList();
+    }
+    for (int i = 0; i < linkLayers.length; i++) {
+      lists[nodeLayers.length + i] = linkLayers[i].getEsriGraphicList();
+    }
+    return lists;
+  }
+
+  /** Returns true if the cached virtual network was generated from the same network. */
+  private static boolean isCached(long fp, EsriGraphicList[] lists) {
+    if (virtualNetwork == null || fp != fingerprint || lists.length != graphicLists.length) {
+      return false;
+    }
+    for (int i = 0; i < lists.length; i++) {
+      if (lists[i] != graphicLists[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.compute.virtual;
+
+import com.bbn.openmap.Environment;
+import com.bbn.openmap.layer.shape.NodusEsriLayer;
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.util.I18n;
+
+import edu.uclouvain.core.nodus.compute.real.RealLink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.MessageFormat;
+import java.util.LinkedList;
+
+import javax.swing.JOptionPane;
+
+/**
+ * Binary snapshot of the virtual nodes and links of a generated virtual network. Another session
+ * can map it in memory and rebuild the virtual network without generating it again, as long as
+ * the fingerprint of the project did not change. The exclusions are not part of the snapshot.
+ *
+ * <p>The file contains a header, followed by the virtual nodes of each virtual node list and then
+ * by the virtual links that leave each virtual node, in the same order. It is mapped in memory by
+ * regions of at most 256 Mb, so its size is not limited by the 2 Gb a single mapping can hold.
+ *
+ * @author Bart Jourquin
+ */
+public class VirtualNetworkSnapshot {
+
+  /** Identifies the file format ("NVNS"). */
+  private static final int MAGIC = 0x4E564E53;
+
+  /** Version of the file format. */
+  private static final int VERSION = 1;
+
+  /** Size of the header: magic, version, fingerprint and three counters. */
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 3 * 4;
+
+  /** Size of a virtual node: ID, signed real node, real link, mode, means and service. */
+  private static final int NODE_SIZE = 4 + 4 + 4 + 1 + 1 + 2;
+
+  /** Size of a virtual link: ID, end node, layer, row in layer and type. */
+  private static final int LINK_SIZE = 4 + 4 + 4 + 4 + 1;
+
+  /** Maximum size of a region of the file mapped in memory. */
+  private static final long REGION_SIZE = 1L << 28;
+
+  private static I18n i18n = Environment.getI18n();
+
+  /** Reads or writes a file sequentially, mapping one region of the file after the other. */
+  private static class MappedFile {
+
+    private MappedByteBuffer buffer;
+
+    private FileChannel channel;
+
+    private FileChannel.MapMode mode;
+
+    /** Position in the file of the current region. */
+    private long regionStart = 0;
+
+    private long size;
+
+    /**
+     * Maps the first region of a file.
+     *
+     * @param channel The channel of the file.
+     * @param mode READ_ONLY or READ_WRITE.
+     * @param size The size of the file.
+     * @throws IOException If the file could not be mapped.
+     */
+    MappedFile(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+      this.channel = channel;
+      this.mode = mode;
+      this.size = size;
+      buffer = channel.map(mode, 0, Math.min(REGION_SIZE, size));
+    }
+
+    /**
+     * Returns the mapped region, after mapping the next one if less than the given number of
+     * bytes remain in the current one.
+     */
+    private MappedByteBuffer ensure(int nbBytes) throws IOException {
+      if (buffer.remaining() < nbBytes) {
+        if (mode == FileChannel.MapMode.READ_WRITE) {
+          buffer.force();
+        }
+        regionStart += buffer.position();
+        buffer = channel.map(mode, regionStart, Math.min(REGION_SIZE, size - regionStart));
+      }
+      return buffer;
+    }
+
+    /** Writes the modified content of the current region on disk. */
+    void force() {
+      buffer.force();
+    }
+
+    byte get() throws IOException {
+      return ensure(1).get();
+    }
+
+    int getInt() throws IOException {
+      return ensure(4).getInt();
+    }
+
+    long getLong() throws IOException {
+      return ensure(8).getLong();
+    }
+
+    short getShort() throws IOException {
+      return ensure(2).getShort();
+    }
+
+    void put(byte value) throws IOException {
+      ensure(1).put(value);
+    }
+
+    void putInt(int value) throws IOException {
+      ensure(4).putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+      ensure(8).putLong(value);
+    }
+
+    void putShort(short value) throws IOException {
+      ensure(2).putShort(value);
+    }
+  }
+
+  /**
+   * Fills a virtual network with the content of a snapshot. Nothing is changed if the file doesn't
+   * exist or was saved for a different fingerprint.
+   *
+   * @param file The snapshot file.
+   * @param fingerprint The fingerprint of the project.
+   * @param vnet The virtual network to fill.
+   * @return True if the virtual network was loaded from the snapshot.
+   */
+  public static boolean read(File file, long fingerprint, VirtualNetwork vnet) {
+    if (!file.exists()) {
+      return false;
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      if (channel.size() < HEADER_SIZE) {
+        return false;
+      }
+      MappedFile buffer =
+          new MappedFile(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+      if (buffer.getInt() != MAGIC
+          || buffer.getInt() != VERSION
+          || buffer.getLong() != fingerprint) {
+        return false;
+      }
+      int nbVirtualNodes = buffer.getInt();
+      int nbVirtualLinks = buffer.getInt();
+      int nbLists = buffer.getInt();
+
+      VirtualNodeList[] vnl = vnet.initializeVirtualNodeLists();
+      if (nbLists != vnl.length) {
+        return false;
+      }
+
+      // Virtual nodes
+      VirtualNode[] nodes = new VirtualNode[nbVirtualNodes];
+      for (VirtualNodeList element : vnl) {
+        if (buffer.getInt() != element.getRealNodeId()) {
+          vnet.initializeVirtualNodeLists();
+          return false;
+        }
+        double lat = element.getGraphic().getLat();
+        double lon = element.getGraphic().getLon();
+        int nbNodes = buffer.getInt();
+        for (int n = 0; n < nbNodes; n++) {
+          int id = buffer.getInt();
+          int realNodeId = buffer.getInt();
+          int realLinkId = buffer.getInt();
+          byte mode = buffer.get();
+          byte means = buffer.get();
+          short service = buffer.getShort();
+          nodes[id] = new VirtualNode(id, realNodeId, realLinkId, mode, means, service, lat, lon);
+          element.addVirtualNode(nodes[id]);
+        }
+      }
+
+      // Virtual links
+      NodusEsriLayer[] linkLayers = vnet.getRealLinks();
+      for (VirtualNodeList element : vnl) {
+        for (VirtualNode beginNode : element.getVirtualNodeList()) {
+          int nbLinks = buffer.getInt();
+          for (int l = 0; l < nbLinks; l++) {
+            int id = buffer.getInt();
+            VirtualNode endNode = nodes[buffer.getInt()];
+            int layerIndex = buffer.getInt();
+            int row = buffer.getInt();
+            byte type = buffer.get();
+            if (type == VirtualLink.TYPE_MOVE) {
+              OMGraphic omg = linkLayers[layerIndex].getEsriGraphicList().getOMGraphicAt(row);
+              RealLink realLink = (RealLink) omg.getAttribute(0);
+              beginNode.add(new VirtualLink(id, layerIndex, row, beginNode, endNode, realLink));
+            } else {
+              beginNode.add(new VirtualLink(id, layerIndex, row, beginNode, endNode, type));
+            }
+          }
+        }
+      }
+
+      vnet.setNbVirtualObjects(nbVirtualNodes, nbVirtualLinks);
+      vnet.initializeLoadingVirtualNodes();
+      return true;
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Unable to read " + file + ": " + e.toString());
+      vnet.initializeVirtualNodeLists();
+      return false;
+    }
+  }
+
+  /**
+   * Saves the virtual nodes and links of a generated virtual network.
+   *
+   * @param file The snapshot file.
+   * @param fingerprint The fingerprint of the project.
+   * @param vnet The generated virtual network.
+   * @return True on success.
+   */
+  public static boolean write(File file, long fingerprint, VirtualNetwork vnet) {
+    VirtualNodeList[] vnl = vnet.getVirtualNodeLists();
+
+    // Compute the size of the file
+    long size = HEADER_SIZE;
+    for (VirtualNodeList element : vnl) {
+      LinkedList<VirtualNode> ll = element.getVirtualNodeList();
+      size += 8 + (long) ll.size() * (NODE_SIZE + 4);
+      for (VirtualNode vn : ll) {
+        size += (long) vn.getVirtualLinkList().size() * LINK_SIZE;
+      }
+    }
+
+    file.delete();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel()) {
+      MappedFile buffer = new MappedFile(channel, FileChannel.MapMode.READ_WRITE, size);
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putLong(fingerprint);
+      buffer.putInt(vnet.getNbVirtualNodes());
+      buffer.putInt(vnet.getNbVirtualLinks());
+      buffer.putInt(vnl.length);
+
+      for (VirtualNodeList element : vnl) {
+        buffer.putInt(element.getRealNodeId());
+        buffer.putInt(element.getVirtualNodeList().size());
+        for (VirtualNode vn : element.getVirtualNodeList()) {
+          buffer.putInt(vn.getId());
+          buffer.putInt(vn.getRealNodeId(true));
+          buffer.putInt(vn.getRealLinkId());
+          buffer.put(vn.getMode());
+          buffer.put(vn.getMeans());
+          buffer.putShort((short) vn.getService());
+        }
+      }
+
+      for (VirtualNodeList element : vnl) {
+        for (VirtualNode vn : element.getVirtualNodeList()) {
+          buffer.putInt(vn.getVirtualLinkList().size());
+          for (VirtualLink vl : vn.getVirtualLinkList()) {
+            buffer.putInt(vl.getId());
+            buffer.putInt(vl.getEndVirtualNode().getId());
+            buffer.putInt(vl.getLayerIndex());
+            buffer.putInt(vl.getIndexInLayer());
+            buffer.put(vl.getType());
+          }
+        }
+      }
+      buffer.force();
+      return true;
+    } catch (IOException e) {
+      // The network was generated, only the next sessions will have to generate it again
+      file.delete();
+      vnet
+          .getNodusProject()
+          .getProgressListener()
+          .showMessage(
+              MessageFormat.format(
+                  i18n.get(
+                      VirtualNetworkSnapshot.class,
+                      "Unable_to_write",
+                      "Unable to save the virtual network in {0}: {1}"),
+                  file,
+                  e.getMessage()),
+              JOptionPane.WARNING_MESSAGE);
+      return false;
+    }
+  }
+}
@@ -25,16 +25,18 @@ import com.bbn.openmap.Environment;
 import com.bbn.openmap.util.I18n;
 
 import edu.uclouvain.core.nodus.NodusC;
-import edu.uclouvain.core.nodus.NodusMapPanel;
 import edu.uclouvain.core.nodus.NodusProject;
 import edu.uclouvain.core.nodus.compute.assign.AssignmentParameters;
+import edu.uclouvain.core.nodus.compute.assign.AssignmentTimings;
 import edu.uclouvain.core.nodus.database.JDBCField;
 import edu.uclouvain.core.nodus.database.JDBCUtils;
 import edu.uclouvain.core.nodus.swing.SingleInstanceMessagePane;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JOptionPane;
 
@@ -45,9 +47,12 @@ import javax.swing.JOptionPane;
  */
 public class VirtualNetworkWriter {
 
+  /** Number of rows sent to the database in a single batch. */
+  private static final int BATCH_SIZE = 1000;
+
   private static I18n i18n = Environment.getI18n();
 
-  private NodusMapPanel nodusMapPanel;
+  private ProgressListener progressListener;
 
   private static boolean saveCompleteVirtualNetwork;
 
@@ -178,7 +183,7 @@ public class VirtualNetworkWriter {
   public VirtualNetworkWriter(AssignmentParameters ap, VirtualNetwork vnet) {
     virtualNet = vnet;
     nodusProject = ap.getNodusProject();
-    nodusMapPanel = nodusProject.getNodusMapPanel();
+    progressListener = nodusProject.getProgressListener();
     scenario = ap.getScenario();
     SingleInstanceMessagePane.reset();
   }
@@ -208,6 +213,50 @@ public class VirtualNetworkWriter {
    * @return True on success.
    */
   public boolean save() {
+    return save(null, null);
+  }
+
+  /**
+   * Computes the vehicles that correspond to the assigned flows for all the time slices and saves
+   * the content of the assignment in a database table. The vehicles are computed in a background
+   * thread, and the results of each virtual node list are written as soon as its vehicles are
+   * known.
+   *
+   * @return True on success.
+   */
+  public boolean saveWithVehicles() {
+    final AtomicInteger nbHandledNodeLists = new AtomicInteger(0);
+    final byte lastTimeSlice = (byte) (virtualNet.getNbTimeSlices() - 1);
+
+    Thread vehiclesThread =
+        new Thread("FlowsToVehicles") {
+          @Override
+          public void run() {
+            virtualNet.flowsToVehicles((byte) 0, lastTimeSlice, nbHandledNodeLists);
+          }
+        };
+    vehiclesThread.start();
+
+    boolean result = save(nbHandledNodeLists, vehiclesThread);
+
+    // The vehicles must be computed even if the table could not be saved
+    try {
+      vehiclesThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return result;
+  }
+
+  /**
+   * Saves the content of the assignment in a database table.
+   *
+   * @param nbHandledNodeLists If not null, number of virtual node lists for which the vehicles
+   *     are already computed.
+   * @param vehiclesThread The thread that computes the vehicles, if any.
+   * @return True on success.
+   */
+  private boolean save(AtomicInteger nbHandledNodeLists, Thread vehiclesThread) {
 
     // Create or clear table at first iteration
     if (!initTable()) {
@@ -217,8 +266,10 @@ public class VirtualNetworkWriter {
     int nbTimeSlices = virtualNet.getNbTimeSlices();
     int timeSliceDuration = virtualNet.getTimeSliceDuration();
     int assignmentStarTime = virtualNet.getAssignmentStartTime();
+    byte[] groups = virtualNet.getGroups();
 
-    // long start = System.currentTimeMillis();
+    long start = System.nanoTime();
+    int nbRows = 0;
 
     try {
       // Fill it
@@ -227,20 +278,34 @@ public class VirtualNetworkWriter {
       /* Prepared statement */
       String sqlStmt = "INSERT INTO " + vNetTableName + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,";
 
-      byte[] groups = virtualNet.getGroups();
       for (byte k = 0; k < (byte) groups.length; k++) {
         sqlStmt += "?,?,?,";
       }
       sqlStmt += "?,?,?)";
       PreparedStatement prepStmt = jdbcConnection.prepareStatement(sqlStmt);
+      int nbBatchedRows = 0;
 
-      nodusMapPanel.startProgress(virtualNet.getNbVirtualLinks());
+      progressListener.startProgress(virtualNet.getNbVirtualLinks());
 
       VirtualNodeList[] vnl = virtualNet.getVirtualNodeLists();
-      for (VirtualNodeList element : vnl) {
+      for (int i = 0; i < vnl.length; i++) {
+        // Wait until the vehicles of this list are computed
+        if (nbHandledNodeLists != null && nbHandledNodeLists.get() <= i) {
+          synchronized (nbHandledNodeLists) {
+            while (nbHandledNodeLists.get() <= i && vehiclesThread.isAlive()) {
+              nbHandledNodeLists.wait(10);
+            }
+          }
+          if (nbHandledNodeLists.get() <= i) {
+            prepStmt.close();
+            progressListener.stopProgress();
+            return false;
+          }
+        }
+
         // Iterate through all the virtual nodes generated for this real
         // node
-        Iterator<VirtualNode> nodeLit = element.getVirtualNodeList().iterator();
+        Iterator<VirtualNode> nodeLit = vnl[i].getVirtualNodeList().iterator();
 
         while (nodeLit.hasNext()) {
           VirtualNode vn = nodeLit.next();
@@ -250,7 +315,7 @@ public class VirtualNetworkWriter {
           Iterator<VirtualLink> linkLit = vn.getVirtualLinkList().iterator();
 
           while (linkLit.hasNext()) {
-            if (!nodusMapPanel.updateProgress(
+            if (!progressListener.updateProgress(
                 i18n.get(
                     VirtualNetworkWriter.class,
                     "Saving_virtual_network",
@@ -310,22 +375,30 @@ public class VirtualNetworkWriter {
                 prepStmt.setDouble(idx++, totalQty);
                 prepStmt.setInt(idx++, totalVehicles);
 
-                prepStmt.executeUpdate();
+                prepStmt.addBatch();
+                nbRows++;
+                if (++nbBatchedRows == BATCH_SIZE) {
+                  prepStmt.executeBatch();
+                  nbBatchedRows = 0;
+                }
               }
             }
           }
         }
       }
 
+      if (nbBatchedRows > 0) {
+        prepStmt.executeBatch();
+      }
       prepStmt.close();
       if (!jdbcConnection.getAutoCommit()) {
         jdbcConnection.commit();
       }
 
     } catch (Exception e) {
-      nodusMapPanel.stopProgress();
+      progressListener.stopProgress();
       SingleInstanceMessagePane.display(
-          nodusProject.getNodusMapPanel(),
+          nodusProject.getProgressListener(),
           i18n.get(
               VirtualNetworkWriter.class,
               "Invalid_value",
@@ -335,10 +408,8 @@ public class VirtualNetworkWriter {
       return false;
     }
 
-    // long end = System.currentTimeMillis();
-    // System.out.println("Duration : " + ((end - start) / 1000) + " seconds
-    // for " + nbRecords + " records");
-    nodusMapPanel.stopProgress();
+    virtualNet.getTimings().add(AssignmentTimings.RESULTS, System.nanoTime() - start, nbRows);
+    progressListener.stopProgress();
 
     return true;
   }
@@ -189,6 +189,16 @@ public class VirtualNode {
     return virtualNodeId;
   }
 
+  /**
+   * Sets the ID of this virtual node. Used by the virtual network generator, which creates the
+   * nodes in parallel and numbers them afterwards.
+   *
+   * @param id The ID of this virtual node.
+   */
+  void setId(int id) {
+    virtualNodeId = id;
+  }
+
   /**
    * Returns the "link" element of the virtual node.
    *
@@ -24,8 +24,10 @@ package edu.uclouvain.core.nodus.compute.virtual;
 import com.bbn.openmap.omGraphics.OMPoint;
 
 import edu.uclouvain.core.nodus.NodusC;
+import edu.uclouvain.core.nodus.compute.exclusions.CompiledExclusions;
 import edu.uclouvain.core.nodus.compute.exclusions.Exclusion;
 import edu.uclouvain.core.nodus.compute.od.ODCell;
+import edu.uclouvain.core.nodus.compute.od.ODDemand;
 
 import java.util.Collection;
 import java.util.HashMap;
@@ -50,9 +52,24 @@ public class VirtualNodeList {
   /** Virtual node number that represent the loading node. */
   private Vector<Demands> demands = null;
 
+  /**
+   * Demand loaded from the OD matrix, not yet converted into ODCell objects. Null once the demand
+   * has been materialized in the demand lists.
+   */
+  private volatile ODDemand odDemand = null;
+
+  /** Index of this list in the array of virtual node lists. */
+  private int odDemandIndex;
+
+  /** Array of virtual node lists, used to retrieve the real node IDs of the destinations. */
+  private VirtualNodeList[] virtualNodeLists = null;
+
   /** List of prohibited movements at the associated real node. */
   private LinkedList<Exclusion> exclusionsList = null;
 
+  /** Prohibited movements at the associated real node, compiled in a lookup table. */
+  private CompiledExclusions compiledExclusions = null;
+
   /** OMGraphic that represents this node. */
   private OMPoint graphic;
 
@@ -203,6 +220,12 @@ public class VirtualNodeList {
    */
   public void addExclusion(Exclusion exclusion) {
     exclusionsList.add(exclusion);
+
+    // The virtual nodes are generated before the exclusions are loaded
+    if (compiledExclusions == null) {
+      compiledExclusions = new CompiledExclusions(realNodeId, virtualNodeList);
+    }
+    compiledExclusions.add(exclusion);
   }
 
   /**
@@ -228,6 +251,8 @@ public class VirtualNodeList {
       return null;
     }
 
+    materializeDemand();
+
     LinkedList<ODCell> listForGroup = new LinkedList<>();
     Collection<LinkedList<ODCell>> values = demands.get(0).destinations.values();
     Iterator<LinkedList<ODCell>> it = values.iterator();
@@ -259,6 +284,23 @@ public class VirtualNodeList {
     return exclusionsList;
   }
 
+  /**
+   * Returns true if a movement is prohibited at the real node for a given group.
+   *
+   * @param group Group of goods.
+   * @param mode1 Mode at the origin.
+   * @param means1 Means at the origin.
+   * @param mode2 Mode at the destination.
+   * @param means2 Means at the destination.
+   * @return True if excluded.
+   */
+  public boolean isExcluded(int group, int mode1, int means1, int mode2, int means2) {
+    if (compiledExclusions == null) {
+      return false;
+    }
+    return compiledExclusions.isExcluded(group, mode1, means1, mode2, means2);
+  }
+
   /**
    * Returns the graphic representing to the real node associated to this list.
    *
@@ -278,6 +320,7 @@ public class VirtualNodeList {
     if (demands == null) {
       return null;
     } else {
+      materializeDemand();
       LinkedList<ODCell> allDestinationsList = new LinkedList<>();
       Collection<LinkedList<ODCell>> values = demands.get(0).destinations.values();
 
@@ -356,6 +399,11 @@ public class VirtualNodeList {
       return false;
     }
 
+    ODDemand d = odDemand;
+    if (d != null && d.hasDemand(odDemandIndex, group, odClass)) {
+      return true;
+    }
+
     for (int i = 0; i < demands.size(); i++) {
       Collection<LinkedList<ODCell>> values = demands.get(i).destinations.values();
       Iterator<LinkedList<ODCell>> it = values.iterator();
@@ -411,6 +459,33 @@ public class VirtualNodeList {
     return allowTransit;
   }
 
+  /**
+   * Converts the cells of the OD demand that leave this node into ODCell objects stored in the
+   * first demand list. Only needed by the assignment methods that modify the demand while
+   * assigning it.
+   */
+  private synchronized void materializeDemand() {
+    if (odDemand == null) {
+      return;
+    }
+
+    HashMap<Integer, LinkedList<ODCell>> destinations = demands.get(0).destinations;
+    Iterator<ODCell> it = odDemand.toODCells(odDemandIndex, virtualNodeLists).iterator();
+    while (it.hasNext()) {
+      ODCell odCell = it.next();
+      LinkedList<ODCell> cells = destinations.get(odCell.getDestinationNodeId());
+      if (cells == null) {
+        cells = new LinkedList<>();
+        destinations.put(odCell.getDestinationNodeId(), cells);
+      }
+      synchronized (cells) {
+        cells.add(odCell);
+      }
+    }
+    odDemand = null;
+    virtualNodeLists = null;
+  }
+
   /**
    * Removes a demand cell from the list.
    *
@@ -426,6 +501,24 @@ public class VirtualNodeList {
     }
   }
 
+  /**
+   * Discards the demand loaded for a previous assignment, keeping the loading and unloading virtual
+   * nodes. Used when the virtual network is reused for a new assignment.
+   */
+  public synchronized void resetDemand() {
+    odDemand = null;
+    virtualNodeLists = null;
+    if (!isLoadingUnloading) {
+      demands = null;
+      return;
+    }
+
+    // Only keep the list of the loading node of the real node
+    Demands d = demands.get(0);
+    d.destinations.clear();
+    demands.setSize(1);
+  }
+
   /**
    * Sets the loading virtual node associated to the real node.
    *
@@ -443,6 +536,23 @@ public class VirtualNodeList {
     }
   }
 
+  /**
+   * Sets the OD demand that leaves the real node associated to this list. The ODCell objects are
+   * only created if the demand lists are requested.
+   *
+   * @param odDemand The OD demand.
+   * @param index The index of this list in the array of virtual node lists.
+   * @param virtualNodeLists The array of virtual node lists.
+   */
+  public void setODDemand(ODDemand odDemand, int index, VirtualNodeList[] virtualNodeLists) {
+    if (demands == null) {
+      return;
+    }
+    this.odDemandIndex = index;
+    this.virtualNodeLists = virtualNodeLists;
+    this.odDemand = odDemand;
+  }
+
   /**
    * Sets the unloading virtual node associated to the real node.
    *
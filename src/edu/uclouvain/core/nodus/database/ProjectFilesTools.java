@@ -38,6 +38,7 @@ import edu.uclouvain.core.nodus.database.dbf.DBFField;
 import edu.uclouvain.core.nodus.database.dbf.DBFReader;
 import edu.uclouvain.core.nodus.database.dbf.DBFWriter;
 import edu.uclouvain.core.nodus.tools.console.NodusConsole;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 
 import foxtrot.Job;
 import foxtrot.Worker;
@@ -538,9 +539,11 @@ public class ProjectFilesTools implements ShapeConstants {
    * - The .dbf files must have some mandatory fields. <br>
    *
    * @param nodusProjectProperties The Nodus project properties.
+   * @param progressListener The listener the error messages are sent to.
    * @return True on success.
    */
-  public static boolean isValidProject(Properties nodusProjectProperties) {
+  public static boolean isValidProject(
+      Properties nodusProjectProperties, ProgressListener progressListener) {
     String path = nodusProjectProperties.getProperty(NodusC.PROP_PROJECT_DOTPATH);
 
     // Nodes
@@ -551,8 +554,7 @@ public class ProjectFilesTools implements ShapeConstants {
       String currentName = st.nextToken();
 
       if (!isValidLayer(path, currentName, SHAPE_TYPE_POINT)) {
-        JOptionPane.showMessageDialog(
-            null, errorMessage, NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+        progressListener.showMessage(errorMessage, JOptionPane.ERROR_MESSAGE);
 
         return false;
       }
@@ -570,8 +572,7 @@ public class ProjectFilesTools implements ShapeConstants {
           addEnabledField(path, currentName);
           enabledFieldMustBeAdded = false;
         } else {
-          JOptionPane.showMessageDialog(
-              null, errorMessage, NodusC.APPNAME, JOptionPane.ERROR_MESSAGE);
+          progressListener.showMessage(errorMessage, JOptionPane.ERROR_MESSAGE);
 
           return false;
         }
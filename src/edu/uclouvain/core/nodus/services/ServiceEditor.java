@@ -99,7 +99,10 @@ public class ServiceEditor {
     this.nodusProject = nodusProject;
     // nodusMapPanel = nodusProject.getNodusMapPanel();
 
-    graphics = nodusProject.getNodusMapPanel().getMapBean().getGraphics();
+    // The services are only edited when the project is displayed in the map panel
+    if (nodusProject.getNodusMapPanel() != null) {
+      graphics = nodusProject.getNodusMapPanel().getMapBean().getGraphics();
+    }
 
     linkLayer = nodusProject.getLinkLayers();
     nodeLayer = nodusProject.getNodeLayers();
@@ -119,7 +122,9 @@ public class ServiceEditor {
     loadService();
 
     // Prepare the GUI
-    serviceEditorDlg = new ServiceEditorDlg(this);
+    if (nodusProject.getNodusMapPanel() != null) {
+      serviceEditorDlg = new ServiceEditorDlg(this);
+    }
   }
 
   /**
@@ -289,7 +294,7 @@ public class ServiceEditor {
         jdbcConnection.commit();
       }
     } catch (Exception ex) {
-      JOptionPane.showMessageDialog(null, ex.getMessage(), "SQL error", JOptionPane.ERROR_MESSAGE);
+      nodusProject.getProgressListener().showMessage(ex.getMessage(), JOptionPane.ERROR_MESSAGE);
     }
 
     services.clear();
@@ -655,7 +660,7 @@ public class ServiceEditor {
    * @return True if the dialog box is visible.
    */
   public boolean isGUIVisible() {
-    return serviceEditorDlg.isVisible();
+    return serviceEditorDlg != null && serviceEditorDlg.isVisible();
   }
 
   /**
@@ -758,7 +763,7 @@ public class ServiceEditor {
       stmt3.close();
 
     } catch (Exception ex) {
-      JOptionPane.showMessageDialog(null, ex.getMessage(), "SQL error", JOptionPane.ERROR_MESSAGE);
+      nodusProject.getProgressListener().showMessage(ex.getMessage(), JOptionPane.ERROR_MESSAGE);
     }
   }
 
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.services;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Read-only snapshot of the services of a project, indexed for the lookups made during the
+ * generation of a virtual network. The equivalent methods of the ServiceEditor scan all the
+ * services at each call, which is too slow to be done for each link and each pair of virtual nodes
+ * of a large network. The index can be queried concurrently by several threads.
+ *
+ * @author Bart Jourquin
+ */
+public class ServiceIndex {
+
+  /** Transportation means of each service. */
+  private HashMap<Integer, Integer> meansForService = new HashMap<>();
+
+  /** IDs of the services that use a link, in the order of the service names. */
+  private IdentityHashMap<OMGraphic, int[]> servicesForLink = new IdentityHashMap<>();
+
+  /** Stop nodes of the services, as (node ID, service ID) pairs. */
+  private HashSet<Long> stops = new HashSet<>();
+
+  /**
+   * Indexes the services currently defined in a service editor.
+   *
+   * @param serviceEditor The service editor of the project.
+   */
+  public ServiceIndex(ServiceEditor serviceEditor) {
+    IdentityHashMap<OMGraphic, LinkedList<Integer>> services = new IdentityHashMap<>();
+
+    Iterator<String> it = serviceEditor.getServiceNamesIterator();
+    while (it.hasNext()) {
+      Service s = serviceEditor.getService(it.next());
+      int id = s.getId();
+      meansForService.putIfAbsent(id, s.getMeans());
+
+      for (OMGraphic omg : s.getLinks()) {
+        LinkedList<Integer> ids = services.get(omg);
+        if (ids == null) {
+          ids = new LinkedList<>();
+          services.put(omg, ids);
+        }
+        // A link is only reported once per service
+        if (ids.isEmpty() || ids.getLast() != id) {
+          ids.add(id);
+        }
+      }
+
+      for (int nodeId : s.getStopNodes()) {
+        stops.add(getStopKey(nodeId, id));
+      }
+    }
+
+    for (Map.Entry<OMGraphic, LinkedList<Integer>> entry : services.entrySet()) {
+      int[] ids = new int[entry.getValue().size()];
+      int i = 0;
+      for (int id : entry.getValue()) {
+        ids[i++] = id;
+      }
+      servicesForLink.put(entry.getKey(), ids);
+    }
+  }
+
+  /**
+   * Returns the key of a stop in the set of stops.
+   *
+   * @param nodeId The ID of the node.
+   * @param serviceId The ID of the service.
+   * @return The key.
+   */
+  private static long getStopKey(int nodeId, int serviceId) {
+    return ((long) nodeId << 32) | (serviceId & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Retrieves the transportation means for the given service ID.
+   *
+   * @param serviceId service number
+   * @return The transportation means of service, or -1 if the service doesn't exist.
+   */
+  public int getMeansForService(int serviceId) {
+    Integer means = meansForService.get(serviceId);
+    if (means == null) {
+      return -1;
+    }
+    return means;
+  }
+
+  /**
+   * Retrieves the IDs of the services that use a given link.
+   *
+   * @param link The OMGraphic of the link.
+   * @return The IDs of the services, or null if the link is not used by a service.
+   */
+  public int[] getServicesForLink(OMGraphic link) {
+    return servicesForLink.get(link);
+  }
+
+  /**
+   * Checks if a node is a stop point for a service.
+   *
+   * @param nodeId The ID of a node.
+   * @param serviceId The ID of a service
+   * @return True if the node corresponds to a stop point along the service.
+   */
+  public boolean isNodeStopService(int nodeId, int serviceId) {
+    return stops.contains(getStopKey(nodeId, serviceId));
+  }
+}
@@ -22,6 +22,7 @@
 package edu.uclouvain.core.nodus.swing;
 
 import edu.uclouvain.core.nodus.NodusC;
+import edu.uclouvain.core.nodus.utils.ProgressListener;
 
 import java.awt.Component;
 
@@ -38,27 +39,41 @@ public class SingleInstanceMessagePane {
 
   static JOptionPane pane = null;
   static JDialog dialog = null;
+  static volatile boolean displayed = false;
 
   /** Resets the dialog so that it will be displayed on the next call to "display". */
   public static void reset() {
     pane = null;
     dialog = null;
+    displayed = false;
   }
 
   /**
-   * Displays a JOptionPane only when the dialog was not yet created by another task.
+   * Displays a JOptionPane only when the dialog was not yet created by another task. When the
+   * progress listener is not a component, as when the project is opened without user interface,
+   * the message is sent to it only once instead.
    *
-   * @param parent The parent component.
+   * @param progressListener The progress listener, which is the parent component of the dialog.
    * @param message The message to display.
    * @param messageType The type of message to dispaly (same as in JOptionPane).
    */
-  public static void display(Component parent, String message, int messageType) {
-    if (dialog == null) {
-      dialog = new JDialog();
-      pane = new JOptionPane(message, messageType, JOptionPane.DEFAULT_OPTION, null, null, null);
-      dialog = pane.createDialog(parent, NodusC.APPNAME);
-      dialog.setLocationRelativeTo(parent);
-      dialog.setVisible(true);
+  public static void display(
+      ProgressListener progressListener, String message, int messageType) {
+    if (displayed) {
+      return;
     }
+    displayed = true;
+
+    if (!(progressListener instanceof Component)) {
+      progressListener.showMessage(message, messageType);
+      return;
+    }
+
+    Component parent = (Component) progressListener;
+    dialog = new JDialog();
+    pane = new JOptionPane(message, messageType, JOptionPane.DEFAULT_OPTION, null, null, null);
+    dialog = pane.createDialog(parent, NodusC.APPNAME);
+    dialog.setLocationRelativeTo(parent);
+    dialog.setVisible(true);
   }
 }
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 1991-2019 Université catholique de Louvain
+ *
+ * <p>Center for Operations Research and Econometrics (CORE)
+ *
+ * <p>http://www.uclouvain.be
+ *
+ * <p>This file is part of Nodus.
+ *
+ * <p>Nodus is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * <p>This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.uclouvain.core.nodus.utils;
+
+/**
+ * Receives the progress of the long tasks (assignments, reading of the OD matrixes...) and the
+ * messages they display. The main window displays them in its progress bar and in dialog boxes,
+ * but they can also be reported elsewhere, for instance on the console when Nodus runs assignments
+ * without user interface.
+ *
+ * @author Bart Jourquin
+ */
+public interface ProgressListener {
+
+  /**
+   * Displays a message.
+   *
+   * @param msg The message to display.
+   */
+  void setText(String msg);
+
+  /**
+   * Displays a message to the user, for instance the error that stopped a task.
+   *
+   * @param msg The message to display.
+   * @param messageType The type of message (same as in JOptionPane).
+   */
+  void showMessage(String msg, int messageType);
+
+  /**
+   * Starts a new long task.
+   *
+   * @param finishedValue The number of steps of the task.
+   */
+  void startProgress(int finishedValue);
+
+  /** Ends the current long task. */
+  void stopProgress();
+
+  /**
+   * Reports that a step of the current task is done.
+   *
+   * @param msg A description of the step.
+   * @return False if the task must be aborted.
+   */
+  boolean updateProgress(String msg);
+}